@@ -124,7 +124,6 @@ public final class MessagesConstants {
     public static final String INFO_FEATURE_INDEX_NOT_FOUND = "info.feature.index.not.found";
     public static final String INFO_FEATURE_INDEX_LOADING = "info.feature.index.loading";
     public static final String INFO_FEATURE_INDEX_WRITING = "info.feature.index.writing";
-    public static final String ERROR_FEATURE_INEDX_TOO_LARGE = "error.feature.index.too.large";
     public static final String INFO_FEATURE_INDEX_DONE = "info.feature.index.done";
     public static final String ERROR_FEATURE_INDEX_WRITING = "error.feature.index.writing";
     public static final String INFO_FEATURE_INDEX_WRITING_FOR_PROJECT = "info.feature.index.writing.for.project";
@@ -283,6 +282,7 @@ public final class MessagesConstants {
 
     //Heatmap
     public static final String ERROR_HEATMAP_NOT_FOUND = "error.heatmap.not.found";
+    public static final String ERROR_HEATMAP_TILES_NOT_FOUND = "error.heatmap.tiles.not.found";
     public static final String PATH_IS_REQUIRED = "error.path.is.required";
     public static final String ERROR_INCORRECT_FILE_FORMAT = "error.incorrect.file.format";
     public static final String ERROR_UNSUPPORTED_HEATMAP_FILE_EXTENSION = "error.unsupported.heatmap.file.extension";
@@ -32,6 +32,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -64,6 +65,7 @@ import javax.servlet.http.HttpServletResponse;
 @RequestMapping("/restapi")
 public abstract class AbstractRESTController {
     private static final int BUF_SIZE = 2 * 1024;
+    private static final String GZIP_ENCODING = "gzip";
 
     /**
      * Declares HTTP status OK code value, used to specify this code when REST API
@@ -155,4 +157,33 @@ public abstract class AbstractRESTController {
             response.flushBuffer();
         }
     }
+
+    /**
+     * Streams content, produced by a writer, to {@code HttpServletResponse}, optionally compressing it with gzip.
+     * Compressed content is sent with gzip content encoding, so that clients decompress it transparently.
+     * @param response to write data
+     * @param compressed if content should be compressed
+     * @param writer produces content
+     */
+    protected void writeToResponse(final HttpServletResponse response, final boolean compressed,
+                                   final ResponseWriter writer) throws IOException {
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        if (compressed) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP_ENCODING);
+            final GZIPOutputStream outputStream = new GZIPOutputStream(response.getOutputStream(), BUF_SIZE);
+            writer.write(outputStream);
+            outputStream.finish();
+        } else {
+            writer.write(response.getOutputStream());
+        }
+        response.flushBuffer();
+    }
+
+    /**
+     * Writes content to a response stream
+     */
+    @FunctionalInterface
+    protected interface ResponseWriter {
+        void write(OutputStream outputStream) throws IOException;
+    }
 }
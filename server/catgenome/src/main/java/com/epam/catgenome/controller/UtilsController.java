@@ -33,6 +33,8 @@ import javax.servlet.http.HttpServletResponse;
 
 import com.epam.catgenome.constant.MessagesConstants;
 import com.epam.catgenome.controller.vo.UrlRequestVO;
+import com.epam.catgenome.dao.index.FeatureIndexReaderRegistry;
+import com.epam.catgenome.entity.index.FeatureIndexRegistryStatistics;
 import com.epam.catgenome.entity.security.SessionExpirationBehavior;
 import com.epam.catgenome.manager.UrlShorterManager;
 import com.epam.catgenome.util.IndexUtils;
@@ -79,6 +81,9 @@ public class UtilsController extends AbstractRESTController {
     @Autowired
     private BiologicalDataItemManager biologicalDataItemManager;
 
+    @Autowired
+    private FeatureIndexReaderRegistry featureIndexReaderRegistry;
+
     @Value("#{catgenome['version']}")
     private String version;
 
@@ -235,4 +240,15 @@ public class UtilsController extends AbstractRESTController {
     public Result<String> getPathToExistingIndex(@RequestParam String filePath) throws IOException {
         return Result.success(IndexUtils.checkExistingIndex(filePath));
     }
+
+    @ResponseBody
+    @RequestMapping(value = "/index/statistics", method = RequestMethod.GET)
+    @ApiOperation(
+            value = "Returns statistics of feature index readers cache",
+            notes = "Returns number of open feature index readers, cache hits and misses and total refresh time",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiResponses(value = {@ApiResponse(code = HTTP_STATUS_OK, message = API_STATUS_DESCRIPTION)})
+    public Result<FeatureIndexRegistryStatistics> getFeatureIndexStatistics() {
+        return Result.success(featureIndexReaderRegistry.getStatistics());
+    }
 }
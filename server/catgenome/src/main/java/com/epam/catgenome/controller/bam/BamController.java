@@ -30,8 +30,12 @@ import static com.epam.catgenome.controller.vo.Query2TrackConverter.convertToTra
 import java.io.IOException;
 
 import com.epam.catgenome.entity.bam.BamFile;
+import com.epam.catgenome.entity.bam.BamQueryOption;
+import com.epam.catgenome.entity.bam.BamTrackEncoding;
 import com.epam.catgenome.entity.bam.Read;
 import com.epam.catgenome.manager.bam.BamSecurityService;
+import com.epam.catgenome.manager.bam.BinaryBamTrackEmitter;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -39,6 +43,7 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -136,7 +141,11 @@ public class BamController extends AbstractRESTController {
                     "6) <b>mode</b> controls BAM display mode: REGIONS - return only regions of possible read " +
                     "location; <br/>" +
                     "COVERAGE - return only BAM coverage;<br/>" +
-                    "FULL - return both reads and coverage",
+                    "FULL - return both reads and coverage<br/>" +
+                    "7) <b>regionsDensity</b> - in REGIONS mode return approximate read density of each region, " +
+                    "estimated from BAM index, as its value, default is false;<br/><br/>" +
+                    "If 'Accept' header contains 'application/x-ngb-bam-track', track is returned in a compact " +
+                    "binary columnar format instead of JSON",
             produces = MediaType.APPLICATION_JSON_VALUE)
     @ApiResponses(
             value = {@ApiResponse(code = HTTP_STATUS_OK, message = API_STATUS_DESCRIPTION)
@@ -144,18 +153,22 @@ public class BamController extends AbstractRESTController {
     public final ResponseEntity<ResponseBodyEmitter> loadTrackStream(
             @RequestBody final TrackQuery query,
             @RequestParam(required = false) final String fileUrl,
-            @RequestParam(required = false) final String indexUrl)
+            @RequestParam(required = false) final String indexUrl,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) final String accept)
             throws IOException {
 
         final ResponseBodyEmitter emitter = new ResponseBodyEmitter(EMITTER_TIMEOUT);
+        final BamQueryOption option = query.getOption() == null ? new BamQueryOption() : query.getOption();
+        final boolean binary = isBinaryTrackAccepted(accept);
+        option.setEncoding(binary ? BamTrackEncoding.BINARY : BamTrackEncoding.JSON);
         if (fileUrl == null) {
-            bamSecurityService.sendBamTrackToEmitter(convertToTrack(query), query.getOption(), emitter);
+            bamSecurityService.sendBamTrackToEmitter(convertToTrack(query), option, emitter);
         } else {
-            bamSecurityService.sendBamTrackToEmitterFromUrl(convertToTrack(query), query.getOption(), fileUrl,
+            bamSecurityService.sendBamTrackToEmitterFromUrl(convertToTrack(query), option, fileUrl,
                     indexUrl, emitter);
         }
         HttpHeaders responseHeaders = new HttpHeaders();
-        responseHeaders.setContentType(MediaType.APPLICATION_JSON_UTF8);
+        responseHeaders.setContentType(binary ? BinaryBamTrackEmitter.MEDIA_TYPE : MediaType.APPLICATION_JSON_UTF8);
         return new ResponseEntity<>(emitter, responseHeaders, HttpStatus.OK);
     }
 
@@ -204,4 +217,9 @@ public class BamController extends AbstractRESTController {
                                  @RequestParam(required = false) final String indexUrl) throws IOException {
         return Result.success(bamSecurityService.loadRead(query, fileUrl, indexUrl));
     }
+
+    private boolean isBinaryTrackAccepted(final String accept) {
+        return StringUtils.isNotBlank(accept) && MediaType.parseMediaTypes(accept).stream()
+                .anyMatch(BinaryBamTrackEmitter.MEDIA_TYPE::includes);
+    }
 }
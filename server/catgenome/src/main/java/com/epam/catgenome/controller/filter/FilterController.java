@@ -125,6 +125,8 @@ public class FilterController extends AbstractRESTController {
                 "<b>page</b>: Defines a page number to display<br/>" +
                 "<b>pageSize</b>: Defines a number of items per page. Attention: paged result is provided only if "
                 + "both <b>page</b> and <b>pageSize</b> are specified. Otherwise, a full result is returned<br/>"
+                + "<b>cursor</b>: a <b>cursor</b> value of a previous page response. If it is specified, the "
+                + "next <b>pageSize</b> items after it are returned instead of a <b>page</b><br/>"
                 + "<b>orderBy</b>: an array of objects of the following type:<br/>"
                 + "&nbsp;&nbsp;<b>orderBy.field</b>: name of the field to sort results. Can have the following "
                 + "values: CHROMOSOME_NAME, START_INDEX, END_INDEX, FILTER, VARIATION_TYPE, QUALITY, GENE_ID, "
@@ -219,10 +221,10 @@ public class FilterController extends AbstractRESTController {
     public void exportVcf(@RequestBody final VcfExportFilterForm filterForm,
                           @RequestParam final FileFormat format,
                           @RequestParam final boolean includeHeader,
+                          @RequestParam(required = false, defaultValue = "false") final boolean compressed,
                           HttpServletResponse response) throws IOException {
-        byte[] bytes = featureIndexSecurityService.exportVariations(filterForm, format, includeHeader);
-        response.getOutputStream().write(bytes);
-        response.flushBuffer();
+        writeToResponse(response, compressed, outputStream ->
+                featureIndexSecurityService.exportVariations(filterForm, format, includeHeader, outputStream));
     }
 
     @RequestMapping(value = "/filter/group", method = RequestMethod.POST)
@@ -254,7 +256,9 @@ public class FilterController extends AbstractRESTController {
                 "<b>infoFields</b>: an array of additional info fields to fetch from index<br/><br/>" +
                 "<b>orderBy</b> request parameter controls a field by which variations are grouped. It supports the "+
                 "following values: CHROMOSOME_NAME, START_INDEX, END_INDEX, FILTER, VARIATION_TYPE, QUALITY, GENE_ID, "+
-                "GENE_NAME or any field from infoFields array" +
+                "GENE_NAME or any field from infoFields array<br/>" +
+                "<b>bucketSize</b> optional request parameter groups values of a numeric field (QUALITY or a numeric " +
+                "info field) into ranges of the specified size, e.g. [10, 20)" +
                 "<br/><br/>" +
 
                 "Response contains the following fields:<br/>" +
@@ -280,7 +284,8 @@ public class FilterController extends AbstractRESTController {
         })
     public Callable<Result<List<Group>>> groupVariations(
                                                 @RequestBody final VcfFilterForm filterForm,
-                                                @RequestParam String groupBy) {
-        return () -> Result.success(featureIndexSecurityService.groupVariations(filterForm, groupBy));
+                                                @RequestParam String groupBy,
+                                                @RequestParam(required = false) Double bucketSize) {
+        return () -> Result.success(featureIndexSecurityService.groupVariations(filterForm, groupBy, bucketSize));
     }
 }
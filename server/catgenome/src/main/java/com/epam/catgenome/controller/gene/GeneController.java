@@ -248,7 +248,8 @@ public class GeneController extends AbstractRESTController {
                     "4) <b>endIndex</b> is the last base position for a requested window. " +
                     "It is treated inclusively;<br/>" +
                     "5) <b>scaleFactor</b> specifies an inverse value to number of bases per one visible element" +
-                    " on a track (e.g., pixel) - IS IGNORED FOR NOW",
+                    " on a track (e.g., pixel). Histogram blocks are taken from the most detailed zoom level, " +
+                    "that has no more blocks in the window than visible elements.",
             produces = MediaType.APPLICATION_JSON_VALUE)
     @ApiResponses(
             value = {@ApiResponse(code = HTTP_STATUS_OK, message = API_STATUS_DESCRIPTION)
@@ -29,6 +29,7 @@ import com.epam.catgenome.controller.Result;
 import com.epam.catgenome.controller.vo.registration.HeatmapRegistrationRequest;
 import com.epam.catgenome.entity.heatmap.Heatmap;
 import com.epam.catgenome.entity.heatmap.HeatmapAnnotationType;
+import com.epam.catgenome.entity.heatmap.HeatmapContentWindow;
 import com.epam.catgenome.entity.heatmap.HeatmapTree;
 import com.epam.catgenome.manager.heatmap.HeatmapSecurityService;
 import com.wordnik.swagger.annotations.Api;
@@ -95,6 +96,31 @@ public class HeatmapController extends AbstractRESTController {
         return Result.success(heatmapSecurityService.getContent(heatmapId, projectId));
     }
 
+    @GetMapping(value = "/heatmap/{heatmapId}/content/window")
+    @ApiOperation(
+            value = "Returns a window of heatmap content",
+            notes = "Returns cells of heatmap content from startRow to endRow and from startColumn to endColumn, "
+                    + "bounds are 0-based and inclusive, missing bounds are set to heatmap edges. If a window has "
+                    + "more than maxRows rows or maxColumns columns, cells are aggregated at a coarser zoom level: "
+                    + "a returned cell covers step x step original cells and holds their mean value for numeric "
+                    + "heatmaps or the most frequent value for string ones.",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiResponses(
+            value = {@ApiResponse(code = HTTP_STATUS_OK, message = API_STATUS_DESCRIPTION)
+            })
+    public Result<HeatmapContentWindow> getContentWindow(@PathVariable final long heatmapId,
+                                                         @RequestParam(required = false) final Long projectId,
+                                                         @RequestParam(required = false) final Integer startRow,
+                                                         @RequestParam(required = false) final Integer endRow,
+                                                         @RequestParam(required = false) final Integer startColumn,
+                                                         @RequestParam(required = false) final Integer endColumn,
+                                                         @RequestParam(required = false) final Integer maxRows,
+                                                         @RequestParam(required = false) final Integer maxColumns)
+            throws IOException {
+        return Result.success(heatmapSecurityService.getContentWindow(heatmapId, projectId,
+                startRow, endRow, startColumn, endColumn, maxRows, maxColumns));
+    }
+
     @PutMapping(value = "/heatmap/{heatmapId}/label/annotation")
     @ApiOperation(
             value = "Updates heatmap annotation for labels",
@@ -189,8 +215,23 @@ public class HeatmapController extends AbstractRESTController {
     @ApiResponses(
             value = {@ApiResponse(code = HTTP_STATUS_OK, message = API_STATUS_DESCRIPTION)
             })
-    public Result<Boolean> deleteHeatmap(@PathVariable final long heatmapId) throws IOException {
+    public Result<Boolean> deleteHeatmap(@PathVariable final long heatmapId) {
         heatmapSecurityService.deleteHeatmap(heatmapId);
         return Result.success(null);
     }
+
+    @PutMapping(value = "/heatmap/{heatmapId}/tiles")
+    @ApiOperation(
+            value = "Builds tiled content of a heatmap",
+            notes = "Builds tiled content of a heatmap from its stored content. Heatmaps, registered before "
+                    + "tiled content was introduced, should be migrated with this method before their content "
+                    + "windows are requested.",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiResponses(
+            value = {@ApiResponse(code = HTTP_STATUS_OK, message = API_STATUS_DESCRIPTION)
+            })
+    public Result<Boolean> buildTiles(@PathVariable final long heatmapId) throws IOException {
+        heatmapSecurityService.buildTiles(heatmapId);
+        return Result.success(null);
+    }
 }
@@ -344,6 +344,8 @@ public class ProjectController extends AbstractRESTController {
                 "<b>page</b>: Defines a page number to display<br/>" +
                 "<b>pageSize</b>: Defines a number of items per page. Attention: paged result is provided only if "
                 + "both <b>page</b> and <b>pageSize</b> are specified. Otherwise, a full result is returned<br/>"
+                + "<b>cursor</b>: a <b>cursor</b> value of a previous page response. If it is specified, the "
+                + "next <b>pageSize</b> items after it are returned instead of a <b>page</b><br/>"
                 + "<b>orderBy</b>: an array of objects of the following type:<br/>"
                 + "&nbsp;&nbsp;<b>orderBy.field</b>: name of the field to sort results. Can have the following "
                 + "values: CHROMOSOME_NAME, START_INDEX, END_INDEX, FILTER, VARIATION_TYPE, QUALITY, GENE_ID, "
@@ -409,7 +411,9 @@ public class ProjectController extends AbstractRESTController {
                 "<b>infoFields</b>: an array of additional info fields to fetch from index<br/><br/>" +
                 "<b>orderBy</b> request parameter controls a field by which variations are grouped. It supports the "+
                 "following values: CHROMOSOME_NAME, START_INDEX, END_INDEX, FILTER, VARIATION_TYPE, QUALITY, GENE_ID, "+
-                "GENE_NAME or any field from infoFields array" +
+                "GENE_NAME or any field from infoFields array<br/>" +
+                "<b>bucketSize</b> optional request parameter groups values of a numeric field (QUALITY or a numeric " +
+                "info field) into ranges of the specified size, e.g. [10, 20)" +
                 "<br/><br/>" +
 
                 "Response contains the following fields:<br/>" +
@@ -435,8 +439,11 @@ public class ProjectController extends AbstractRESTController {
         })
     public Result<List<Group>> groupVariations(@RequestBody final VcfFilterForm filterForm,
                                                @PathVariable(value = PROJECT_ID_PARAM) long projectId,
-                                               @RequestParam String groupBy) throws IOException {
-        return Result.success(featureIndexSecurityService.groupVariations(filterForm, projectId, groupBy));
+                                               @RequestParam String groupBy,
+                                               @RequestParam(required = false) Double bucketSize)
+            throws IOException {
+        return Result.success(featureIndexSecurityService.groupVariations(filterForm, projectId, groupBy,
+                bucketSize));
     }
 
 
@@ -236,13 +236,14 @@ public class ReferenceController extends AbstractRESTController {
     public void exportFeatureInProjectWithFilter(@PathVariable final Long referenceId,
                                                 @RequestParam final FileFormat format,
                                                 @RequestParam final boolean includeHeader,
+                                                @RequestParam(required = false, defaultValue = "false")
+                                                final boolean compressed,
                                                 @RequestBody final GeneExportFilterForm geneFilterForm,
                                                 final HttpServletResponse response)
             throws IOException {
-        byte[] bytes = featureIndexSecurityService.exportFeaturesByReference(geneFilterForm, referenceId,
-                format, includeHeader);
-        response.getOutputStream().write(bytes);
-        response.flushBuffer();
+        writeToResponse(response, compressed, outputStream ->
+                featureIndexSecurityService.exportFeaturesByReference(geneFilterForm, referenceId,
+                        format, includeHeader, outputStream));
     }
 
     @RequestMapping(value = "/reference/{referenceId}/filter/gene/info", method = RequestMethod.POST)
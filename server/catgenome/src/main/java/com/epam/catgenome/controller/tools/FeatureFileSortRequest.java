@@ -29,6 +29,7 @@ public class FeatureFileSortRequest {
     private String originalFilePath;
     private String sortedFilePath;
     private int maxMemory;
+    private boolean createIndex;
 
     public String getOriginalFilePath() {
         return originalFilePath;
@@ -53,4 +54,12 @@ public class FeatureFileSortRequest {
     public void setMaxMemory(int maxMemory) {
         this.maxMemory = maxMemory;
     }
+
+    public boolean isCreateIndex() {
+        return createIndex;
+    }
+
+    public void setCreateIndex(boolean createIndex) {
+        this.createIndex = createIndex;
+    }
 }
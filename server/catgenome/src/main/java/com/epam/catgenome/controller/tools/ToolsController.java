@@ -54,7 +54,9 @@ public class ToolsController extends AbstractRESTController {
                     "1) originalFilePath - a path to file to be sorted</br>" +
                     "2) sortedFilePath - <i>optional</i> a path where sorted file will be placed </br>" +
                     "3) maxMemory <i>optional</i> - amount of memory in megabytes to use when sorting " +
-                    "(default: 500)</br>",
+                    "(default: 500)</br>" +
+                    "4) createIndex <i>optional</i> - create a tabix index for a block compressed (.gz) " +
+                    "sorted file (default: false)</br>",
             produces = MediaType.APPLICATION_JSON_VALUE)
     @ApiResponses(
             value = {@ApiResponse(code = HTTP_STATUS_OK, message = API_STATUS_DESCRIPTION)
@@ -61,7 +61,6 @@ import com.epam.catgenome.manager.vcf.VcfManager;
 import htsjdk.variant.vcf.VCFHeaderLineType;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.collections4.MapUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
@@ -71,16 +70,14 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.facet.FacetResult;
 import org.apache.lucene.facet.Facets;
 import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.FacetsCollectorManager;
 import org.apache.lucene.facet.FacetsConfig;
 import org.apache.lucene.facet.LabelAndValue;
+import org.apache.lucene.facet.sortedset.ConcurrentSortedSetDocValuesFacetCounts;
 import org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState;
-import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
-import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
-import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.Fields;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.MultiFields;
@@ -103,7 +100,6 @@ import org.apache.lucene.search.SortedSetSortField;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.SimpleFSDirectory;
 import org.apache.lucene.util.BytesRef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -114,6 +110,7 @@ import org.springframework.stereotype.Repository;
 import org.springframework.util.Assert;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -126,6 +123,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -159,6 +157,21 @@ public class FeatureIndexDao {
     @Autowired
     private GeneActivityService geneActivityService;
 
+    @Autowired
+    private FeatureIndexReaderRegistry indexReaderRegistry;
+
+    @Autowired
+    private FeatureIndexWriterRegistry indexWriterRegistry;
+
+    @Autowired
+    private HitCountCache hitCountCache;
+
+    @Autowired
+    private FeatureIndexQueryCache queryCache;
+
+    @Autowired
+    private FeatureIndexGroupingEngine groupingEngine;
+
     @Value("#{catgenome['lucene.index.max.size.grouping'] ?: 2L * 1024 * 1024 * 1024}")
     private long luceneIndexMaxSizeForGrouping;
 
@@ -169,6 +182,7 @@ public class FeatureIndexDao {
 
     private static final int FACET_LIMIT = 1000;
     private static final int GENE_LIMIT = 100;
+    private static final int ESTIMATED_ENTRY_BYTES = 64;
 
     public enum FeatureIndexFields {
         UID("uid"),
@@ -240,22 +254,14 @@ public class FeatureIndexDao {
     public void writeLuceneIndexForFile(final FeatureFile featureFile,
                                         final List<? extends FeatureIndexEntry> entries,
                                         final VcfFilterInfo vcfFilterInfo) throws IOException {
-        try (
-            StandardAnalyzer analyzer = new StandardAnalyzer();
-            Directory index = fileManager.createIndexForFile(featureFile);
-            IndexWriter writer = new IndexWriter(index, new IndexWriterConfig(analyzer).setOpenMode(
-                IndexWriterConfig.OpenMode.CREATE_OR_APPEND))
-        ) {
-            final AbstractDocumentBuilder creator = AbstractDocumentBuilder.createDocumentCreator(
-                    entries.isEmpty() ? new FeatureIndexEntry() : entries.get(0));
-
-            final FacetsConfig facetsConfig = creator.createFacetsConfig(vcfFilterInfo);
-
-            for (FeatureIndexEntry entry : entries) {
-                Document document = creator.buildDocument(entry, featureFile.getId());
-                writer.addDocument(facetsConfig.build(document));
-            }
-        }
+        final Path indexPath = fileManager.getIndexPathForFile(featureFile);
+        indexWriterRegistry.write(indexPath, writer -> {
+            writeLuceneIndexForFile(featureFile, entries, vcfFilterInfo, writer);
+            return entries.size();
+        });
+        // entries are written while a file is being registered, so they are committed right away
+        indexWriterRegistry.commit(indexPath);
+        indexReaderRegistry.refresh(indexPath);
     }
 
     public void writeLuceneIndexForFile(final FeatureFile featureFile,
@@ -327,20 +333,10 @@ public class FeatureIndexDao {
         if (indexedFiles.isEmpty()) {
             return IndexSearchResult.empty();
         }
-        final SimpleFSDirectory[] indexes = fileManager.getIndexesForFiles(files);
-
-        try (MultiReader reader = openMultiReader(indexes)) {
-            if (reader.numDocs() == 0) {
-                return IndexSearchResult.empty();
-            }
+        final Query query = IndexQueryUtils.intervalQuery(chromosome.getId().toString(), start, end, Arrays.asList(
+                FeatureType.GENE.getFileValue(), FeatureType.EXON.getFileValue()));
 
-            final Query query = IndexQueryUtils.intervalQuery(chromosome.getId().toString(), start, end, Arrays.asList(
-                    FeatureType.GENE.getFileValue(), FeatureType.EXON.getFileValue()));
-
-            return searchFileIndexes(files, query, null, reader.numDocs(), null);
-        } finally {
-            closeIndices(indexes);
-        }
+        return searchFileIndexes(indexedFiles, query, null, null, null);
     }
 
     /**
@@ -395,15 +391,16 @@ public class FeatureIndexDao {
         final Map<Integer, FeatureIndexEntry> entryMap = new LinkedHashMap<>();
 
         int totalHits = 0;
-        try (
-            Directory index = fileManager.getIndexForProject(projectId);
-            IndexReader reader = DirectoryReader.open(index)
-        ) {
+        Assert.isTrue(fileManager.indexForProjectExists(projectId),
+                getMessage(MessagesConstants.ERROR_PROJECT_FEATURE_INDEX_NOT_FOUND, projectId));
+        try (FeatureIndexReaderRegistry.Lease lease = indexReaderRegistry.acquire(
+                Collections.singletonList(fileManager.getIndexPathForProject(projectId)))) {
+            final IndexReader reader = lease.getReader();
             if (reader.numDocs() == 0) {
                 return IndexSearchResult.empty();
             }
 
-            final IndexSearcher searcher = new IndexSearcher(reader);
+            final IndexSearcher searcher = queryCache.newSearcher(reader, taskExecutorService.getSearchExecutor());
             final TopDocs docs;
             final int resultsCount = maxResultsCount == null ? reader.numDocs() : maxResultsCount;
             if (sort == null) {
@@ -453,25 +450,18 @@ public class FeatureIndexDao {
         final Set<String> availableFields = new HashSet<>();
         final Set<String> mainFields = Arrays.stream(FeatureIndexFields.values())
                 .map(FeatureIndexFields::getFieldName).collect(Collectors.toSet());
-        final SimpleFSDirectory[] indices = fileManager.getIndexesForFiles(files);
-        try {
-            for (SimpleFSDirectory file : indices) {
-                try(DirectoryReader reader = DirectoryReader.open(file)) {
-                    for (LeafReaderContext subReader : reader.leaves()) {
-                        Fields fields = subReader.reader().fields();
-                        for (String field : fields) {
-                            if (!mainFields.contains(field)) {
-                                availableFields.add(field);
-                            }
-                        }
+        try (FeatureIndexReaderRegistry.Lease lease = acquireIndexes(files)) {
+            for (LeafReaderContext subReader : lease.getReader().leaves()) {
+                Fields fields = subReader.reader().fields();
+                for (String field : fields) {
+                    if (!mainFields.contains(field)) {
+                        availableFields.add(field);
                     }
                 }
             }
         } catch (IOException e) {
             throw new IllegalArgumentException("Failed to perform index search for files " +
                     files.stream().map(BaseEntity::getName).collect(Collectors.joining(", ")), e);
-        } finally {
-            closeIndices(indices);
         }
         return GeneFilterInfo.builder().availableFilters(availableFields).build();
     }
@@ -480,27 +470,20 @@ public class FeatureIndexDao {
             throws IOException {
         final Set<String> termValues = new HashSet<>();
         int i = 0;
-        final SimpleFSDirectory[] indices = fileManager.getIndexesForFiles(files);
-        try {
-            for (SimpleFSDirectory file : indices) {
-                try(DirectoryReader reader = DirectoryReader.open(file)) {
-                    for (LeafReaderContext subReader : reader.leaves()) {
-                        Terms terms = subReader.reader().terms(fieldName);
-                        TermsEnum termsEnum = terms.iterator();
-                        BytesRef byteRef = termsEnum.next();
-                        while (byteRef != null && i < luceneRequestMaxValues) {
-                            termValues.add(byteRef.utf8ToString().toLowerCase(Locale.ROOT));
-                            byteRef = termsEnum.next();
-                            i++;
-                        }
-                    }
+        try (FeatureIndexReaderRegistry.Lease lease = acquireIndexes(files)) {
+            for (LeafReaderContext subReader : lease.getReader().leaves()) {
+                Terms terms = subReader.reader().terms(fieldName);
+                TermsEnum termsEnum = terms.iterator();
+                BytesRef byteRef = termsEnum.next();
+                while (byteRef != null && i < luceneRequestMaxValues) {
+                    termValues.add(byteRef.utf8ToString().toLowerCase(Locale.ROOT));
+                    byteRef = termsEnum.next();
+                    i++;
                 }
             }
         } catch (IOException e) {
             throw new IllegalArgumentException("Failed to perform index search for files " +
                     files.stream().map(BaseEntity::getName).collect(Collectors.joining(", ")), e);
-        } finally {
-            closeIndices(indices);
         }
         return termValues;
     }
@@ -525,14 +508,13 @@ public class FeatureIndexDao {
 
         final Map<Integer, FeatureIndexEntry> entryMap = new LinkedHashMap<>();
 
-        final SimpleFSDirectory[] indexes = fileManager.getIndexesForFiles(files);
-
-        try (MultiReader reader = openMultiReader(indexes)) {
+        try (FeatureIndexReaderRegistry.Lease lease = acquireIndexes(files)) {
+            final MultiReader reader = lease.getReader();
             if (reader.numDocs() == 0) {
                 return IndexSearchResult.empty();
             }
 
-            final IndexSearcher searcher = new IndexSearcher(reader, taskExecutorService.getSearchExecutor());
+            final IndexSearcher searcher = queryCache.newSearcher(reader, taskExecutorService.getSearchExecutor());
             final TopDocs docs = performSearch(searcher, query, reader, maxResultsCount, sort);
 
             final int totalHits = docs.totalHits;
@@ -547,8 +529,6 @@ public class FeatureIndexDao {
             return new IndexSearchResult<>(new ArrayList<T>((Collection<? extends T>) entryMap.values()),
                                            maxResultsCount != null &&
                                            totalHits > maxResultsCount, totalHits);
-        } finally {
-            closeIndices(indexes);
         }
     }
 
@@ -562,8 +542,8 @@ public class FeatureIndexDao {
      */
     public GeneIndexEntry searchGeneFeatureByUid(final GeneFile featureFile, final String uid) throws IOException {
         final Term uidTerm = new Term(FeatureIndexFields.UID.getFieldName(), uid);
-        final SimpleFSDirectory[] indexes = fileManager.getIndexesForFiles(Collections.singletonList(featureFile));
-        try (MultiReader reader = openMultiReader(indexes)) {
+        try (FeatureIndexReaderRegistry.Lease lease = acquireIndexes(Collections.singletonList(featureFile))) {
+            final MultiReader reader = lease.getReader();
             if (reader.numDocs() == 0) {
                 return null;
             }
@@ -574,8 +554,6 @@ public class FeatureIndexDao {
             final Document document = searcher.doc(docId);
 
             return buildGeneIndexEntry(documentCreator, document);
-        } finally {
-            closeIndices(indexes);
         }
     }
 
@@ -593,12 +571,11 @@ public class FeatureIndexDao {
             throws IOException {
         final Term uidTerm = new Term(FeatureIndexFields.UID.getFieldName(), uid);
         final GeneHighLevel newGeneContent = prepareGeneContentForDocument(geneContent);
-        final SimpleFSDirectory index = fileManager.createIndexForFile(featureFile);
+        final Path indexPath = fileManager.getIndexPathForFile(featureFile);
         final GeneIndexEntry oldEntry;
-        try (StandardAnalyzer analyzer = new StandardAnalyzer();
-             MultiReader reader = openMultiReader(new SimpleFSDirectory[] {index});
-             IndexWriter writer = new IndexWriter(index, new IndexWriterConfig(analyzer)
-                     .setOpenMode(IndexWriterConfig.OpenMode.APPEND))) {
+        try (FeatureIndexReaderRegistry.Lease lease = indexReaderRegistry.acquire(
+                Collections.singletonList(indexPath))) {
+            final MultiReader reader = lease.getReader();
             if (reader.numDocs() == 0) {
                 throw new IllegalStateException("Failed to find any documents");
             }
@@ -620,10 +597,12 @@ public class FeatureIndexDao {
             final Document newDocument = documentCreator.copyGeneDocument(newGeneContent, oldDocument, uid,
                     featureId, featureName);
 
-            writer.updateDocument(uidTerm, facetsConfig.build(newDocument));
-        } finally {
-            IOUtils.closeQuietly(index);
+            indexWriterRegistry.write(indexPath, writer -> {
+                writer.updateDocument(uidTerm, facetsConfig.build(newDocument));
+                return 1;
+            });
         }
+        indexReaderRegistry.refresh(indexPath);
 
         geneActivityService.saveGeneActivities(newGeneContent, oldEntry);
 
@@ -636,32 +615,24 @@ public class FeatureIndexDao {
             return 0;
         }
 
-        final SimpleFSDirectory[] indexes = fileManager.getIndexesForFiles(files);
-        final long totalIndexSize = getTotalIndexSize(indexes);
-        if (totalIndexSize > luceneIndexMaxSizeForGrouping) {
-            closeIndices(indexes);
-            return 0;
-        }
-
-        try (MultiReader reader = openMultiReader(indexes)) {
-            if (reader.numDocs() == 0) {
+        try (FeatureIndexReaderRegistry.Lease lease = acquireIndexes(files)) {
+            final long totalIndexSize = getTotalIndexSize(lease.getDirectories());
+            if (totalIndexSize > luceneIndexMaxSizeForGrouping) {
                 return 0;
             }
 
-            final FacetsCollector facetsCollector = new FacetsCollector();
-            final IndexSearcher searcher = new IndexSearcher(reader);
-            searcher.search(query, facetsCollector);
-
-            final Facets facets = new SortedSetDocValuesFacetCounts(new DefaultSortedSetDocValuesReaderState(reader,
-                                                           FeatureIndexFields.FACET_UID.fieldName), facetsCollector);
-            final FacetResult res = facets.getTopChildren(reader.numDocs(), FeatureIndexFields.F_UID.getFieldName());
-            if (res == null) {
+            final MultiReader reader = lease.getReader();
+            if (reader.numDocs() == 0) {
                 return 0;
             }
 
-            return res.childCount;
-        } finally {
-            closeIndices(indexes);
+            return queryCache.getOrCalculate(reader, query, FeatureIndexFields.FACET_UID.fieldName,
+                count -> Integer.BYTES, () -> {
+                    final Facets facets = countFacets(reader, query, FeatureIndexFields.FACET_UID.fieldName);
+                    final FacetResult res = facets.getTopChildren(reader.numDocs(),
+                            FeatureIndexFields.F_UID.getFieldName());
+                    return res == null ? 0 : res.childCount;
+                });
         }
     }
 
@@ -779,48 +750,53 @@ public class FeatureIndexDao {
      */
     public List<Group> groupVariations(final List<VcfFile> files, final Query query, final String groupBy)
             throws IOException {
-        final List<Group> res = new ArrayList<>();
+        return groupVariations(files, query, groupBy, null);
+    }
 
+    /**
+     * Groups variations from specified {@link List} of {@link VcfFile}s by specified field. Values of numeric
+     * fields may be grouped into ranges of specified size.
+     * @param files a {@link List} of {@link FeatureFile}, which indexes to search
+     * @param query a query to search in index
+     * @param groupBy a field to perform grouping
+     * @param bucketSize a size of value ranges for numeric fields, if null variations are grouped by
+     *                   distinct values
+     * @return a {@link List} of {@link Group}s, mapping field value or range to number of variations, having it
+     * @throws IOException if something goes wrong with the file system
+     */
+    public List<Group> groupVariations(final List<VcfFile> files, final Query query, final String groupBy,
+                                       final Double bucketSize) throws IOException {
         if (CollectionUtils.isEmpty(files)) {
             return Collections.emptyList();
         }
+        Assert.isTrue(bucketSize == null || bucketSize > 0, "Bucket size should be positive");
 
-        final SimpleFSDirectory[] indexes = fileManager.getIndexesForFiles(files);
-        final long totalIndexSize = getTotalIndexSize(indexes);
-        if (totalIndexSize > luceneIndexMaxSizeForGrouping) {
-            closeIndices(indexes);
-            throw new IllegalArgumentException(getMessage(MessagesConstants.ERROR_FEATURE_INEDX_TOO_LARGE));
-        }
-
-        try (MultiReader reader = openMultiReader(indexes)) {
+        try (FeatureIndexReaderRegistry.Lease lease = acquireIndexes(files)) {
+            final MultiReader reader = lease.getReader();
             if (reader.numDocs() == 0) {
                 return Collections.emptyList();
             }
 
-            final IndexSearcher searcher = new IndexSearcher(reader);
-
-            final String groupByField = getGroupByField(files, groupBy);
-            final SortedSetDocValuesReaderState state = new DefaultSortedSetDocValuesReaderState(reader,
-                    FeatureIndexFields.getFacetName(groupByField));
-            final FacetsCollector collector = new FacetsCollector();
-            FacetsCollector.search(searcher, query, 10, collector);
-
-            final Facets facets = new SortedSetDocValuesFacetCounts(state, collector);
-            final FacetResult result = facets.getTopChildren(reader.numDocs(), groupByField);
-            for (int i = 0; i < result.childCount; i++) {
-                LabelAndValue lv = result.labelValues[i];
-                res.add(new Group(lv.label, lv.value.intValue()));
-            }
-        } finally {
-            closeIndices(indexes);
+            final String groupByField = getGroupByField(files, groupBy, bucketSize != null);
+            final String aggregation = bucketSize == null ? groupByField : groupByField + ':' + bucketSize;
+            return queryCache.getOrCalculate(reader, query, aggregation, FeatureIndexDao::estimateGroupsSize,
+                () -> Collections.unmodifiableList(groupingEngine.group(
+                        queryCache.newSearcher(reader, taskExecutorService.getSearchExecutor()),
+                        query, groupByField, bucketSize)));
         }
+    }
 
-        return res;
+    private static long estimateGroupsSize(final List<Group> groups) {
+        long size = 0;
+        for (Group group : groups) {
+            size += ESTIMATED_ENTRY_BYTES + (group.getGroupName() == null ? 0 : 2L * group.getGroupName().length());
+        }
+        return size;
     }
 
-    public long getTotalIndexSize(final SimpleFSDirectory[] indexes) throws IOException {
+    public long getTotalIndexSize(final Directory[] indexes) throws IOException {
         long totalIndexSize = 0;
-        for (SimpleFSDirectory index : indexes) {
+        for (Directory index : indexes) {
             totalIndexSize += getTotalIndexSize(index);
         }
         return totalIndexSize;
@@ -838,7 +814,8 @@ public class FeatureIndexDao {
         return totalFileSize;
     }
 
-    private String getGroupByField(final List<VcfFile> files, final String groupBy) throws IOException {
+    private String getGroupByField(final List<VcfFile> files, final String groupBy, final boolean numeric)
+            throws IOException {
         final VcfIndexSortField sortField = VcfIndexSortField.getByName(groupBy);
         if (sortField == null) {
             final VcfFilterInfo info = vcfManager.getFiltersInfo(
@@ -846,37 +823,49 @@ public class FeatureIndexDao {
 
             final InfoItem infoItem = info.getInfoItemMap().get(groupBy);
             Assert.notNull(infoItem, "Unknown sort field: " + groupBy);
-
-            if (infoItem.getType() == VCFHeaderLineType.Integer
-                    || infoItem.getType() == VCFHeaderLineType.Float) {
-                return infoItem.getName().toLowerCase();
-            } else {
-                return infoItem.getName().toLowerCase();
-            }
+            Assert.isTrue(!numeric || infoItem.getType() == VCFHeaderLineType.Integer
+                    || infoItem.getType() == VCFHeaderLineType.Float, "Field is not numeric: " + groupBy);
+            return infoItem.getName().toLowerCase();
         } else {
-            if (sortField.getType() == SortField.Type.INT
-                    || sortField.getType() == SortField.Type.FLOAT) {
-                return sortField.getField().fieldName;
-            } else {
-                return sortField.getField().fieldName;
-            }
+            // quality is the only numeric field of variations, indexed as a facet
+            Assert.isTrue(!numeric || sortField == VcfIndexSortField.QUALITY, "Field is not numeric: " + groupBy);
+            return sortField.getField().fieldName;
         }
     }
 
-    public MultiReader openMultiReader(final SimpleFSDirectory[] indexes) throws IOException {
-        final IndexReader[] readers = new IndexReader[indexes.length];
-        for (int i = 0; i < indexes.length; i++) {
-            readers[i] = DirectoryReader.open(indexes[i]);
-        }
-        return new MultiReader(readers, true);
+    /**
+     * Acquires shared readers for indexes of specified files from {@link FeatureIndexReaderRegistry}.
+     * Returned lease must be closed after search is finished.
+     *
+     * @param files a {@link List} of {@link FeatureFile}, which indexes to open
+     * @return a {@link FeatureIndexReaderRegistry.Lease} over existing indexes of specified files
+     * @throws IOException if something is wrong in the filesystem
+     */
+    public FeatureIndexReaderRegistry.Lease acquireIndexes(final List<? extends FeatureFile> files)
+            throws IOException {
+        return indexReaderRegistry.acquire(fileManager.getIndexPathsForFiles(files));
     }
 
 
+    /**
+     * Creates a searcher over acquired indexes, which caches sets of documents, matching filter queries, so that
+     * paging and re-sorting of the same filter results don't evaluate the filter again
+     *
+     * @param reader a reader of acquired indexes
+     * @param executor to search index segments in parallel, may be null
+     * @return an {@link IndexSearcher}
+     */
+    public IndexSearcher newSearcher(final IndexReader reader, final ExecutorService executor) {
+        return queryCache.newSearcher(reader, executor);
+    }
+
     public TopDocs performSearch(final IndexSearcher searcher, final Query query, final IndexReader reader,
             final Integer maxResultsCount, final Sort sort) throws IOException {
         final TopDocs docs;
-        final int resultsCount = maxResultsCount == null ? reader.numDocs() : maxResultsCount;
         final Query constantQuery = new ConstantScoreQuery(query);
+        // without a limit, size the hit queue by the actual number of matches rather than by the index size
+        final int resultsCount = maxResultsCount == null
+                ? Math.max(1, hitCountCache.count(searcher, constantQuery)) : maxResultsCount;
         if (sort == null) {
             docs = searcher.search(constantQuery, resultsCount);
         } else {
@@ -929,46 +918,34 @@ public class FeatureIndexDao {
             return Collections.emptyList();
         }
 
-        final List<Long> chromosomeIds = new ArrayList<>();
-
-        final SimpleFSDirectory[] indexes = fileManager.getIndexesForFiles(files);
-
-        try (MultiReader reader = openMultiReader(indexes)) {
+        try (FeatureIndexReaderRegistry.Lease lease = acquireIndexes(files)) {
+            final MultiReader reader = lease.getReader();
             if (reader.numDocs() == 0) {
                 return Collections.emptyList();
             }
 
-            final FacetsCollector facetsCollector = new FacetsCollector();
-            final IndexSearcher searcher = new IndexSearcher(reader);
-            searcher.search(query, facetsCollector);
-
-            final Facets facets = new SortedSetDocValuesFacetCounts(new DefaultSortedSetDocValuesReaderState(reader,
-                                                   FeatureIndexFields.FACET_CHR_ID.getFieldName()), facetsCollector);
-            final FacetResult res = facets.getTopChildren(FACET_LIMIT, FeatureIndexFields.CHR_ID.getFieldName());
-            if (res == null) {
-                return Collections.emptyList();
-            }
+            return queryCache.getOrCalculate(reader, query, FeatureIndexFields.FACET_CHR_ID.getFieldName(),
+                ids -> (long) ids.size() * ESTIMATED_ENTRY_BYTES, () -> {
+                    final Facets facets = countFacets(reader, query, FeatureIndexFields.FACET_CHR_ID.getFieldName());
+                    final FacetResult res = facets.getTopChildren(FACET_LIMIT,
+                            FeatureIndexFields.CHR_ID.getFieldName());
+                    if (res == null) {
+                        return Collections.emptyList();
+                    }
 
-            for (LabelAndValue labelAndValue : res.labelValues) {
-                chromosomeIds.add(Long.parseLong(labelAndValue.label));
-            }
-        } finally {
-            closeIndices(indexes);
+                    final List<Long> chromosomeIds = new ArrayList<>(res.labelValues.length);
+                    for (LabelAndValue labelAndValue : res.labelValues) {
+                        chromosomeIds.add(Long.parseLong(labelAndValue.label));
+                    }
+                    return Collections.unmodifiableList(chromosomeIds);
+                });
         }
-
-        return chromosomeIds;
     }
 
     public long getLuceneIndexMaxSizeForGrouping() {
         return luceneIndexMaxSizeForGrouping;
     }
 
-    private void closeIndices(final SimpleFSDirectory[] indexes) {
-        for (SimpleFSDirectory index : indexes) {
-            IOUtils.closeQuietly(index);
-        }
-    }
-
     public Set<String> searchGenesInVcfFiles(final String gene, final List<VcfFile> vcfFiles) throws IOException {
         if (CollectionUtils.isEmpty(vcfFiles)) {
             return Collections.emptySet();
@@ -989,9 +966,8 @@ public class FeatureIndexDao {
 
         Set<String> geneIds = new HashSet<>();
 
-        final SimpleFSDirectory[] indexes = fileManager.getIndexesForFiles(vcfFiles);
-
-        try (MultiReader reader = openMultiReader(indexes)) {
+        try (FeatureIndexReaderRegistry.Lease lease = acquireIndexes(vcfFiles)) {
+            final MultiReader reader = lease.getReader();
             if (reader.numDocs() == 0) {
                 return Collections.emptySet();
             }
@@ -1000,7 +976,8 @@ public class FeatureIndexDao {
                 fetchTermValues(geneIds, fields, FeatureIndexFields.GENE_ID.getFieldName());
                 fetchTermValues(geneIds, fields, FeatureIndexFields.GENE_NAME.getFieldName());
             } else {
-                final IndexSearcher searcher = new IndexSearcher(reader);
+                final IndexSearcher searcher = queryCache.newSearcher(reader,
+                        taskExecutorService.getSearchExecutor());
                 final TopDocs docs = searcher.search(query, reader.numDocs());
                 final ScoreDoc[] hits = docs.scoreDocs;
                 geneIds = fetchGeneIds(hits, searcher);
@@ -1009,13 +986,29 @@ public class FeatureIndexDao {
         } catch (IOException e) {
             LOGGER.error(getMessage(MessagesConstants.ERROR_FEATURE_INDEX_SEARCH_FAILED), e);
             return Collections.emptySet();
-        } finally {
-            closeIndices(indexes);
         }
 
         return geneIds;
     }
 
+    /**
+     * Counts values of a facet field over documents, matching a query. Matching documents are collected and
+     * counted per index segment in parallel on the search executor.
+     */
+    private Facets countFacets(final IndexReader reader, final Query query, final String facetField)
+            throws IOException {
+        final ExecutorService executor = taskExecutorService.getSearchExecutor();
+        final FacetsCollector facetsCollector = queryCache.newSearcher(reader, executor)
+                .search(query, new FacetsCollectorManager());
+        try {
+            return new ConcurrentSortedSetDocValuesFacetCounts(
+                    new DefaultSortedSetDocValuesReaderState(reader, facetField), facetsCollector, executor);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Facets counting was interrupted", e);
+        }
+    }
+
     private void fetchTermValues(final Set<String> geneIds, final Fields fields, final String fieldName)
             throws IOException {
         final Terms terms = fields.terms(fieldName);
@@ -1041,17 +1034,16 @@ public class FeatureIndexDao {
             return;
         }
 
-        try (
-            StandardAnalyzer analyzer = new StandardAnalyzer();
-            Directory index = fileManager.getIndexForProject(projectId);
-            IndexWriter writer = new IndexWriter(index, new IndexWriterConfig(analyzer).setOpenMode(
-                                                                        IndexWriterConfig.OpenMode.CREATE_OR_APPEND))
-        ) {
-            if (fileManager.indexForProjectExists(projectId)) {
-                for (Pair<FeatureType, Long> id : fileIds) {
-                    deleteDocumentByTypeAndId(id.getKey(), id.getValue(), writer);
-                }
-            }
+        final Query[] deleteQueries = fileIds.stream()
+                .map(id -> createDeleteQuery(id.getKey(), id.getValue()))
+                .toArray(Query[]::new);
+        final Path indexPath = fileManager.getIndexPathForProject(projectId);
+        try {
+            indexWriterRegistry.write(indexPath, writer -> {
+                writer.deleteDocuments(deleteQueries);
+                return deleteQueries.length;
+            });
+            indexReaderRegistry.refresh(indexPath);
         } catch (IOException e) {
             LOGGER.error("Exception while deleting from index:", e);
         }
@@ -1069,8 +1061,8 @@ public class FeatureIndexDao {
     public IndexSearchResult<GeneIndexEntry> searchGeneFeaturesFully(final GeneFile featureFile, final String chrId,
                                                                      final GeneFilterForm filterForm, final Sort sort)
             throws IOException {
-        final SimpleFSDirectory[] indexes = fileManager.getIndexesForFiles(Collections.singletonList(featureFile));
-        try (MultiReader reader = openMultiReader(indexes)) {
+        try (FeatureIndexReaderRegistry.Lease lease = acquireIndexes(Collections.singletonList(featureFile))) {
+            final MultiReader reader = lease.getReader();
             if (reader.numDocs() == 0) {
                 return IndexSearchResult.empty();
             }
@@ -1093,15 +1085,13 @@ public class FeatureIndexDao {
             final ScoreDoc lastEntry = hits.length == 0 ? null : hits[hits.length-1];
             filterForm.setPointer(Pointer.fromScoreDoc(lastEntry));
             return new IndexSearchResult<>(values, false, totalHits, lastEntry);
-        } finally {
-            closeIndices(indexes);
         }
     }
 
     public int countGenesInInterval(final GeneFile featureFile, final String chrId,
                                     final GeneFilterForm filterForm) throws IOException {
-        final SimpleFSDirectory[] indexes = fileManager.getIndexesForFiles(Collections.singletonList(featureFile));
-        try (MultiReader reader = openMultiReader(indexes)) {
+        try (FeatureIndexReaderRegistry.Lease lease = acquireIndexes(Collections.singletonList(featureFile))) {
+            final MultiReader reader = lease.getReader();
             if (reader.numDocs() == 0) {
                 return 0;
             }
@@ -1110,13 +1100,10 @@ public class FeatureIndexDao {
             final Query query = IndexQueryUtils.intervalQuery(chrId, filterForm.getStartIndex(),
                     filterForm.getEndIndex(), filterForm.getFeatureTypes());
             return searcher.count(query);
-        } finally {
-            closeIndices(indexes);
         }
     }
 
-    private void deleteDocumentByTypeAndId(final FeatureType type, final Long id, final IndexWriter writer)
-            throws IOException {
+    private Query createDeleteQuery(final FeatureType type, final Long id) {
         final BooleanQuery.Builder deleteQueryBuilder = new BooleanQuery.Builder();
         final TermQuery idQuery = new TermQuery(new Term(FeatureIndexFields.FILE_ID.getFieldName(),
                                                    id.toString()));
@@ -1133,7 +1120,7 @@ public class FeatureIndexDao {
                                                 FeatureType.VARIATION.getFileValue())), BooleanClause.Occur.MUST_NOT);
         }
 
-        writer.deleteDocuments(deleteQueryBuilder.build());
+        return deleteQueryBuilder.build();
     }
 
     private void createIndexEntries(final ScoreDoc[] hits, final Map<Integer, FeatureIndexEntry> entryMap,
@@ -0,0 +1,391 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.epam.catgenome.dao.index;
+
+import com.epam.catgenome.entity.index.Group;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.util.BytesRef;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Groups documents of feature indexes, matching a query, by values of a facet field. Unlike
+ * {@link org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts} it doesn't build a global ordinal map
+ * over all searched indexes on each request: documents are counted by per-segment ordinals, which are mapped to
+ * labels only once per segment, and the resulting per-segment label states are cached until the segment core is
+ * closed. Segments are counted in parallel, if a searcher was created with an executor.
+ * <p>
+ * Values of numeric fields, e.g. quality or numeric INFO fields, may be grouped into ranges of a fixed size.
+ * </p>
+ */
+@Component
+public class FeatureIndexGroupingEngine {
+
+    private final Map<StateKey, SegmentState> states = new ConcurrentHashMap<>();
+    private final Set<Object> trackedCores = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Counts documents, matching a query, by values of a field
+     *
+     * @param searcher to search documents
+     * @param query to filter documents
+     * @param field a name of the field, indexed as a facet dimension
+     * @return a {@link List} of {@link Group}s, ordered by descending number of documents
+     * @throws IOException if search fails
+     */
+    public List<Group> group(final IndexSearcher searcher, final Query query, final String field)
+            throws IOException {
+        return group(searcher, query, field, null);
+    }
+
+    /**
+     * Counts documents, matching a query, by values of a field. If a bucket size is specified, numeric values of
+     * the field are grouped into ranges {@code [k * bucketSize, (k + 1) * bucketSize)}, non-numeric values are
+     * skipped.
+     *
+     * @param searcher to search documents
+     * @param query to filter documents
+     * @param field a name of the field, indexed as a facet dimension
+     * @param bucketSize a size of numeric ranges, may be null to group by distinct values
+     * @return a {@link List} of {@link Group}s, ordered by descending number of documents, or by range bounds, if
+     * ranges are requested
+     * @throws IOException if search fails
+     */
+    public List<Group> group(final IndexSearcher searcher, final Query query, final String field,
+                             final Double bucketSize) throws IOException {
+        final String indexField = FeatureIndexDao.FeatureIndexFields.getFacetName(field);
+        if (bucketSize == null) {
+            return searcher.search(query, new ValuesCollectorManager(indexField, field));
+        }
+        return searcher.search(query, new RangesCollectorManager(indexField, field, bucketSize));
+    }
+
+    private SegmentState getState(final LeafReader reader, final String indexField, final String dim)
+            throws IOException {
+        final Object core = reader.getCoreCacheKey();
+        final StateKey key = new StateKey(core, indexField, dim);
+        final SegmentState cached = states.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        if (trackedCores.add(core)) {
+            reader.addCoreClosedListener(closedCore -> {
+                states.keySet().removeIf(k -> k.core == closedCore);
+                trackedCores.remove(closedCore);
+            });
+        }
+        final SegmentState state = new SegmentState(DocValues.getSortedSet(reader, indexField), dim);
+        states.putIfAbsent(key, state);
+        return state;
+    }
+
+    private static String formatBound(final double bound) {
+        return BigDecimal.valueOf(bound).stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * Labels of a single facet dimension in a segment, indexed by segment ordinals
+     */
+    private static final class SegmentState {
+        private final int startOrd;
+        private final String[] labels;
+        private volatile double[] numbers;
+
+        private SegmentState(final SortedSetDocValues values, final String dim) {
+            // facet terms are encoded as a dimension and a label, separated by a delimiter character
+            final String prefix = FacetsConfig.pathToString(dim, new String[]{"_"});
+            final String dimStart = prefix.substring(0, prefix.length() - 1);
+            final String dimEnd = dimStart.substring(0, dimStart.length() - 1)
+                    + (char) (dimStart.charAt(dimStart.length() - 1) + 1);
+            final long start = toInsertionPoint(values.lookupTerm(new BytesRef(dimStart)));
+            final long end = toInsertionPoint(values.lookupTerm(new BytesRef(dimEnd)));
+
+            this.startOrd = (int) start;
+            this.labels = new String[(int) (end - start)];
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = FacetsConfig.stringToPath(values.lookupOrd(start + i).utf8ToString())[1];
+            }
+        }
+
+        private static long toInsertionPoint(final long lookupResult) {
+            return lookupResult < 0 ? -lookupResult - 1 : lookupResult;
+        }
+
+        private double[] getNumbers() {
+            if (numbers == null) {
+                final double[] parsed = new double[labels.length];
+                for (int i = 0; i < labels.length; i++) {
+                    try {
+                        parsed[i] = Double.parseDouble(labels[i]);
+                    } catch (NumberFormatException e) {
+                        parsed[i] = Double.NaN;
+                    }
+                }
+                numbers = parsed;
+            }
+            return numbers;
+        }
+    }
+
+    /**
+     * Counts documents by segment ordinals of each visited segment
+     */
+    private abstract class SegmentCountingCollector extends SimpleCollector {
+        private final String indexField;
+        private final String dim;
+        private SortedSetDocValues values;
+        private SegmentState state;
+
+        SegmentCountingCollector(final String indexField, final String dim) {
+            this.indexField = indexField;
+            this.dim = dim;
+        }
+
+        @Override
+        protected void doSetNextReader(final LeafReaderContext context) throws IOException {
+            state = getState(context.reader(), indexField, dim);
+            values = DocValues.getSortedSet(context.reader(), indexField);
+            startSegment(state);
+        }
+
+        @Override
+        public void collect(final int doc) throws IOException {
+            values.setDocument(doc);
+            final int start = state.startOrd;
+            final int end = start + state.labels.length;
+            long ord;
+            while ((ord = values.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
+                if (ord >= start && ord < end) {
+                    count(doc, (int) ord - start);
+                }
+            }
+        }
+
+        @Override
+        public boolean needsScores() {
+            return false;
+        }
+
+        protected abstract void startSegment(SegmentState segmentState);
+
+        protected abstract void count(int doc, int index);
+    }
+
+    private final class ValuesCollector extends SegmentCountingCollector {
+        private final List<SegmentState> segmentStates = new ArrayList<>();
+        private final List<int[]> segmentCounts = new ArrayList<>();
+        private int[] counts;
+
+        ValuesCollector(final String indexField, final String dim) {
+            super(indexField, dim);
+        }
+
+        @Override
+        protected void startSegment(final SegmentState segmentState) {
+            counts = new int[segmentState.labels.length];
+            segmentStates.add(segmentState);
+            segmentCounts.add(counts);
+        }
+
+        @Override
+        protected void count(final int doc, final int index) {
+            counts[index]++;
+        }
+    }
+
+    private final class ValuesCollectorManager implements CollectorManager<ValuesCollector, List<Group>> {
+        private final String indexField;
+        private final String dim;
+
+        private ValuesCollectorManager(final String indexField, final String dim) {
+            this.indexField = indexField;
+            this.dim = dim;
+        }
+
+        @Override
+        public ValuesCollector newCollector() {
+            return new ValuesCollector(indexField, dim);
+        }
+
+        @Override
+        public List<Group> reduce(final Collection<ValuesCollector> collectors) {
+            final Map<String, Integer> totals = new HashMap<>();
+            for (ValuesCollector collector : collectors) {
+                for (int i = 0; i < collector.segmentStates.size(); i++) {
+                    final String[] labels = collector.segmentStates.get(i).labels;
+                    final int[] counts = collector.segmentCounts.get(i);
+                    for (int j = 0; j < counts.length; j++) {
+                        if (counts[j] > 0) {
+                            totals.merge(labels[j], counts[j], Integer::sum);
+                        }
+                    }
+                }
+            }
+            final List<Group> groups = new ArrayList<>(totals.size());
+            totals.forEach((label, count) -> groups.add(new Group(label, count)));
+            groups.sort(Comparator.comparing(Group::getEntriesCount, Comparator.reverseOrder())
+                    .thenComparing(Group::getGroupName));
+            return groups;
+        }
+    }
+
+    private final class RangesCollector extends SegmentCountingCollector {
+        private final double bucketSize;
+        private final Map<Long, Integer> totals = new HashMap<>();
+        private long[] segmentBuckets;
+        private int[] ordBuckets;
+        private int[] counts;
+        private int[] lastDocs;
+
+        RangesCollector(final String indexField, final String dim, final double bucketSize) {
+            super(indexField, dim);
+            this.bucketSize = bucketSize;
+        }
+
+        @Override
+        protected void startSegment(final SegmentState segmentState) {
+            flushSegment();
+            final double[] numbers = segmentState.getNumbers();
+            segmentBuckets = Arrays.stream(numbers)
+                    .filter(n -> !Double.isNaN(n))
+                    .mapToLong(n -> (long) Math.floor(n / bucketSize))
+                    .distinct()
+                    .sorted()
+                    .toArray();
+            ordBuckets = new int[numbers.length];
+            for (int i = 0; i < numbers.length; i++) {
+                ordBuckets[i] = Double.isNaN(numbers[i]) ? -1
+                        : Arrays.binarySearch(segmentBuckets, (long) Math.floor(numbers[i] / bucketSize));
+            }
+            counts = new int[segmentBuckets.length];
+            lastDocs = new int[segmentBuckets.length];
+            Arrays.fill(lastDocs, -1);
+        }
+
+        @Override
+        protected void count(final int doc, final int index) {
+            final int bucket = ordBuckets[index];
+            // a document with several values in the same range is counted once
+            if (bucket >= 0 && lastDocs[bucket] != doc) {
+                lastDocs[bucket] = doc;
+                counts[bucket]++;
+            }
+        }
+
+        private void flushSegment() {
+            if (counts == null) {
+                return;
+            }
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    totals.merge(segmentBuckets[i], counts[i], Integer::sum);
+                }
+            }
+            counts = null;
+        }
+    }
+
+    private final class RangesCollectorManager implements CollectorManager<RangesCollector, List<Group>> {
+        private final String indexField;
+        private final String dim;
+        private final double bucketSize;
+
+        private RangesCollectorManager(final String indexField, final String dim, final double bucketSize) {
+            this.indexField = indexField;
+            this.dim = dim;
+            this.bucketSize = bucketSize;
+        }
+
+        @Override
+        public RangesCollector newCollector() {
+            return new RangesCollector(indexField, dim, bucketSize);
+        }
+
+        @Override
+        public List<Group> reduce(final Collection<RangesCollector> collectors) {
+            final Map<Long, Integer> totals = new HashMap<>();
+            for (RangesCollector collector : collectors) {
+                collector.flushSegment();
+                collector.totals.forEach((bucket, count) -> totals.merge(bucket, count, Integer::sum));
+            }
+            final List<Group> groups = new ArrayList<>(totals.size());
+            totals.entrySet().stream()
+                    .sorted(Map.Entry.comparingByKey())
+                    .forEach(e -> groups.add(new Group(String.format("[%s, %s)",
+                            formatBound(e.getKey() * bucketSize), formatBound((e.getKey() + 1) * bucketSize)),
+                            e.getValue())));
+            return groups;
+        }
+    }
+
+    private static final class StateKey {
+        private final Object core;
+        private final String field;
+        private final String dim;
+
+        private StateKey(final Object core, final String field, final String dim) {
+            this.core = core;
+            this.field = field;
+            this.dim = dim;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final StateKey key = (StateKey) o;
+            return core == key.core && field.equals(key.field) && dim.equals(key.dim);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(core), field, dim);
+        }
+    }
+}
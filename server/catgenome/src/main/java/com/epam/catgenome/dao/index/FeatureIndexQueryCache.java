@@ -0,0 +1,194 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.epam.catgenome.dao.index;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LRUQueryCache;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryCachingPolicy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.ToLongFunction;
+
+/**
+ * Caches results of feature index filter queries, so that repeated evaluations of the same filter over the same
+ * set of files, e.g. paging, re-sorting or building groupings and facets of the same variation filter, don't
+ * evaluate the filter from scratch.
+ * <p>
+ * Two levels of results are kept, both are bound to the exact set of index segments they were calculated for,
+ * so any index update or refresh makes results to be calculated again:
+ * <ul>
+ *     <li>per-segment sets of matching document IDs of compound filter queries, kept by a Lucene
+ *     {@link LRUQueryCache}, which is attached to searchers, created with {@link #newSearcher(IndexReader)}</li>
+ *     <li>aggregated results, such as facet counts, groupings and sets of chromosomes</li>
+ * </ul>
+ * Both levels are evicted in LRU order, once their estimated size exceeds a configured memory limit.
+ * </p>
+ */
+@Component
+public class FeatureIndexQueryCache {
+
+    private static final QueryCachingPolicy FILTER_CACHING_POLICY = new QueryCachingPolicy() {
+        @Override
+        public void onUse(final Query query) {
+            // every compound filter is cached on first use, so usage is not tracked
+        }
+
+        @Override
+        public boolean shouldCache(final Query query) {
+            return query instanceof BooleanQuery;
+        }
+    };
+
+    @Value("${lucene.query.cache.max.queries:256}")
+    private int maxQueries;
+
+    @Value("${lucene.query.cache.max.bytes:67108864}")
+    private long maxBytes;
+
+    @Value("${lucene.query.result.cache.max.bytes:8388608}")
+    private long maxResultBytes;
+
+    private LRUQueryCache docIdCache;
+    private final LinkedHashMap<ReaderQueryKey, CachedResult> results = new LinkedHashMap<>(16, 0.75F, true);
+    private long resultBytes;
+
+    @PostConstruct
+    public void init() {
+        docIdCache = new LRUQueryCache(maxQueries, maxBytes, leaf -> true);
+    }
+
+    /**
+     * Creates a searcher, which caches sets of documents, matching compound filter queries
+     *
+     * @param reader to search in
+     * @return a caching {@link IndexSearcher}
+     */
+    public IndexSearcher newSearcher(final IndexReader reader) {
+        return setupCaching(new IndexSearcher(reader));
+    }
+
+    /**
+     * Creates a searcher, which caches sets of documents, matching compound filter queries, and searches
+     * index segments in parallel
+     *
+     * @param reader to search in
+     * @param executor to search segments
+     * @return a caching {@link IndexSearcher}
+     */
+    public IndexSearcher newSearcher(final IndexReader reader, final ExecutorService executor) {
+        return setupCaching(new IndexSearcher(reader, executor));
+    }
+
+    /**
+     * Returns an aggregated result of a query, calculating it if it is not cached yet for the segments of a
+     * specified reader
+     *
+     * @param reader a reader, the result is calculated for
+     * @param query a filter query
+     * @param aggregation a name of aggregation, e.g. a facet field
+     * @param sizeEstimator estimates memory, occupied by a result, in bytes
+     * @param loader calculates the result
+     * @return the aggregated result
+     * @throws IOException if calculation fails
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getOrCalculate(final IndexReader reader, final Query query, final String aggregation,
+                                final ToLongFunction<T> sizeEstimator, final ResultLoader<T> loader)
+            throws IOException {
+        final ReaderQueryKey key = new ReaderQueryKey(query, aggregation, reader);
+        synchronized (this) {
+            final CachedResult cached = results.get(key);
+            if (cached != null) {
+                return (T) cached.value;
+            }
+        }
+        final T value = loader.load();
+        final long size = sizeEstimator.applyAsLong(value);
+        if (size <= maxResultBytes) {
+            putResult(key, new CachedResult(value, size));
+        }
+        return value;
+    }
+
+    public synchronized void clear() {
+        docIdCache.clear();
+        results.clear();
+        resultBytes = 0;
+    }
+
+    public long getCachedQueriesCount() {
+        return docIdCache.getCacheCount();
+    }
+
+    public synchronized int getCachedResultsCount() {
+        return results.size();
+    }
+
+    private IndexSearcher setupCaching(final IndexSearcher searcher) {
+        searcher.setQueryCache(docIdCache);
+        searcher.setQueryCachingPolicy(FILTER_CACHING_POLICY);
+        return searcher;
+    }
+
+    private synchronized void putResult(final ReaderQueryKey key, final CachedResult result) {
+        final CachedResult previous = results.put(key, result);
+        if (previous != null) {
+            resultBytes -= previous.size;
+        }
+        resultBytes += result.size;
+        final Iterator<CachedResult> eldest = results.values().iterator();
+        while (resultBytes > maxResultBytes && eldest.hasNext()) {
+            resultBytes -= eldest.next().size;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Calculates an aggregated result of a query
+     */
+    @FunctionalInterface
+    public interface ResultLoader<T> {
+        T load() throws IOException;
+    }
+
+    private static final class CachedResult {
+        private final Object value;
+        private final long size;
+
+        private CachedResult(final Object value, final long size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+}
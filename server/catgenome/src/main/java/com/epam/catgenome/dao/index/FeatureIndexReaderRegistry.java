@@ -0,0 +1,355 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.epam.catgenome.dao.index;
+
+import com.epam.catgenome.entity.index.FeatureIndexRegistryStatistics;
+import org.apache.commons.io.IOUtils;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A long-lived registry of Lucene readers for per-file feature indexes. For each index directory a
+ * {@link SearcherManager} over a {@link MMapDirectory} is kept open, so that searches acquire a ref-counted
+ * reader instead of opening and closing the whole index on every request.
+ * <p>
+ * Readers are refreshed explicitly after index updates, periodically in the background and are evicted when
+ * an index is deleted or the registry exceeds its capacity. If an index has an open writer in
+ * {@link FeatureIndexWriterRegistry}, a near-real-time reader of that writer is used, so that refreshed readers
+ * see changes before they are committed.
+ * </p>
+ */
+@Component
+public class FeatureIndexReaderRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FeatureIndexReaderRegistry.class);
+
+    @Value("${lucene.index.registry.max.open:256}")
+    private int maxOpenIndexes;
+
+    @Autowired(required = false)
+    private FeatureIndexWriterRegistry writerRegistry;
+
+    private final Map<Path, IndexHolder> holders = new ConcurrentHashMap<>();
+
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong refreshTimeNanos = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        if (writerRegistry != null) {
+            // near-real-time readers of a closed writer can't be refreshed
+            writerRegistry.addCloseListener(this::evict);
+        }
+    }
+
+    /**
+     * Acquires readers for specified index directories. The returned {@link Lease} must be closed to release
+     * the readers back to the registry.
+     *
+     * @param indexPaths paths to existing Lucene index directories
+     * @return a {@link Lease}, holding a {@link MultiReader} over all requested indexes
+     * @throws IOException if an index can't be opened
+     */
+    public Lease acquire(final List<Path> indexPaths) throws IOException {
+        final List<SearcherManager> managers = new ArrayList<>(indexPaths.size());
+        final List<IndexSearcher> searchers = new ArrayList<>(indexPaths.size());
+        boolean acquired = false;
+        try {
+            for (Path indexPath : indexPaths) {
+                acquire(normalize(indexPath), managers, searchers);
+            }
+            final Lease lease = new Lease(managers, searchers);
+            acquired = true;
+            return lease;
+        } finally {
+            if (!acquired) {
+                release(managers, searchers);
+            }
+        }
+    }
+
+    /**
+     * Reopens a reader for specified index directory, if it is currently registered, so that
+     * subsequent searches see the latest committed changes
+     *
+     * @param indexPath a path to Lucene index directory
+     * @throws IOException if reopening fails
+     */
+    public void refresh(final Path indexPath) throws IOException {
+        final Path path = normalize(indexPath);
+        final IndexHolder holder = holders.get(path);
+        if (holder == null) {
+            return;
+        }
+        if (holder.writer != getOpenWriter(path)) {
+            // a writer was opened after the reader, switch to a near-real-time reader on next acquire
+            evict(path);
+            return;
+        }
+        final long start = System.nanoTime();
+        try {
+            holder.manager.maybeRefreshBlocking();
+        } catch (AlreadyClosedException e) {
+            LOGGER.debug("Index {} was evicted during refresh", indexPath);
+            return;
+        }
+        registerRefresh(start);
+    }
+
+    /**
+     * Closes and forgets a reader for specified index directory. Should be called before an index is deleted.
+     *
+     * @param indexPath a path to Lucene index directory
+     */
+    public void evict(final Path indexPath) {
+        final IndexHolder holder = holders.remove(normalize(indexPath));
+        if (holder != null) {
+            holder.close();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Closes and forgets readers for all index directories inside a directory. Should be called before
+     * a directory, containing indexes, is deleted.
+     *
+     * @param directory a directory, containing Lucene index directories
+     */
+    public void evictInside(final Path directory) {
+        final Path path = normalize(directory);
+        new ArrayList<>(holders.keySet()).stream()
+                .filter(indexPath -> indexPath.startsWith(path))
+                .forEach(this::evict);
+    }
+
+    /**
+     * Periodically picks up index changes, made by writers that don't notify the registry explicitly
+     */
+    @Scheduled(fixedDelayString = "${lucene.index.registry.refresh.rate:60000}")
+    public void refreshAll() {
+        for (Map.Entry<Path, IndexHolder> entry : holders.entrySet()) {
+            final long start = System.nanoTime();
+            try {
+                if (entry.getValue().manager.maybeRefresh()) {
+                    registerRefresh(start);
+                }
+            } catch (AlreadyClosedException e) {
+                LOGGER.debug("Index {} was evicted during refresh", entry.getKey());
+            } catch (IOException e) {
+                LOGGER.error("Failed to refresh index " + entry.getKey(), e);
+                evict(entry.getKey());
+            }
+        }
+    }
+
+    public FeatureIndexRegistryStatistics getStatistics() {
+        return FeatureIndexRegistryStatistics.builder()
+                .openIndexes(holders.size())
+                .openWriters(writerRegistry == null ? 0 : writerRegistry.getOpenWriters())
+                .pendingWriteOperations(writerRegistry == null ? 0 : writerRegistry.getPendingOperations())
+                .cacheHits(cacheHits.get())
+                .cacheMisses(cacheMisses.get())
+                .evictions(evictions.get())
+                .refreshCount(refreshCount.get())
+                .totalRefreshTimeMs(TimeUnit.NANOSECONDS.toMillis(refreshTimeNanos.get()))
+                .build();
+    }
+
+    @PreDestroy
+    public void close() {
+        new ArrayList<>(holders.keySet()).forEach(this::evict);
+    }
+
+    private void acquire(final Path indexPath, final List<SearcherManager> managers,
+                         final List<IndexSearcher> searchers) throws IOException {
+        while (true) {
+            final IndexHolder holder = getOrOpen(indexPath);
+            try {
+                searchers.add(holder.manager.acquire());
+                managers.add(holder.manager);
+                return;
+            } catch (AlreadyClosedException e) {
+                // holder was evicted concurrently, drop it and open a fresh one
+                holders.remove(indexPath, holder);
+            }
+        }
+    }
+
+    private IndexHolder getOrOpen(final Path indexPath) throws IOException {
+        final IndexHolder existing = holders.get(indexPath);
+        if (existing != null) {
+            cacheHits.incrementAndGet();
+            existing.lastAccess = System.nanoTime();
+            return existing;
+        }
+
+        cacheMisses.incrementAndGet();
+        final IndexHolder holder;
+        try {
+            holder = holders.computeIfAbsent(indexPath, this::open);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        evictExcessive();
+        return holder;
+    }
+
+    private IndexHolder open(final Path indexPath) {
+        try {
+            return new IndexHolder(indexPath, getOpenWriter(indexPath));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private synchronized void evictExcessive() {
+        while (holders.size() > maxOpenIndexes) {
+            holders.entrySet().stream()
+                    .min(Comparator.comparingLong(e -> e.getValue().lastAccess))
+                    .ifPresent(e -> evict(e.getKey()));
+        }
+    }
+
+    private void registerRefresh(final long start) {
+        refreshCount.incrementAndGet();
+        refreshTimeNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    private IndexWriter getOpenWriter(final Path indexPath) {
+        return writerRegistry == null ? null : writerRegistry.getOpenWriter(indexPath);
+    }
+
+    private static Path normalize(final Path indexPath) {
+        return indexPath.toAbsolutePath().normalize();
+    }
+
+    private static void release(final List<SearcherManager> managers, final List<IndexSearcher> searchers) {
+        for (int i = 0; i < searchers.size(); i++) {
+            try {
+                managers.get(i).release(searchers.get(i));
+            } catch (IOException e) {
+                LOGGER.error("Failed to release index reader", e);
+            }
+        }
+    }
+
+    private static final class IndexHolder implements Closeable {
+        private final Directory directory;
+        private final IndexWriter writer;
+        private final SearcherManager manager;
+        private volatile long lastAccess;
+
+        private IndexHolder(final Path indexPath, final IndexWriter writer) throws IOException {
+            this.writer = writer;
+            if (writer != null) {
+                // the directory is owned by the writer
+                this.directory = null;
+                this.manager = new SearcherManager(writer, true, false, null);
+            } else {
+                this.directory = new MMapDirectory(indexPath);
+                try {
+                    this.manager = new SearcherManager(directory, null);
+                } catch (IOException e) {
+                    IOUtils.closeQuietly(directory);
+                    throw e;
+                }
+            }
+            this.lastAccess = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            // readers, acquired by running searches, stay valid until they are released
+            IOUtils.closeQuietly(manager);
+            IOUtils.closeQuietly(directory);
+        }
+    }
+
+    /**
+     * Represents a set of readers, acquired from the registry for a single search operation
+     */
+    public static final class Lease implements Closeable {
+        private final List<SearcherManager> managers;
+        private final List<IndexSearcher> searchers;
+        private final MultiReader reader;
+
+        private Lease(final List<SearcherManager> managers, final List<IndexSearcher> searchers)
+                throws IOException {
+            this.managers = managers;
+            this.searchers = searchers;
+            final IndexReader[] readers = new IndexReader[searchers.size()];
+            for (int i = 0; i < readers.length; i++) {
+                readers[i] = searchers.get(i).getIndexReader();
+            }
+            this.reader = new MultiReader(readers, false);
+        }
+
+        public MultiReader getReader() {
+            return reader;
+        }
+
+        public Directory[] getDirectories() {
+            return searchers.stream()
+                    .map(s -> ((DirectoryReader) s.getIndexReader()).directory())
+                    .toArray(Directory[]::new);
+        }
+
+        @Override
+        public void close() {
+            IOUtils.closeQuietly(reader);
+            release(managers, searchers);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.epam.catgenome.dao.index;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A registry of long-lived Lucene writers for feature indexes. Instead of opening a new {@link IndexWriter} for
+ * each update of an index, writers are kept open, so that subsequent additions, updates and deletions are buffered
+ * by the same writer and become visible to near-real-time readers of {@link FeatureIndexReaderRegistry} right
+ * after a refresh.
+ * <p>
+ * Buffered operations are committed in batches: once a number of pending operations of a writer exceeds a
+ * configured limit, periodically in the background and when a writer is closed. Writers are closed when an index
+ * is deleted, when they aren't used for a configured time or the registry exceeds its capacity.
+ * </p>
+ */
+@Component
+public class FeatureIndexWriterRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FeatureIndexWriterRegistry.class);
+
+    // incremental updates are rewrites of single documents, so merges, reclaiming deletes, are preferred,
+    // and small flushed segments are merged together early
+    private static final double RECLAIM_DELETES_WEIGHT = 3.0;
+    private static final double FLOOR_SEGMENT_MB = 16;
+
+    @Value("${lucene.index.writer.max.open:32}")
+    private int maxOpenWriters;
+
+    @Value("${lucene.index.writer.ram.buffer.mb:16}")
+    private double ramBufferSizeMb;
+
+    @Value("${lucene.index.writer.commit.batch.size:1000}")
+    private int commitBatchSize;
+
+    @Value("${lucene.index.writer.idle.timeout:600000}")
+    private long idleTimeoutMs;
+
+    private final Map<Path, WriterHolder> holders = new ConcurrentHashMap<>();
+    private final List<Consumer<Path>> closeListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Applies an operation to a writer of an index, opening the writer if required. Changes are visible to
+     * near-real-time readers after {@link FeatureIndexReaderRegistry#refresh(Path)} and are committed later.
+     *
+     * @param indexPath a path to Lucene index directory, it is created if it doesn't exist
+     * @param operation to apply to the writer
+     * @throws IOException if writing fails
+     */
+    public void write(final Path indexPath, final WriteOperation operation) throws IOException {
+        final Path path = normalize(indexPath);
+        while (true) {
+            final WriterHolder holder = getOrOpen(path);
+            try {
+                final int operations = operation.apply(holder.writer);
+                if (holder.pending.addAndGet(operations) >= commitBatchSize) {
+                    holder.commit();
+                }
+                return;
+            } catch (AlreadyClosedException e) {
+                if (holder.writer.isOpen()) {
+                    throw e;
+                }
+                // writer was closed concurrently, retry with a fresh one
+                holders.remove(path, holder);
+            }
+        }
+    }
+
+    /**
+     * Returns an open writer of an index, if it is registered
+     *
+     * @param indexPath a path to Lucene index directory
+     * @return an open {@link IndexWriter} or null
+     */
+    public IndexWriter getOpenWriter(final Path indexPath) {
+        final WriterHolder holder = holders.get(normalize(indexPath));
+        return holder == null || !holder.writer.isOpen() ? null : holder.writer;
+    }
+
+    /**
+     * Commits pending operations of an index writer, if it is registered
+     *
+     * @param indexPath a path to Lucene index directory
+     * @throws IOException if commit fails
+     */
+    public void commit(final Path indexPath) throws IOException {
+        final Path path = normalize(indexPath);
+        final WriterHolder holder = holders.get(path);
+        if (holder == null) {
+            return;
+        }
+        try {
+            holder.commit();
+        } catch (AlreadyClosedException e) {
+            if (holder.writer.isOpen()) {
+                throw e;
+            }
+            // writer was closed concurrently, its changes were committed on close
+            holders.remove(path, holder);
+        }
+    }
+
+    /**
+     * Commits pending operations and closes a writer of an index. Should be called before an index is deleted.
+     *
+     * @param indexPath a path to Lucene index directory
+     */
+    public void close(final Path indexPath) {
+        final Path path = normalize(indexPath);
+        final WriterHolder holder = holders.remove(path);
+        if (holder != null) {
+            holder.close();
+            closeListeners.forEach(listener -> listener.accept(path));
+        }
+    }
+
+    /**
+     * Commits pending operations and closes writers of all indexes inside a directory. Should be called before
+     * a directory, containing indexes, is deleted.
+     *
+     * @param directory a directory, containing Lucene index directories
+     */
+    public void closeInside(final Path directory) {
+        final Path path = normalize(directory);
+        new ArrayList<>(holders.keySet()).stream()
+                .filter(indexPath -> indexPath.startsWith(path))
+                .forEach(this::close);
+    }
+
+    /**
+     * Registers a listener, notified with an index path after its writer is closed
+     *
+     * @param listener to notify
+     */
+    public void addCloseListener(final Consumer<Path> listener) {
+        closeListeners.add(listener);
+    }
+
+    /**
+     * Periodically commits operations, buffered by open writers, and closes writers, that weren't used for
+     * a configured time
+     */
+    @Scheduled(fixedDelayString = "${lucene.index.writer.commit.rate:30000}")
+    public void commitAll() {
+        final long idleSince = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        for (Map.Entry<Path, WriterHolder> entry : holders.entrySet()) {
+            if (idleTimeoutMs > 0 && entry.getValue().lastAccess - idleSince < 0) {
+                close(entry.getKey());
+                continue;
+            }
+            try {
+                entry.getValue().commit();
+            } catch (AlreadyClosedException e) {
+                LOGGER.debug("Index writer {} was closed during commit", entry.getKey());
+            } catch (IOException e) {
+                LOGGER.error("Failed to commit index " + entry.getKey(), e);
+                close(entry.getKey());
+            }
+        }
+    }
+
+    public int getOpenWriters() {
+        return holders.size();
+    }
+
+    /**
+     * @return a total number of operations, applied to open writers, but not committed yet
+     */
+    public long getPendingOperations() {
+        return holders.values().stream().mapToLong(h -> h.pending.get()).sum();
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        new ArrayList<>(holders.keySet()).forEach(this::close);
+    }
+
+    private WriterHolder getOrOpen(final Path indexPath) throws IOException {
+        final WriterHolder existing = holders.get(indexPath);
+        if (existing != null && !existing.writer.isOpen()) {
+            // writer was closed after an unrecoverable error
+            if (holders.remove(indexPath, existing)) {
+                existing.close();
+            }
+        } else if (existing != null) {
+            existing.lastAccess = System.nanoTime();
+            return existing;
+        }
+
+        final WriterHolder holder;
+        try {
+            holder = holders.computeIfAbsent(indexPath, this::open);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        closeExcessive();
+        return holder;
+    }
+
+    private WriterHolder open(final Path indexPath) {
+        try {
+            return new WriterHolder(indexPath, createConfig());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private IndexWriterConfig createConfig() {
+        final TieredMergePolicy mergePolicy = new TieredMergePolicy()
+                .setReclaimDeletesWeight(RECLAIM_DELETES_WEIGHT)
+                .setFloorSegmentMB(FLOOR_SEGMENT_MB);
+        return new IndexWriterConfig(new StandardAnalyzer())
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND)
+                .setRAMBufferSizeMB(ramBufferSizeMb)
+                .setMergePolicy(mergePolicy)
+                .setMergeScheduler(new ConcurrentMergeScheduler());
+    }
+
+    private synchronized void closeExcessive() {
+        while (holders.size() > maxOpenWriters) {
+            holders.entrySet().stream()
+                    .min(Comparator.comparingLong(e -> e.getValue().lastAccess))
+                    .ifPresent(e -> close(e.getKey()));
+        }
+    }
+
+    private static Path normalize(final Path indexPath) {
+        return indexPath.toAbsolutePath().normalize();
+    }
+
+    /**
+     * An operation, applied to an index writer
+     */
+    @FunctionalInterface
+    public interface WriteOperation {
+        /**
+         * @param writer to apply operation to
+         * @return a number of added, updated or deleted documents
+         * @throws IOException if writing fails
+         */
+        int apply(IndexWriter writer) throws IOException;
+    }
+
+    private static final class WriterHolder implements Closeable {
+        private final Path indexPath;
+        private final Directory directory;
+        private final Analyzer analyzer;
+        private final IndexWriter writer;
+        private final AtomicLong pending = new AtomicLong();
+        private volatile long lastAccess;
+
+        private WriterHolder(final Path indexPath, final IndexWriterConfig config) throws IOException {
+            this.indexPath = indexPath;
+            this.directory = FSDirectory.open(indexPath);
+            this.analyzer = config.getAnalyzer();
+            try {
+                this.writer = new IndexWriter(directory, config);
+            } catch (IOException e) {
+                IOUtils.closeQuietly(analyzer);
+                IOUtils.closeQuietly(directory);
+                throw e;
+            }
+            this.lastAccess = System.nanoTime();
+        }
+
+        private void commit() throws IOException {
+            final long committed = pending.get();
+            if (committed > 0 || writer.hasUncommittedChanges()) {
+                writer.commit();
+                pending.addAndGet(-committed);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                writer.close();
+            } catch (IOException | AlreadyClosedException e) {
+                if (Files.notExists(indexPath)) {
+                    LOGGER.debug("Index {} was deleted before its writer was closed", indexPath);
+                } else {
+                    LOGGER.error("Failed to close index writer", e);
+                }
+            } finally {
+                IOUtils.closeQuietly(analyzer);
+                IOUtils.closeQuietly(directory);
+            }
+        }
+    }
+}
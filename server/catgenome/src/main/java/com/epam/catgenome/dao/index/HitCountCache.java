@@ -0,0 +1,80 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.epam.catgenome.dao.index;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps numbers of hits of recently executed queries. A count is bound to the exact set of index segments it
+ * was calculated for, so any index update or refresh makes a new count to be calculated.
+ */
+@Component
+public class HitCountCache {
+
+    @Value("${lucene.hit.count.cache.size:1024}")
+    private int maxSize;
+
+    private final Map<ReaderQueryKey, Integer> counts = Collections.synchronizedMap(
+            new LinkedHashMap<ReaderQueryKey, Integer>(16, 0.75F, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<ReaderQueryKey, Integer> eldest) {
+                    return size() > maxSize;
+                }
+            });
+
+    /**
+     * Returns a number of documents, matching a query. It is calculated by a {@link TotalHitCountCollector}
+     * once for each combination of a query and index segments.
+     *
+     * @param searcher to execute a query
+     * @param query to count hits for
+     * @return a number of matching documents
+     * @throws IOException if search fails
+     */
+    public int count(final IndexSearcher searcher, final Query query) throws IOException {
+        final ReaderQueryKey key = new ReaderQueryKey(query, searcher.getIndexReader());
+        final Integer cached = counts.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        final TotalHitCountCollector collector = new TotalHitCountCollector();
+        searcher.search(query, collector);
+        counts.put(key, collector.getTotalHits());
+        return collector.getTotalHits();
+    }
+
+    public void clear() {
+        counts.clear();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.epam.catgenome.dao.index;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.Query;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A cache key, binding a query to the exact set of index segments it was executed on. Segments are referred
+ * weakly, so that cached values don't keep closed readers in memory, and by their core and deletes key, so that
+ * any index update or refresh produces a different key.
+ */
+final class ReaderQueryKey {
+    private static final int HASH_MULTIPLIER = 31;
+
+    private final Query query;
+    private final String discriminator;
+    private final List<WeakReference<Object>> segments;
+    private final int hash;
+
+    ReaderQueryKey(final Query query, final IndexReader reader) {
+        this(query, null, reader);
+    }
+
+    ReaderQueryKey(final Query query, final String discriminator, final IndexReader reader) {
+        this.query = query;
+        this.discriminator = discriminator;
+        this.segments = new ArrayList<>(reader.leaves().size());
+        int segmentsHash = 1;
+        for (LeafReaderContext leaf : reader.leaves()) {
+            final Object segment = leaf.reader().getCombinedCoreAndDeletesKey();
+            segments.add(new WeakReference<>(segment));
+            segmentsHash = HASH_MULTIPLIER * segmentsHash + System.identityHashCode(segment);
+        }
+        this.hash = HASH_MULTIPLIER * (HASH_MULTIPLIER * query.hashCode() + Objects.hashCode(discriminator))
+                + segmentsHash;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final ReaderQueryKey key = (ReaderQueryKey) o;
+        if (hash != key.hash || segments.size() != key.segments.size() || !query.equals(key.query)
+                || !Objects.equals(discriminator, key.discriminator)) {
+            return false;
+        }
+        for (int i = 0; i < segments.size(); i++) {
+            final Object segment = segments.get(i).get();
+            if (segment == null || segment != key.segments.get(i).get()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -24,6 +24,7 @@
 
 package com.epam.catgenome.dao.index.indexer;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -32,6 +33,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import com.epam.catgenome.entity.gene.GeneFile;
@@ -54,6 +61,7 @@ import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFHeader;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.commons.math3.util.MathUtils;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
@@ -67,9 +75,25 @@ import static com.epam.catgenome.manager.vcf.reader.VcfFileReader.isEmptyStrain;
 
 /**
  * An implementation of {@link FeatureIndexBuilder}, that indexes <b>large</b> VCF file entries: {@link VariantContext}
+ * <p>
+ * Indexing is pipelined: the calling thread only parses variations and decodes their genotypes, while gene
+ * lookups, variation type resolution and Lucene document building are performed by a pool of worker threads,
+ * writing into a single thread-safe {@link IndexWriter}. A number of variations, waiting for processing, is bounded
+ * to keep the memory footprint predictable.
+ * </p>
+ * <p>
+ * A builder holds a write lock of an index and a pool of threads, so it should always be closed, even if indexing
+ * fails.
+ * </p>
  */
 @Slf4j
-public class BigVcfFeatureIndexBuilder extends VcfFeatureIndexBuilder {
+public class BigVcfFeatureIndexBuilder extends VcfFeatureIndexBuilder implements Closeable {
+
+    public static final String THREAD_NAME_PREFIX = "vcf-indexer-";
+
+    private static final int QUEUE_SIZE_PER_THREAD = 256;
+    private static final long MILLIS_IN_SECOND = 1000L;
+    private static final long TERMINATION_TIMEOUT_SECONDS = 60L;
 
     private IndexWriter writer;
     private StandardAnalyzer analyzer;
@@ -78,10 +102,18 @@ public class BigVcfFeatureIndexBuilder extends VcfFeatureIndexBuilder {
     private FacetsConfig facetsConfig;
     private VcfFile vcfFile;
 
+    private final ExecutorService executor;
+    private final Semaphore queuePermits;
+    private final int queueSize;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final long startTime = System.currentTimeMillis();
+    private long parsedCount;
+
     public BigVcfFeatureIndexBuilder(final VcfFilterInfo filterInfo, final VCFHeader vcfHeader,
                                      final FeatureIndexManager featureIndexManager,
                                      final VcfFile featureFile, final FileManager fileManager,
-                                     final List<GeneFile> geneFiles, final Integer indexBufferSize)
+                                     final List<GeneFile> geneFiles, final Integer indexBufferSize,
+                                     final int indexThreads)
             throws IOException {
         super(filterInfo, vcfHeader, featureIndexManager);
         this.analyzer = new StandardAnalyzer();
@@ -92,6 +124,15 @@ public class BigVcfFeatureIndexBuilder extends VcfFeatureIndexBuilder {
         this.creator = new BigVcfDocumentBuilder();
         this.facetsConfig = creator.createFacetsConfig(filterInfo);
         this.vcfFile = featureFile;
+        if (indexThreads > 1) {
+            this.executor = Executors.newFixedThreadPool(indexThreads, new BasicThreadFactory.Builder()
+                    .namingPattern(THREAD_NAME_PREFIX + "%d").build());
+            this.queueSize = indexThreads * QUEUE_SIZE_PER_THREAD;
+        } else {
+            this.executor = null;
+            this.queueSize = 0;
+        }
+        this.queuePermits = new Semaphore(queueSize);
     }
 
     @Override
@@ -118,47 +159,38 @@ public class BigVcfFeatureIndexBuilder extends VcfFeatureIndexBuilder {
 
     @Override
     public void add(final VariantContext context, final Map<String, Chromosome> chromosomeMap) {
+        checkFailure();
         if (chromosomeMap.containsKey(context.getContig()) || chromosomeMap
                 .containsKey(Utils.changeChromosomeName(context.getContig()))) {
             final Chromosome chromosome = Utils.getFromChromosomeMap(chromosomeMap, context.getContig());
-            VcfIndexEntry masterEntry = new VcfIndexEntry();
-            masterEntry.setUuid(UUID.randomUUID());
-            masterEntry.setFeatureId(context.getID());
-            masterEntry
-                    .setChromosome(chromosome);
-            masterEntry.setStartIndex(context.getStart());
-            masterEntry.setEndIndex(context.getEnd());
-            masterEntry.setFeatureType(FeatureType.VARIATION);
-            masterEntry.setInfo(filterInfoByWhiteList(context, getFilterInfo(), getVcfHeader()));
-            masterEntry.setVariantContext(context);
-            masterEntry.setSampleNames(getSampleNames(context));
-
-            final double qual = context.getPhredScaledQual();
-            masterEntry.setQuality(
-                    MathUtils.equals(qual, VcfManager.HTSJDK_WRONG_QUALITY) ? 0D : qual);
-
-            final List<OrganismType> organismTypes = new ArrayList<>();
-            for (int i = 0; i < context.getAlternateAlleles().size(); i++) {
-                Variation variation = VcfFileReader.createVariation(context, getVcfHeader(), i);
-                organismTypes.addAll(variation.getGenotypeData().values().stream()
-                        .map(GenotypeData::getOrganismType).collect(Collectors.toList()));
-            }
-
-            if (!organismTypes.isEmpty() && organismTypes.stream()
-                    .allMatch(type -> type.equals(OrganismType.NO_VARIATION))) {
+            // genotypes are decoded lazily by a codec, which is not thread-safe, so decoding is done here
+            final Set<String> sampleNames = getSampleNames(context);
+            parsedCount++;
+            if (executor == null) {
+                addVariation(context, chromosome, sampleNames);
                 return;
             }
-
-            final VcfIndexEntry indexEntry = build(masterEntry, geneFiles, chromosome);
-            final Document document = creator.buildDocument(indexEntry, vcfFile.getId());
-            try {
-                writer.addDocument(facetsConfig.build(document));
-            } catch (IOException e) {
-                throw new IllegalArgumentException("Failed to create index");
-            }
+            queuePermits.acquireUninterruptibly();
+            CompletableFuture.runAsync(() -> addVariation(context, chromosome, sampleNames), executor)
+                    .whenComplete((result, e) -> {
+                        if (e != null) {
+                            failure.compareAndSet(null, e);
+                        }
+                        queuePermits.release();
+                    });
         }
     }
 
+    /**
+     * Waits for all submitted variations of the current chromosome to be written and clears chromosome-specific
+     * caches
+     */
+    @Override
+    public void clear() {
+        awaitPending();
+        super.clear();
+    }
+
     @NotNull
     public static Set<String> getSampleNames(final VariantContext context) {
         final Set<String> names = new LinkedHashSet<>();
@@ -170,11 +202,99 @@ public class BigVcfFeatureIndexBuilder extends VcfFeatureIndexBuilder {
         return names;
     }
 
-    public void close() {
+    /**
+     * Waits for all submitted variations to be written, stops worker threads and closes the index writer
+     *
+     * @throws IOException if the index can't be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            awaitPending();
+            final long elapsed = Math.max(System.currentTimeMillis() - startTime, 1L);
+            log.info("Indexed {} variations of VCF file {} in {} ms, {} variations/sec", parsedCount,
+                    vcfFile.getId(), elapsed, parsedCount * MILLIS_IN_SECOND / elapsed);
+        } finally {
+            try {
+                shutdownExecutor();
+            } finally {
+                this.writer.close();
+            }
+        }
+    }
+
+    private void shutdownExecutor() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
         try {
-            this.writer.close();
+            if (!executor.awaitTermination(TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Indexing threads of VCF file {} didn't stop in {} sec", vcfFile.getId(),
+                        TERMINATION_TIMEOUT_SECONDS);
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void addVariation(final VariantContext context, final Chromosome chromosome,
+                              final Set<String> sampleNames) {
+        VcfIndexEntry masterEntry = new VcfIndexEntry();
+        masterEntry.setUuid(UUID.randomUUID());
+        masterEntry.setFeatureId(context.getID());
+        masterEntry
+                .setChromosome(chromosome);
+        masterEntry.setStartIndex(context.getStart());
+        masterEntry.setEndIndex(context.getEnd());
+        masterEntry.setFeatureType(FeatureType.VARIATION);
+        masterEntry.setInfo(filterInfoByWhiteList(context, getFilterInfo(), getVcfHeader()));
+        masterEntry.setVariantContext(context);
+        masterEntry.setSampleNames(sampleNames);
+
+        final double qual = context.getPhredScaledQual();
+        masterEntry.setQuality(
+                MathUtils.equals(qual, VcfManager.HTSJDK_WRONG_QUALITY) ? 0D : qual);
+
+        final List<OrganismType> organismTypes = new ArrayList<>();
+        for (int i = 0; i < context.getAlternateAlleles().size(); i++) {
+            Variation variation = VcfFileReader.createVariation(context, getVcfHeader(), i);
+            organismTypes.addAll(variation.getGenotypeData().values().stream()
+                    .map(GenotypeData::getOrganismType).collect(Collectors.toList()));
+        }
+
+        if (!organismTypes.isEmpty() && organismTypes.stream()
+                .allMatch(type -> type.equals(OrganismType.NO_VARIATION))) {
+            return;
+        }
+
+        final VcfIndexEntry indexEntry = build(masterEntry, geneFiles, chromosome);
+        final Document document = creator.buildDocument(indexEntry, vcfFile.getId());
+        try {
+            writer.addDocument(facetsConfig.build(document));
         } catch (IOException e) {
-            log.error(e.getMessage(), e);
+            throw new IllegalArgumentException("Failed to create index", e);
+        }
+    }
+
+    private void awaitPending() {
+        // after a failure queued variations are discarded and will never release their permits
+        if (failure.get() == null) {
+            queuePermits.acquireUninterruptibly(queueSize);
+            queuePermits.release(queueSize);
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() {
+        final Throwable e = failure.get();
+        if (e != null) {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            throw new IllegalArgumentException("Failed to create index", e);
         }
     }
 }
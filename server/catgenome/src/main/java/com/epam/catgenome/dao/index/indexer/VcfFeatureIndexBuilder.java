@@ -26,7 +26,6 @@ package com.epam.catgenome.dao.index.indexer;
 
 import com.epam.catgenome.component.MessageHelper;
 import com.epam.catgenome.constant.MessagesConstants;
-import com.epam.catgenome.entity.gene.Gene;
 import com.epam.catgenome.entity.gene.GeneFile;
 import com.epam.catgenome.entity.index.FeatureIndexEntry;
 import com.epam.catgenome.entity.index.FeatureType;
@@ -42,7 +41,7 @@ import com.epam.catgenome.manager.FeatureIndexManager;
 import com.epam.catgenome.manager.GeneInfo;
 import com.epam.catgenome.manager.vcf.VcfManager;
 import com.epam.catgenome.manager.vcf.reader.VcfFileReader;
-import com.epam.catgenome.util.NggbIntervalTreeMap;
+import com.epam.catgenome.util.GeneIntervalIndex;
 import com.epam.catgenome.util.Utils;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFCompoundHeaderLine;
@@ -62,9 +61,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
-import static com.epam.catgenome.util.IndexUtils.fetchGeneIdsFromBatch;
 import static com.epam.catgenome.dao.index.indexer.BigVcfFeatureIndexBuilder.getSampleNames;
 
 /**
@@ -79,7 +78,7 @@ public class VcfFeatureIndexBuilder implements FeatureIndexBuilder<VariantContex
 
     private List<VcfIndexEntry> allEntries;
 
-    private Map<GeneFile, NggbIntervalTreeMap<List<Gene>>> intervalMapCache = new HashMap<>();
+    private Map<GeneFile, GeneIntervalIndex> geneIndexCache = new ConcurrentHashMap<>();
 
     public VcfFeatureIndexBuilder(VcfFilterInfo filterInfo,
                                   VCFHeader vcfHeader,
@@ -235,26 +234,16 @@ public class VcfFeatureIndexBuilder implements FeatureIndexBuilder<VariantContex
 
 
     public VcfIndexEntry build(final VcfIndexEntry entry, final List<GeneFile> geneFiles, final Chromosome chromosome) {
-        final int start = 0;
-        final int end = chromosome.getSize();
-
-        final List<VcfIndexEntry> indexEntries = fillEntryDetails(entry, geneFiles, chromosome, start, end);
+        final List<VcfIndexEntry> indexEntries = fillEntryDetails(entry, geneFiles, chromosome);
         return indexEntries.get(0);
     }
 
     @Override
     public List<VcfIndexEntry> build(final List<GeneFile> geneFiles, final Chromosome chromosome) {
         final List<VcfIndexEntry> processedEntries = new ArrayList<>();
-        int start = chromosome.getSize();
-        int end = 0;
-        for (FeatureIndexEntry entry : allEntries) {
-            start = Math.min(start, entry.getStartIndex());
-            end = Math.max(end, entry.getEndIndex());
-        }
-
         for (VcfIndexEntry indexEntry : allEntries) {
             List<VcfIndexEntry> filledEntries =
-                    fillEntryDetails(indexEntry, geneFiles, chromosome, start, end);
+                    fillEntryDetails(indexEntry, geneFiles, chromosome);
             processedEntries
                     .addAll(filledEntries);
         }
@@ -277,19 +266,16 @@ public class VcfFeatureIndexBuilder implements FeatureIndexBuilder<VariantContex
     }
 
     private List<VcfIndexEntry> fillEntryDetails(final VcfIndexEntry entry, final List<GeneFile> geneFiles,
-            final Chromosome chromosome, final int start, final int end) {
+            final Chromosome chromosome) {
         String geneIdsString = null;
         String geneNamesString = null;
         Set<GeneInfo> geneIds = Collections.emptySet();
 
         for (GeneFile geneFile : geneFiles) {
-            if (!intervalMapCache.containsKey(geneFile)) {
-                intervalMapCache.put(geneFile, featureIndexManager
-                        .loadGenesIntervalMap(Collections.singletonList(geneFile), start, end, chromosome));
-            }
-            NggbIntervalTreeMap<List<Gene>> intervalMap = intervalMapCache.get(geneFile);
+            GeneIntervalIndex geneIndex = geneIndexCache.computeIfAbsent(geneFile,
+                file -> featureIndexManager.loadGeneIntervalIndex(file, chromosome));
 
-            geneIds = fetchGeneIdsFromBatch(intervalMap, entry.getStartIndex(), entry.getEndIndex(), chromosome);
+            geneIds = geneIndex.fetchGeneInfos(entry.getStartIndex(), entry.getEndIndex());
             geneIdsString = geneIds.stream().map(GeneInfo::getGeneId).collect(Collectors.joining(", "));
             geneNamesString = geneIds.stream().map(GeneInfo::getGeneName).collect(Collectors.joining(", "));
             entry.setIsExon(geneIds.stream().anyMatch(GeneInfo::isExon));
@@ -411,6 +397,6 @@ public class VcfFeatureIndexBuilder implements FeatureIndexBuilder<VariantContex
     @Override
     public void clear() {
         this.allEntries.clear();
-        this.intervalMapCache.clear();
+        this.geneIndexCache.clear();
     }
 }
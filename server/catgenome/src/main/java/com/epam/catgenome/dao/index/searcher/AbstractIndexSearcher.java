@@ -25,20 +25,18 @@
 package com.epam.catgenome.dao.index.searcher;
 
 import com.epam.catgenome.dao.index.FeatureIndexDao;
+import com.epam.catgenome.dao.index.FeatureIndexReaderRegistry;
 import com.epam.catgenome.dao.index.indexer.AbstractDocumentBuilder;
 import com.epam.catgenome.entity.AbstractFilterForm;
 import com.epam.catgenome.entity.FeatureFile;
 import com.epam.catgenome.entity.index.FeatureIndexEntry;
 import com.epam.catgenome.entity.index.IndexSearchResult;
-import com.epam.catgenome.manager.FileManager;
 import org.apache.commons.collections4.CollectionUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.lucene.index.MultiReader;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.store.SimpleFSDirectory;
 
 import java.io.IOException;
 import java.util.Collections;
@@ -48,26 +46,23 @@ import java.util.concurrent.ExecutorService;
 public abstract class AbstractIndexSearcher<T extends FeatureIndexEntry, R extends AbstractFilterForm>
         implements LuceneIndexSearcher<T> {
     private FeatureIndexDao featureIndexDao;
-    private FileManager fileManager;
     private R filterForm;
     private ExecutorService executorService;
 
-    public AbstractIndexSearcher(final FeatureIndexDao featureIndexDao, final FileManager fileManager,
-                                 final R filterForm, final ExecutorService executorService) {
+    public AbstractIndexSearcher(final FeatureIndexDao featureIndexDao, final R filterForm,
+                                 final ExecutorService executorService) {
         this.featureIndexDao = featureIndexDao;
-        this.fileManager = fileManager;
         this.filterForm = filterForm;
         this.executorService = executorService;
     }
 
     public static <T extends FeatureIndexEntry, R extends AbstractFilterForm> LuceneIndexSearcher<T> getIndexSearcher(
-            final R filterForm, final FeatureIndexDao featureIndexDao, final FileManager fileManager,
-            final ExecutorService executorService) {
+            final R filterForm, final FeatureIndexDao featureIndexDao, final ExecutorService executorService) {
 
         if (filterForm.getPointer() != null) {
-            return new NextPageSearcher<T, R>(featureIndexDao, fileManager, filterForm, executorService);
+            return new NextPageSearcher<T, R>(featureIndexDao, filterForm, executorService);
         } else {
-            return new PagingSearcher<T, R>(featureIndexDao, fileManager, filterForm, executorService);
+            return new PagingSearcher<T, R>(featureIndexDao, filterForm, executorService);
         }
     }
 
@@ -78,17 +73,17 @@ public abstract class AbstractIndexSearcher<T extends FeatureIndexEntry, R exten
             return new IndexSearchResult<>(Collections.emptyList(), false, 0);
         }
 
-        final SimpleFSDirectory[] indexes = fileManager.getIndexesForFiles(files);
-        long indexSize = featureIndexDao.getTotalIndexSize(indexes);
-        if (indexSize > featureIndexDao.getLuceneIndexMaxSizeForGrouping() && filterForm.filterEmpty()) {
-            throw new IllegalArgumentException("Variations filter shall be specified");
-        }
+        try (FeatureIndexReaderRegistry.Lease lease = featureIndexDao.acquireIndexes(files)) {
+            long indexSize = featureIndexDao.getTotalIndexSize(lease.getDirectories());
+            if (indexSize > featureIndexDao.getLuceneIndexMaxSizeForGrouping() && filterForm.filterEmpty()) {
+                throw new IllegalArgumentException("Variations filter shall be specified");
+            }
 
-        try (MultiReader reader = featureIndexDao.openMultiReader(indexes)) {
+            final MultiReader reader = lease.getReader();
             if (reader.numDocs() == 0) {
                 return new IndexSearchResult<>(Collections.emptyList(), false, 0);
             }
-            final IndexSearcher searcher = new IndexSearcher(reader, executorService);
+            final IndexSearcher searcher = featureIndexDao.newSearcher(reader, executorService);
             final AbstractDocumentBuilder<T> documentCreator = AbstractDocumentBuilder
                     .createDocumentCreator(files.get(0).getFormat(), filterForm.getAdditionalFields());
             final IndexSearchResult<T> searchResults = performSearch(searcher, reader, query,
@@ -98,15 +93,11 @@ public abstract class AbstractIndexSearcher<T extends FeatureIndexEntry, R exten
                 searchResults.setTotalResultsCount(0);
             }
             return searchResults;
-        } finally {
-            for (SimpleFSDirectory index : indexes) {
-                IOUtils.closeQuietly(index);
-            }
         }
     }
 
     protected TopDocs performSearch(final IndexSearcher searcher, final Query query, final MultiReader reader,
-                                    int numDocs, final Sort sort) throws IOException {
+                                    final Integer numDocs, final Sort sort) throws IOException {
         return featureIndexDao.performSearch(searcher, query, reader, numDocs, sort);
     }
 
@@ -29,7 +29,6 @@ import com.epam.catgenome.dao.index.indexer.AbstractDocumentBuilder;
 import com.epam.catgenome.entity.AbstractFilterForm;
 import com.epam.catgenome.entity.index.FeatureIndexEntry;
 import com.epam.catgenome.entity.index.IndexSearchResult;
-import com.epam.catgenome.manager.FileManager;
 import org.apache.lucene.index.MultiReader;
 import org.apache.lucene.search.ConstantScoreQuery;
 import org.apache.lucene.search.IndexSearcher;
@@ -49,9 +48,9 @@ public class NextPageSearcher<T extends FeatureIndexEntry, R extends AbstractFil
     private ScoreDoc pointer;
     private Integer pageSize;
 
-    public NextPageSearcher(final FeatureIndexDao featureIndexDao, final FileManager fileManager,
-                            final R filterForm, final ExecutorService executorService) {
-        super(featureIndexDao, fileManager, filterForm, executorService);
+    public NextPageSearcher(final FeatureIndexDao featureIndexDao, final R filterForm,
+                            final ExecutorService executorService) {
+        super(featureIndexDao, filterForm, executorService);
         this.pointer = filterForm.getPointer().toScoreDoc();
         this.pageSize = filterForm.getPageSize();
     }
@@ -30,7 +30,6 @@ import com.epam.catgenome.dao.index.indexer.AbstractDocumentBuilder;
 import com.epam.catgenome.entity.AbstractFilterForm;
 import com.epam.catgenome.entity.index.FeatureIndexEntry;
 import com.epam.catgenome.entity.index.IndexSearchResult;
-import com.epam.catgenome.manager.FileManager;
 import org.apache.lucene.index.MultiReader;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
@@ -49,9 +48,9 @@ public class PagingSearcher<T extends FeatureIndexEntry, R extends AbstractFilte
     private final Integer page;
     private final Integer pageSize;
 
-    public PagingSearcher(final FeatureIndexDao featureIndexDao, final FileManager fileManager,
-                          final R filterForm, final ExecutorService executorService) {
-        super(featureIndexDao, fileManager, filterForm, executorService);
+    public PagingSearcher(final FeatureIndexDao featureIndexDao, final R filterForm,
+                          final ExecutorService executorService) {
+        super(featureIndexDao, filterForm, executorService);
         this.page = filterForm.getPage();
         this.pageSize = filterForm.getPageSize();
     }
@@ -61,7 +60,7 @@ public class PagingSearcher<T extends FeatureIndexEntry, R extends AbstractFilte
                                                  final Query query, final  Sort sort,
                                                  final AbstractDocumentBuilder<T> documentCreator)
             throws IOException {
-        final int numDocs = page == null ? reader.numDocs() : page * pageSize;
+        final Integer numDocs = page == null ? null : page * pageSize;
         final TopDocs docs = performSearch(searcher, query, reader, numDocs, sort);
 
         final int totalHits = docs.totalHits;
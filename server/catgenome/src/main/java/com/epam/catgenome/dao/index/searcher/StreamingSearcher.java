@@ -0,0 +1,140 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2021 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.epam.catgenome.dao.index.searcher;
+
+import com.epam.catgenome.dao.index.FeatureIndexDao;
+import com.epam.catgenome.dao.index.indexer.AbstractDocumentBuilder;
+import com.epam.catgenome.entity.AbstractFilterForm;
+import com.epam.catgenome.entity.index.FeatureIndexEntry;
+import com.epam.catgenome.entity.index.IndexSearchResult;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Passes all entries, matching a query, to a consumer instead of collecting them into a result. Unsorted results
+ * are streamed by a single collector pass in index order, sorted ones are read by a {@code searchAfter} cursor
+ * in batches of {@code pageSize} entries, so memory usage doesn't depend on the number of matching entries.
+ */
+public class StreamingSearcher<T extends FeatureIndexEntry, R extends AbstractFilterForm>
+        extends AbstractIndexSearcher<T, R> {
+
+    private final int batchSize;
+    private final EntryConsumer<T> consumer;
+
+    public StreamingSearcher(final FeatureIndexDao featureIndexDao, final R filterForm,
+                             final ExecutorService executorService, final EntryConsumer<T> consumer) {
+        super(featureIndexDao, filterForm, executorService);
+        this.batchSize = filterForm.getPageSize();
+        this.consumer = consumer;
+    }
+
+    /**
+     * @return a result without entries, containing only a number of entries, passed to the consumer
+     */
+    @Override
+    protected IndexSearchResult<T> performSearch(final IndexSearcher searcher, final MultiReader reader,
+                                                 final Query query, final Sort sort,
+                                                 final AbstractDocumentBuilder<T> documentCreator)
+            throws IOException {
+        final Query constantQuery = new ConstantScoreQuery(query);
+        final int count = sort == null
+                ? streamInIndexOrder(searcher, constantQuery, documentCreator)
+                : streamSorted(searcher, constantQuery, sort, documentCreator);
+        return new IndexSearchResult<>(Collections.emptyList(), false, count);
+    }
+
+    private int streamInIndexOrder(final IndexSearcher searcher, final Query query,
+                                   final AbstractDocumentBuilder<T> documentCreator) throws IOException {
+        final EntryCollector collector = new EntryCollector(searcher, documentCreator);
+        searcher.search(query, collector);
+        return collector.count;
+    }
+
+    private int streamSorted(final IndexSearcher searcher, final Query query, final Sort sort,
+                             final AbstractDocumentBuilder<T> documentCreator) throws IOException {
+        int count = 0;
+        TopDocs docs = searcher.search(query, batchSize, sort, false, false);
+        while (docs.scoreDocs.length > 0) {
+            for (ScoreDoc hit : docs.scoreDocs) {
+                consumer.accept(documentCreator.buildEntry(searcher, hit.doc));
+            }
+            count += docs.scoreDocs.length;
+            if (docs.scoreDocs.length < batchSize) {
+                break;
+            }
+            docs = searcher.searchAfter(docs.scoreDocs[docs.scoreDocs.length - 1], query, batchSize, sort,
+                    false, false);
+        }
+        return count;
+    }
+
+    /**
+     * Receives entries, found by a {@link StreamingSearcher}
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<T> {
+        void accept(T entry) throws IOException;
+    }
+
+    private final class EntryCollector extends SimpleCollector {
+
+        private final IndexSearcher searcher;
+        private final AbstractDocumentBuilder<T> documentCreator;
+        private int docBase;
+        private int count;
+
+        private EntryCollector(final IndexSearcher searcher, final AbstractDocumentBuilder<T> documentCreator) {
+            this.searcher = searcher;
+            this.documentCreator = documentCreator;
+        }
+
+        @Override
+        protected void doSetNextReader(final LeafReaderContext context) {
+            docBase = context.docBase;
+        }
+
+        @Override
+        public void collect(final int doc) throws IOException {
+            consumer.accept(documentCreator.buildEntry(searcher, docBase + doc));
+            count++;
+        }
+
+        @Override
+        public boolean needsScores() {
+            return false;
+        }
+    }
+}
@@ -27,6 +27,7 @@ package com.epam.catgenome.entity;
 import com.epam.catgenome.entity.vcf.Pointer;
 import lombok.Getter;
 import lombok.Setter;
+import org.apache.commons.lang3.StringUtils;
 
 import java.util.List;
 
@@ -38,6 +39,18 @@ public abstract class AbstractFilterForm {
 
     protected Pointer pointer;
 
+    /**
+     * An opaque token of the last entry of a previous page, an alternative to {@code pointer}
+     */
+    protected String cursor;
+
+    public Pointer getPointer() {
+        if (pointer == null && StringUtils.isNotBlank(cursor)) {
+            return Pointer.decode(cursor);
+        }
+        return pointer;
+    }
+
     public abstract boolean filterEmpty();
 
     public abstract List<String> getAdditionalFields();
@@ -46,6 +46,7 @@ public class BamQueryOption {
     private boolean filterVendorQualityFail = false;
     private boolean filterDuplicate = false;
     private boolean filterSupplementaryAlignment = false;
+    private boolean regionsDensity = false;
 
     @JsonIgnore
     private Long refID;
@@ -53,6 +54,8 @@ public class BamQueryOption {
     private String chromosomeName;
     @JsonIgnore
     private boolean downSampling = false;
+    @JsonIgnore
+    private BamTrackEncoding encoding = BamTrackEncoding.JSON;
 
     /**
      * Default constructor for representing missing options
@@ -193,6 +196,14 @@ public class BamQueryOption {
         this.filterSupplementaryAlignment = filterSupplementaryAlignment;
     }
 
+    public boolean isRegionsDensity() {
+        return regionsDensity;
+    }
+
+    public void setRegionsDensity(boolean regionsDensity) {
+        this.regionsDensity = regionsDensity;
+    }
+
     public BamTrackMode getMode() {
         return mode;
     }
@@ -200,4 +211,12 @@ public class BamQueryOption {
     public void setMode(BamTrackMode mode) {
         this.mode = mode;
     }
+
+    public BamTrackEncoding getEncoding() {
+        return encoding;
+    }
+
+    public void setEncoding(BamTrackEncoding encoding) {
+        this.encoding = encoding;
+    }
 }
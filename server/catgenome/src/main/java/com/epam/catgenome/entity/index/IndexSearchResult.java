@@ -123,6 +123,17 @@ public class IndexSearchResult<T extends FeatureIndexEntry> {
         this.pointer = pointer;
     }
 
+    /**
+     * @return an opaque token of the last returned entry, that should be passed in a filter to get the next page
+     */
+    public String getCursor() {
+        return pointer != null ? pointer.encode() : null;
+    }
+
+    public void setCursor(String cursor) {
+        this.pointer = cursor != null ? Pointer.decode(cursor) : null;
+    }
+
     public static <T extends FeatureIndexEntry> IndexSearchResult<T> empty() {
         return new IndexSearchResult<>(Collections.emptyList(), false, 0);
     }
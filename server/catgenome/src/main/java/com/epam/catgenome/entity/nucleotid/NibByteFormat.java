@@ -26,15 +26,12 @@ package com.epam.catgenome.entity.nucleotid;
 
 import static com.epam.catgenome.component.MessageHelper.getMessage;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 import org.springframework.util.Assert;
 
 import com.epam.catgenome.constant.Constants;
 import com.epam.catgenome.constant.MessagesConstants;
-import com.epam.catgenome.entity.reference.Sequence;
 
 /**
  * Represents the constants corresponding to the *.nib sequence file format. This format is a compressed
@@ -162,33 +159,6 @@ public enum NibByteFormat {
         return charCode;
     }
 
-    /**
-     * Returns an array of char, consist of nucleotides from nibArray
-     *
-     * @param startPosition  {@code int} start position at nibArray
-     * @param sequenceLength {@code int} length nucleotides to need
-     * @param nibArray       {@code byte[]} array reference if nib-code
-     * @return {@code char[]} array of char, consist of nucleotides from nibArray
-     */
-    public static List<Sequence> nibByteArrayToNucleotidesList(final int absolutePosition, final int startPosition,
-                                                         final int sequenceLength, final byte[] nibArray) {
-        Assert.notNull(nibArray, getMessage(MessagesConstants.ERROR_NO_SUCH_FILE));
-        Assert.isTrue(sequenceLength <= nibArray.length * 2, getMessage(MessagesConstants.ERROR_ARRAY_SO_SMALL));
-        int nibCode;
-        List<Sequence> result = new ArrayList<>();
-        for (int i = 0; i < sequenceLength; i++) {
-            if ((startPosition + i) % 2 == 0) {
-                nibCode = nibArray[(startPosition + i) >>> 1] & Constants.MASK_HIGH_BYTE;
-                nibCode = nibCode >> LOW_TO_HIGH_NIB_CODE_SHIFT;
-            } else {
-                nibCode = nibArray[(startPosition + i) >>> 1] & Constants.MASK_LOW_BYTE;
-            }
-            // i + absolutePosition + 1 - because at chromosome started at first index but ib array started from zero
-            result.add(new Sequence(i + absolutePosition + 1, FormatCoder.nibByteToString(nibCode)));
-        }
-        return result;
-    }
-
     public static byte nibCodeToByteNucleotide(final int nibCode) {
         Assert.isTrue(nibCode >= 0 && nibCode < Constants.CODING_ARRAY_LENGTH, messageErrorUnknownNibCode);
         byte charCode = NUCLEOTIDES_NIB_CODE_2_CHAR[nibCode];
@@ -0,0 +1,151 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.entity.reference;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * A compact representation of a nucleotide sequence: a {@code byte[]} of nucleotide characters with a position
+ * of the first nucleotide. It is exposed as an unmodifiable {@code List} of single nucleotide {@link Sequence}s for
+ * compatibility, list elements are created on demand. It is serialized to JSON directly from the byte array,
+ * in the same format as a list of {@link Sequence}s.
+ * <p>
+ * A reversed sequence holds nucleotides of a negative strand: its first nucleotide has the largest position.
+ * </p>
+ */
+@JsonSerialize(using = PackedSequence.PackedSequenceSerializer.class)
+public class PackedSequence extends AbstractList<Sequence> implements RandomAccess {
+
+    private static final int BYTE_VALUES = 256;
+    private static final int BYTE_MASK = 0xFF;
+    private static final String[] BASES = new String[BYTE_VALUES];
+
+    static {
+        for (int i = 0; i < BYTE_VALUES; i++) {
+            BASES[i] = String.valueOf((char) i);
+        }
+    }
+
+    private final int startIndex;
+    private final byte[] bases;
+    private final boolean reversed;
+
+    /**
+     * @param startIndex a position of the first nucleotide in a chromosome
+     * @param bases nucleotide characters
+     */
+    public PackedSequence(final int startIndex, final byte[] bases) {
+        this(startIndex, bases, false);
+    }
+
+    /**
+     * @param startIndex the smallest position of a nucleotide in a chromosome
+     * @param bases nucleotide characters
+     * @param reversed if true, positions of nucleotides decrease starting from the end of the sequence
+     */
+    public PackedSequence(final int startIndex, final byte[] bases, final boolean reversed) {
+        this.startIndex = startIndex;
+        this.bases = bases;
+        this.reversed = reversed;
+    }
+
+    public PackedSequence(final int startIndex, final String bases, final boolean reversed) {
+        this(startIndex, bases.getBytes(StandardCharsets.US_ASCII), reversed);
+    }
+
+    @Override
+    public Sequence get(final int index) {
+        final int position = getPosition(index);
+        return new Sequence(position, position, getBase(index));
+    }
+
+    @Override
+    public int size() {
+        return bases.length;
+    }
+
+    /**
+     * @param index of a nucleotide in the sequence
+     * @return a position of a nucleotide in a chromosome
+     */
+    public int getPosition(final int index) {
+        return reversed ? startIndex + bases.length - 1 - index : startIndex + index;
+    }
+
+    /**
+     * @param index of a nucleotide in the sequence
+     * @return a single character nucleotide string, strings are shared and not allocated per call
+     */
+    public String getBase(final int index) {
+        return BASES[bases[index] & BYTE_MASK];
+    }
+
+    public int getStartIndex() {
+        return startIndex;
+    }
+
+    public byte[] getBases() {
+        return bases;
+    }
+
+    public boolean isReversed() {
+        return reversed;
+    }
+
+    /**
+     * Writes a sequence in the same format as a list of {@link Sequence}s without creating them
+     */
+    public static class PackedSequenceSerializer extends JsonSerializer<PackedSequence> {
+
+        @Override
+        public void serialize(final PackedSequence value, final JsonGenerator generator,
+                              final SerializerProvider serializers) throws IOException {
+            generator.writeStartArray(value, value.size());
+            for (int i = 0; i < value.size(); i++) {
+                final int position = value.getPosition(i);
+                generator.writeStartObject();
+                generator.writeNumberField("startIndex", position);
+                generator.writeNumberField("endIndex", position);
+                generator.writeStringField("text", value.getBase(i));
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+
+        @Override
+        public boolean isEmpty(final SerializerProvider provider, final PackedSequence value) {
+            return value == null || value.isEmpty();
+        }
+    }
+}
@@ -24,7 +24,14 @@
 
 package com.epam.catgenome.entity.vcf;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -34,11 +41,13 @@ import lombok.NoArgsConstructor;
 import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.collections4.ListUtils;
 import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.util.BytesRef;
+import org.springframework.util.Assert;
 
 /**
  * Helper class to represent a pointer in Lucene search results
@@ -47,6 +56,11 @@ import org.apache.lucene.util.BytesRef;
 @NoArgsConstructor
 @Slf4j
 public class Pointer {
+
+    private static final byte CURSOR_VERSION = 1;
+    private static final int MAX_CURSOR_FIELDS = 64;
+    private static final String INVALID_CURSOR = "Invalid cursor";
+
     /** The score of this document for the query. */
     private float score;
 
@@ -93,6 +107,64 @@ public class Pointer {
         }
     }
 
+    /**
+     * Encodes the pointer into an opaque URL-safe token, that can be passed back by a client to get the next page
+     * @return a cursor token
+     */
+    public String encode() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(CURSOR_VERSION);
+            out.writeFloat(score);
+            out.writeInt(doc);
+            out.writeInt(shardIndex);
+            final List<FieldRef> refs = ListUtils.emptyIfNull(fields);
+            out.writeInt(refs.size());
+            for (FieldRef ref : refs) {
+                out.writeByte(ref.getType().ordinal());
+                out.writeBoolean(ref.getRef() != null);
+                if (ref.getRef() != null) {
+                    out.writeUTF(ref.getRef().toString());
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * Restores a pointer from a token, created by {@link #encode()}
+     * @param cursor a cursor token
+     * @return decoded pointer
+     * @throws IllegalArgumentException if a token is malformed
+     */
+    public static Pointer decode(final String cursor) {
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(Base64.getUrlDecoder().decode(cursor)))) {
+            Assert.isTrue(in.readByte() == CURSOR_VERSION, INVALID_CURSOR);
+            final Pointer pointer = new Pointer(in.readFloat(), in.readInt(), in.readInt());
+            final int fieldsCount = in.readInt();
+            Assert.isTrue(fieldsCount >= 0 && fieldsCount <= MAX_CURSOR_FIELDS, INVALID_CURSOR);
+            if (fieldsCount > 0) {
+                final FieldRef.FieldRefType[] types = FieldRef.FieldRefType.values();
+                final List<FieldRef> refs = new ArrayList<>(fieldsCount);
+                for (int i = 0; i < fieldsCount; i++) {
+                    final int type = in.readByte();
+                    Assert.isTrue(type >= 0 && type < types.length, INVALID_CURSOR);
+                    refs.add(FieldRef.builder()
+                            .type(types[type])
+                            .ref(in.readBoolean() ? in.readUTF() : null)
+                            .build());
+                }
+                pointer.setFields(refs);
+            }
+            return pointer;
+        } catch (IOException e) {
+            throw new IllegalArgumentException(INVALID_CURSOR, e);
+        }
+    }
+
     @Value
     @Builder
     public static class FieldRef {
@@ -30,6 +30,7 @@ import com.epam.catgenome.controller.vo.ItemsByProject;
 import com.epam.catgenome.dao.index.FeatureIndexDao;
 import com.epam.catgenome.dao.index.indexer.BigVcfFeatureIndexBuilder;
 import com.epam.catgenome.dao.index.searcher.LuceneIndexSearcher;
+import com.epam.catgenome.dao.index.searcher.StreamingSearcher;
 import com.epam.catgenome.entity.BaseEntity;
 import com.epam.catgenome.entity.BiologicalDataItemFormat;
 import com.epam.catgenome.entity.FeatureFile;
@@ -55,6 +56,7 @@ import com.epam.catgenome.entity.vcf.VcfFilterInfo;
 import com.epam.catgenome.exception.FeatureIndexException;
 import com.epam.catgenome.manager.bed.parser.NggbBedFeature;
 import com.epam.catgenome.manager.gene.GeneFileManager;
+import com.epam.catgenome.manager.gene.GeneIntervalIndexStore;
 import com.epam.catgenome.manager.gene.GeneUtils;
 import com.epam.catgenome.manager.gene.parser.GeneFeature;
 import com.epam.catgenome.manager.gene.parser.StrandSerializable;
@@ -65,11 +67,10 @@ import com.epam.catgenome.manager.reference.BookmarkManager;
 import com.epam.catgenome.manager.reference.ReferenceGenomeManager;
 import com.epam.catgenome.manager.vcf.VcfFileManager;
 import com.epam.catgenome.manager.vcf.VcfManager;
-import com.epam.catgenome.util.NggbIntervalTreeMap;
+import com.epam.catgenome.util.GeneIntervalIndex;
 import com.epam.catgenome.util.Utils;
 import com.epam.catgenome.util.feature.reader.AbstractFeatureReader;
 import htsjdk.samtools.util.CloseableIterator;
-import htsjdk.samtools.util.Interval;
 import htsjdk.tribble.Feature;
 import htsjdk.tribble.FeatureReader;
 import htsjdk.tribble.readers.LineIterator;
@@ -138,6 +139,9 @@ public class FeatureIndexManager {
     @Autowired
     private GeneFileManager geneFileManager;
 
+    @Autowired
+    private GeneIntervalIndexStore geneIntervalIndexStore;
+
     @Autowired
     private BookmarkManager bookmarkManager;
 
@@ -150,6 +154,9 @@ public class FeatureIndexManager {
     @Value("#{catgenome['search.indexer.buffer.size'] ?: 256}")
     private int indexBufferSize;
 
+    @Value("#{catgenome['search.indexer.threads'] ?: 4}")
+    private int indexThreads;
+
     @Value("#{catgenome['search.features.internal.max.results'] ?: 1000}")
     private int maxFeatureInternalSearchResultsCount;
 
@@ -306,12 +313,28 @@ public class FeatureIndexManager {
      */
     public List<Group> groupVariations(VcfFilterForm filterForm, long projectId, String groupByField)
         throws IOException {
+        return groupVariations(filterForm, projectId, groupByField, null);
+    }
+
+    /**
+     * Groups variations from specified {@link List} of {@link VcfFile}s by specified field, numeric values of the
+     * field may be grouped into ranges
+     * @param filterForm {@code VcfFilterForm}, setting filter options
+     * @param projectId a {@code Project}s ID to filter
+     * @param groupByField a field to perform grouping
+     * @param bucketSize a size of value ranges for numeric fields, null to group by distinct values
+     * @return a {@link List} of {@link Group}s, mapping field value or range to number of variations, having it
+     * @throws IOException if something goes wrong with the file system
+     */
+    public List<Group> groupVariations(VcfFilterForm filterForm, long projectId, String groupByField,
+                                       Double bucketSize) throws IOException {
         Project project = projectManager.load(projectId);
         List<VcfFile> files = project.getItems().stream()
             .filter(i -> i.getBioDataItem().getFormat() == BiologicalDataItemFormat.VCF)
             .map(i -> (VcfFile) i.getBioDataItem())
             .collect(Collectors.toList());
-        return featureIndexDao.groupVariations(files, filterForm.computeQuery(FeatureType.VARIATION), groupByField);
+        return featureIndexDao.groupVariations(files, filterForm.computeQuery(FeatureType.VARIATION), groupByField,
+                bucketSize);
     }
 
     /**
@@ -322,9 +345,24 @@ public class FeatureIndexManager {
      * @throws IOException if something goes wrong with the file system
      */
     public List<Group> groupVariations(VcfFilterForm filterForm, String groupByField)
+        throws IOException {
+        return groupVariations(filterForm, groupByField, null);
+    }
+
+    /**
+     * Groups variations from specified {@link List} of {@link VcfFile}s by specified field, numeric values of the
+     * field may be grouped into ranges
+     * @param filterForm {@code VcfFilterForm}, setting filter options
+     * @param groupByField a field to perform grouping
+     * @param bucketSize a size of value ranges for numeric fields, null to group by distinct values
+     * @return a {@link List} of {@link Group}s, mapping field value or range to number of variations, having it
+     * @throws IOException if something goes wrong with the file system
+     */
+    public List<Group> groupVariations(VcfFilterForm filterForm, String groupByField, Double bucketSize)
         throws IOException {
         List<VcfFile> files = vcfFileManager.loadVcfFiles(filterForm.getVcfFileIds());
-        return featureIndexDao.groupVariations(files, filterForm.computeQuery(FeatureType.VARIATION), groupByField);
+        return featureIndexDao.groupVariations(files, filterForm.computeQuery(FeatureType.VARIATION), groupByField,
+                bucketSize);
     }
 
     /**
@@ -339,6 +377,40 @@ public class FeatureIndexManager {
         return getVcfSearchResult(filterForm, files);
     }
 
+    /**
+     * Passes all variations, satisfying a filter, to a consumer by a single index scan. Filter's page size sets
+     * a number of entries, read at once from a sorted result.
+     *
+     * @param filterForm {@code VcfFilterForm}, setting filter options
+     * @param consumer   receives found variations
+     * @throws IOException
+     */
+    public void streamVariations(final VcfFilterForm filterForm,
+                                final StreamingSearcher.EntryConsumer<VcfIndexEntry> consumer) throws IOException {
+        final List<VcfFile> files = vcfFileManager.loadVcfFiles(filterForm.getVcfFileIds());
+        final Sort sort = featureIndexDao.createVcfSorting(filterForm.getOrderBy(), files);
+        new StreamingSearcher<>(featureIndexDao, filterForm, taskExecutorService.getSearchExecutor(), consumer)
+                .getSearchResults(files, filterForm.computeQuery(FeatureType.VARIATION), sort);
+    }
+
+    /**
+     * Passes all genes, satisfying a filter, to a consumer by a single index scan. Filter's page size sets
+     * a number of entries, read at once from a sorted result.
+     *
+     * @param filterForm   {@code GeneFilterForm}, setting filter options
+     * @param featureFiles files to search
+     * @param consumer     receives found genes
+     * @throws IOException
+     */
+    public void streamGenes(final GeneFilterForm filterForm, final List<? extends FeatureFile> featureFiles,
+                           final StreamingSearcher.EntryConsumer<GeneIndexEntry> consumer) throws IOException {
+        final Sort sort = Optional.ofNullable(
+                featureIndexDao.createGeneSorting(filterForm.getOrderBy(), featureFiles))
+                .orElseGet(filterForm::defaultSort);
+        new StreamingSearcher<>(featureIndexDao, filterForm, taskExecutorService.getSearchExecutor(), consumer)
+                .getSearchResults(featureFiles, filterForm.computeQuery(), sort);
+    }
+
     /**
      * Loads Gene feature content by 'uid' Lucene document field
      *
@@ -380,7 +452,10 @@ public class FeatureIndexManager {
         try {
             final GeneFile geneFile = geneFileManager.load(fileId);
             final Gene.Origin geneFileType = AbstractGeneReader.getOrigin(geneFile);
-            return featureIndexDao.updateGeneFeatureByUid(geneFile, uid, geneContent, geneFileType);
+            final GeneHighLevel updated = featureIndexDao.updateGeneFeatureByUid(geneFile, uid, geneContent,
+                    geneFileType);
+            geneIntervalIndexStore.evict(fileId);
+            return updated;
         } catch (IOException e) {
             throw new IllegalStateException(e);
         }
@@ -388,9 +463,9 @@ public class FeatureIndexManager {
 
     private IndexSearchResult<VcfIndexEntry> getVcfSearchResult(final VcfFilterForm filterForm,
             final List<VcfFile> vcfFiles) throws IOException {
-        if (filterForm.getPage() != null && filterForm.getPageSize() != null) {
+        if ((filterForm.getPage() != null || filterForm.getPointer() != null) && filterForm.getPageSize() != null) {
             final LuceneIndexSearcher<VcfIndexEntry> indexSearcher =
-                    getIndexSearcher(filterForm, featureIndexDao, fileManager, taskExecutorService.getSearchExecutor());
+                    getIndexSearcher(filterForm, featureIndexDao, taskExecutorService.getSearchExecutor());
             final Sort sort = featureIndexDao.createVcfSorting(filterForm.getOrderBy(), vcfFiles);
             final IndexSearchResult<VcfIndexEntry> res =
                     indexSearcher.getSearchResults(vcfFiles, filterForm.computeQuery(FeatureType.VARIATION), sort);
@@ -410,7 +485,7 @@ public class FeatureIndexManager {
                                                                      final List<? extends FeatureFile> featureFiles)
             throws IOException {
         final LuceneIndexSearcher<GeneIndexEntry> indexSearcher =
-                getIndexSearcher(filterForm, featureIndexDao, fileManager, taskExecutorService.getSearchExecutor());
+                getIndexSearcher(filterForm, featureIndexDao, taskExecutorService.getSearchExecutor());
         final Sort sort = Optional.ofNullable(
                 featureIndexDao.createGeneSorting(filterForm.getOrderBy(), featureFiles))
                 .orElseGet(filterForm::defaultSort);
@@ -614,13 +689,11 @@ public class FeatureIndexManager {
 
         VCFHeader vcfHeader = (VCFHeader) reader.getHeader();
 
-        try {
+        try (BigVcfFeatureIndexBuilder indexer = new BigVcfFeatureIndexBuilder(info, vcfHeader, this,
+                vcfFile, fileManager, geneFiles, indexBufferSize, indexThreads)) {
             CloseableIterator<VariantContext> iterator = reader.iterator();
             String currentKey = null;
             VariantContext variantContext = null;
-            BigVcfFeatureIndexBuilder indexer =
-                    new BigVcfFeatureIndexBuilder(info, vcfHeader, this,
-                            vcfFile, fileManager, geneFiles, indexBufferSize);
 
             while (iterator.hasNext()) {
                 variantContext = iterator.next();
@@ -642,7 +715,6 @@ public class FeatureIndexManager {
                                 currentKey));
                 indexer.clear();
             }
-            indexer.close();
         } catch (IOException e) {
             throw new FeatureIndexException(vcfFile, e);
         }
@@ -677,34 +749,21 @@ public class FeatureIndexManager {
         }
     }
 
-    public NggbIntervalTreeMap<List<Gene>> loadGenesIntervalMap(final List<GeneFile> geneFiles, final int start,
-                                                                final int end, final Chromosome chromosome) {
-        final NggbIntervalTreeMap<List<Gene>> genesRangeMap = new NggbIntervalTreeMap<>();
+    /**
+     * Returns an index of genes and exons of a chromosome, cached across registrations of files against
+     * the same annotation
+     *
+     * @param geneFile   a {@code GeneFile} to load genes from
+     * @param chromosome a {@code Chromosome} to load genes for
+     * @return a {@link GeneIntervalIndex}, empty if the gene file's feature index can't be read
+     */
+    public GeneIntervalIndex loadGeneIntervalIndex(final GeneFile geneFile, final Chromosome chromosome) {
         try {
-            IndexSearchResult<FeatureIndexEntry> searchResult = featureIndexDao.searchFeaturesInInterval(geneFiles,
-                    start, end, chromosome);
-            searchResult.getEntries().stream()
-                    .filter(f -> f.getFeatureType() == FeatureType.EXON || f.getFeatureType() == FeatureType.GENE)
-                    .map(f -> {
-                        Gene gene = new Gene();
-                        gene.setFeature(f.getFeatureType().name());
-                        gene.setStartIndex(f.getStartIndex());
-                        gene.setEndIndex(f.getEndIndex());
-                        gene.setGroupId(f.getFeatureId());
-                        gene.setFeatureName(f.getFeatureName().toUpperCase());
-                        return gene;
-                    })
-                    .forEach(g -> {
-                        Interval interval = new Interval(chromosome.getName(), g.getStartIndex(), g.getEndIndex());
-                        genesRangeMap.putIfAbsent(interval, new ArrayList<>());
-                        genesRangeMap.get(interval).add(g);
-                    });
+            return geneIntervalIndexStore.getIndex(geneFile, chromosome);
         } catch (IOException e) {
             LOGGER.error(e.getMessage(), e);
+            return GeneIntervalIndex.builder().build();
         }
-        genesRangeMap.setMaxEndIndex(start);
-        genesRangeMap.setMinStartIndex(end);
-        return genesRangeMap;
     }
 
     public void addGeneFeatureToIndex(final List<FeatureIndexEntry> allEntries, final GeneFeature feature,
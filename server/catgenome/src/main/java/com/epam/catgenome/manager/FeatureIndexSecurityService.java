@@ -47,6 +47,7 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -93,16 +94,18 @@ public class FeatureIndexSecurityService {
 
     @AclFilter
     @PreAuthorize(ROLE_USER)
-    public byte[] exportVariations(final VcfExportFilterForm filterForm,
-                                   final FileFormat format,
-                                   final boolean includeHeader) throws IOException {
-        return exportManager.exportVariations(filterForm, format, includeHeader);
+    public void exportVariations(final VcfExportFilterForm filterForm,
+                                 final FileFormat format,
+                                 final boolean includeHeader,
+                                 final OutputStream outputStream) throws IOException {
+        exportManager.exportVariations(filterForm, format, includeHeader, outputStream);
     }
 
     @AclFilter
     @PreAuthorize(ROLE_USER)
-    public List<Group> groupVariations(VcfFilterForm filterForm, String groupBy) throws IOException {
-        return featureIndexManager.groupVariations(filterForm, groupBy);
+    public List<Group> groupVariations(VcfFilterForm filterForm, String groupBy, Double bucketSize)
+            throws IOException {
+        return featureIndexManager.groupVariations(filterForm, groupBy, bucketSize);
     }
 
     @PreAuthorize(ROLE_ADMIN + OR + READ_PROJECT_BY_ID)
@@ -120,8 +123,9 @@ public class FeatureIndexSecurityService {
 
     @AclFilter
     @PreAuthorize(ROLE_ADMIN + OR + READ_PROJECT_BY_ID)
-    public List<Group> groupVariations(VcfFilterForm filterForm, long projectId, String groupBy) throws IOException {
-        return featureIndexManager.groupVariations(filterForm, projectId, groupBy);
+    public List<Group> groupVariations(VcfFilterForm filterForm, long projectId, String groupBy,
+                                       Double bucketSize) throws IOException {
+        return featureIndexManager.groupVariations(filterForm, projectId, groupBy, bucketSize);
     }
 
     @PreAuthorize(ROLE_ADMIN + OR + READ_PROJECT_BY_ID)
@@ -146,10 +150,11 @@ public class FeatureIndexSecurityService {
     }
 
     @PreAuthorize(ROLE_USER)
-    public byte[] exportFeaturesByReference(final GeneExportFilterForm geneFilterForm,
-                                            final Long referenceId,
-                                            final FileFormat format,
-                                            final boolean includeHeader) throws IOException {
-        return exportManager.exportGenesByReference(geneFilterForm, referenceId, format, includeHeader);
+    public void exportFeaturesByReference(final GeneExportFilterForm geneFilterForm,
+                                          final Long referenceId,
+                                          final FileFormat format,
+                                          final boolean includeHeader,
+                                          final OutputStream outputStream) throws IOException {
+        exportManager.exportGenesByReference(geneFilterForm, referenceId, format, includeHeader, outputStream);
     }
 }
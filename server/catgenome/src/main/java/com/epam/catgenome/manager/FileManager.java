@@ -28,6 +28,7 @@ import static com.epam.catgenome.component.MessageHelper.getMessage;
 import static com.epam.catgenome.manager.FileManager.FilePathFormat.*;
 import static com.epam.catgenome.manager.FileManager.FilePathPlaceholder.*;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
@@ -35,10 +36,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.ByteOrder;
@@ -50,6 +49,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -64,11 +64,14 @@ import javax.annotation.PostConstruct;
 import com.epam.catgenome.component.MessageCode;
 import com.epam.catgenome.constant.MessagesConstants;
 import com.epam.catgenome.controller.JsonMapper;
+import com.epam.catgenome.dao.index.FeatureIndexReaderRegistry;
+import com.epam.catgenome.dao.index.FeatureIndexWriterRegistry;
 import com.epam.catgenome.entity.BaseEntity;
 import com.epam.catgenome.entity.BiologicalDataItem;
 import com.epam.catgenome.entity.BiologicalDataItemFormat;
 import com.epam.catgenome.entity.BiologicalDataItemResourceType;
 import com.epam.catgenome.entity.FeatureFile;
+import com.epam.catgenome.entity.bam.BamFile;
 import com.epam.catgenome.entity.bed.BedFile;
 import com.epam.catgenome.entity.file.FsDirectory;
 import com.epam.catgenome.entity.file.FsFile;
@@ -95,10 +98,13 @@ import com.epam.catgenome.manager.reference.io.FastaUtils;
 import com.epam.catgenome.manager.seg.parser.SegCodec;
 import com.epam.catgenome.manager.seg.parser.SegFeature;
 import com.epam.catgenome.manager.wig.reader.BedGraphCodec;
-import com.epam.catgenome.manager.wig.reader.BedGraphFeature;
 import com.epam.catgenome.util.BlockCompressedDataInputStream;
 import com.epam.catgenome.util.BlockCompressedDataOutputStream;
+import com.epam.catgenome.util.HistogramPyramid;
 import com.epam.catgenome.util.IndexUtils;
+import com.epam.catgenome.util.feature.pipeline.FeaturePipeline;
+import com.epam.catgenome.util.feature.pipeline.IndexingFeatureWriter;
+import com.epam.catgenome.util.feature.pipeline.TabixIndexConsumer;
 import com.epam.catgenome.util.NgbFileUtils;
 import com.epam.catgenome.util.PositionalOutputStream;
 import com.epam.catgenome.util.Utils;
@@ -123,7 +129,6 @@ import htsjdk.tribble.util.LittleEndianOutputStream;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFCodec;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.text.StrSubstitutor;
 import org.apache.commons.lang3.tuple.ImmutablePair;
@@ -166,13 +171,18 @@ public class FileManager {
     private static final TabixFormat BIGMAF_TABIX_FORMAT = new TabixFormat(TabixFormat.UCSC_FLAGS, 6, 7, 8, '#', 0);
     private static final String JSON_FILE_EXTENSION = ".json";
     private static final String EMPTY = "";
-    public static final String BED_GRAPH_FEATURE_TEMPLATE = "%s\t%d\t%d\t%f%n";
 
     private static final String ROOT_DIR_NAME = "42";
     private static final String FILE_SYSTEM_ROOT = "/";
 
     @Autowired(required = false)
     private EhCacheBasedIndexCache indexCache;
+
+    @Autowired(required = false)
+    private FeatureIndexReaderRegistry indexReaderRegistry;
+
+    @Autowired(required = false)
+    private FeatureIndexWriterRegistry indexWriterRegistry;
     /**
      * Provides paths' patterns that have to be used to construct real relative paths
      * for file resources of any types.
@@ -194,6 +204,7 @@ public class FileManager {
         REF_CHROMOSOME_SEQUENCE_FILE("/references/${DIR_ID}/chromosomes/${CHROMOSOME_NAME}/sequences.nib"),
         REF_CHROMOSOME_SEQUENCE_INDEX_FILE("/references/${DIR_ID}/chromosomes/${CHROMOSOME_NAME}/sequences.nib.ind"),
         REF_CHROMOSOME_CYTOBAND_FILE("/references/${DIR_ID}/chromosomes/${CHROMOSOME_NAME}/cytobands.txt"),
+        REF_CHROMOSOME_MOTIF_INDEX_FILE("/references/${DIR_ID}/chromosomes/${CHROMOSOME_NAME}/motifs.kmi"),
         REF_INDEX_FILE("/references/${DIR_ID}/${REF_NAME}.fai"),
 
         // think to do it in other way?
@@ -224,6 +235,11 @@ public class FileManager {
 
         BAM_DIR("/${ROOT_DIR_NAME}/BAM/${DIR_ID}"),
         BAM_FILE("/${ROOT_DIR_NAME}/BAM/${DIR_ID}/${FILE_NAME}"),
+        BAM_COVERAGE_DIR("/${ROOT_DIR_NAME}/BAM/${DIR_ID}/coverage"),
+        BAM_COVERAGE_FILE("/${ROOT_DIR_NAME}/BAM/${DIR_ID}/coverage/${CHROMOSOME_NAME}.cov"),
+
+        HEATMAP_DIR("/${ROOT_DIR_NAME}/heatmap/${DIR_ID}"),
+        HEATMAP_TILES_FILE("/${ROOT_DIR_NAME}/heatmap/${DIR_ID}/content.hmt"),
 
         BED_DIR("/${ROOT_DIR_NAME}/bed/${DIR_ID}"),
         BED_INDEX("/${ROOT_DIR_NAME}/bed/${DIR_ID}/bed.tbi"),
@@ -251,6 +267,7 @@ public class FileManager {
         WIG_DIR("/${ROOT_DIR_NAME}/wig/${DIR_ID}/downsampled"),
         WIG_FILE("/${ROOT_DIR_NAME}/wig/${DIR_ID}/downsampled/${CHROMOSOME_NAME}.wig"),
         BED_GRAPH_FILE("/${ROOT_DIR_NAME}/wig/${DIR_ID}/downsampled.bdg"),
+        BED_GRAPH_PYRAMID_FILE("/${ROOT_DIR_NAME}/wig/${DIR_ID}/downsampled/${CHROMOSOME_NAME}.bgp"),
 
         VG_DIR("/${ROOT_DIR_NAME}/vg/${DIR_ID}"),
 
@@ -559,6 +576,37 @@ public class FileManager {
         return new BlockCompressedDataOutputStream(new File(toRealPath(chromosome.getPath())));
     }
 
+    /**
+     * Returns a reference on a file, used to store a k-mer index for motif search of a chromosome
+     * @param referenceId ID of a reference genome to write an index for
+     * @param chromosomeName name of a chromosome to write an index for
+     * @return {@code File} for a motif index
+     */
+    public File makeMotifIndexFile(final Long referenceId, final String chromosomeName) {
+        Assert.notNull(referenceId, getMessage(MessageCode.NO_SUCH_REFERENCE));
+        Assert.isTrue(StringUtils.isNotBlank(chromosomeName), getMessage(MessagesConstants.ERROR_NO_CHROMOSOME_NAME));
+        final Map<String, Object> params = new HashMap<>();
+        params.put(DIR_ID.name(), referenceId);
+        params.put(CHROMOSOME_NAME.name(), chromosomeName);
+        makeDir(substitute(REF_CHROMOSOME_DIR, params));
+        return new File(toRealPath(substitute(REF_CHROMOSOME_MOTIF_INDEX_FILE, params)));
+    }
+
+    /**
+     * Returns a k-mer index for motif search of a chromosome
+     * @param referenceId ID of a reference genome
+     * @param chromosomeName name of a chromosome
+     * @return {@code File} with a motif index or null, if a chromosome wasn't indexed
+     */
+    public File getMotifIndexFile(final Long referenceId, final String chromosomeName) {
+        Assert.notNull(referenceId, getMessage(MessageCode.NO_SUCH_REFERENCE));
+        final Map<String, Object> params = new HashMap<>();
+        params.put(DIR_ID.name(), referenceId);
+        params.put(CHROMOSOME_NAME.name(), chromosomeName);
+        final File file = new File(toRealPath(substitute(REF_CHROMOSOME_MOTIF_INDEX_FILE, params)));
+        return file.exists() ? file : null;
+    }
+
     /**
      * Creates a BufferedInputStream for a file with reference (.nib)
      *
@@ -571,6 +619,17 @@ public class FileManager {
         return makeBlockCompressedDataInputStream(referenceId, chromosomeName, REF_CHROMOSOME_SEQUENCE_FILE);
     }
 
+    /**
+     * Returns a reference on the block-compressed file (.nib), storing a sequence of a chromosome
+     *
+     * @param referenceId {@code Long} represents ID of a reference in the system
+     * @param chromosomeName name of a chromosome
+     * @return {@code File} with chromosome sequence in the Nib format
+     */
+    public File getRefSequenceFile(final Long referenceId, final String chromosomeName) {
+        return getChromosomeFile(referenceId, chromosomeName, REF_CHROMOSOME_SEQUENCE_FILE);
+    }
+
     /**
      * Creates a {@code BlockCompressedDataInputStream} for reading GC content data of a chromosome, specified by
      * reference ID and chromosome name
@@ -652,6 +711,10 @@ public class FileManager {
     private BlockCompressedDataInputStream makeBlockCompressedDataInputStream(final Long referenceId,
                                                                               final String chromosomeName,
                                                                               FilePathFormat path) throws IOException {
+        return new BlockCompressedDataInputStream(getChromosomeFile(referenceId, chromosomeName, path));
+    }
+
+    private File getChromosomeFile(final Long referenceId, final String chromosomeName, FilePathFormat path) {
         Assert.notNull(referenceId, getMessage(MessageCode.NO_SUCH_REFERENCE));
 
         final Map<String, Object> params = new HashMap<>();
@@ -663,7 +726,7 @@ public class FileManager {
                      toRealPath(substitute(path, params)));
         final File file = new File(toRealPath(substitute(path, params)));
         Assert.isTrue(file.exists(), getMessage(MessagesConstants.ERROR_NO_SUCH_FILE, referenceId, chromosomeName));
-        return new BlockCompressedDataInputStream(file);
+        return file;
     }
 
     /**
@@ -879,44 +942,61 @@ public class FileManager {
         return new SimpleFSDirectory(file.toPath());
     }
 
-    public SimpleFSDirectory[] getIndexesForFiles(final List<? extends FeatureFile> featureFiles) throws IOException {
-        if (CollectionUtils.isEmpty(featureFiles)) {
-            return null;
-        }
-
-        List<SimpleFSDirectory> indexes = new ArrayList<>();
-        try {
-            for (int i = 0; i < featureFiles.size(); i++) {
-                FeatureFile featureFile = featureFiles.get(i);
+    /**
+     * Returns a path to Lucene index directory of a project, regardless of its existence
+     *
+     * @param projectId an ID of a project, which feature index directory to fetch
+     * @return a path to index directory
+     */
+    public Path getIndexPathForProject(final long projectId) {
+        final Map<String, Object> params = new HashMap<>();
+        params.put(PROJECT_ID.name(), projectId);
 
-                final Map<String, Object> params = new HashMap<>();
-                params.put(FilePathPlaceholder.ROOT_DIR_NAME.name(), ROOT_DIR_NAME);
-                params.put(DIR_ID.name(), featureFile.getId());
+        return Paths.get(toRealPath(substitute(PROJECT_FEATURE_INDEX_FILE, params)));
+    }
 
-                FilePathFormat format = determineFilePathFormat(featureFile);
+    /**
+     * Returns paths to existing Lucene index directories of specified feature files
+     *
+     * @param featureFiles files, which index directories to fetch
+     * @return a {@code List} of paths to index directories, files without an index are skipped
+     */
+    public List<Path> getIndexPathsForFiles(final List<? extends FeatureFile> featureFiles) {
+        if (CollectionUtils.isEmpty(featureFiles)) {
+            return Collections.emptyList();
+        }
 
-                params.put(FEATURE_FILE_DIR.name(), substitute(format, params));
-                File file = new File(toRealPath(substitute(FEATURE_INDEX_DIR, params)));
-                if (file.exists()) {
-                    indexes.add(new SimpleFSDirectory(file.toPath()));
-                }
-            }
-        } catch (IOException e) {
-            for (SimpleFSDirectory index : indexes) {
-                if (index != null) {
-                    IOUtils.closeQuietly(index);
-                }
+        final List<Path> indexPaths = new ArrayList<>();
+        for (FeatureFile featureFile : featureFiles) {
+            final Path indexPath = getIndexPathForFile(featureFile);
+            if (indexPath.toFile().exists()) {
+                indexPaths.add(indexPath);
             }
-
-            throw e;
         }
 
-        if (indexes.isEmpty()) {
+        if (indexPaths.isEmpty()) {
             LOGGER.info(getMessage(MessagesConstants.INFO_FEATURE_INDEX_NOT_FOUND,
                     featureFiles.stream().map(BaseEntity::getName).collect(Collectors.joining(", "))));
         }
 
-        return indexes.toArray(new SimpleFSDirectory[indexes.size()]);
+        return indexPaths;
+    }
+
+    /**
+     * Returns a path to Lucene index directory of a FeatureFile, regardless of its existence
+     *
+     * @param featureFile a file to get index directory for
+     * @return a path to index directory
+     */
+    public Path getIndexPathForFile(final FeatureFile featureFile) {
+        final Map<String, Object> params = new HashMap<>();
+        params.put(FilePathPlaceholder.ROOT_DIR_NAME.name(), ROOT_DIR_NAME);
+        params.put(DIR_ID.name(), featureFile.getId());
+
+        FilePathFormat format = determineFilePathFormat(featureFile);
+
+        params.put(FEATURE_FILE_DIR.name(), substitute(format, params));
+        return Paths.get(toRealPath(substitute(FEATURE_INDEX_DIR, params)));
     }
 
     /**
@@ -937,22 +1017,18 @@ public class FileManager {
     }
 
     /**
-     * Creates index for a FeatureFile
+     * Creates index for a FeatureFile to be written by a caller's own {@code IndexWriter}. A shared writer of
+     * the index, if it is open, is committed and closed first, so that it doesn't hold a write lock of the index.
      * @param featureFile a file to create index for
      * @return an index, represented by {@code SimpleFSDirectory} object
      * @throws IOException if something is wrong with access to file system
      */
     public SimpleFSDirectory createIndexForFile(FeatureFile featureFile) throws IOException {
-        final Map<String, Object> params = new HashMap<>();
-        params.put(FilePathPlaceholder.ROOT_DIR_NAME.name(), ROOT_DIR_NAME);
-        params.put(DIR_ID.name(), featureFile.getId());
-
-        FilePathFormat format = determineFilePathFormat(featureFile);
-
-        params.put(FEATURE_FILE_DIR.name(), substitute(format, params));
-        File file = new File(toRealPath(substitute(FEATURE_INDEX_DIR, params)));
-
-        return new SimpleFSDirectory(file.toPath());
+        final Path indexPath = getIndexPathForFile(featureFile);
+        if (indexWriterRegistry != null) {
+            indexWriterRegistry.close(indexPath);
+        }
+        return new SimpleFSDirectory(indexPath);
     }
 
     /**
@@ -970,6 +1046,7 @@ public class FileManager {
         params.put(FEATURE_FILE_DIR.name(), substitute(format, params));
         File dir = new File(toRealPath(substitute(FEATURE_INDEX_DIR, params)));
 
+        evictIndexReader(dir.toPath());
         if (dir.exists()) {
             deleteDir(substitute(FEATURE_INDEX_DIR, params));
         }
@@ -1039,50 +1116,18 @@ public class FileManager {
         LOGGER.info(getMessage(MessagesConstants.INFO_HISTOGRAM_WRITE, featureFile.getId(),
                                featureFile.getName()));
 
-        try (DataOutputStream dataOutputStream = makeHistogramOutputStream(featureFile, chromosomeName)) {
-            for (Wig wig : histogram) {
-                dataOutputStream.writeInt(wig.getStartIndex());
-                dataOutputStream.writeInt(wig.getEndIndex());
-                dataOutputStream.writeFloat(wig.getValue());
-            }
-        }
+        HistogramPyramid.write(makeHistogramFile(featureFile, chromosomeName), histogram);
     }
 
-    private DataOutputStream makeHistogramOutputStream(FeatureFile featureFile, final String chromosomeName)
-            throws IOException {
+    private File makeHistogramFile(FeatureFile featureFile, final String chromosomeName) {
         final Map<String, Object> params = new HashMap<>();
         params.put(DIR_ID.name(), featureFile.getId());
         params.put(FilePathPlaceholder.ROOT_DIR_NAME.name(), ROOT_DIR_NAME);
 
-        FilePathFormat dirPathFormat = null;
-        FilePathFormat filePathFormat = null;
-        if (featureFile instanceof VcfFile) {
-            dirPathFormat = VCF_HISTOGRAM_DIR;
-            filePathFormat = VCF_HISTOGRAM_FILE;
-        }
-        if (featureFile instanceof GeneFile) {
-            dirPathFormat = GENE_HISTOGRAM_DIR;
-            filePathFormat = GENE_HISTOGRAM_FILE;
-        }
-        if (featureFile instanceof BedFile) {
-            dirPathFormat = BED_HISTOGRAM_DIR;
-            filePathFormat = BED_HISTOGRAM_FILE;
-        }
-        if (dirPathFormat == null) {
-            throw new IllegalArgumentException(getMessage(MessagesConstants.ERROR_UNSUPPORTED_FEATURE_FILE_TYPE,
-                    featureFile.getClass().getName()));
-        }
-
-        makeDir(substitute(dirPathFormat, params));
+        makeDir(substitute(getHistogramDirPathFormat(featureFile), params));
 
         params.put(CHROMOSOME_NAME.name(), chromosomeName);
-        File histogramFile = new File(toRealPath(substitute(filePathFormat, params)));
-        if (histogramFile.exists()) {
-            histogramFile.delete();
-        }
-        Assert.isTrue(histogramFile.createNewFile(), "Can't create histogram file " + histogramFile.getAbsolutePath());
-
-        return new DataOutputStream(new FileOutputStream(histogramFile));
+        return new File(toRealPath(substitute(getHistogramFilePathFormat(featureFile), params)));
     }
 
     private FilePathFormat getHistogramDirPathFormat(final FeatureFile featureFile) {
@@ -1132,27 +1177,33 @@ public class FileManager {
      * @throws IOException
      */
     public List<Wig> loadHistogram(final FeatureFile featureFile, final String chromosomeName) throws IOException {
+        return HistogramPyramid.read(getHistogramFile(featureFile, chromosomeName));
+    }
+
+    /**
+     * Loads histogram blocks, intersecting a window, for a specified {@code FeatureFile} and chromosome name. Blocks
+     * are taken from the most detailed zoom level, that has no more than {@code maxBlocks} blocks in the window.
+     *
+     * @param featureFile    a {@code FeatureFile} to load histogram for
+     * @param chromosomeName {@code String} a name of a chromosome to load histogram for
+     * @param startIndex     start of the window
+     * @param endIndex       end of the window, inclusive
+     * @param maxBlocks      desired maximum number of histogram blocks
+     * @return a histogram as a {@code List} of {@code Wig} objects
+     * @throws IOException
+     */
+    public List<Wig> loadHistogram(final FeatureFile featureFile, final String chromosomeName, final int startIndex,
+                                   final int endIndex, final int maxBlocks) throws IOException {
+        return HistogramPyramid.read(getHistogramFile(featureFile, chromosomeName), startIndex, endIndex, maxBlocks);
+    }
+
+    private File getHistogramFile(final FeatureFile featureFile, final String chromosomeName) {
         final Map<String, Object> params = new HashMap<>();
         params.put(DIR_ID.name(), featureFile.getId());
         params.put(FilePathPlaceholder.ROOT_DIR_NAME.name(), ROOT_DIR_NAME);
         params.put(CHROMOSOME_NAME.name(), chromosomeName);
 
-        FilePathFormat filePathFormat = getHistogramFilePathFormat(featureFile);
-        File histogramFile = new File(toRealPath(substitute(filePathFormat, params)));
-
-        List<Wig> histogram = new ArrayList<>();
-        try (DataInputStream dataInputStream = new DataInputStream(new FileInputStream(histogramFile))) {
-            while (dataInputStream.available() > 0) {
-                Wig wig = new Wig();
-
-                wig.setStartIndex(dataInputStream.readInt());
-                wig.setEndIndex(dataInputStream.readInt());
-                wig.setValue(dataInputStream.readFloat());
-
-                histogram.add(wig);
-            }
-        }
-        return histogram;
+        return new File(toRealPath(substitute(getHistogramFilePathFormat(featureFile), params)));
     }
 
     /**
@@ -1396,7 +1447,7 @@ public class FileManager {
             geneFile.setPath(file.getAbsolutePath());
         }
 
-        return new PositionalOutputStream(new FileOutputStream(file));
+        return new PositionalOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
     }
 
     /**
@@ -1592,19 +1643,18 @@ public class FileManager {
     }
 
     /**
-     * Creates an index for a specified BedFile
+     * Creates a consumer of a {@link FeaturePipeline}, that builds an index for a specified BedFile, while it is
+     * read during registration. The index is written, when the pipeline is finished.
      * @param bedFile BedFile to create index for
+     * @return a consumer, building the index
      */
-    public void makeBedIndex(final BedFile bedFile, final AsciiFeatureCodec<NggbBedFeature> nggbBedCodec) {
+    public TabixIndexConsumer<NggbBedFeature> makeBedIndexConsumer(final BedFile bedFile) {
         final Map<String, Object> params = new HashMap<>();
         params.put(DIR_ID.name(), bedFile.getId());
         params.put(FilePathPlaceholder.ROOT_DIR_NAME.name(), ROOT_DIR_NAME);
 
         File indexFile = new File(toRealPath(substitute(BED_INDEX, params)));
 
-        final TabixIndex index = IndexUtils.createTabixIndex(bedFile, nggbBedCodec, TabixFormat.BED);
-        index.write(indexFile);
-
         BiologicalDataItem indexItem = new BiologicalDataItem();
         indexItem.setCreatedDate(new Date());
         indexItem.setPath(indexFile.getAbsolutePath());
@@ -1614,6 +1664,7 @@ public class FileManager {
         indexItem.setName("");
 
         bedFile.setIndex(indexItem);
+        return new TabixIndexConsumer<>(TabixFormat.BED, indexFile);
     }
 
     /**
@@ -1632,33 +1683,6 @@ public class FileManager {
         }
     }
 
-    /**
-     * Creates an index for a specified SegFile
-     * @param segFile SegFile to create index for
-     */
-    public void makeSegIndex(final SegFile segFile) {
-        final Map<String, Object> params = new HashMap<>();
-        params.put(DIR_ID.name(), segFile.getId());
-        params.put(FilePathPlaceholder.ROOT_DIR_NAME.name(), ROOT_DIR_NAME);
-
-        File indexFile = new File(toRealPath(substitute(SEG_INDEX, params)));
-        LOGGER.debug("Writing SEG index at {}", indexFile.getAbsolutePath());
-        SegCodec segCodec = new SegCodec();
-
-        TabixIndex index = IndexUtils.createTabixIndex(segFile, segCodec, SEG_TABIX_FORMAT);
-        index.write(indexFile);
-
-        BiologicalDataItem indexItem = new BiologicalDataItem();
-        indexItem.setCreatedDate(new Date());
-        indexItem.setPath(indexFile.getAbsolutePath());
-        indexItem.setSource(indexFile.getAbsolutePath());
-        indexItem.setFormat(BiologicalDataItemFormat.SEG_INDEX);
-        indexItem.setType(BiologicalDataItemResourceType.FILE);
-        indexItem.setName("");
-
-        segFile.setIndex(indexItem);
-    }
-
     /**
      * Creates an index for a specified BedGraphFile
      * @param bedGraphFile BedGraphFile to create index for
@@ -1697,25 +1721,38 @@ public class FileManager {
     }
 
     /**
-     * Creates a writer for a specified SegFile
+     * Creates a writer for a specified SegFile. An index of the file is built, while features are written, and is
+     * saved, when the writer is finished.
      *
      * @param segFile a SegFile to create writer for
-     * @return a SegFile to write
+     * @return a writer of SegFile features
      * @throws IOException
      */
-    public BufferedWriter makeSegFileWriter(SegFile segFile) throws IOException {
+    public IndexingFeatureWriter<SegFeature> makeSegFileWriter(SegFile segFile) throws IOException {
         final Map<String, Object> params = new HashMap<>();
         params.put(DIR_ID.name(), segFile.getId());
         params.put(FilePathPlaceholder.ROOT_DIR_NAME.name(), ROOT_DIR_NAME);
 
         File file = new File(toRealPath(substitute(SEG_FILE, params)));
         Assert.isTrue(file.createNewFile());
+        File indexFile = new File(toRealPath(substitute(SEG_INDEX, params)));
 
         LOGGER.debug("Writing SEG Sample file at {}", file.getAbsolutePath());
 
         segFile.setPath(file.getAbsolutePath());
 
-        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charset.defaultCharset()));
+        BiologicalDataItem indexItem = new BiologicalDataItem();
+        indexItem.setCreatedDate(new Date());
+        indexItem.setPath(indexFile.getAbsolutePath());
+        indexItem.setSource(indexFile.getAbsolutePath());
+        indexItem.setFormat(BiologicalDataItemFormat.SEG_INDEX);
+        indexItem.setType(BiologicalDataItemResourceType.FILE);
+        indexItem.setName("");
+
+        segFile.setIndex(indexItem);
+
+        return IndexingFeatureWriter.forFile(file, false,
+                new TabixIndexConsumer<>(SEG_TABIX_FORMAT, indexFile), Charset.defaultCharset());
     }
 
     /**
@@ -1789,14 +1826,6 @@ public class FileManager {
         return new File(toRealPath(substitute(MAF_TEMP_INDEX, params)));
     }
 
-    /**
-     * Creates an index for a specified MafFile, representing BigMaf file, merged form several MAF files
-     * @param mafFile MafFile to create index for
-     */
-    public void makeBigMafIndex(final MafFile mafFile) throws IOException {
-        makeMafIndex(mafFile, BIGMAF_TABIX_FORMAT);
-    }
-
     private void makeMafIndex(final MafFile mafFile, final TabixFormat tabixFormat) throws IOException {
         final Map<String, Object> params = new HashMap<>();
         params.put(DIR_ID.name(), mafFile.getId());
@@ -1812,6 +1841,10 @@ public class FileManager {
             makeTabixIndex(file, indexFile, new MafCodec(mafFile.getPath()), tabixFormat);
         }
 
+        mafFile.setIndex(makeMafIndexItem(indexFile));
+    }
+
+    private BiologicalDataItem makeMafIndexItem(final File indexFile) {
         BiologicalDataItem indexItem = new BiologicalDataItem();
         indexItem.setCreatedDate(new Date());
         indexItem.setPath(indexFile.getAbsolutePath());
@@ -1819,32 +1852,34 @@ public class FileManager {
         indexItem.setFormat(BiologicalDataItemFormat.MAF_INDEX);
         indexItem.setType(BiologicalDataItemResourceType.FILE);
         indexItem.setName("");
-
-        mafFile.setIndex(indexItem);
+        return indexItem;
     }
 
     /**
-     * Creates a writer for a specified MafFile
+     * Creates a writer for a specified MafFile, representing BigMaf file, merged form several MAF files. An index
+     * of the file is built, while features are written, and is saved, when the writer is finished.
      *
      * @param mafFile a MafFile to create writer for
-     * @return a MafFile to write
+     * @return a writer of MafFile features
      * @throws IOException
      */
-    public BufferedWriter makeMafFileWriter(MafFile mafFile) throws IOException {
+    public IndexingFeatureWriter<MafFeature> makeMafFileWriter(MafFile mafFile) throws IOException {
         final Map<String, Object> params = new HashMap<>();
         params.put(DIR_ID.name(), mafFile.getId());
         params.put(FilePathPlaceholder.ROOT_DIR_NAME.name(), ROOT_DIR_NAME);
 
         File file = new File(toRealPath(substitute(MAF_FILE, params)));
         Assert.isTrue(file.createNewFile());
+        File indexFile = new File(toRealPath(substitute(MAF_INDEX, params)));
 
         LOGGER.debug("Writing MAF file at {}", file.getAbsolutePath());
 
         mafFile.setPath(file.getAbsolutePath());
         mafFile.setCompressed(true);
+        mafFile.setIndex(makeMafIndexItem(indexFile));
 
-        return new BufferedWriter(new OutputStreamWriter(
-                new BlockCompressedOutputStream(file), Charset.defaultCharset()));
+        return IndexingFeatureWriter.forFile(file, true,
+                new TabixIndexConsumer<>(BIGMAF_TABIX_FORMAT, indexFile), Charset.defaultCharset());
     }
 
     /**
@@ -1890,24 +1925,39 @@ public class FileManager {
         }
     }
 
-    public File writeToBedGraphFile(WigFile wigFile, List<BedGraphFeature> sectionList) throws IOException {
+    /**
+     * Returns a file for a multi-resolution pyramid of a BedGraph file values for a chromosome.
+     * The file itself is not created.
+     *
+     * @param wigFile a BedGraph file, for which to create a pyramid
+     * @param chromosomeName a name of a chromosome
+     * @return a pyramid file for a chromosome
+     */
+    public File makeBedGraphPyramidFile(final WigFile wigFile, final String chromosomeName) {
         final Map<String, Object> params = new HashMap<>();
         params.put(DIR_ID.name(), wigFile.getId());
         params.put(FilePathPlaceholder.ROOT_DIR_NAME.name(), ROOT_DIR_NAME);
+        params.put(CHROMOSOME_NAME.name(), chromosomeName);
 
-        File file = new File(toRealPath(substitute(BED_GRAPH_FILE, params)));
-        Assert.isTrue(file.createNewFile());
-        try (Writer writer = new BufferedWriter(new FileWriter(file))) {
-            for (BedGraphFeature bedGraphFeature : sectionList) {
-                writer.write(String.format(
-                        BED_GRAPH_FEATURE_TEMPLATE, bedGraphFeature.getChr(),
-                        bedGraphFeature.getStart(),
-                        bedGraphFeature.getEnd(),
-                        bedGraphFeature.getValue())
-                );
-            }
-        }
-        return file;
+        makeDir(substitute(WIG_DIR, params));
+        return new File(toRealPath(substitute(BED_GRAPH_PYRAMID_FILE, params)));
+    }
+
+    /**
+     * Gets a multi-resolution pyramid of a BedGraph file values for a chromosome
+     *
+     * @param wigFile a BedGraph file, for which to get a pyramid
+     * @param chromosomeName a name of a chromosome
+     * @return a pyramid file or null, if it wasn't created for this file and chromosome
+     */
+    public File getBedGraphPyramidFile(final WigFile wigFile, final String chromosomeName) {
+        final Map<String, Object> params = new HashMap<>();
+        params.put(DIR_ID.name(), wigFile.getId());
+        params.put(FilePathPlaceholder.ROOT_DIR_NAME.name(), ROOT_DIR_NAME);
+        params.put(CHROMOSOME_NAME.name(), chromosomeName);
+
+        final File file = new File(toRealPath(substitute(BED_GRAPH_PYRAMID_FILE, params)));
+        return file.exists() ? file : null;
     }
 
     public String getDownsampledBedGraphFilePath(WigFile wigFile) {
@@ -1923,6 +1973,103 @@ public class FileManager {
         }
     }
 
+    /**
+     * Creates a directory for coverage files of a BAM file and returns a coverage file for a chromosome.
+     * The file itself is not created.
+     *
+     * @param bamFile a BamFile, for which to create coverage file
+     * @param chromosomeName a name of a chromosome
+     * @return a coverage file for a chromosome
+     */
+    public File makeBamCoverageFile(final BamFile bamFile, final String chromosomeName) {
+        final Map<String, Object> params = new HashMap<>();
+        params.put(DIR_ID.name(), bamFile.getId());
+        params.put(FilePathPlaceholder.ROOT_DIR_NAME.name(), ROOT_DIR_NAME);
+        params.put(CHROMOSOME_NAME.name(), chromosomeName);
+
+        makeDir(substitute(BAM_COVERAGE_DIR, params));
+        return new File(toRealPath(substitute(BAM_COVERAGE_FILE, params)));
+    }
+
+    /**
+     * Gets a coverage file of a BAM file for a chromosome
+     *
+     * @param bamFile a BamFile, for which to get coverage file
+     * @param chromosomeName a name of a chromosome
+     * @return a coverage file or null, if it wasn't created for this BAM file and chromosome
+     */
+    public File getBamCoverageFile(final BamFile bamFile, final String chromosomeName) {
+        final Map<String, Object> params = new HashMap<>();
+        params.put(DIR_ID.name(), bamFile.getId());
+        params.put(FilePathPlaceholder.ROOT_DIR_NAME.name(), ROOT_DIR_NAME);
+        params.put(CHROMOSOME_NAME.name(), chromosomeName);
+
+        final File file = new File(toRealPath(substitute(BAM_COVERAGE_FILE, params)));
+        return file.exists() ? file : null;
+    }
+
+    /**
+     * Deletes a directory with coverage files of a BAM file
+     *
+     * @param bamFile a BamFile, whose coverage should be deleted
+     * @throws IOException
+     */
+    public void deleteBamCoverageDir(final BamFile bamFile) throws IOException {
+        final Map<String, Object> params = new HashMap<>();
+        params.put(DIR_ID.name(), bamFile.getId());
+        params.put(FilePathPlaceholder.ROOT_DIR_NAME.name(), ROOT_DIR_NAME);
+
+        if (new File(toRealPath(substitute(BAM_COVERAGE_DIR, params))).exists()) {
+            deleteDir(substitute(BAM_COVERAGE_DIR, params));
+        }
+    }
+
+    /**
+     * Returns a reference on a file, used to store a tiled content of a heatmap. The file itself is not created.
+     *
+     * @param heatmapId ID of a heatmap
+     * @return a tiled content file for a heatmap
+     */
+    public File makeHeatmapTilesFile(final Long heatmapId) {
+        final Map<String, Object> params = new HashMap<>();
+        params.put(DIR_ID.name(), heatmapId);
+        params.put(FilePathPlaceholder.ROOT_DIR_NAME.name(), ROOT_DIR_NAME);
+
+        makeDir(substitute(HEATMAP_DIR, params));
+        return new File(toRealPath(substitute(HEATMAP_TILES_FILE, params)));
+    }
+
+    /**
+     * Gets a tiled content file of a heatmap
+     *
+     * @param heatmapId ID of a heatmap
+     * @return a tiled content file or null, if it wasn't created for this heatmap
+     */
+    public File getHeatmapTilesFile(final Long heatmapId) {
+        final Map<String, Object> params = new HashMap<>();
+        params.put(DIR_ID.name(), heatmapId);
+        params.put(FilePathPlaceholder.ROOT_DIR_NAME.name(), ROOT_DIR_NAME);
+
+        final File file = new File(toRealPath(substitute(HEATMAP_TILES_FILE, params)));
+        return file.exists() ? file : null;
+    }
+
+    /**
+     * Deletes a directory with tiled content of a heatmap
+     *
+     * @param heatmapId ID of a heatmap, whose files should be deleted
+     * @throws IOException
+     */
+    public void deleteHeatmapDir(final Long heatmapId) throws IOException {
+        final Map<String, Object> params = new HashMap<>();
+        params.put(DIR_ID.name(), heatmapId);
+        params.put(FilePathPlaceholder.ROOT_DIR_NAME.name(), ROOT_DIR_NAME);
+
+        if (new File(toRealPath(substitute(HEATMAP_DIR, params))).exists()) {
+            deleteDir(substitute(HEATMAP_DIR, params));
+        }
+    }
+
     /**
      * Deletes a directory, containing all the stuff, related to a feature file
      *
@@ -1937,11 +2084,21 @@ public class FileManager {
         params.put(FilePathPlaceholder.ROOT_DIR_NAME.name(), ROOT_DIR_NAME);
 
         File dir = new File(toRealPath(substitute(filePathFormat, params)));
+        evictIndexReader(getIndexPathForFile(featureFile));
         if (dir.exists()) {
             deleteDir(substitute(filePathFormat, params));
         }
     }
 
+    private void evictIndexReader(final Path indexPath) {
+        if (indexWriterRegistry != null) {
+            indexWriterRegistry.close(indexPath);
+        }
+        if (indexReaderRegistry != null) {
+            indexReaderRegistry.evict(indexPath);
+        }
+    }
+
     /**
      * Returns contents of a directory, specified by path, to browse NGS files
      *
@@ -2158,12 +2315,20 @@ public class FileManager {
     }
 
     /**
-     * Deletes a directory by it's path, relative to application's contents root
+     * Deletes a directory by it's path, relative to application's contents root. Index writers and readers,
+     * opened for indexes inside the directory, are closed first.
      * @param relativePath a path, relative to application's contents root
      * @throws IOException
      */
     public void deleteDir(final String relativePath) throws IOException {
         final String realPath = toRealPath(relativePath);
+        final Path path = Paths.get(realPath);
+        if (indexWriterRegistry != null) {
+            indexWriterRegistry.closeInside(path);
+        }
+        if (indexReaderRegistry != null) {
+            indexReaderRegistry.evictInside(path);
+        }
         FileUtils.deleteDirectory(new File(realPath));
     }
 
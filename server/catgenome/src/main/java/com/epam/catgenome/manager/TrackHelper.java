@@ -254,6 +254,31 @@ public class TrackHelper {
         track.setBlocks(list);
     }
 
+    /**
+     * Loads a saved histogram of a {@code FeatureFile} for a chromosome. If a track specifies a window, only
+     * blocks, intersecting it, are returned from a zoom level, matching track's scale factor. Otherwise a whole
+     * chromosome histogram is returned.
+     *
+     * @param track       a {@code Track}, specifying histogram bounds
+     * @param featureFile a {@code FeatureFile} to load histogram for
+     * @param chromosome  a {@code Chromosome} to load histogram for
+     * @return a {@code List} of {@code Wig} blocks, representing the histogram
+     * @throws IOException if histogram can't be read
+     */
+    public List<Wig> loadHistogram(final Track<Wig> track, final FeatureFile featureFile,
+                                   final Chromosome chromosome) throws IOException {
+        final Integer startIndex = track.getStartIndex();
+        final Integer endIndex = track.getEndIndex();
+        if (startIndex == null || endIndex == null || endIndex < startIndex) {
+            return fileManager.loadHistogram(featureFile, chromosome.getName());
+        }
+        final Double scaleFactor = track.getScaleFactor();
+        final int maxBlocks = scaleFactor != null && scaleFactor > 0
+                ? (int) Math.min(Integer.MAX_VALUE, Math.ceil((endIndex - startIndex + 1L) * scaleFactor))
+                : HistogramUtils.HISTOGRAM_SIZE_LIMIT;
+        return fileManager.loadHistogram(featureFile, chromosome.getName(), startIndex, endIndex, maxBlocks);
+    }
+
     /**
      * Creates a histogram, represented by {@code Track} of {@code Wig} blocks for a specified {@code FeatureFile}
      *
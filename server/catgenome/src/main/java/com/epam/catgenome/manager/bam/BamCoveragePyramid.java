@@ -0,0 +1,282 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.manager.bam;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.epam.catgenome.entity.bam.BaseCoverage;
+import org.springframework.util.Assert;
+
+/**
+ * A file with a multi-resolution pyramid of read coverage for a single chromosome.
+ * <p>
+ * Level 0 keeps statistics for bins of {@code binSize} bases, each next level merges {@link #ZOOM_FACTOR} bins of
+ * the previous one, until a single bin covers the whole chromosome. For each bin a maximum read depth and totals of
+ * A, C, G, T, N bases, deletions and insertions are stored. Bins have a fixed size, so any interval of any level is
+ * loaded by a single positional read.
+ * </p>
+ */
+public final class BamCoveragePyramid {
+
+    public static final int ZOOM_FACTOR = 4;
+
+    public static final int DEPTH = 0;
+    public static final int A = 1;
+    public static final int C = 2;
+    public static final int G = 3;
+    public static final int T = 4;
+    public static final int N = 5;
+    public static final int DEL = 6;
+    public static final int INS = 7;
+    public static final int FIELDS_COUNT = 8;
+
+    private static final int MAGIC = 0x4E474243;
+    private static final int VERSION = 1;
+    private static final int HEADER_FIELDS = 6;
+    private static final int HEADER_SIZE = HEADER_FIELDS * Integer.BYTES;
+    private static final int BIN_SIZE_BYTES = FIELDS_COUNT * Integer.BYTES;
+    private static final int WRITE_BUFFER_BINS = 4096;
+
+    private BamCoveragePyramid() {
+        // no operations by default
+    }
+
+    /**
+     * Loads coverage for an interval of a chromosome. A level with the widest bins, that are still not wider than
+     * {@code step}, is used. If {@code step} is less than the level 0 bin size, level 0 is used. Since reference
+     * bases are unknown, only depth, deletions and insertions are reported, nucleotide fields are left empty.
+     * @param file a pyramid file
+     * @param start of the interval, 1-based
+     * @param end of the interval, inclusive
+     * @param step desired resolution in bases
+     * @return coverage for non-empty bins, intersecting the interval
+     * @throws IOException if a file can't be read
+     */
+    public static List<BaseCoverage> read(final File file, final int start, final int end, final int step)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+            Assert.isTrue(header.getInt() == MAGIC && header.getInt() == VERSION,
+                    "Unsupported coverage file " + file.getAbsolutePath());
+            final int length = header.getInt();
+            final int binSize = header.getInt();
+            final int zoomFactor = header.getInt();
+            final int levelsCount = header.getInt();
+
+            int level = 0;
+            long levelBinSize = binSize;
+            long offset = HEADER_SIZE;
+            int binsCount = getBinsCount(length, binSize);
+            while (level < levelsCount - 1 && levelBinSize * zoomFactor <= step) {
+                offset += (long) binsCount * BIN_SIZE_BYTES;
+                binsCount = (binsCount + zoomFactor - 1) / zoomFactor;
+                levelBinSize *= zoomFactor;
+                level++;
+            }
+
+            final int firstBin = (int) ((Math.max(start, 1) - 1) / levelBinSize);
+            final int lastBin = (int) Math.min(binsCount - 1, (Math.min(end, length) - 1) / levelBinSize);
+            final List<BaseCoverage> coverage = new ArrayList<>();
+            if (firstBin > lastBin) {
+                return coverage;
+            }
+
+            final ByteBuffer bins = readFully(channel, offset + (long) firstBin * BIN_SIZE_BYTES,
+                    (lastBin - firstBin + 1) * BIN_SIZE_BYTES);
+            final int[] values = new int[FIELDS_COUNT];
+            for (int bin = firstBin; bin <= lastBin; bin++) {
+                for (int i = 0; i < FIELDS_COUNT; i++) {
+                    values[i] = bins.getInt();
+                }
+                if (values[DEPTH] > 0) {
+                    final BaseCoverage baseCoverage = new BaseCoverage((int) (bin * levelBinSize + 1),
+                            (int) Math.min(length, (bin + 1) * levelBinSize), values[DEPTH]);
+                    // totals of bases aren't mismatches, so nucleotide fields are left empty
+                    baseCoverage.setCoverage(0, 0, 0, 0, 0, values[DEL], values[INS]);
+                    coverage.add(baseCoverage);
+                }
+            }
+            return coverage;
+        }
+    }
+
+    private static ByteBuffer readFully(final FileChannel channel, final long position, final int size)
+            throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of coverage file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int getBinsCount(final int length, final int binSize) {
+        return (int) (((long) length + binSize - 1) / binSize);
+    }
+
+    /**
+     * Writes a pyramid file. Level 0 bins must be added in order, all coarser levels are calculated on the fly.
+     */
+    public static final class Writer implements Closeable {
+
+        private final FileChannel channel;
+        private final int expectedBins;
+        private final long[] levelPositions;
+        private final ByteBuffer[] levelBuffers;
+        private final int[][] accumulators;
+        private final int[] accumulated;
+        private int addedBins;
+
+        /**
+         * @param file to write
+         * @param length of a chromosome
+         * @param binSize size of a level 0 bin in bases
+         * @throws IOException if a file can't be created
+         */
+        public Writer(final File file, final int length, final int binSize) throws IOException {
+            Assert.isTrue(length > 0 && binSize > 0, "Chromosome length and bin size should be positive");
+            this.expectedBins = getBinsCount(length, binSize);
+
+            final List<Integer> levelBins = new ArrayList<>();
+            int binsCount = expectedBins;
+            levelBins.add(binsCount);
+            while (binsCount > 1) {
+                binsCount = (binsCount + ZOOM_FACTOR - 1) / ZOOM_FACTOR;
+                levelBins.add(binsCount);
+            }
+
+            final int levelsCount = levelBins.size();
+            this.levelPositions = new long[levelsCount];
+            this.levelBuffers = new ByteBuffer[levelsCount];
+            this.accumulators = new int[levelsCount][FIELDS_COUNT];
+            this.accumulated = new int[levelsCount];
+            long position = HEADER_SIZE;
+            for (int level = 0; level < levelsCount; level++) {
+                levelPositions[level] = position;
+                levelBuffers[level] = ByteBuffer.allocate(
+                        Math.min(levelBins.get(level), WRITE_BUFFER_BINS) * BIN_SIZE_BYTES);
+                position += (long) levelBins.get(level) * BIN_SIZE_BYTES;
+            }
+
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(length).putInt(binSize).putInt(ZOOM_FACTOR)
+                    .putInt(levelsCount);
+            header.flip();
+            write(header, 0);
+        }
+
+        /**
+         * Adds the next level 0 bin
+         * @param values of the bin, indexed by {@link #DEPTH}, {@link #A}, ... constants
+         * @throws IOException if writing fails
+         */
+        public void addBin(final int[] values) throws IOException {
+            Assert.isTrue(addedBins < expectedBins, "All bins were already added");
+            addBin(0, values);
+            addedBins++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                Assert.isTrue(addedBins == expectedBins, "Not all bins were added");
+                for (int level = 1; level < levelBuffers.length; level++) {
+                    if (accumulated[level] > 0) {
+                        flushAccumulator(level);
+                    }
+                }
+                for (int level = 0; level < levelBuffers.length; level++) {
+                    flushBuffer(level);
+                }
+            } finally {
+                channel.close();
+            }
+        }
+
+        private void addBin(final int level, final int[] values) throws IOException {
+            final ByteBuffer buffer = levelBuffers[level];
+            if (!buffer.hasRemaining()) {
+                flushBuffer(level);
+            }
+            for (int value : values) {
+                buffer.putInt(value);
+            }
+
+            final int parent = level + 1;
+            if (parent < levelBuffers.length) {
+                final int[] accumulator = accumulators[parent];
+                accumulator[DEPTH] = Math.max(accumulator[DEPTH], values[DEPTH]);
+                for (int i = DEPTH + 1; i < FIELDS_COUNT; i++) {
+                    accumulator[i] = saturatedAdd(accumulator[i], values[i]);
+                }
+                accumulated[parent]++;
+                if (accumulated[parent] == ZOOM_FACTOR) {
+                    flushAccumulator(parent);
+                }
+            }
+        }
+
+        private void flushAccumulator(final int level) throws IOException {
+            final int[] values = Arrays.copyOf(accumulators[level], FIELDS_COUNT);
+            Arrays.fill(accumulators[level], 0);
+            accumulated[level] = 0;
+            addBin(level, values);
+        }
+
+        private void flushBuffer(final int level) throws IOException {
+            final ByteBuffer buffer = levelBuffers[level];
+            buffer.flip();
+            final int size = buffer.remaining();
+            write(buffer, levelPositions[level]);
+            levelPositions[level] += size;
+            buffer.clear();
+        }
+
+        private void write(final ByteBuffer buffer, final long position) throws IOException {
+            long current = position;
+            while (buffer.hasRemaining()) {
+                current += channel.write(buffer, current);
+            }
+        }
+
+        private static int saturatedAdd(final int first, final int second) {
+            final long sum = (long) first + second;
+            return sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum;
+        }
+    }
+}
@@ -0,0 +1,417 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.manager.bam;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+import com.epam.catgenome.entity.bam.BamFile;
+import com.epam.catgenome.entity.bam.BamQueryOption;
+import com.epam.catgenome.entity.bam.BamTrackMode;
+import com.epam.catgenome.entity.bam.BaseCoverage;
+import com.epam.catgenome.entity.reference.Chromosome;
+import com.epam.catgenome.entity.wig.Wig;
+import com.epam.catgenome.manager.FileManager;
+import com.epam.catgenome.manager.parallel.TaskExecutorService;
+import com.epam.catgenome.util.BamUtil;
+import com.epam.catgenome.util.Utils;
+import htsjdk.samtools.CigarElement;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SamReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * {@code BamCoveragePyramidManager} builds and reads {@link BamCoveragePyramid} files for registered BAM files.
+ * <p>
+ * A pyramid is built once in background after registration, so that coverage for wide intervals is served from
+ * precomputed bins instead of reading all the alignments of an interval. Until a pyramid is ready, or if
+ * requested resolution is finer than a level 0 bin, coverage is calculated from reads as usual.
+ * </p>
+ */
+@Service
+public class BamCoveragePyramidManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BamCoveragePyramidManager.class);
+
+    private static final int DEFAULT_BIN_SIZE = 256;
+    /**
+     * Number of level 0 bins, processed by a single BAM query during pyramid building
+     */
+    private static final int BINS_PER_CHUNK = 2048;
+    private static final String TMP_EXTENSION = ".tmp";
+
+    @Autowired
+    private FileManager fileManager;
+
+    @Autowired
+    private TaskExecutorService taskExecutorService;
+
+    @Value("#{catgenome['bam.coverage.pyramid.enabled'] ?: false}")
+    private boolean enabled;
+
+    @Value("#{catgenome['bam.coverage.pyramid.bin.size'] ?: " + DEFAULT_BIN_SIZE + "}")
+    private int binSize;
+
+    /**
+     * Background builds, that are not finished yet, by BAM file ID
+     */
+    private final Map<Long, Build> builds = new ConcurrentHashMap<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Schedules building of coverage pyramids for all chromosomes of a BAM file in background
+     * @param bamFile registered BAM file
+     * @param chromosomes chromosomes of file's reference
+     * @param readers supplier of readers for the BAM file
+     */
+    public void scheduleBuild(final BamFile bamFile, final List<Chromosome> chromosomes,
+                              final BamShardedReadLoader.ReaderSupplier readers) {
+        final List<Chromosome> toBuild = new ArrayList<>(chromosomes);
+        final Build build = new Build();
+        builds.put(bamFile.getId(), build);
+        build.setFuture(taskExecutorService.getExecutorService().submit(() -> {
+            try (SamReader reader = readers.open()) {
+                build(bamFile, toBuild, reader, build);
+            } catch (InterruptedIOException | ClosedByInterruptException e) {
+                LOGGER.debug("Coverage building for BAM file {} was cancelled", bamFile.getPath());
+            } catch (IOException e) {
+                LOGGER.error("Failed to build coverage for BAM file " + bamFile.getPath(), e);
+            } finally {
+                builds.remove(bamFile.getId(), build);
+            }
+        }));
+    }
+
+    /**
+     * Cancels background building of coverage pyramids for a BAM file, if it is still running. After this
+     * method returns, the build doesn't create any coverage files, so it should be called before coverage files
+     * of an unregistered BAM file are deleted.
+     * @param bamFile BAM file being unregistered
+     */
+    public void cancelBuild(final BamFile bamFile) {
+        final Build build = builds.remove(bamFile.getId());
+        if (build != null) {
+            build.cancel();
+        }
+    }
+
+    /**
+     * Builds coverage pyramids for all chromosomes of a BAM file, present in its header
+     * @param bamFile registered BAM file
+     * @param chromosomes chromosomes of file's reference
+     * @param reader to read alignments
+     * @throws IOException if reading or writing fails
+     */
+    public void build(final BamFile bamFile, final List<Chromosome> chromosomes, final SamReader reader)
+            throws IOException {
+        build(bamFile, chromosomes, reader, new Build());
+    }
+
+    private void build(final BamFile bamFile, final List<Chromosome> chromosomes, final SamReader reader,
+                       final Build build) throws IOException {
+        for (Chromosome chromosome : chromosomes) {
+            final SAMSequenceRecord sequence = getSequence(reader, chromosome.getName());
+            if (sequence == null) {
+                continue;
+            }
+            final double start = Utils.getSystemTimeMilliseconds();
+            final int length = Math.max(chromosome.getSize(), 1);
+            // coverage directory may be created only while the build isn't cancelled, otherwise it may be
+            // re-created after the BAM file was unregistered
+            final File file;
+            final BamCoveragePyramid.Writer writer;
+            synchronized (build) {
+                build.checkNotCancelled(bamFile);
+                file = fileManager.makeBamCoverageFile(bamFile, chromosome.getName());
+                writer = new BamCoveragePyramid.Writer(getTmpFile(file), length, binSize);
+            }
+            boolean written = false;
+            try {
+                try (BamCoveragePyramid.Writer pyramidWriter = writer) {
+                    writeBins(reader, sequence.getSequenceName(), length, pyramidWriter);
+                }
+                synchronized (build) {
+                    build.checkNotCancelled(bamFile);
+                    Files.move(getTmpFile(file).toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+                written = true;
+            } finally {
+                if (!written) {
+                    Files.deleteIfExists(getTmpFile(file).toPath());
+                }
+            }
+            LOGGER.debug("Coverage for {}:{} was built in {} ms", bamFile.getPath(), chromosome.getName(),
+                    Utils.getSystemTimeMilliseconds() - start);
+        }
+    }
+
+    /**
+     * Checks if coverage for a query may be loaded from a pyramid: it should be built, the query should not
+     * filter reads and requested resolution should not be finer than a level 0 bin
+     * @param bamFile registered BAM file
+     * @param chromosomeName name of a chromosome
+     * @param options query options
+     * @param scaleFactor track scale factor
+     * @return true if pyramid should be used
+     */
+    public boolean isApplicable(final BamFile bamFile, final String chromosomeName, final BamQueryOption options,
+                                final Double scaleFactor) {
+        return enabled && bamFile.getId() != null && options.getMode() == BamTrackMode.COVERAGE
+                && !options.isFilterNotPrimary() && !options.isFilterVendorQualityFail()
+                && !options.isFilterDuplicate() && !options.isFilterSupplementaryAlignment()
+                && getStep(scaleFactor) >= binSize
+                && fileManager.getBamCoverageFile(bamFile, chromosomeName) != null;
+    }
+
+    /**
+     * Checks if a pyramid was built for a chromosome of a BAM file
+     * @param bamFile registered BAM file
+     * @param chromosomeName name of a chromosome
+     * @return true if pyramid exists
+     */
+    public boolean hasPyramid(final BamFile bamFile, final String chromosomeName) {
+        return enabled && bamFile.getId() != null && fileManager.getBamCoverageFile(bamFile, chromosomeName) != null;
+    }
+
+    /**
+     * Loads coverage for an interval from a pyramid
+     * @param bamFile registered BAM file
+     * @param chromosomeName name of a chromosome
+     * @param start of the interval
+     * @param end of the interval
+     * @param scaleFactor track scale factor
+     * @return coverage of non-empty bins
+     * @throws IOException if pyramid can't be read
+     */
+    public List<BaseCoverage> loadCoverage(final BamFile bamFile, final String chromosomeName, final int start,
+                                           final int end, final Double scaleFactor) throws IOException {
+        final File file = fileManager.getBamCoverageFile(bamFile, chromosomeName);
+        if (file == null) {
+            return Collections.emptyList();
+        }
+        return BamCoveragePyramid.read(file, start, end, getStep(scaleFactor));
+    }
+
+    /**
+     * Loads regions, containing reads, from a pyramid. Adjacent non-empty bins are merged into a single region.
+     * @param bamFile registered BAM file
+     * @param chromosomeName name of a chromosome
+     * @param start of the interval
+     * @param end of the interval
+     * @param scaleFactor track scale factor
+     * @return regions, containing reads
+     * @throws IOException if pyramid can't be read
+     */
+    public List<Wig> loadRegions(final BamFile bamFile, final String chromosomeName, final int start,
+                                 final int end, final Double scaleFactor) throws IOException {
+        final List<Wig> regions = new ArrayList<>();
+        Wig last = null;
+        for (BaseCoverage coverage : loadCoverage(bamFile, chromosomeName, start, end, scaleFactor)) {
+            if (last != null && last.getEndIndex() + 1 == coverage.getStartIndex()) {
+                last.setEndIndex(coverage.getEndIndex());
+            } else {
+                last = new Wig(coverage.getStartIndex(), coverage.getEndIndex(), 1);
+                regions.add(last);
+            }
+        }
+        return regions;
+    }
+
+    private void writeBins(final SamReader reader, final String sequenceName, final int length,
+                           final BamCoveragePyramid.Writer writer) throws IOException {
+        final int chunkSize = binSize * BINS_PER_CHUNK;
+        final int[][] counts = new int[BamCoveragePyramid.FIELDS_COUNT][chunkSize];
+        final int[] bin = new int[BamCoveragePyramid.FIELDS_COUNT];
+        for (int chunkStart = 1; chunkStart <= length; chunkStart += chunkSize) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Coverage building was interrupted");
+            }
+            final int chunkEnd = (int) Math.min(length, (long) chunkStart + chunkSize - 1);
+            for (int[] fieldCounts : counts) {
+                Arrays.fill(fieldCounts, 0);
+            }
+            try (SAMRecordIterator iterator = reader.query(sequenceName, chunkStart, chunkEnd, false)) {
+                while (iterator.hasNext()) {
+                    countRecord(iterator.next(), chunkStart, chunkEnd, counts);
+                }
+            }
+            for (int binStart = 0; binStart <= chunkEnd - chunkStart; binStart += binSize) {
+                Arrays.fill(bin, 0);
+                final int binEnd = Math.min(binStart + binSize, chunkEnd - chunkStart + 1);
+                for (int i = binStart; i < binEnd; i++) {
+                    int depth = 0;
+                    for (int field = BamCoveragePyramid.A; field <= BamCoveragePyramid.N; field++) {
+                        depth += counts[field][i];
+                        bin[field] += counts[field][i];
+                    }
+                    bin[BamCoveragePyramid.DEPTH] = Math.max(bin[BamCoveragePyramid.DEPTH], depth);
+                    bin[BamCoveragePyramid.DEL] += counts[BamCoveragePyramid.DEL][i];
+                    bin[BamCoveragePyramid.INS] += counts[BamCoveragePyramid.INS][i];
+                }
+                writer.addBin(bin);
+            }
+        }
+    }
+
+    private void countRecord(final SAMRecord record, final int chunkStart, final int chunkEnd,
+                             final int[][] counts) {
+        if (!BamUtil.validateReadParams(record.getFlags(), record.getCigar().getCigarElements(),
+                record.getEnd(), record.getStart())) {
+            return;
+        }
+        final byte[] bases = record.getReadBases();
+        int refPos = record.getAlignmentStart();
+        int readPos = 0;
+        for (CigarElement element : record.getCigar().getCigarElements()) {
+            final int elementLength = element.getLength();
+            switch (element.getOperator()) {
+                case M:
+                case EQ:
+                case X:
+                    for (int i = 0; i < elementLength; i++) {
+                        final int pos = refPos + i;
+                        if (pos >= chunkStart && pos <= chunkEnd) {
+                            final int field = readPos + i < bases.length
+                                    ? getBaseField(bases[readPos + i]) : BamCoveragePyramid.N;
+                            counts[field][pos - chunkStart]++;
+                        }
+                    }
+                    refPos += elementLength;
+                    readPos += elementLength;
+                    break;
+                case I:
+                    if (refPos - 1 >= chunkStart && refPos - 1 <= chunkEnd) {
+                        counts[BamCoveragePyramid.INS][refPos - 1 - chunkStart]++;
+                    }
+                    readPos += elementLength;
+                    break;
+                case D:
+                    for (int i = 0; i < elementLength; i++) {
+                        final int pos = refPos + i;
+                        if (pos >= chunkStart && pos <= chunkEnd) {
+                            counts[BamCoveragePyramid.DEL][pos - chunkStart]++;
+                        }
+                    }
+                    refPos += elementLength;
+                    break;
+                case N:
+                    refPos += elementLength;
+                    break;
+                case S:
+                    readPos += elementLength;
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static int getBaseField(final byte base) {
+        switch (base) {
+            case 'A':
+            case 'a':
+                return BamCoveragePyramid.A;
+            case 'C':
+            case 'c':
+                return BamCoveragePyramid.C;
+            case 'G':
+            case 'g':
+                return BamCoveragePyramid.G;
+            case 'T':
+            case 't':
+                return BamCoveragePyramid.T;
+            default:
+                return BamCoveragePyramid.N;
+        }
+    }
+
+    private static File getTmpFile(final File file) {
+        return new File(file.getAbsolutePath() + TMP_EXTENSION);
+    }
+
+    private static SAMSequenceRecord getSequence(final SamReader reader, final String chromosomeName) {
+        final SAMSequenceRecord sequence = reader.getFileHeader().getSequence(chromosomeName);
+        return sequence != null ? sequence
+                : reader.getFileHeader().getSequence(Utils.changeChromosomeName(chromosomeName));
+    }
+
+    private static int getStep(final Double scaleFactor) {
+        if (scaleFactor == null || scaleFactor <= 0) {
+            return 1;
+        }
+        return (int) Math.max(1, Math.round(1 / scaleFactor));
+    }
+
+    /**
+     * State of a background build, used to cancel it
+     */
+    private static final class Build {
+
+        private Future<?> future;
+        private boolean cancelled;
+
+        private synchronized void setFuture(final Future<?> future) {
+            this.future = future;
+            if (cancelled) {
+                future.cancel(true);
+            }
+        }
+
+        private synchronized void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+
+        private synchronized void checkNotCancelled(final BamFile bamFile) throws InterruptedIOException {
+            if (cancelled || Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Coverage building for " + bamFile.getPath() + " was cancelled");
+            }
+        }
+    }
+}
@@ -100,13 +100,6 @@ import com.epam.catgenome.util.ConsensusSequenceUtils;
 import com.epam.catgenome.util.HdfsSeekableInputStream;
 import com.epam.catgenome.util.Utils;
 import htsjdk.samtools.cram.ref.ReferenceSource;
-import htsjdk.samtools.filter.AggregateFilter;
-import htsjdk.samtools.filter.DuplicateReadFilter;
-import htsjdk.samtools.filter.FailsVendorReadQualityFilter;
-import htsjdk.samtools.filter.FilteringSamIterator;
-import htsjdk.samtools.filter.NotPrimaryAlignmentFilter;
-import htsjdk.samtools.filter.SamRecordFilter;
-import htsjdk.samtools.filter.SecondaryOrSupplementaryFilter;
 import htsjdk.samtools.util.CloseableIterator;
 
 /**
@@ -123,6 +116,7 @@ public class BamHelper {
 
     public static final Set<String> BAM_EXTENSIONS = new HashSet<>();
     public static final Map<String, String> BAI_EXTENSIONS = new HashMap<>();
+    private static final String BAI_EXTENSION = ".bai";
 
 
     static {
@@ -140,6 +134,18 @@ public class BamHelper {
     @Autowired
     private ReferenceManager referenceManager;
 
+    @Autowired
+    private BamShardedReadLoader shardedReadLoader;
+
+    @Autowired
+    private BamCoveragePyramidManager coveragePyramidManager;
+
+    @Autowired
+    private BamReaderCache readerCache;
+
+    @Autowired
+    private BamIndexRegionScanner indexRegionScanner;
+
     /*@Value("#{catgenome['bam.max.reads.count'] ?: 500000}")
     private int maxReadsCount;*/
 
@@ -188,6 +194,13 @@ public class BamHelper {
         final BamFile bamFile = bamFileManager.load(bamTrack.getId());
         Assert.notNull(bamFile, getMessage(MessagesConstants.ERROR_FILE_NOT_FOUND));
 
+        final String chromosomeName = bamTrack.getChromosome().getName();
+        if (coveragePyramidManager.isApplicable(bamFile, chromosomeName, options, bamTrack.getScaleFactor())) {
+            bamTrack.setBaseCoverage(coveragePyramidManager.loadCoverage(bamFile, chromosomeName,
+                    bamTrack.getStartIndex(), bamTrack.getEndIndex(), bamTrack.getScaleFactor()));
+            emitter.writeTrackAndFinish(bamTrack);
+            return;
+        }
         fillEmitterByReads(bamFile, bamTrack, options, emitter);
     }
 
@@ -205,7 +218,7 @@ public class BamHelper {
         final BamFile bamFile = makeUrlBamFile(bamUrl, bamIndexUrl, track.getChromosome());
 
         Chromosome chromosome = bamTrack.getChromosome();
-        bamTrack.setRegions(getRegions(bamFile, chromosome, track.getStartIndex(), track.getEndIndex()));
+        bamTrack.setRegions(getRegions(bamFile, chromosome, track.getStartIndex(), track.getEndIndex(), false));
 
         return bamTrack;
     }
@@ -217,12 +230,30 @@ public class BamHelper {
      * @throws IOException
      */
     public BamTrack<Read> getRegionsFromFile(final Track<Read> track) throws IOException {
+        return getRegionsFromFile(track, new BamQueryOption());
+    }
+
+    /**
+     * Get regions of possible read location from BAM file
+     * @param track a track, that specifies file ID and start and end indexes
+     * @param options track options, specifying if read density of regions is required
+     * @return {@link BamTrack}, filled with regions of possible read location
+     * @throws IOException
+     */
+    public BamTrack<Read> getRegionsFromFile(final Track<Read> track, final BamQueryOption options)
+            throws IOException {
         final BamTrack<Read> bamTrack = new BamTrack<>(track);
         final BamFile bamFile = bamFileManager.load(bamTrack.getId());
         Assert.notNull(bamFile, getMessage(MessagesConstants.ERROR_FILE_NOT_FOUND));
 
         Chromosome chromosome = bamTrack.getChromosome();
-        bamTrack.setRegions(getRegions(bamFile, chromosome, track.getStartIndex(), track.getEndIndex()));
+        if (!options.isRegionsDensity() && coveragePyramidManager.hasPyramid(bamFile, chromosome.getName())) {
+            bamTrack.setRegions(coveragePyramidManager.loadRegions(bamFile, chromosome.getName(),
+                    track.getStartIndex(), track.getEndIndex(), track.getScaleFactor()));
+            return bamTrack;
+        }
+        bamTrack.setRegions(getRegions(bamFile, chromosome, track.getStartIndex(), track.getEndIndex(),
+                options.isRegionsDensity()));
 
         return bamTrack;
     }
@@ -332,23 +363,29 @@ public class BamHelper {
                 chromosomeName = Utils.changeChromosomeName(chromosomeName);
             }
 
-            Handler<SAMRecord> filter = filterReads(bamTrack, options, reader, chromosomeName, options.getMode() ==
-                    BamTrackMode.COVERAGE, trackEmitter);
+            final boolean coverageOnly = options.getMode() == BamTrackMode.COVERAGE;
+            if (shardedReadLoader.isApplicable(bamTrack)) {
+                shardedReadLoader.loadReads(bamTrack, options, chromosomeName, coverageOnly, trackEmitter,
+                    () -> makeSamReader(bamFile, Collections.singletonList(chromosome), chromosome.getReferenceId()));
+            } else {
+                Handler<SAMRecord> filter = filterReads(bamTrack, options, reader, chromosomeName, coverageOnly,
+                        trackEmitter);
 
-            filter.getSifter().finish();
+                filter.getSifter().finish();
 
-            bamTrack.setMinPosition(filter.getMinPosition());
-            bamTrack.setReferenceBuffer(filter.getReferenceBuff());
-            bamTrack.setDownsampleCoverage(filter.getSifter().getDownsampleCoverageResult());
-            bamTrack.setBaseCoverage(filter.getBaseCoverage(bamTrack.getScaleFactor()));
-            bamTrack.setSpliceJunctions(filter.getSpliceJunctions());
+                bamTrack.setMinPosition(filter.getMinPosition());
+                bamTrack.setReferenceBuffer(filter.getReferenceBuff());
+                bamTrack.setDownsampleCoverage(filter.getSifter().getDownsampleCoverageResult());
+                bamTrack.setBaseCoverage(filter.getBaseCoverage(bamTrack.getScaleFactor()));
+                bamTrack.setSpliceJunctions(filter.getSpliceJunctions());
+            }
 
             trackEmitter.writeTrackAndFinish(bamTrack);
         }
     }
 
-    private List<Wig> getRegions(BamFile bamFile, Chromosome chromosome, int startIndex, int endIndex)
-            throws IOException {
+    private List<Wig> getRegions(BamFile bamFile, Chromosome chromosome, int startIndex, int endIndex,
+                                 boolean density) throws IOException {
         try (SamReader reader = makeSamReader(bamFile, Collections.singletonList(chromosome),
                 chromosome.getReferenceId())) {
             SAMSequenceRecord sequence = reader.getFileHeader().getSequence(chromosome.getName());
@@ -356,6 +393,12 @@ public class BamHelper {
                 sequence = reader.getFileHeader().getSequence(Utils.changeChromosomeName(chromosome.getName()));
             }
 
+            final File indexFile = getLocalIndexFile(bamFile);
+            if (indexFile != null && bamFile.getType() == BiologicalDataItemResourceType.FILE) {
+                return indexRegionScanner.scan(new File(bamFile.getPath()), indexFile, sequence.getSequenceIndex(),
+                        startIndex, endIndex, regionsCount, density);
+            }
+
             int chunkSize = (endIndex - startIndex) / regionsCount;
             List<Wig> result = new ArrayList<>(regionsCount);
             int chunkStartIndex = startIndex;
@@ -375,6 +418,16 @@ public class BamHelper {
         }
     }
 
+    private File getLocalIndexFile(BamFile bamFile) {
+        final BiologicalDataItem index = bamFile.getIndex();
+        if (index == null || index.getType() != BiologicalDataItemResourceType.FILE
+                || !index.getPath().endsWith(BAI_EXTENSION)) {
+            return null;
+        }
+        final File indexFile = new File(index.getPath());
+        return indexFile.exists() ? indexFile : null;
+    }
+
     private Optional<Wig> checkAreaForReads(SamReader reader, String sequenceName, int start, int end) {
         try (SAMRecordIterator query = reader.query(sequenceName, start, end, false)) {
             return Optional.ofNullable(query.hasNext() ? new Wig(start, end, 1) : null);
@@ -389,7 +442,7 @@ public class BamHelper {
                                                                    bamTrack.getEndIndex(), false);
         LOG.debug(getMessage(MessagesConstants.DEBUG_GET_ITERATOR_QUERY, iterator.toString()));
 
-        iterator = setIteratorFiltering(iterator, options);
+        iterator = BamUtil.setIteratorFiltering(iterator, options);
 
         final Handler<SAMRecord> filter = BamUtil.createSAMRecordHandler(bamTrack, options, referenceManager,
                 coverageOnly, trackEmitter); //maxReadCount
@@ -403,29 +456,6 @@ public class BamHelper {
         return filter;
     }
 
-    private CloseableIterator<SAMRecord> setIteratorFiltering(final CloseableIterator<SAMRecord> iterator,
-                                                              final BamQueryOption options) {
-        List<SamRecordFilter> filters = new ArrayList<>();
-        if (options.isFilterDuplicate()) {
-            filters.add(new DuplicateReadFilter());
-        }
-        if (options.isFilterNotPrimary()) {
-            filters.add(new NotPrimaryAlignmentFilter());
-        }
-        if (options.isFilterVendorQualityFail()) {
-            filters.add(new FailsVendorReadQualityFilter());
-        }
-        if (options.isFilterSupplementaryAlignment()) {
-            filters.add(new SecondaryOrSupplementaryFilter());
-        }
-
-        if (!filters.isEmpty()) {
-            return new FilteringSamIterator(iterator, new AggregateFilter(filters));
-        }
-
-        return iterator;
-    }
-
     private Map<Sequence, List<SAMRecord>> getReadsFromFile(
             final Chromosome chromosome, final Track<Sequence> track, final BamFile bamFile,
             final List<Sequence> blocks) throws IOException {
@@ -471,9 +501,19 @@ public class BamHelper {
         });
     }
 
+    /**
+     * Opens a reader for a BAM file. Readers of registered local files are taken from {@link BamReaderCache},
+     * closing such a reader returns it to the cache.
+     * @param bamFile a file to read
+     * @param chromosomes chromosomes of file's reference
+     * @param referenceId ID of file's reference
+     * @return a reader for the file
+     * @throws IOException if a file can't be opened
+     */
     public SamReader makeSamReader(final BamFile bamFile, List<Chromosome> chromosomes, Long referenceId)
         throws IOException {
-        return openSamReaderResource(loadIndex(loadFile(bamFile), bamFile.getIndex()), chromosomes, referenceId);
+        return readerCache.getReader(bamFile, () -> openSamReaderResource(
+                loadIndex(loadFile(bamFile), bamFile.getIndex()), chromosomes, referenceId));
     }
 
     private SamInputResource loadIndex(final SamInputResource samInputResource, final BiologicalDataItem indexFile)
@@ -0,0 +1,396 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.epam.catgenome.manager.bam;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.epam.catgenome.entity.wig.Wig;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+
+/**
+ * Finds regions of a chromosome, containing reads, directly from a BAI index, without decoding any BAM records.
+ * <p>
+ * Chunks of all index bins are distributed over 16 Kbp windows of a chromosome: chunks of leaf bins belong to
+ * their window, chunks of coarser bins, keeping reads, that span a leaf bin border, are spread over windows, where
+ * their reads may be located. These windows are limited by the bin, by leaf bins, having reads before and after
+ * the chunk, and by the linear index, that tells, after which window the chunk's reads end. A region is considered
+ * occupied, if any window, overlapping it, has chunks.
+ * </p>
+ * <p>
+ * Approximate read density of a region is estimated as a size of compressed BAM data in chunks of its windows.
+ * Offsets of chunks inside BGZF blocks are converted to compressed bytes with a compression ratio of the first
+ * BGZF block of a chromosome. Windows of a chromosome are calculated once and cached until the index or BAM file
+ * is modified.
+ * </p>
+ */
+@Service
+public class BamIndexRegionScanner {
+
+    private static final byte[] BAI_MAGIC = {'B', 'A', 'I', 1};
+    private static final int WINDOW_SHIFT = 14;
+    private static final int WINDOW_SIZE = 1 << WINDOW_SHIFT;
+    /**
+     * The widest bin, level 0, is 512 Mbp, each next level has 8 times narrower bins, leaf bins are at level 5
+     */
+    private static final int MAX_BIN_SHIFT = 29;
+    private static final int LEVEL_SHIFT = 3;
+    private static final int[] FIRST_LEVEL_BINS = {0, 1, 9, 73, 585, 4681};
+    private static final int FIRST_LEAF_BIN = 4681;
+    private static final int LAST_LEAF_BIN = 37448;
+    private static final int CHUNK_BYTES = Long.BYTES * 2;
+    private static final int BLOCK_OFFSET_SHIFT = 16;
+    private static final long BLOCK_OFFSET_MASK = 0xFFFF;
+    private static final int UNSIGNED_SHORT_MASK = 0xFFFF;
+    private static final int DEFAULT_CACHE_SIZE = 64;
+
+    @Value("#{catgenome['bam.index.regions.cache.size'] ?: 64}")
+    private int maxCachedReferences = DEFAULT_CACHE_SIZE;
+
+    private final Map<ReferenceKey, double[]> windows = Collections.synchronizedMap(
+            new LinkedHashMap<ReferenceKey, double[]>(16, 0.75F, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<ReferenceKey, double[]> eldest) {
+                    return size() > maxCachedReferences;
+                }
+            });
+
+    /**
+     * Splits an interval of a chromosome into equal regions and returns ones, that contain reads
+     * @param bamFile a local BAM file
+     * @param indexFile a BAI file of the BAM file
+     * @param referenceIndex index of a chromosome in BAM header sequence dictionary
+     * @param start of the interval, 1-based
+     * @param end of the interval, inclusive
+     * @param regionsCount number of regions to split the interval into
+     * @param density if true value of a region is its approximate read density in compressed bytes, otherwise 1
+     * @return regions, containing reads
+     * @throws IOException if an index or a BAM file can't be read
+     */
+    public List<Wig> scan(final File bamFile, final File indexFile, final int referenceIndex, final int start,
+                          final int end, final int regionsCount, final boolean density) throws IOException {
+        final double[] windowBytes = getWindowBytes(bamFile, indexFile, referenceIndex);
+        final int regionSize = Math.max(1, (end - start + 1) / Math.max(1, regionsCount));
+        final List<Wig> regions = new ArrayList<>();
+        for (int regionStart = start; regionStart <= end; regionStart += regionSize) {
+            final int regionEnd = end - regionStart + 1 < 2 * regionSize ? end : regionStart + regionSize - 1;
+            final double bytes = getRegionBytes(windowBytes, regionStart, regionEnd);
+            if (bytes > 0) {
+                regions.add(new Wig(regionStart, regionEnd, density ? (float) bytes : 1));
+            }
+            if (regionEnd == end) {
+                break;
+            }
+        }
+        return regions;
+    }
+
+    private double[] getWindowBytes(final File bamFile, final File indexFile, final int referenceIndex)
+            throws IOException {
+        final ReferenceKey key = new ReferenceKey(bamFile, indexFile, referenceIndex);
+        final double[] cached = windows.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        final double[] windowBytes = readWindowBytes(bamFile, indexFile, referenceIndex);
+        windows.put(key, windowBytes);
+        return windowBytes;
+    }
+
+    private static double getRegionBytes(final double[] windowBytes, final int start, final int end) {
+        double bytes = 0;
+        final int firstWindow = (start - 1) >> WINDOW_SHIFT;
+        final int lastWindow = Math.min(windowBytes.length - 1, (end - 1) >> WINDOW_SHIFT);
+        for (int window = firstWindow; window <= lastWindow; window++) {
+            if (windowBytes[window] == 0) {
+                continue;
+            }
+            final long windowStart = ((long) window << WINDOW_SHIFT) + 1;
+            final long windowEnd = windowStart + WINDOW_SIZE - 1;
+            final long overlap = Math.min(windowEnd, end) - Math.max(windowStart, start) + 1;
+            bytes += windowBytes[window] * overlap / WINDOW_SIZE;
+        }
+        return bytes;
+    }
+
+    private static double[] readWindowBytes(final File bamFile, final File indexFile, final int referenceIndex)
+            throws IOException {
+        final ReferenceBins bins = readReferenceBins(indexFile, referenceIndex);
+        if (bins.chunks.isEmpty()) {
+            return new double[0];
+        }
+        final double compressionRatio = readCompressionRatio(bamFile, bins.getFirstBlockOffset());
+        final long[] leafFirstOffsets = bins.getLeafFirstOffsets();
+        final long[] linearIndex = bins.getLinearIndex();
+
+        double[] windowBytes = new double[0];
+        for (long[] chunk : bins.chunks) {
+            final int bin = (int) chunk[0];
+            final int level = getLevel(bin);
+            final int binWindows = 1 << (MAX_BIN_SHIFT - LEVEL_SHIFT * level - WINDOW_SHIFT);
+            final int binFirstWindow = (bin - FIRST_LEVEL_BINS[level]) * binWindows;
+            int firstWindow = binFirstWindow;
+            int lastWindow = binFirstWindow + binWindows - 1;
+            if (bin < FIRST_LEAF_BIN) {
+                // reads of the chunk start not before the last leaf bin with preceding reads and not after the
+                // first leaf bin with following reads, a read spanning a leaf bin border ends in the next window
+                // at least, and before the first window, whose linear index offset follows the chunk
+                firstWindow = Math.max(firstWindow, findLastWindowBefore(leafFirstOffsets, chunk[1]));
+                final int nextLeaf = findLastWindowBefore(leafFirstOffsets, chunk[2]) + 1;
+                if (nextLeaf < leafFirstOffsets.length && leafFirstOffsets[nextLeaf] != Long.MAX_VALUE) {
+                    lastWindow = Math.min(lastWindow, nextLeaf + 1);
+                }
+                final int nextWindow = findLastWindowBefore(linearIndex, chunk[2]) + 1;
+                if (nextWindow < linearIndex.length) {
+                    lastWindow = Math.min(lastWindow, Math.max(nextWindow - 1, firstWindow + 1));
+                }
+                if (firstWindow > lastWindow) {
+                    firstWindow = binFirstWindow;
+                    lastWindow = binFirstWindow + binWindows - 1;
+                }
+            }
+            if (lastWindow >= windowBytes.length) {
+                windowBytes = Arrays.copyOf(windowBytes, Math.max(lastWindow + 1, windowBytes.length * 2));
+            }
+            final double bytes = getChunkSize(chunk[1], chunk[2], compressionRatio) / (lastWindow - firstWindow + 1);
+            for (int window = firstWindow; window <= lastWindow; window++) {
+                windowBytes[window] += bytes;
+            }
+        }
+        return windowBytes;
+    }
+
+    /**
+     * Finds the last window, whose offset is less than a given one
+     * @param windowOffsets non-decreasing offsets of windows
+     * @param offset a virtual file offset
+     * @return the last window with a lower offset or -1, if there is no such window
+     */
+    private static int findLastWindowBefore(final long[] windowOffsets, final long offset) {
+        int low = 0;
+        int high = windowOffsets.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (windowOffsets[middle] < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low - 1;
+    }
+
+    private static int getLevel(final int bin) {
+        int level = FIRST_LEVEL_BINS.length - 1;
+        while (bin < FIRST_LEVEL_BINS[level]) {
+            level--;
+        }
+        return level;
+    }
+
+    private static double getChunkSize(final long chunkStart, final long chunkEnd, final double compressionRatio) {
+        final long compressed = (chunkEnd >>> BLOCK_OFFSET_SHIFT) - (chunkStart >>> BLOCK_OFFSET_SHIFT);
+        final long uncompressed = (chunkEnd & BLOCK_OFFSET_MASK) - (chunkStart & BLOCK_OFFSET_MASK);
+        return Math.max(compressionRatio, compressed + uncompressed * compressionRatio);
+    }
+
+    private static ReferenceBins readReferenceBins(final File indexFile, final int referenceIndex)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            // the index is memory-mapped instead of being copied to the heap, skipped chunks are never paged in
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            for (byte magic : BAI_MAGIC) {
+                Assert.isTrue(buffer.get() == magic, "Invalid BAI file " + indexFile.getAbsolutePath());
+            }
+            final int referencesCount = buffer.getInt();
+            Assert.isTrue(referenceIndex >= 0 && referenceIndex < referencesCount,
+                    "Reference " + referenceIndex + " is missing in BAI file " + indexFile.getAbsolutePath());
+            for (int i = 0; i < referenceIndex; i++) {
+                skipReference(buffer);
+            }
+
+            final ReferenceBins bins = new ReferenceBins();
+            final int binsCount = buffer.getInt();
+            for (int i = 0; i < binsCount; i++) {
+                final int bin = buffer.getInt();
+                final int chunksCount = buffer.getInt();
+                if (bin > LAST_LEAF_BIN) {
+                    buffer.position(buffer.position() + chunksCount * CHUNK_BYTES);
+                    continue;
+                }
+                for (int j = 0; j < chunksCount; j++) {
+                    bins.chunks.add(new long[]{bin, buffer.getLong(), buffer.getLong()});
+                }
+            }
+            bins.linearIndex = new long[buffer.getInt()];
+            for (int i = 0; i < bins.linearIndex.length; i++) {
+                bins.linearIndex[i] = buffer.getLong();
+            }
+            return bins;
+        }
+    }
+
+    private static void skipReference(final ByteBuffer buffer) {
+        final int binsCount = buffer.getInt();
+        for (int i = 0; i < binsCount; i++) {
+            buffer.getInt();
+            final int chunksCount = buffer.getInt();
+            buffer.position(buffer.position() + chunksCount * CHUNK_BYTES);
+        }
+        final int intervalsCount = buffer.getInt();
+        buffer.position(buffer.position() + intervalsCount * Long.BYTES);
+    }
+
+    /**
+     * Reads a ratio of compressed and uncompressed sizes of a BGZF block
+     */
+    private static double readCompressionRatio(final File bamFile, final long blockAddress) throws IOException {
+        try (FileChannel channel = FileChannel.open(bamFile.toPath(), StandardOpenOption.READ)) {
+            final ByteBuffer header = readFully(channel, blockAddress,
+                    BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH);
+            final int blockSize = (header.getShort(BlockCompressedStreamConstants.BLOCK_LENGTH_OFFSET)
+                    & UNSIGNED_SHORT_MASK) + 1;
+            final int uncompressedSize = readFully(channel, blockAddress + blockSize - Integer.BYTES,
+                    Integer.BYTES).getInt();
+            Assert.isTrue(uncompressedSize > 0, "Invalid BGZF block in BAM file " + bamFile.getAbsolutePath());
+            return (double) blockSize / uncompressedSize;
+        }
+    }
+
+    private static ByteBuffer readFully(final FileChannel channel, final long position, final int size)
+            throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Chunks of a chromosome, as bin number, start and end virtual offsets, and its linear index
+     */
+    private static final class ReferenceBins {
+        private final List<long[]> chunks = new ArrayList<>();
+        private long[] linearIndex;
+
+        private long getFirstBlockOffset() {
+            return chunks.stream().mapToLong(chunk -> chunk[1]).min().orElse(0) >>> BLOCK_OFFSET_SHIFT;
+        }
+
+        /**
+         * @return the lowest chunk start offset of each leaf bin, reads are sorted by start, so offsets of leaf
+         * bins, that have chunks, are increasing; empty leaf bins get the offset of the next one
+         */
+        private long[] getLeafFirstOffsets() {
+            long[] offsets = new long[0];
+            for (long[] chunk : chunks) {
+                if (chunk[0] < FIRST_LEAF_BIN) {
+                    continue;
+                }
+                final int leaf = (int) chunk[0] - FIRST_LEAF_BIN;
+                if (leaf >= offsets.length) {
+                    final int length = offsets.length;
+                    offsets = Arrays.copyOf(offsets, Math.max(leaf + 1, length * 2));
+                    Arrays.fill(offsets, length, offsets.length, Long.MAX_VALUE);
+                }
+                offsets[leaf] = Math.min(offsets[leaf], chunk[1]);
+            }
+            fillGaps(offsets);
+            return offsets;
+        }
+
+        /**
+         * @return linear index with empty windows filled by offsets of next windows
+         */
+        private long[] getLinearIndex() {
+            final long[] offsets = Arrays.copyOf(linearIndex, linearIndex.length);
+            for (int i = 0; i < offsets.length; i++) {
+                if (offsets[i] == 0) {
+                    offsets[i] = Long.MAX_VALUE;
+                }
+            }
+            fillGaps(offsets);
+            return offsets;
+        }
+
+        private static void fillGaps(final long[] offsets) {
+            long next = Long.MAX_VALUE;
+            for (int i = offsets.length - 1; i >= 0; i--) {
+                next = Math.min(next, offsets[i]);
+                offsets[i] = next;
+            }
+        }
+    }
+
+    private static final class ReferenceKey {
+        private final String indexPath;
+        private final long indexModified;
+        private final long bamModified;
+        private final int referenceIndex;
+
+        private ReferenceKey(final File bamFile, final File indexFile, final int referenceIndex) {
+            this.indexPath = indexFile.getAbsolutePath();
+            this.indexModified = indexFile.lastModified();
+            this.bamModified = bamFile.lastModified();
+            this.referenceIndex = referenceIndex;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final ReferenceKey that = (ReferenceKey) o;
+            return indexModified == that.indexModified && bamModified == that.bamModified
+                    && referenceIndex == that.referenceIndex && indexPath.equals(that.indexPath);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(indexPath, indexModified, bamModified, referenceIndex);
+        }
+    }
+}
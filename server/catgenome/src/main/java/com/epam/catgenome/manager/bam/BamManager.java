@@ -34,6 +34,7 @@ import com.epam.catgenome.entity.reference.Reference;
 import com.epam.catgenome.entity.reference.Sequence;
 import com.epam.catgenome.entity.track.Track;
 import com.epam.catgenome.manager.BiologicalDataItemManager;
+import com.epam.catgenome.manager.FileManager;
 import com.epam.catgenome.manager.TrackHelper;
 import com.epam.catgenome.manager.bam.handlers.SAMRecordHandler;
 import com.epam.catgenome.manager.parallel.TaskExecutorService;
@@ -98,6 +99,15 @@ public class BamManager {
     @Autowired
     private TaskExecutorService taskExecutorService;
 
+    @Autowired
+    private BamCoveragePyramidManager coveragePyramidManager;
+
+    @Autowired
+    private FileManager fileManager;
+
+    @Autowired
+    private BamReaderCache readerCache;
+
     @Value("#{catgenome['bam.max.coverage.range'] ?: 1000000}")
     private int maxCoverageRange;
 
@@ -128,6 +138,10 @@ public class BamManager {
 
             biologicalDataItemManager.createBiologicalDataItem(newBamFile.getIndex());
             bamFileManager.create(newBamFile);
+            if (coveragePyramidManager.isEnabled()) {
+                coveragePyramidManager.scheduleBuild(newBamFile, chromosomes,
+                    () -> bamHelper.makeSamReader(newBamFile, chromosomes, reference.getId()));
+            }
         } finally {
             if (newBamFile != null && newBamFile.getId() != null
                     && bamFileManager.load(newBamFile.getId()) == null) {
@@ -148,6 +162,9 @@ public class BamManager {
         BamFile fileToDelete = bamFileManager.load(bamFileId);
         Assert.notNull(fileToDelete, getMessage(MessagesConstants.ERROR_FILE_NOT_FOUND));
         bamFileManager.delete(fileToDelete);
+        readerCache.evict(bamFileId);
+        coveragePyramidManager.cancelBuild(fileToDelete);
+        fileManager.deleteBamCoverageDir(fileToDelete);
         return fileToDelete;
     }
 
@@ -261,13 +278,13 @@ public class BamManager {
 
     private void fillEmitterByBamTrack(final Track<Read> track, final BamQueryOption options,
                                                  ResponseBodyEmitter emitter) throws IOException {
-        final BamTrackEmitter bamTrackEmitter = new BamTrackEmitter(emitter);
+        final BamTrackEmitter bamTrackEmitter = createTrackEmitter(options, emitter);
 
         // TODO: track.getEndIndex() - track.getStartIndex() > maxCoverageRange
         if (options.getMode() == BamTrackMode.REGIONS) {
             taskExecutorService.executeTrackTask(
                 bamTrackEmitter, SEQUENTIAL,
-                () -> bamTrackEmitter.writeTrackAndFinish(bamHelper.getRegionsFromFile(track))
+                () -> bamTrackEmitter.writeTrackAndFinish(bamHelper.getRegionsFromFile(track, options))
             );
         } else {
             taskExecutorService.executeTrackTask(
@@ -280,7 +297,7 @@ public class BamManager {
     private void fillEmitterByBamTrackFromURL(final Track<Read> track, String bamUrl, String indexUrl,
                                                         final BamQueryOption options, ResponseBodyEmitter emitter)
             throws IOException {
-        final BamTrackEmitter bamTrackEmitter = new BamTrackEmitter(emitter);
+        final BamTrackEmitter bamTrackEmitter = createTrackEmitter(options, emitter);
 
         if (track.getEndIndex() - track.getStartIndex() > maxCoverageRange) {
             taskExecutorService.executeTrackTask(
@@ -294,4 +311,11 @@ public class BamManager {
             );
         }
     }
+
+    private BamTrackEmitter createTrackEmitter(final BamQueryOption options, final ResponseBodyEmitter emitter)
+            throws IOException {
+        return options.getEncoding() == BamTrackEncoding.BINARY ?
+                new BinaryBamTrackEmitter(emitter) :
+                new BamTrackEmitter(emitter);
+    }
 }
@@ -0,0 +1,375 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.manager.bam;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.annotation.PreDestroy;
+
+import com.epam.catgenome.entity.BiologicalDataItemResourceType;
+import com.epam.catgenome.entity.bam.BamFile;
+import htsjdk.samtools.QueryInterval;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.util.CloserUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * {@code BamReaderCache} keeps opened readers of registered local BAM files between requests, so that a BAM
+ * header and BAI index are parsed once per file instead of once per request.
+ * <p>
+ * htsjdk doesn't allow to pass an already parsed index or header to a new reader, so whole readers are cached.
+ * A reader is used by a single request at a time: it is taken from the cache when a request opens a file and
+ * returned back when the request closes it. Readers are keyed by file ID and modification time of the file and
+ * its index, so a replaced file is never read with a stale index. The number of idle readers is bounded, least
+ * recently used ones are closed first. Readers, taken from the cache before their file was evicted, are closed
+ * instead of being returned to it.
+ * </p>
+ */
+@Service
+public class BamReaderCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BamReaderCache.class);
+    private static final String BAM_EXTENSION = ".bam";
+
+    @Value("#{catgenome['bam.reader.cache.size'] ?: 32}")
+    private int maxIdleReaders;
+
+    private final LinkedHashMap<ReaderKey, Deque<SamReader>> idleReaders = new LinkedHashMap<>(16, 0.75f, true);
+    private int idleCount;
+    /**
+     * Incremented on each eviction, a reader remembers the generation, when it was taken from the cache
+     */
+    private long generation;
+    /**
+     * Generations of the last eviction of files, which readers are in use, entries are removed once all readers
+     * of a file are returned
+     */
+    private final Map<Long, Long> evictedGenerations = new HashMap<>();
+    private final Map<Long, Integer> usedReaders = new HashMap<>();
+
+    /**
+     * Opens a reader for a file
+     */
+    @FunctionalInterface
+    public interface ReaderOpener {
+        SamReader open() throws IOException;
+    }
+
+    /**
+     * Returns a reader for a BAM file: an idle cached one, if it exists, or a new one. The returned reader should
+     * be closed by a caller as usual, closing returns it to the cache.
+     * @param bamFile a file to read
+     * @param opener opens a new reader, if there is no idle one
+     * @return a reader for the file
+     * @throws IOException if a reader can't be opened
+     */
+    public SamReader getReader(final BamFile bamFile, final ReaderOpener opener) throws IOException {
+        if (!isCacheable(bamFile)) {
+            return opener.open();
+        }
+        final ReaderKey key = new ReaderKey(bamFile);
+        final long readerGeneration;
+        SamReader reader;
+        synchronized (this) {
+            readerGeneration = generation;
+            usedReaders.merge(key.id, 1, Integer::sum);
+            reader = poll(key);
+        }
+        if (reader == null) {
+            boolean readerOpened = false;
+            try {
+                reader = opener.open();
+                readerOpened = true;
+            } finally {
+                if (!readerOpened) {
+                    synchronized (this) {
+                        markReturned(key.id);
+                    }
+                }
+            }
+        }
+        return new CachedSamReader(key, readerGeneration, reader);
+    }
+
+    /**
+     * Closes all cached readers of a file, should be called when a file is unregistered. Readers of the file, that
+     * are used at the moment, are closed when they are returned.
+     * @param bamFileId ID of a file
+     */
+    public void evict(final long bamFileId) {
+        final List<SamReader> toClose = new ArrayList<>();
+        synchronized (this) {
+            generation++;
+            if (usedReaders.containsKey(bamFileId)) {
+                evictedGenerations.put(bamFileId, generation);
+            }
+            final Iterator<Map.Entry<ReaderKey, Deque<SamReader>>> iterator = idleReaders.entrySet().iterator();
+            while (iterator.hasNext()) {
+                final Map.Entry<ReaderKey, Deque<SamReader>> entry = iterator.next();
+                if (entry.getKey().id == bamFileId) {
+                    toClose.addAll(entry.getValue());
+                    idleCount -= entry.getValue().size();
+                    iterator.remove();
+                }
+            }
+        }
+        toClose.forEach(CloserUtil::close);
+    }
+
+    @PreDestroy
+    public void clear() {
+        final List<SamReader> toClose = new ArrayList<>();
+        synchronized (this) {
+            idleReaders.values().forEach(toClose::addAll);
+            idleReaders.clear();
+            idleCount = 0;
+        }
+        toClose.forEach(CloserUtil::close);
+    }
+
+    private boolean isCacheable(final BamFile bamFile) {
+        return maxIdleReaders > 0 && bamFile.getId() != null && bamFile.getId() > 0
+                && bamFile.getType() == BiologicalDataItemResourceType.FILE
+                && bamFile.getIndex() != null && bamFile.getIndex().getType() == BiologicalDataItemResourceType.FILE
+                && bamFile.getPath().toLowerCase().endsWith(BAM_EXTENSION);
+    }
+
+    private synchronized SamReader poll(final ReaderKey key) {
+        final Deque<SamReader> readers = idleReaders.get(key);
+        if (readers == null) {
+            return null;
+        }
+        final SamReader reader = readers.pollFirst();
+        if (readers.isEmpty()) {
+            idleReaders.remove(key);
+        }
+        if (reader != null) {
+            idleCount--;
+        }
+        return reader;
+    }
+
+    private void release(final ReaderKey key, final long readerGeneration, final SamReader reader) {
+        final List<SamReader> toClose = new ArrayList<>();
+        synchronized (this) {
+            final Long evicted = evictedGenerations.get(key.id);
+            markReturned(key.id);
+            if (evicted != null && evicted > readerGeneration) {
+                toClose.add(reader);
+            } else {
+                idleReaders.computeIfAbsent(key, k -> new ArrayDeque<>()).addFirst(reader);
+                idleCount++;
+                final Iterator<Map.Entry<ReaderKey, Deque<SamReader>>> iterator = idleReaders.entrySet().iterator();
+                while (idleCount > maxIdleReaders && iterator.hasNext()) {
+                    final Deque<SamReader> eldest = iterator.next().getValue();
+                    while (idleCount > maxIdleReaders && !eldest.isEmpty()) {
+                        toClose.add(eldest.pollLast());
+                        idleCount--;
+                    }
+                    if (eldest.isEmpty()) {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+        toClose.forEach(CloserUtil::close);
+    }
+
+    /**
+     * Should be called with the cache lock held
+     */
+    private void markReturned(final long bamFileId) {
+        if (usedReaders.merge(bamFileId, -1, (count, delta) -> count + delta == 0 ? null : count + delta) == null) {
+            evictedGenerations.remove(bamFileId);
+        }
+    }
+
+    private static final class ReaderKey {
+        private final long id;
+        private final long fileModified;
+        private final long indexModified;
+
+        private ReaderKey(final BamFile bamFile) {
+            this.id = bamFile.getId();
+            this.fileModified = new File(bamFile.getPath()).lastModified();
+            this.indexModified = new File(bamFile.getIndex().getPath()).lastModified();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final ReaderKey readerKey = (ReaderKey) o;
+            return id == readerKey.id && fileModified == readerKey.fileModified
+                    && indexModified == readerKey.indexModified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, fileModified, indexModified);
+        }
+    }
+
+    /**
+     * A reader, that returns the underlying reader to the cache on close. A BAM reader supports a single open
+     * iterator only, so the last returned iterator is closed before that, in case a caller left it open.
+     */
+    private final class CachedSamReader implements SamReader {
+        private final ReaderKey key;
+        private final long generation;
+        private final SamReader reader;
+        private SAMRecordIterator lastIterator;
+        private boolean closed;
+
+        private CachedSamReader(final ReaderKey key, final long generation, final SamReader reader) {
+            this.key = key;
+            this.generation = generation;
+            this.reader = reader;
+        }
+
+        @Override
+        public SAMFileHeader getFileHeader() {
+            return reader.getFileHeader();
+        }
+
+        @Override
+        public Type type() {
+            return reader.type();
+        }
+
+        @Override
+        public String getResourceDescription() {
+            return reader.getResourceDescription();
+        }
+
+        @Override
+        public boolean hasIndex() {
+            return reader.hasIndex();
+        }
+
+        @Override
+        public Indexing indexing() {
+            return reader.indexing();
+        }
+
+        @Override
+        public SAMRecordIterator iterator() {
+            return track(reader.iterator());
+        }
+
+        @Override
+        public SAMRecordIterator query(final String sequence, final int start, final int end,
+                                       final boolean contained) {
+            return track(reader.query(sequence, start, end, contained));
+        }
+
+        @Override
+        public SAMRecordIterator queryOverlapping(final String sequence, final int start, final int end) {
+            return track(reader.queryOverlapping(sequence, start, end));
+        }
+
+        @Override
+        public SAMRecordIterator queryContained(final String sequence, final int start, final int end) {
+            return track(reader.queryContained(sequence, start, end));
+        }
+
+        @Override
+        public SAMRecordIterator query(final QueryInterval[] intervals, final boolean contained) {
+            return track(reader.query(intervals, contained));
+        }
+
+        @Override
+        public SAMRecordIterator queryOverlapping(final QueryInterval[] intervals) {
+            return track(reader.queryOverlapping(intervals));
+        }
+
+        @Override
+        public SAMRecordIterator queryContained(final QueryInterval[] intervals) {
+            return track(reader.queryContained(intervals));
+        }
+
+        @Override
+        public SAMRecordIterator queryUnmapped() {
+            return track(reader.queryUnmapped());
+        }
+
+        @Override
+        public SAMRecordIterator queryAlignmentStart(final String sequence, final int start) {
+            return track(reader.queryAlignmentStart(sequence, start));
+        }
+
+        @Override
+        public SAMRecord queryMate(final SAMRecord rec) {
+            return reader.queryMate(rec);
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (lastIterator != null) {
+                    lastIterator.close();
+                }
+            } catch (IllegalStateException e) {
+                LOGGER.debug("Failed to close an iterator, reader won't be reused", e);
+                synchronized (BamReaderCache.this) {
+                    markReturned(key.id);
+                }
+                CloserUtil.close(reader);
+                return;
+            }
+            release(key, generation, reader);
+        }
+
+        private SAMRecordIterator track(final SAMRecordIterator iterator) {
+            lastIterator = iterator;
+            return iterator;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.manager.bam;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.epam.catgenome.entity.bam.BamQueryOption;
+import com.epam.catgenome.entity.bam.BamTrack;
+import com.epam.catgenome.entity.bam.Read;
+import com.epam.catgenome.entity.reference.Reference;
+import com.epam.catgenome.entity.wig.Wig;
+import com.epam.catgenome.manager.bam.handlers.SAMRecordHandler;
+import com.epam.catgenome.manager.bam.sifters.ConstantMemorySAMRecordSampler;
+import com.epam.catgenome.manager.reference.ReferenceGenomeManager;
+import com.epam.catgenome.manager.reference.ReferenceManager;
+import com.epam.catgenome.util.BamUtil;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.util.CloseableIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * {@code BamShardedReadLoader} loads reads for wide BAM track intervals in parallel. The interval is split into
+ * shards, each shard is queried through its own {@link SamReader} and processed by its own
+ * {@link SAMRecordHandler}. Results are merged in shard order, so reads are written to the emitter in the same
+ * coordinate order, as during sequential loading. Shards have a fixed size and only a limited number of them is
+ * loaded ahead of the merged one, so memory, used for buffered reads, doesn't depend on the interval width.
+ * <p>
+ * A read belongs to the shard, where it starts, reads overlapping the left border of a shard are skipped, since
+ * they were already processed by the previous one. A shard size is a multiple of the BAI linear index window, if it
+ * is wider than a window, and, when downsampling is requested, of the downsampling frame, so that frames never span
+ * two shards. If a shard size is a multiple of a window, shards after the first one start at window borders, so that
+ * adjacent shards don't scan the same index bins, the first shard ends right before the first border.
+ * </p>
+ */
+@Service
+public class BamShardedReadLoader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BamShardedReadLoader.class);
+
+    /**
+     * Size of a window of BAI linear index
+     */
+    private static final int LINEAR_INDEX_WINDOW = 16384;
+    private static final int DEFAULT_SHARD_SIZE = 500000;
+
+    @Autowired
+    private ReferenceManager referenceManager;
+
+    @Autowired
+    private ReferenceGenomeManager referenceGenomeManager;
+
+    @Value("#{catgenome['bam.loading.threads'] ?: 0}")
+    private int loadingThreads;
+
+    @Value("#{catgenome['bam.loading.shard.size'] ?: " + DEFAULT_SHARD_SIZE + "}")
+    private int shardSize;
+
+    private ExecutorService executor;
+
+    public BamShardedReadLoader() {
+        // default constructor for Spring
+    }
+
+    /**
+     * Creates a loader with explicit settings, {@link #init()} should be called before loading
+     * @param referenceManager for loading reference sequence
+     * @param referenceGenomeManager for resolving references
+     * @param loadingThreads number of threads, loading shards, 0 means number of processors
+     * @param shardSize size of a shard in bases
+     */
+    public BamShardedReadLoader(final ReferenceManager referenceManager,
+                                final ReferenceGenomeManager referenceGenomeManager,
+                                final int loadingThreads, final int shardSize) {
+        this.referenceManager = referenceManager;
+        this.referenceGenomeManager = referenceGenomeManager;
+        this.loadingThreads = loadingThreads;
+        this.shardSize = shardSize;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (loadingThreads <= 0) {
+            loadingThreads = Runtime.getRuntime().availableProcessors();
+        }
+        if (loadingThreads > 1) {
+            executor = Executors.newFixedThreadPool(loadingThreads);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Opens a new reader for a BAM file, each shard uses its own reader
+     */
+    @FunctionalInterface
+    public interface ReaderSupplier {
+        SamReader open() throws IOException;
+    }
+
+    /**
+     * Checks if a track interval is wide enough to be loaded by several shards
+     * @param track to load
+     * @return true if parallel loading should be used
+     */
+    public boolean isApplicable(final BamTrack<Read> track) {
+        return executor != null && track.getEndIndex() - track.getStartIndex() + 1 >= 2L * shardSize;
+    }
+
+    /**
+     * Loads reads of a track interval by shards, writes them to the emitter and fills track with coverage,
+     * downsampling results, splice junctions and reference buffer
+     * @param track to fill
+     * @param options track options
+     * @param chromosomeName name of a chromosome in the BAM file
+     * @param coverageOnly if true, reads are not written to the emitter
+     * @param trackEmitter where to write reads
+     * @param readers supplier of readers for the BAM file
+     * @throws IOException if reading of any shard fails
+     */
+    public void loadReads(final BamTrack<Read> track, final BamQueryOption options, final String chromosomeName,
+                          final boolean coverageOnly, final BamTrackEmitter trackEmitter,
+                          final ReaderSupplier readers) throws IOException {
+        final List<int[]> shards = splitIntoShards(track.getStartIndex(), track.getEndIndex(), options);
+        LOGGER.debug("Loading reads for {}:{}-{} by {} shards", chromosomeName, track.getStartIndex(),
+                track.getEndIndex(), shards.size());
+
+        // reference is resolved once on the calling thread, so that shards don't access the database
+        final Reference reference = referenceGenomeManager.getOnlyReference(options.getRefID());
+        final SAMRecordHandler handler = SAMRecordHandler.createMergingHandler(track.getStartIndex(),
+                track.getEndIndex(), referenceManager, reference, options);
+        final List<Wig> downsampleCoverage = new ArrayList<>();
+        final Deque<Future<ShardResult>> loading = new ArrayDeque<>();
+        Wig lastFrameCoverage = null;
+        int nextShard = 0;
+        try {
+            while (nextShard < shards.size() || !loading.isEmpty()) {
+                while (nextShard < shards.size() && loading.size() <= loadingThreads) {
+                    final int[] shard = shards.get(nextShard);
+                    final boolean first = nextShard == 0;
+                    loading.add(executor.submit(() -> loadShard(track, options, chromosomeName, coverageOnly,
+                            reference, shard[0], shard[1], first, readers)));
+                    nextShard++;
+                }
+
+                final ShardResult result = getResult(loading.poll());
+                for (Read read : result.reads.getReads()) {
+                    trackEmitter.writeRecord(read);
+                }
+                handler.merge(result.handler);
+                final List<Wig> shardCoverage = result.handler.getSifter().getDownsampleCoverageResult();
+                // the last frame of a shard is reported, if there are reads after it, as during sequential loading
+                if (lastFrameCoverage != null && result.recordsCount > 0) {
+                    downsampleCoverage.add(lastFrameCoverage);
+                }
+                downsampleCoverage.addAll(shardCoverage);
+                if (result.recordsCount > 0) {
+                    lastFrameCoverage = result.handler.getSifter() instanceof ConstantMemorySAMRecordSampler
+                            ? ((ConstantMemorySAMRecordSampler) result.handler.getSifter()).getLastFrameCoverage()
+                            : null;
+                }
+            }
+
+            track.setMinPosition(handler.getMinPosition());
+            track.setReferenceBuffer(handler.getReferenceBuff());
+            track.setDownsampleCoverage(downsampleCoverage);
+            track.setBaseCoverage(handler.getBaseCoverage(track.getScaleFactor()));
+            track.setSpliceJunctions(handler.getSpliceJunctions());
+        } finally {
+            loading.forEach(future -> future.cancel(true));
+        }
+    }
+
+    List<int[]> splitIntoShards(final int start, final int end, final BamQueryOption options) {
+        final int length = end - start + 1;
+        final int count = Math.max(1, length / shardSize);
+        int step = (length + count - 1) / count;
+        if (step > LINEAR_INDEX_WINDOW) {
+            step = roundUp(step, LINEAR_INDEX_WINDOW);
+        }
+        if (options.isDownSampling()) {
+            step = roundUp(step, options.getFrame());
+        }
+
+        final List<int[]> shards = new ArrayList<>(count + 1);
+        int firstStart = start;
+        if (step % LINEAR_INDEX_WINDOW == 0) {
+            // windows start at 1-based positions k * LINEAR_INDEX_WINDOW + 1
+            final int alignedStart = roundUp(start - 1, LINEAR_INDEX_WINDOW) + 1;
+            if (alignedStart > start && alignedStart <= end) {
+                shards.add(new int[] {start, alignedStart - 1});
+                firstStart = alignedStart;
+            }
+        }
+        for (int shardStart = firstStart; shardStart <= end; shardStart += step) {
+            shards.add(new int[] {shardStart, (int) Math.min((long) shardStart + step - 1, end)});
+        }
+        return shards;
+    }
+
+    private ShardResult loadShard(final BamTrack<Read> track, final BamQueryOption options,
+                                  final String chromosomeName, final boolean coverageOnly,
+                                  final Reference reference, final int shardStart, final int shardEnd,
+                                  final boolean first, final ReaderSupplier readers)
+            throws IOException {
+        final ReadBuffer reads = new ReadBuffer();
+        try (SamReader reader = readers.open();
+             CloseableIterator<SAMRecord> iterator = BamUtil.setIteratorFiltering(
+                     reader.query(chromosomeName, shardStart, shardEnd, false), options)) {
+            final SAMRecordHandler handler = BamUtil.createSAMRecordHandler(track, options, referenceManager,
+                    coverageOnly, reads, reference, shardStart, shardEnd, first ? null : shardStart);
+            int recordsCount = 0;
+            while (iterator.hasNext()) {
+                final SAMRecord samRecord = iterator.next();
+                if (first || samRecord.getAlignmentStart() >= shardStart) {
+                    handler.add(samRecord);
+                    recordsCount++;
+                }
+            }
+            handler.getSifter().finish();
+            return new ShardResult(handler, reads, recordsCount);
+        }
+    }
+
+    private static ShardResult getResult(final Future<ShardResult> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Reads loading was interrupted", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static int roundUp(final int value, final int multiple) {
+        return (value + multiple - 1) / multiple * multiple;
+    }
+
+    private static final class ShardResult {
+        private final SAMRecordHandler handler;
+        private final ReadBuffer reads;
+        private final int recordsCount;
+
+        private ShardResult(final SAMRecordHandler handler, final ReadBuffer reads, final int recordsCount) {
+            this.handler = handler;
+            this.reads = reads;
+            this.recordsCount = recordsCount;
+        }
+    }
+
+    /**
+     * Keeps reads of a shard in memory until all previous shards are written to the real emitter
+     */
+    private static final class ReadBuffer extends BamTrackEmitter {
+        private final List<Read> reads = new ArrayList<>();
+
+        private ReadBuffer() {
+            super(null, null);
+        }
+
+        @Override
+        public void writeRecord(final Read read) {
+            reads.add(read);
+        }
+
+        private List<Read> getReads() {
+            return reads;
+        }
+    }
+}
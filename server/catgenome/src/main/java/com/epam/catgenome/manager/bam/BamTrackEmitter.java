@@ -42,12 +42,13 @@ import java.io.IOException;
  * In case of any exception during writing to {@link BamTrackEmitter} {@link BamTrackEmitter#finishWithException} should
  * be called.
  * BamTrackEmitter produces buffering.
+ * This implementation writes a track in JSON format, see {@link BinaryBamTrackEmitter} for a compact binary format.
  */
 public class BamTrackEmitter {
 
     private static final int BUFFER_SIZE = 512 * 1024;
 
-    private JsonMapper jsonMapper;
+    private final JsonMapper jsonMapper;
 
     private final ResponseBodyEmitter emitter;
 
@@ -58,13 +59,22 @@ public class BamTrackEmitter {
     private StringBuilder stringBuffer;
 
     public BamTrackEmitter(ResponseBodyEmitter emitter) throws IOException {
-        this.emitter = emitter;
+        this(emitter, new JsonMapper());
         this.stringBuffer = new StringBuilder(BUFFER_SIZE);
-        this.jsonMapper = new JsonMapper();
 
         writeHeader();
     }
 
+    /**
+     * Creates an emitter, that doesn't write a JSON header, for subclasses, implementing other wire formats
+     * @param emitter to write data to
+     * @param jsonMapper to serialize track metadata
+     */
+    protected BamTrackEmitter(ResponseBodyEmitter emitter, JsonMapper jsonMapper) {
+        this.emitter = emitter;
+        this.jsonMapper = jsonMapper;
+    }
+
     /**
      * Write a read to the emitter. Real data transferring could not be happened due to buffering
      * @param read to be written
@@ -94,14 +104,13 @@ public class BamTrackEmitter {
         checkFinished();
         write("],");
 
-        JsonNode metadata = jsonMapper.convertValue(bamTrack, JsonNode.class);
-        ((ObjectNode) metadata).remove("blocks");
+        JsonNode metadata = getTrackMetadata(bamTrack);
         write(jsonMapper.writeValueAsString(metadata).substring(1));
         write(",\"status\":\"OK\"}");
 
         sendBuffer();
         emitter.complete();
-        finished = true;
+        markFinished();
     }
 
     /**
@@ -138,7 +147,30 @@ public class BamTrackEmitter {
         stringBuffer.setLength(0);
     }
 
-    private void checkFinished() {
+    /**
+     * Converts BamTrack to JSON, omitting {@link BamTrack#blocks} field
+     * @param bamTrack to convert
+     * @return JSON representation of track metadata
+     */
+    protected JsonNode getTrackMetadata(BamTrack<Read> bamTrack) {
+        ObjectNode metadata = jsonMapper.convertValue(bamTrack, ObjectNode.class);
+        metadata.remove("blocks");
+        return metadata;
+    }
+
+    protected JsonMapper getJsonMapper() {
+        return jsonMapper;
+    }
+
+    protected ResponseBodyEmitter getEmitter() {
+        return emitter;
+    }
+
+    protected void markFinished() {
+        finished = true;
+    }
+
+    protected void checkFinished() {
         if (finished) {
             throw new IllegalStateException("Already finished");
         }
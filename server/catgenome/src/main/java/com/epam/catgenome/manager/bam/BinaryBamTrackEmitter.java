@@ -0,0 +1,272 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.manager.bam;
+
+import com.epam.catgenome.controller.JsonMapper;
+import com.epam.catgenome.entity.bam.BamTrack;
+import com.epam.catgenome.entity.bam.BasePosition;
+import com.epam.catgenome.entity.bam.Read;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * An extension of {@link BamTrackEmitter}, that writes a BAM track in a compact binary columnar format instead of
+ * JSON. Encoded data is sent to the wrapped {@link ResponseBodyEmitter} as byte arrays, so it is written directly to
+ * the response output stream.
+ * <p>
+ * A stream starts with {@link #MAGIC} bytes and a format {@link #VERSION} byte, followed by frames. Each frame
+ * consists of a single byte frame type, a 4-byte big-endian payload length and a payload:
+ * <ul>
+ *     <li>{@link #READS_FRAME} - a block of reads, each field is written as a separate column for all reads of a
+ *     block: start positions are delta-encoded, end positions are encoded as read lengths, repetitive strings
+ *     (names, CIGARs, read groups, reference names) are dictionary-encoded per block;</li>
+ *     <li>{@link #TRACK_FRAME} - UTF-8 JSON of {@link BamTrack} metadata without reads, finishes a stream;</li>
+ *     <li>{@link #ERROR_FRAME} - UTF-8 error message, finishes a stream.</li>
+ * </ul>
+ * Integers are written as unsigned LEB128 varints, signed values are zigzag-encoded. Nullable integers are
+ * shifted by one, zero stands for {@code null}. Strings are written as a varint length, shifted by one, and UTF-8
+ * bytes. Dictionary columns are written as a dictionary of strings followed by a varint index per read, shifted
+ * by one. {@link Read#getDifferentBase()} is written as a nullable varint count followed by relative positions
+ * and bases.
+ * </p>
+ */
+public class BinaryBamTrackEmitter extends BamTrackEmitter {
+
+    public static final MediaType MEDIA_TYPE = new MediaType("application", "x-ngb-bam-track");
+
+    public static final byte[] MAGIC = {'N', 'G', 'B', 'T'};
+    public static final byte VERSION = 1;
+    public static final byte READS_FRAME = 'R';
+    public static final byte TRACK_FRAME = 'T';
+    public static final byte ERROR_FRAME = 'E';
+
+    private static final int READS_PER_BLOCK = 4096;
+    private static final int BUFFER_SIZE = 512 * 1024;
+    private static final int VARINT_SHIFT = 7;
+    private static final int VARINT_MASK = 0x7F;
+    private static final int VARINT_CONTINUATION = 0x80;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+
+    private final List<Read> reads = new ArrayList<>(READS_PER_BLOCK);
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(BUFFER_SIZE);
+    private final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+    private final DataOutputStream frameOutput = new DataOutputStream(frame);
+
+    public BinaryBamTrackEmitter(ResponseBodyEmitter emitter) throws IOException {
+        super(emitter, new JsonMapper());
+        buffer.write(MAGIC);
+        buffer.write(VERSION);
+    }
+
+    @Override
+    public void writeRecord(Read read) throws IOException {
+        checkFinished();
+        reads.add(read);
+        if (reads.size() >= READS_PER_BLOCK) {
+            writeReads();
+        }
+    }
+
+    @Override
+    public void writeTrackAndFinish(BamTrack<Read> bamTrack) throws IOException {
+        checkFinished();
+        writeReads();
+        frameOutput.write(getJsonMapper().writeValueAsBytes(getTrackMetadata(bamTrack)));
+        writeFrame(TRACK_FRAME);
+
+        sendBuffer();
+        getEmitter().complete();
+        markFinished();
+    }
+
+    @Override
+    public void finishWithException(Throwable throwable) {
+        checkFinished();
+        try {
+            reads.clear();
+            frame.reset();
+            String message = throwable.getLocalizedMessage();
+            frameOutput.write((message == null ? "" : message).getBytes(StandardCharsets.UTF_8));
+            writeFrame(ERROR_FRAME);
+            sendBuffer();
+        } catch (IOException e) {
+            markFinished();
+            getEmitter().completeWithError(e);
+            return;
+        }
+        getEmitter().complete();
+        markFinished();
+    }
+
+    private void writeReads() throws IOException {
+        if (reads.isEmpty()) {
+            return;
+        }
+        writeVarInt(reads.size());
+
+        int previousStart = 0;
+        for (Read read : reads) {
+            writeVarInt(zigzag(read.getStartIndex() - previousStart));
+            previousStart = read.getStartIndex();
+        }
+        for (Read read : reads) {
+            writeVarInt(read.getEndIndex() - read.getStartIndex());
+        }
+        writeIntColumn(Read::getFlagMask);
+        writeIntColumn(Read::getMappingQuality);
+        writeIntColumn(Read::getTLen);
+        writeIntColumn(Read::getPNext);
+        for (Read read : reads) {
+            frameOutput.writeByte(encodeBoolean(read.getStand()));
+        }
+
+        writeDictionaryColumn(Read::getName);
+        writeDictionaryColumn(Read::getPairedReadName);
+        writeDictionaryColumn(Read::getCigarString);
+        writeDictionaryColumn(Read::getRName);
+        writeDictionaryColumn(Read::getRNext);
+        writeDictionaryColumn(Read::getReadGroup);
+
+        writeStringColumn(Read::getHeadSequence);
+        writeStringColumn(Read::getTailSequence);
+        writeStringColumn(Read::getQualities);
+        writeStringColumn(Read::getSequence);
+
+        for (Read read : reads) {
+            writeDifferentBases(read.getDifferentBase());
+        }
+
+        reads.clear();
+        writeFrame(READS_FRAME);
+        if (buffer.size() > BUFFER_SIZE) {
+            sendBuffer();
+        }
+    }
+
+    private void writeIntColumn(Function<Read, Integer> getter) throws IOException {
+        for (Read read : reads) {
+            writeNullableInt(getter.apply(read));
+        }
+    }
+
+    private void writeStringColumn(Function<Read, String> getter) throws IOException {
+        for (Read read : reads) {
+            writeString(getter.apply(read));
+        }
+    }
+
+    private void writeDictionaryColumn(Function<Read, String> getter) throws IOException {
+        final Map<String, Integer> dictionary = new HashMap<>();
+        final List<String> values = new ArrayList<>();
+        final int[] indexes = new int[reads.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            final String value = getter.apply(reads.get(i));
+            if (value != null) {
+                indexes[i] = dictionary.computeIfAbsent(value, v -> {
+                    values.add(v);
+                    return values.size();
+                });
+            }
+        }
+        writeVarInt(values.size());
+        for (String value : values) {
+            writeString(value);
+        }
+        for (int index : indexes) {
+            writeVarInt(index);
+        }
+    }
+
+    private void writeDifferentBases(List<BasePosition> differentBases) throws IOException {
+        if (differentBases == null) {
+            writeVarInt(0);
+            return;
+        }
+        writeVarInt(differentBases.size() + 1);
+        for (BasePosition position : differentBases) {
+            writeNullableInt(position.getRelativePosition());
+            writeString(position.getBase());
+        }
+    }
+
+    private void writeNullableInt(Integer value) throws IOException {
+        writeVarInt(value == null ? 0 : zigzag(value) + 1);
+    }
+
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length + 1);
+        frameOutput.write(bytes);
+    }
+
+    private void writeVarInt(int value) throws IOException {
+        int remaining = value;
+        while ((remaining & ~VARINT_MASK) != 0) {
+            frameOutput.writeByte((remaining & VARINT_MASK) | VARINT_CONTINUATION);
+            remaining >>>= VARINT_SHIFT;
+        }
+        frameOutput.writeByte(remaining);
+    }
+
+    private void writeFrame(byte type) throws IOException {
+        final DataOutputStream output = new DataOutputStream(buffer);
+        output.writeByte(type);
+        output.writeInt(frame.size());
+        frame.writeTo(buffer);
+        frame.reset();
+    }
+
+    private void sendBuffer() throws IOException {
+        getEmitter().send(buffer.toByteArray(), MediaType.APPLICATION_OCTET_STREAM);
+        buffer.reset();
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> (Integer.SIZE - 1));
+    }
+
+    private static byte encodeBoolean(Boolean value) {
+        if (value == null) {
+            return 0;
+        }
+        return value ? TRUE : FALSE;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.manager.bam.handlers;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+import com.epam.catgenome.entity.bam.BaseCoverage;
+
+/**
+ * A compact read-only list of {@link BaseCoverage}, backed by primitive arrays. Elements are created on access,
+ * so a coverage of a wide track doesn't keep a boxed object per position until it is serialized.
+ */
+public class BaseCoverageList extends AbstractList<BaseCoverage> implements RandomAccess {
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int NUCLEOTIDE_FIELDS = 7;
+
+    private final boolean ranged;
+    private final boolean nucleotides;
+    private int count;
+    private int[] starts;
+    private int[] ends;
+    private int[] values;
+    private int[] nucleotideValues;
+
+    /**
+     * @param ranged if true each element covers an interval, otherwise a single position
+     * @param nucleotides if true each element keeps A, C, G, T, N, deletion and insertion counts
+     */
+    public BaseCoverageList(final boolean ranged, final boolean nucleotides) {
+        this.ranged = ranged;
+        this.nucleotides = nucleotides;
+        this.starts = new int[INITIAL_CAPACITY];
+        this.ends = ranged ? new int[INITIAL_CAPACITY] : null;
+        this.values = new int[INITIAL_CAPACITY];
+        this.nucleotideValues = nucleotides ? new int[INITIAL_CAPACITY * NUCLEOTIDE_FIELDS] : null;
+    }
+
+    /**
+     * Adds coverage of a single position
+     */
+    public void add(final int position, final int value) {
+        ensureCapacity();
+        starts[count] = position;
+        values[count] = value;
+        count++;
+    }
+
+    /**
+     * Adds coverage of an interval
+     */
+    public void add(final int start, final int end, final int value) {
+        ensureCapacity();
+        starts[count] = start;
+        ends[count] = end;
+        values[count] = value;
+        count++;
+    }
+
+    /**
+     * Adds coverage of a single position with counts of each nucleotide
+     */
+    public void add(final int position, final int value, final int cCov, final int aCov, final int tCov,
+                    final int gCov, final int nCov, final int delCov, final int insCov) {
+        ensureCapacity();
+        starts[count] = position;
+        values[count] = value;
+        final int offset = count * NUCLEOTIDE_FIELDS;
+        nucleotideValues[offset] = cCov;
+        nucleotideValues[offset + 1] = aCov;
+        nucleotideValues[offset + 2] = tCov;
+        nucleotideValues[offset + 3] = gCov;
+        nucleotideValues[offset + 4] = nCov;
+        nucleotideValues[offset + 5] = delCov;
+        nucleotideValues[offset + 6] = insCov;
+        count++;
+    }
+
+    @Override
+    public BaseCoverage get(final int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+        final BaseCoverage coverage = ranged ? new BaseCoverage(starts[index], ends[index], values[index])
+                : new BaseCoverage(starts[index], values[index]);
+        if (nucleotides) {
+            final int offset = index * NUCLEOTIDE_FIELDS;
+            coverage.setCoverage(nucleotideValues[offset], nucleotideValues[offset + 1],
+                    nucleotideValues[offset + 2], nucleotideValues[offset + 3], nucleotideValues[offset + 4],
+                    nucleotideValues[offset + 5], nucleotideValues[offset + 6]);
+        }
+        return coverage;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    private void ensureCapacity() {
+        if (count < starts.length) {
+            return;
+        }
+        final int capacity = starts.length * 2;
+        starts = Arrays.copyOf(starts, capacity);
+        values = Arrays.copyOf(values, capacity);
+        if (ranged) {
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        if (nucleotides) {
+            nucleotideValues = Arrays.copyOf(nucleotideValues, capacity * NUCLEOTIDE_FIELDS);
+        }
+    }
+}
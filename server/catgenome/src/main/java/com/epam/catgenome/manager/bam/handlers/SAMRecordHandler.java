@@ -25,6 +25,7 @@
 package com.epam.catgenome.manager.bam.handlers;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -37,12 +38,15 @@ import com.epam.catgenome.entity.bam.BamTrackMode;
 import com.epam.catgenome.entity.bam.BaseCoverage;
 import com.epam.catgenome.entity.bam.BasePosition;
 import com.epam.catgenome.entity.bam.SpliceJunctionsEntity;
+import com.epam.catgenome.entity.reference.Reference;
 import com.epam.catgenome.manager.bam.filters.Filter;
 import com.epam.catgenome.manager.bam.sifters.DownsamplingSifter;
 import com.epam.catgenome.manager.reference.ReferenceManager;
 import com.epam.catgenome.util.BamUtil;
 import htsjdk.samtools.CigarElement;
 import htsjdk.samtools.CigarOperator;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
 import htsjdk.samtools.SAMRecord;
 
 
@@ -57,15 +61,16 @@ public class SAMRecordHandler implements Handler<SAMRecord> {
     private static final String XS_TAG = "XS";
 
     private final Filter<SAMRecord> filter;
-    //for coverage
-    private final int[] coverageArray;
-    private final int[] cCoverageArray;
-    private final int[] aCoverageArray;
-    private final int[] tCoverageArray;
-    private final int[] gCoverageArray;
-    private final int[] nCoverageArray;
-    private final int[] insCoverageArray;
-    private final int[] delCoverageArray;
+    //for coverage, nucleotide, insertion and deletion arrays are allocated only for FULL mode, in other modes
+    //deletions are subtracted from coverageArray directly
+    private final CoverageArray coverageArray;
+    private final CoverageArray cCoverageArray;
+    private final CoverageArray aCoverageArray;
+    private final CoverageArray tCoverageArray;
+    private final CoverageArray gCoverageArray;
+    private final CoverageArray nCoverageArray;
+    private final CoverageArray insCoverageArray;
+    private final CoverageArray delCoverageArray;
     //track information
     private final int startTrack;
     private final int endTrack;
@@ -75,6 +80,7 @@ public class SAMRecordHandler implements Handler<SAMRecord> {
     private final long refID;
     private final String chromosomeName;
     private final ReferenceManager referenceManager;
+    private final Reference reference;
     private BamReferenceBuffer referenceBuffer = null;
     //options
     private boolean showClipping;
@@ -93,11 +99,39 @@ public class SAMRecordHandler implements Handler<SAMRecord> {
      */
     public SAMRecordHandler(final int startTrack, final int endTrack, final ReferenceManager referenceManager,
                             final Filter<SAMRecord> filter, final BamQueryOption options) throws IOException {
+        this(startTrack, endTrack, startTrack, endTrack, referenceManager, null, filter, options);
+    }
+
+    /**
+     * Creates a handler for reads, starting in a shard of the track. Coverage is still calculated for the whole
+     * track, but arrays are allocated only for the shard, values outside of it are kept sparse. Results of the
+     * shards are combined by {@link #merge(SAMRecordHandler)}.
+     * @param startTrack left track border
+     * @param endTrack right track border
+     * @param shardStart left border of the shard
+     * @param shardEnd right border of the shard
+     * @param referenceManager for loading reference sequence
+     * @param reference already loaded reference, if null it is loaded by ID from the options on every access
+     * @param filter for filtering and downsampling
+     * @param options track options
+     * @throws IOException
+     */
+    public SAMRecordHandler(final int startTrack, final int endTrack, final int shardStart, final int shardEnd,
+                            final ReferenceManager referenceManager, final Reference reference,
+                            final Filter<SAMRecord> filter, final BamQueryOption options) throws IOException {
+        this(startTrack, endTrack, shardStart, shardEnd, referenceManager, reference, filter, options, true);
+    }
+
+    private SAMRecordHandler(final int startTrack, final int endTrack, final int shardStart, final int shardEnd,
+                             final ReferenceManager referenceManager, final Reference reference,
+                             final Filter<SAMRecord> filter, final BamQueryOption options,
+                             final boolean loadReferenceBuffer) throws IOException {
         this.startTrack = startTrack;
         this.endTrack = endTrack;
         this.referenceManager = referenceManager;
-        this.min = startTrack;
-        this.max = endTrack + Constants.REFERENCE_STEP;
+        this.reference = reference;
+        this.min = shardStart;
+        this.max = shardEnd + Constants.REFERENCE_STEP;
 
         this.refID = options.getRefID();
         this.showClipping = options.getShowClipping() != null && options.getShowClipping();
@@ -105,20 +139,40 @@ public class SAMRecordHandler implements Handler<SAMRecord> {
         this.showSpliceJunction = options.getShowSpliceJunction() != null && options.getShowSpliceJunction();
         this.filter = filter;
 
-        if (options.getMode() == BamTrackMode.FULL) {
-            referenceBuffer = new BamReferenceBuffer(referenceManager.getSequenceString(min, max, refID, chromosomeName)
+        if (options.getMode() == BamTrackMode.FULL && loadReferenceBuffer) {
+            referenceBuffer = new BamReferenceBuffer(loadReference(min, max)
                     .toUpperCase());
         }
 
-        this.coverageArray = new int[endTrack - startTrack + 1];
-        this.cCoverageArray = new int[endTrack - startTrack + 1];
-        this.aCoverageArray = new int[endTrack - startTrack + 1];
-        this.tCoverageArray = new int[endTrack - startTrack + 1];
-        this.gCoverageArray = new int[endTrack - startTrack + 1];
-        this.nCoverageArray = new int[endTrack - startTrack + 1];
-        this.insCoverageArray = new int[endTrack - startTrack + 1];
-        this.delCoverageArray = new int[endTrack - startTrack + 1];
         this.mode = options.getMode();
+        final boolean full = mode == BamTrackMode.FULL;
+        this.coverageArray = new CoverageArray(shardStart, shardEnd);
+        this.cCoverageArray = full ? new CoverageArray(shardStart, shardEnd) : null;
+        this.aCoverageArray = full ? new CoverageArray(shardStart, shardEnd) : null;
+        this.tCoverageArray = full ? new CoverageArray(shardStart, shardEnd) : null;
+        this.gCoverageArray = full ? new CoverageArray(shardStart, shardEnd) : null;
+        this.nCoverageArray = full ? new CoverageArray(shardStart, shardEnd) : null;
+        this.insCoverageArray = full ? new CoverageArray(shardStart, shardEnd) : null;
+        this.delCoverageArray = full ? new CoverageArray(shardStart, shardEnd) : null;
+    }
+
+    /**
+     * Creates a handler, that only combines results of shard handlers by {@link #merge(SAMRecordHandler)}.
+     * Its reference sequence is collected from the reference sequences of the shards instead of being loaded again.
+     * @param startTrack left track border
+     * @param endTrack right track border
+     * @param referenceManager for loading reference sequence, if shards don't cover some of it
+     * @param reference already loaded reference
+     * @param options track options
+     * @return a handler without a filter
+     * @throws IOException
+     */
+    public static SAMRecordHandler createMergingHandler(final int startTrack, final int endTrack,
+                                                       final ReferenceManager referenceManager,
+                                                       final Reference reference, final BamQueryOption options)
+            throws IOException {
+        return new SAMRecordHandler(startTrack, endTrack, startTrack, endTrack, referenceManager, reference, null,
+                options, false);
     }
 
     /**
@@ -136,7 +190,7 @@ public class SAMRecordHandler implements Handler<SAMRecord> {
 
         if (BamUtil.validateReadParams(flags, cigarList, end, start)) {
             coverageAdd(start, end, coverageArray, true);
-            final String readString = record.getReadString();
+            final byte[] readBases = record.getReadBases();
 
             if (showClipping) {
                 final CigarElement first = cigarList.get(0);
@@ -144,11 +198,11 @@ public class SAMRecordHandler implements Handler<SAMRecord> {
 
                 if (first.getOperator().equals(CigarOperator.S)) {
                     start -= first.getLength();
-                    head = readString.substring(0, first.getLength());
+                    head = toBaseString(readBases, 0, first.getLength());
                 }
                 if (last.getOperator().equals(CigarOperator.S)) {
                     end += last.getLength();
-                    tail = readString.substring(readString.length() - last.getLength(), readString.length());
+                    tail = toBaseString(readBases, readBases.length - last.getLength(), last.getLength());
                 }
             }
             if (start < min) {
@@ -158,7 +212,7 @@ public class SAMRecordHandler implements Handler<SAMRecord> {
                 refreshTailReferenceBuffer(end);
             }
 
-            List<BasePosition> differentBase = computeDifferentBase(readString,
+            List<BasePosition> differentBase = computeDifferentBase(readBases,
                     referenceBuffer != null ? referenceBuffer.getBuffer() : null, start, min, cigarList, showClipping,
                     record);
 
@@ -177,20 +231,22 @@ public class SAMRecordHandler implements Handler<SAMRecord> {
 
         int coverageValue = 0;
         int delCoverageValue = 0;
-        final List<BaseCoverage> coverageList = new ArrayList<>();
-        for (int i = 0; i < coverageArray.length; i++) {
-            coverageValue += coverageArray[i];
-            delCoverageValue += delCoverageArray[i];
+        final boolean full = mode == BamTrackMode.FULL;
+        final BaseCoverageList coverageList = new BaseCoverageList(false, full);
+        for (int position = startTrack; position <= endTrack; position++) {
+            coverageValue += coverageArray.get(position);
+            if (full) {
+                delCoverageValue += delCoverageArray.get(position);
+            }
 
             if (coverageValue - delCoverageValue > 0) {
-                BaseCoverage baseCoverage =
-                        new BaseCoverage(startTrack + i, coverageValue - delCoverageValue);
-                if (mode == BamTrackMode.FULL) {
-                    baseCoverage.setCoverage(cCoverageArray[i], aCoverageArray[i], tCoverageArray[i],
-                            gCoverageArray[i], nCoverageArray[i], delCoverageValue,
-                            insCoverageArray[i]);
+                if (full) {
+                    coverageList.add(position, coverageValue - delCoverageValue, cCoverageArray.get(position),
+                            aCoverageArray.get(position), tCoverageArray.get(position), gCoverageArray.get(position),
+                            nCoverageArray.get(position), delCoverageValue, insCoverageArray.get(position));
+                } else {
+                    coverageList.add(position, coverageValue);
                 }
-                coverageList.add(baseCoverage);
             }
         }
         return coverageList;
@@ -198,22 +254,17 @@ public class SAMRecordHandler implements Handler<SAMRecord> {
 
     private List<BaseCoverage> getSummarizedCoverage(double scaleFactor) {
         int coverageValue = 0;
-        int delCoverageValue = 0;
-        final List<BaseCoverage> coverageList = new ArrayList<>();
+        final BaseCoverageList coverageList = new BaseCoverageList(true, false);
         final int step = (int) Math.max(1, Math.round(1.0 / scaleFactor));
         int summ = 0;
         int denum = 0;
-        for (int i = 0; i < coverageArray.length; i++) {
-            coverageValue += coverageArray[i];
-            delCoverageValue += delCoverageArray[i];
+        for (int i = 0; i <= endTrack - startTrack; i++) {
+            coverageValue += coverageArray.get(startTrack + i);
 
-            summ = Math.max(summ, coverageValue - delCoverageValue);
-            //summ += coverageValue - delCoverageValue;
+            summ = Math.max(summ, coverageValue);
             if (i != 0 && i % step == 0) { // end of step
                 if (summ != 0) {
-                    BaseCoverage baseCoverage =
-                            new BaseCoverage(startTrack + i - denum, startTrack + i, summ); // / (float) denum
-                    coverageList.add(baseCoverage);
+                    coverageList.add(startTrack + i - denum, startTrack + i, summ);
                     summ = 0;
                 }
 
@@ -263,11 +314,56 @@ public class SAMRecordHandler implements Handler<SAMRecord> {
         return filter;
     }
 
+    /**
+     * Adds coverage, splice junctions and reference sequence, collected by a handler of a shard of the same track.
+     * Reads of the shard must be already passed to its filter, shards must be merged in coordinate order.
+     * @param shard handler, created for a shard of this track
+     * @throws IOException
+     */
+    public void merge(final SAMRecordHandler shard) throws IOException {
+        coverageArray.addAll(shard.coverageArray);
+        if (mode == BamTrackMode.FULL) {
+            cCoverageArray.addAll(shard.cCoverageArray);
+            aCoverageArray.addAll(shard.aCoverageArray);
+            tCoverageArray.addAll(shard.tCoverageArray);
+            gCoverageArray.addAll(shard.gCoverageArray);
+            nCoverageArray.addAll(shard.nCoverageArray);
+            insCoverageArray.addAll(shard.insCoverageArray);
+            delCoverageArray.addAll(shard.delCoverageArray);
+        }
+
+        shard.spliceJunctionsHashMap.forEach((key, junction) -> {
+            final SpliceJunctionsEntity existing = spliceJunctionsHashMap.putIfAbsent(key, junction);
+            if (existing != null) {
+                existing.setCount(existing.getCount() + junction.getCount());
+            }
+        });
+
+        if (mode == BamTrackMode.FULL && referenceBuffer == null) {
+            referenceBuffer = new BamReferenceBuffer(shard.getReferenceBuff());
+            min = shard.min;
+            max = shard.max;
+            return;
+        }
+        if (shard.min < min) {
+            refreshHeadReferenceBuffer(shard.min);
+        }
+        if (shard.max > max) {
+            if (mode == BamTrackMode.FULL && shard.min <= max + 1) {
+                // shards are merged in order, so a shard continues the already collected sequence
+                referenceBuffer.addTail(shard.getReferenceBuff().substring(max + 1 - shard.min));
+                max = shard.max;
+            } else {
+                refreshTailReferenceBuffer(shard.max);
+            }
+        }
+    }
+
     private void refreshHeadReferenceBuffer(final int start) throws IOException {
         if (mode == BamTrackMode.FULL) {
             final int helpMin = start <= 0 ? 1
                     : min - ((min - start) / Constants.REFERENCE_STEP + 1) * Constants.REFERENCE_STEP;
-            referenceBuffer.addHead(referenceManager.getSequenceString(helpMin, min - 1, refID, chromosomeName)
+            referenceBuffer.addHead(loadReference(helpMin, min - 1)
                     .toUpperCase());
             min = helpMin;
         }
@@ -276,40 +372,41 @@ public class SAMRecordHandler implements Handler<SAMRecord> {
     private void refreshTailReferenceBuffer(final int end) throws IOException {
         if (mode == BamTrackMode.FULL) {
             final int helpMax = max + ((end - max) / Constants.REFERENCE_STEP + 1) * Constants.REFERENCE_STEP;
-            referenceBuffer.addTail(referenceManager.getSequenceString(max + 1, helpMax, refID, chromosomeName)
+            referenceBuffer.addTail(loadReference(max + 1, helpMax)
                     .toUpperCase());
             max = helpMax;
         }
     }
 
+    private String loadReference(final int start, final int end) throws IOException {
+        return reference != null ? referenceManager.getSequenceString(start, end, reference, chromosomeName)
+                : referenceManager.getSequenceString(start, end, refID, chromosomeName);
+    }
+
     private List<SpliceJunctionsEntity> getSpliceJunctionsList() {
         final List<SpliceJunctionsEntity> list = new ArrayList<>();
         list.addAll(spliceJunctionsHashMap.values());
         return list;
     }
 
-    private void coverageAdd(final int start, final int end, final int[] coverage, final boolean increase) {
+    private void coverageAdd(final int start, final int end, final CoverageArray coverage, final boolean increase) {
         final int k = increase ? 1 : -1;
         if (end >= startTrack && start <= endTrack) {
-            if (start < startTrack) {
-                coverage[0] += k;
-            } else {
-                coverage[start - startTrack] += k;
-            }
+            coverage.add(Math.max(start, startTrack), k);
             if (end < endTrack) {
-                coverage[end - startTrack + 1] -= k;
+                coverage.add(end + 1, -k);
             }
         }
     }
 
     // SAMRecord is needed because sometimes we need tags, but in other case record is useless, because
     // it doesn't cash some fields.
-    private List<BasePosition> computeDifferentBase(final String readString, final String bufferBase,
+    private List<BasePosition> computeDifferentBase(final byte[] readBases, final String bufferBase,
                                                     final int startReadPosition, final int bufferStart,
                                                     final List<CigarElement> cigar, final boolean showClipping,
                                                     final SAMRecord record) {
         ReadBaseProcessor
-                baseCounter = new ReadBaseProcessor(readString, bufferBase, startReadPosition, bufferStart,
+                baseCounter = new ReadBaseProcessor(readBases, bufferBase, startReadPosition, bufferStart,
                 cigar, showClipping, record);
         return baseCounter.getMismatchBasePositions();
     }
@@ -324,13 +421,13 @@ public class SAMRecordHandler implements Handler<SAMRecord> {
         }
 
         ReadBaseProcessor
-            baseCounter = new ReadBaseProcessor(record.getReadString(), referenceBuffer.getBuffer(), record.getStart(),
+            baseCounter = new ReadBaseProcessor(record.getReadBases(), referenceBuffer.getBuffer(), record.getStart(),
                                                 min, record.getCigar().getCigarElements(), showClipping, record);
         return baseCounter.getMismatchBasePositions();
     }
 
     private class ReadBaseProcessor {
-        private final String upperReadString;
+        private final byte[] readBases;
         private final String bufferBase;
         private final int startReadPosition;
         private final int bufferStart;
@@ -344,7 +441,7 @@ public class SAMRecordHandler implements Handler<SAMRecord> {
         //coordinate at reference
         private int bias;
 
-        protected ReadBaseProcessor(String readString, String bufferBase, int startReadPosition,
+        protected ReadBaseProcessor(byte[] readBases, String bufferBase, int startReadPosition,
                 int bufferStart, List<CigarElement> cigar, boolean showClipping, SAMRecord record) {
             this.bufferBase = bufferBase;
             this.startReadPosition = startReadPosition;
@@ -352,7 +449,7 @@ public class SAMRecordHandler implements Handler<SAMRecord> {
             this.cigar = cigar;
             this.showClipping = showClipping;
             this.record = record;
-            this.upperReadString = readString.toUpperCase();
+            this.readBases = readBases;
             this.position = 0;
             this.corrector = 0;
             this.bias = startReadPosition - bufferStart;
@@ -361,7 +458,9 @@ public class SAMRecordHandler implements Handler<SAMRecord> {
         protected List<BasePosition> getMismatchBasePositions() {
             position = 0;
             corrector = 0;
-            final List<BasePosition> basePositions = new ArrayList<>();
+            // mismatches are collected only when there is a reference to compare with
+            final List<BasePosition> basePositions = bufferBase != null ? new ArrayList<>()
+                    : Collections.emptyList();
             for (CigarElement cigarElement : cigar) {
                 processCigarOperator(basePositions, cigarElement);
             }
@@ -396,8 +495,8 @@ public class SAMRecordHandler implements Handler<SAMRecord> {
         private void processInsertion(int cigarLength) {
             //add to insCov, to the next base
             final int pos = startReadPosition + position + corrector - 1;
-            if (pos >= startTrack && pos <= endTrack) {
-                insCoverageArray[pos - startTrack]++;
+            if (insCoverageArray != null && pos >= startTrack && pos <= endTrack) {
+                insCoverageArray.add(pos, 1);
             }
             position += cigarLength;
             corrector -= cigarLength;
@@ -405,7 +504,11 @@ public class SAMRecordHandler implements Handler<SAMRecord> {
 
         private void processDeletion(int cigarLength) {
             //add to delCov
-            coverageAdd(bufferStart + bias, bufferStart + bias + cigarLength - 1, delCoverageArray, true);
+            if (delCoverageArray != null) {
+                coverageAdd(bufferStart + bias, bufferStart + bias + cigarLength - 1, delCoverageArray, true);
+            } else {
+                coverageAdd(bufferStart + bias, bufferStart + bias + cigarLength - 1, coverageArray, false);
+            }
             bias += cigarLength;
             corrector += cigarLength;
         }
@@ -433,14 +536,19 @@ public class SAMRecordHandler implements Handler<SAMRecord> {
         }
 
         private void processMatch(List<BasePosition> basePositions, int cigarLength) {
+            if (bufferBase == null) {
+                bias += cigarLength;
+                position += cigarLength;
+                return;
+            }
             for (int j = 0; j < cigarLength; j++) {
-                if (checkIfBiasOutOfBound() && bufferBase != null &&
-                        bufferBase.charAt(bias) != upperReadString.charAt(position)) {
-                    basePositions.add(
-                            new BasePosition(position + corrector, upperReadString.charAt(position))
-                    );
-                    addBaseCoverage(upperReadString.charAt(position), startReadPosition + position + corrector);
-                    //add to the coverage array (c/a/t/g/n)
+                if (checkIfBiasOutOfBound()) {
+                    final char base = toUpperBase(readBases[position]);
+                    if (bufferBase.charAt(bias) != base) {
+                        basePositions.add(new BasePosition(position + corrector, base));
+                        addBaseCoverage(base, startReadPosition + position + corrector);
+                        //add to the coverage array (c/a/t/g/n)
+                    }
                 }
                 bias++;
                 position++;
@@ -465,19 +573,19 @@ public class SAMRecordHandler implements Handler<SAMRecord> {
             if (position >= startTrack && position <= endTrack) {
                 switch (ch) {
                     case 'C':
-                        cCoverageArray[position - startTrack]++;
+                        cCoverageArray.add(position, 1);
                         break;
                     case 'A':
-                        aCoverageArray[position - startTrack]++;
+                        aCoverageArray.add(position, 1);
                         break;
                     case 'T':
-                        tCoverageArray[position - startTrack]++;
+                        tCoverageArray.add(position, 1);
                         break;
                     case 'G':
-                        gCoverageArray[position - startTrack]++;
+                        gCoverageArray.add(position, 1);
                         break;
                     case 'N':
-                        nCoverageArray[position - startTrack]++;
+                        nCoverageArray.add(position, 1);
                         break;
                     default:
                         break;
@@ -496,4 +604,61 @@ public class SAMRecordHandler implements Handler<SAMRecord> {
         }
 
     }
+
+    private static char toUpperBase(final byte base) {
+        return (char) (base >= 'a' && base <= 'z' ? base - ('a' - 'A') : base);
+    }
+
+    private static String toBaseString(final byte[] bases, final int offset, final int length) {
+        return new String(bases, offset, length, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Coverage values for a window of a track. Values for positions outside of the window are stored sparsely,
+     * it allows shards of a track to allocate arrays only for their own region.
+     */
+    private static final class CoverageArray {
+        private final int offset;
+        private final int[] values;
+        private TIntIntMap outside;
+
+        private CoverageArray(final int from, final int to) {
+            this.offset = from;
+            this.values = new int[Math.max(0, to - from + 1)];
+        }
+
+        private void add(final int position, final int delta) {
+            final int index = position - offset;
+            if (index >= 0 && index < values.length) {
+                values[index] += delta;
+            } else {
+                if (outside == null) {
+                    outside = new TIntIntHashMap();
+                }
+                outside.adjustOrPutValue(position, delta, delta);
+            }
+        }
+
+        private int get(final int position) {
+            final int index = position - offset;
+            if (index >= 0 && index < values.length) {
+                return values[index];
+            }
+            return outside == null ? 0 : outside.get(position);
+        }
+
+        private void addAll(final CoverageArray other) {
+            for (int i = 0; i < other.values.length; i++) {
+                if (other.values[i] != 0) {
+                    add(other.offset + i, other.values[i]);
+                }
+            }
+            if (other.outside != null) {
+                other.outside.forEachEntry((position, delta) -> {
+                    add(position, delta);
+                    return true;
+                });
+            }
+        }
+    }
 }
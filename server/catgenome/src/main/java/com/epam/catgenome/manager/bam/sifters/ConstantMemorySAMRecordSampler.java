@@ -83,6 +83,22 @@ public class ConstantMemorySAMRecordSampler implements DownsamplingSifter<SAMRec
         this.startPosition = -1;
     }
 
+    /**
+     * Creates a sampler with frames, aligned to the specified position instead of the start of the first read.
+     * Used for shards of a track, so that frames of adjacent shards don't overlap.
+     * @param frame size of the frame for downsampling
+     * @param count maximum number of reads left after downsampling for each frame
+     * @param endTrack left border of the track interval
+     * @param frameOrigin start of the first frame
+     * @param coverageOnly - if true, no reads will be send to emitter during processing
+     * @param trackEmitter where to write reads
+     */
+    public ConstantMemorySAMRecordSampler(final int frame, final int count, final int endTrack, final int frameOrigin,
+                                          boolean coverageOnly, BamTrackEmitter trackEmitter) {
+        this(frame, count, endTrack, coverageOnly, trackEmitter);
+        checkLazyInit(frameOrigin);
+    }
+
     /**
      * @param record representing a read
      * @param start of the read
@@ -142,6 +158,18 @@ public class ConstantMemorySAMRecordSampler implements DownsamplingSifter<SAMRec
         return downsampleCoverage;
     }
 
+    /**
+     * Returns downsampling coverage of the last frame. It isn't a part of {@link #getDownsampleCoverageResult()},
+     * since a frame is reported only when a read from the next frame is added. Used to merge shards of a track,
+     * where the next frame is processed by another sampler.
+     * @return downsampling coverage of the last frame or null, if the last frame wasn't downsampled
+     */
+    public Wig getLastFrameCoverage() {
+        return frameBuffer.size() >= maxElementsInFrame
+                ? new Wig(startPosition, border, recordsCount - maxElementsInFrame)
+                : null;
+    }
+
     private void assertNotFinished() {
         if (finished) {
             throw new IllegalStateException("Adding records was already finished");
@@ -84,10 +84,13 @@ import com.epam.catgenome.manager.DownloadFileManager;
 import com.epam.catgenome.manager.FileManager;
 import com.epam.catgenome.manager.TrackHelper;
 import com.epam.catgenome.manager.bed.parser.NggbBedFeature;
+import com.epam.catgenome.manager.parallel.TaskExecutorService;
 import com.epam.catgenome.manager.reference.ReferenceGenomeManager;
 import com.epam.catgenome.util.HistogramUtils;
 import com.epam.catgenome.util.IOHelper;
 import com.epam.catgenome.util.Utils;
+import com.epam.catgenome.util.feature.pipeline.FeaturePipeline;
+import com.epam.catgenome.util.feature.pipeline.HistogramConsumer;
 import htsjdk.samtools.util.CloseableIterator;
 import com.epam.catgenome.util.feature.reader.AbstractFeatureReader;
 import htsjdk.tribble.Feature;
@@ -125,6 +128,9 @@ public class BedManager {
     @Autowired
     private FeatureIndexManager featureIndexManager;
 
+    @Autowired
+    private TaskExecutorService taskExecutorService;
+
     @Autowired(required = false)
     private EhCacheBasedIndexCache indexCache;
 
@@ -339,6 +345,9 @@ public class BedManager {
         bedFile.setPrettyName(request.getPrettyName());
 
         long bedId = bedFile.getId();
+        final Map<String, Chromosome> chromosomeMap = referenceGenomeManager.loadChromosomes(reference.getId())
+                .stream().collect(Collectors.toMap(BaseEntity::getName, c -> c));
+        boolean histogramWritten = false;
 
         try {
             biologicalDataItemManager.createBiologicalDataItem(bedFile);
@@ -362,21 +371,24 @@ public class BedManager {
                                 resourceType == BiologicalDataItemResourceType.AZ,
                         "Auto indexing is supported only for FILE type requests");
                 fileManager.makeBedDir(bedFile.getId());
-                fileManager.makeBedIndex(bedFile, getCodec(bedFile));
+                // index and histograms are built from a single pass over the file
+                new FeaturePipeline<NggbBedFeature>(bedFile.getPath())
+                        .addConsumer(fileManager.makeBedIndexConsumer(bedFile))
+                        .addConsumer(new HistogramConsumer<>(chromosomeMap, (chromosomeName, histogram) ->
+                                fileManager.writeHistogram(bedFile, chromosomeName, histogram)))
+                        .run(getCodec(bedFile));
+                histogramWritten = true;
             }
 
-            double time1 = Utils.getSystemTimeMilliseconds();
-            if (resourceType == BiologicalDataItemResourceType.FILE
-                    || resourceType == BiologicalDataItemResourceType.S3
-                    || resourceType == BiologicalDataItemResourceType.AZ) {
-                createHistogram(bedFile);
-            }
-            double time2 = Utils.getSystemTimeMilliseconds();
-            log.debug("Making BED histogram took {} ms", time2 - time1);
             log.info(getMessage(MessagesConstants.INFO_GENE_REGISTER, bedFile.getId(),
                     bedFile.getPath()));
             biologicalDataItemManager.createBiologicalDataItem(bedFile.getIndex());
             bedFileManager.create(bedFile);
+            if (!histogramWritten && (resourceType == BiologicalDataItemResourceType.FILE
+                    || resourceType == BiologicalDataItemResourceType.S3
+                    || resourceType == BiologicalDataItemResourceType.AZ)) {
+                scheduleHistogram(bedFile, chromosomeMap);
+            }
             return bedFile;
         } finally {
             if (bedFile.getId() != null && bedFile.getBioDataItemId() != null
@@ -391,24 +403,42 @@ public class BedManager {
         }
     }
 
-    private void createHistogram(final BedFile bedFile) throws IOException {
+    /**
+     * Builds histograms of a registered BED file with an existing index in the background, so that registration
+     * doesn't wait for one more pass over the file. Until a histogram of a chromosome is written, it is built
+     * on demand.
+     */
+    private void scheduleHistogram(final BedFile bedFile, final Map<String, Chromosome> chromosomeMap) {
+        taskExecutorService.getExecutorService().submit(() -> {
+            final double time1 = Utils.getSystemTimeMilliseconds();
+            try {
+                createHistogram(bedFile, chromosomeMap);
+            } catch (IOException | IllegalArgumentException e) {
+                log.error("Failed to build histogram for BED file " + bedFile.getPath(), e);
+            }
+            final double time2 = Utils.getSystemTimeMilliseconds();
+            log.debug("Making BED histogram took {} ms", time2 - time1);
+        });
+    }
+
+    private void createHistogram(final BedFile bedFile, final Map<String, Chromosome> chromosomeMap)
+        throws IOException {
         try (AbstractFeatureReader<NggbBedFeature, LineIterator> featureReader =
                      fileManager.makeBedReader(bedFile, getCodec(bedFile))) {
             CloseableIterator<NggbBedFeature> iterator = featureReader.iterator();
             if (iterator.hasNext()) {
-                makeHistogramFromIterator(iterator, bedFile);
+                makeHistogramFromIterator(iterator, bedFile, chromosomeMap);
             }
         }
     }
 
-    private void makeHistogramFromIterator(CloseableIterator<NggbBedFeature> iterator, BedFile bedFile)
+    private void makeHistogramFromIterator(CloseableIterator<NggbBedFeature> iterator, BedFile bedFile,
+                                           Map<String, Chromosome> chromosomeMap)
         throws IOException {
         List<Wig> histogram = new ArrayList<>();
         NggbBedFeature firstFeature = iterator.next();
         String currentContig = firstFeature.getContig();
 
-        Map<String, Chromosome> chromosomeMap = referenceGenomeManager.loadChromosomes(bedFile.getReferenceId())
-            .stream().collect(Collectors.toMap(BaseEntity::getName, c -> c));
         currentContig = checkFileNonEmpty(currentContig, iterator, chromosomeMap, bedFile);
         Chromosome currentChromosome = Utils.getFromChromosomeMap(chromosomeMap, currentContig);
         int histogramSize = Math.min((int) Math.ceil(currentChromosome.getSize() *
@@ -495,7 +525,7 @@ public class BedManager {
             throws HistogramReadingException {
         final List<Wig> histogram;
         try {
-            histogram = fileManager.loadHistogram(bedFile, chromosome.getName());
+            histogram = trackHelper.loadHistogram(track, bedFile, chromosome);
         } catch (IOException e) {
             throw new HistogramReadingException(track, e);
         }
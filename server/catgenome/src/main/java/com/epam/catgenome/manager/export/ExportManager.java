@@ -25,7 +25,6 @@ package com.epam.catgenome.manager.export;
 
 import com.epam.catgenome.entity.FeatureFile;
 import com.epam.catgenome.entity.index.GeneIndexEntry;
-import com.epam.catgenome.entity.index.IndexSearchResult;
 import com.epam.catgenome.entity.index.VcfIndexEntry;
 import com.epam.catgenome.manager.FeatureIndexManager;
 import com.epam.catgenome.util.FileFormat;
@@ -34,8 +33,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
@@ -60,83 +64,99 @@ public class ExportManager {
                                          final FileFormat format,
                                          final boolean includeHeader)
             throws IOException {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        List<String> exportFields = filterForm.getExportFields();
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        exportGenesByReference(filterForm, referenceId, format, includeHeader, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Writes genes, satisfying a filter, to a stream as they are read from the index. The stream is flushed,
+     * but not closed.
+     */
+    public void exportGenesByReference(final GeneExportFilterForm filterForm,
+                                       final long referenceId,
+                                       final FileFormat format,
+                                       final boolean includeHeader,
+                                       final OutputStream outputStream)
+            throws IOException {
+        final Writer writer = createWriter(outputStream);
+        final List<String> exportFields = filterForm.getExportFields();
         if (includeHeader) {
-            outputStream.write(getGeneFileHeader(exportFields, format.getSeparator()).getBytes());
+            writer.write(getGeneFileHeader(exportFields, format.getSeparator()));
         }
         filterForm.setPageSize(exportPageSize);
-        filterForm.setPage(1);
         setGeneAttributes(filterForm);
         final List<? extends FeatureFile> filesToExport = featureIndexManager.getGeneFilesForReference(
                 referenceId, filterForm.getFileIds());
-        IndexSearchResult<GeneIndexEntry> indexSearchResult = featureIndexManager.getGeneSearchResult(filterForm,
-                filesToExport);
-        writeGenePage(format, exportFields, indexSearchResult, outputStream);
-        for (int i = 2; i <= indexSearchResult.getTotalPagesCount(); i++) {
-            filterForm.setPage(i);
-            indexSearchResult = featureIndexManager.getGeneSearchResult(filterForm, filesToExport);
-            writeGenePage(format, exportFields, indexSearchResult, outputStream);
-        }
-        return outputStream.toByteArray();
+        featureIndexManager.streamGenes(filterForm, filesToExport,
+            indexEntry -> writeGene(format, exportFields, indexEntry, writer));
+        writer.flush();
     }
 
     public byte[] exportVariations(final VcfExportFilterForm filterForm,
                                    final FileFormat format,
                                    final boolean includeHeader)
             throws IOException {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        List<String> exportFields = filterForm.getExportFields();
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        exportVariations(filterForm, format, includeHeader, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Writes variations, satisfying a filter, to a stream as they are read from the index. The stream is flushed,
+     * but not closed.
+     */
+    public void exportVariations(final VcfExportFilterForm filterForm,
+                                 final FileFormat format,
+                                 final boolean includeHeader,
+                                 final OutputStream outputStream)
+            throws IOException {
+        final Writer writer = createWriter(outputStream);
+        final List<String> exportFields = filterForm.getExportFields();
         if (includeHeader) {
-            outputStream.write(getVcfFileHeader(exportFields, format.getSeparator()).getBytes());
+            writer.write(getVcfFileHeader(exportFields, format.getSeparator()));
         }
         filterForm.setPageSize(exportPageSize);
-        filterForm.setPage(1);
         setVcfAttributes(filterForm);
-        IndexSearchResult<VcfIndexEntry> indexSearchResult = featureIndexManager.filterVariations(filterForm);
-        writeVcfPage(format, exportFields, indexSearchResult, outputStream);
-        for (int i = 2; i <= indexSearchResult.getTotalPagesCount(); i++) {
-            filterForm.setPage(i);
-            indexSearchResult = featureIndexManager.filterVariations(filterForm);
-            writeVcfPage(format, exportFields, indexSearchResult, outputStream);
-        }
-        return outputStream.toByteArray();
+        featureIndexManager.streamVariations(filterForm,
+            indexEntry -> writeVariation(format, exportFields, indexEntry, writer));
+        writer.flush();
     }
 
-    private void writeGenePage(final FileFormat format,
-                               final List<String> exportFields,
-                               final IndexSearchResult<GeneIndexEntry> indexSearchResult,
-                               ByteArrayOutputStream outputStream) throws IOException {
-        for (GeneIndexEntry indexEntry : indexSearchResult.getEntries()) {
-            List<String> fieldValues = new ArrayList<>();
-            Map<String, String> attributes = MapUtils.emptyIfNull(indexEntry.getAttributes());
-            for (String exportField: exportFields) {
-                String value = GeneField.getByField(exportField) != null ?
-                        GeneField.getByField(exportField).getGetter().apply(indexEntry) :
-                        attributes.getOrDefault(exportField, EMPTY_FIELD_VALUE);
-                fieldValues.add(value != null ? value : EMPTY_FIELD_VALUE);
-            }
-            String line = String.join(format.getSeparator(), fieldValues) + NEW_LINE;
-            outputStream.write(line.getBytes());
+    private Writer createWriter(final OutputStream outputStream) {
+        return new BufferedWriter(new OutputStreamWriter(outputStream, Charset.defaultCharset()));
+    }
+
+    private void writeGene(final FileFormat format,
+                           final List<String> exportFields,
+                           final GeneIndexEntry indexEntry,
+                           final Writer writer) throws IOException {
+        List<String> fieldValues = new ArrayList<>(exportFields.size());
+        Map<String, String> attributes = MapUtils.emptyIfNull(indexEntry.getAttributes());
+        for (String exportField: exportFields) {
+            String value = GeneField.getByField(exportField) != null ?
+                    GeneField.getByField(exportField).getGetter().apply(indexEntry) :
+                    attributes.getOrDefault(exportField, EMPTY_FIELD_VALUE);
+            fieldValues.add(value != null ? value : EMPTY_FIELD_VALUE);
         }
+        writer.write(String.join(format.getSeparator(), fieldValues));
+        writer.write(NEW_LINE);
     }
 
-    private void writeVcfPage(final FileFormat format,
-                               final List<String> exportFields,
-                               final IndexSearchResult<VcfIndexEntry> indexSearchResult,
-                               ByteArrayOutputStream outputStream) throws IOException {
-        for (VcfIndexEntry indexEntry: indexSearchResult.getEntries()) {
-            List<String> fieldValues = new ArrayList<>();
-            Map<String, Object> attributes = MapUtils.emptyIfNull(indexEntry.getInfo());
-            for (String exportField: exportFields) {
-                String value = VcfField.getByField(exportField) != null ?
-                        VcfField.getByField(exportField).getGetter().apply(indexEntry) :
-                        (String) attributes.getOrDefault(exportField, EMPTY_FIELD_VALUE);
-                fieldValues.add(value != null ? value : EMPTY_FIELD_VALUE);
-            }
-            String line = String.join(format.getSeparator(), fieldValues) + NEW_LINE;
-            outputStream.write(line.getBytes());
+    private void writeVariation(final FileFormat format,
+                                final List<String> exportFields,
+                                final VcfIndexEntry indexEntry,
+                                final Writer writer) throws IOException {
+        List<String> fieldValues = new ArrayList<>(exportFields.size());
+        Map<String, Object> attributes = MapUtils.emptyIfNull(indexEntry.getInfo());
+        for (String exportField: exportFields) {
+            String value = VcfField.getByField(exportField) != null ?
+                    VcfField.getByField(exportField).getGetter().apply(indexEntry) :
+                    (String) attributes.getOrDefault(exportField, EMPTY_FIELD_VALUE);
+            fieldValues.add(value != null ? value : EMPTY_FIELD_VALUE);
         }
+        writer.write(String.join(format.getSeparator(), fieldValues));
+        writer.write(NEW_LINE);
     }
 
     private void setGeneAttributes(GeneExportFilterForm filterForm) {
@@ -0,0 +1,143 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.manager.gene;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.epam.catgenome.dao.index.FeatureIndexDao;
+import com.epam.catgenome.entity.gene.GeneFile;
+import com.epam.catgenome.entity.index.FeatureIndexEntry;
+import com.epam.catgenome.entity.index.FeatureType;
+import com.epam.catgenome.entity.reference.Chromosome;
+import com.epam.catgenome.util.GeneIntervalIndex;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.EqualsAndHashCode;
+
+/**
+ * {@code GeneIntervalIndexStore} provides cached {@link GeneIntervalIndex}es of gene and exon features of
+ * registered gene files.
+ * <p>
+ * An index of a chromosome is loaded from the gene file's feature index once and is shared by all
+ * VCF registrations and motif searches against the same annotation, until the gene file is reindexed,
+ * updated or deleted. The cache is limited by a total number of indexed features.
+ * </p>
+ */
+@Service
+public class GeneIntervalIndexStore {
+
+    @Autowired
+    private FeatureIndexDao featureIndexDao;
+
+    @Value("#{catgenome['gene.interval.index.cache.max.features'] ?: 10000000}")
+    private long maxCachedFeatures;
+
+    private LoadingCache<ChromosomeKey, GeneIntervalIndex> indexes;
+
+    @PostConstruct
+    public void init() {
+        indexes = CacheBuilder.newBuilder()
+                .maximumWeight(maxCachedFeatures)
+                .weigher((ChromosomeKey key, GeneIntervalIndex index) -> index.size())
+                .build(new CacheLoader<ChromosomeKey, GeneIntervalIndex>() {
+                    @Override
+                    public GeneIntervalIndex load(final ChromosomeKey key) throws IOException {
+                        return buildIndex(key.geneFile, key.chromosome);
+                    }
+                });
+    }
+
+    /**
+     * Returns a cached index of genes and exons of a chromosome, building it on the first request
+     *
+     * @param geneFile   a {@code GeneFile} to load genes from
+     * @param chromosome a {@code Chromosome} to load genes for
+     * @return a {@link GeneIntervalIndex} of the chromosome
+     * @throws IOException if the gene file's feature index can't be read
+     */
+    public GeneIntervalIndex getIndex(final GeneFile geneFile, final Chromosome chromosome) throws IOException {
+        try {
+            return indexes.get(new ChromosomeKey(geneFile, chromosome));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Drops all cached indexes of a gene file. Should be called when features of a gene file are changed.
+     *
+     * @param geneFileId ID of a gene file in the system
+     */
+    public void evict(final long geneFileId) {
+        indexes.asMap().keySet().removeIf(key -> key.geneFileId == geneFileId);
+    }
+
+    private GeneIntervalIndex buildIndex(final GeneFile geneFile, final Chromosome chromosome) throws IOException {
+        final GeneIntervalIndex.Builder builder = GeneIntervalIndex.builder();
+        for (FeatureIndexEntry entry : featureIndexDao.searchFeaturesInInterval(Collections.singletonList(geneFile),
+                0, chromosome.getSize(), chromosome).getEntries()) {
+            if (entry.getFeatureType() == FeatureType.GENE) {
+                builder.addGene(entry.getStartIndex(), entry.getEndIndex(), entry.getFeatureId(),
+                        entry.getFeatureName() == null ? null : entry.getFeatureName().toUpperCase());
+            } else if (entry.getFeatureType() == FeatureType.EXON) {
+                builder.addExon(entry.getStartIndex(), entry.getEndIndex());
+            }
+        }
+        return builder.build();
+    }
+
+    @EqualsAndHashCode(of = {"geneFileId", "chromosomeId"})
+    private static final class ChromosomeKey {
+        private final long geneFileId;
+        private final long chromosomeId;
+        private final GeneFile geneFile;
+        private final Chromosome chromosome;
+
+        private ChromosomeKey(final GeneFile geneFile, final Chromosome chromosome) {
+            this.geneFileId = geneFile.getId();
+            this.chromosomeId = chromosome.getId();
+            this.geneFile = geneFile;
+            this.chromosome = chromosome;
+        }
+    }
+}
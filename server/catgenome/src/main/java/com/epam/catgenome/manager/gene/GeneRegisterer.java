@@ -22,23 +22,28 @@
  * SOFTWARE.
  */
 
+
 package com.epam.catgenome.manager.gene;
 
-import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
-import com.epam.catgenome.util.IndexUtils;
-import com.epam.catgenome.util.PositionalOutputStream;
 import com.epam.catgenome.util.Utils;
+import com.epam.catgenome.util.feature.pipeline.FeatureConsumer;
+import com.epam.catgenome.util.feature.pipeline.FeaturePipeline;
+import com.epam.catgenome.util.feature.pipeline.HistogramConsumer;
+import com.epam.catgenome.util.feature.pipeline.IndexingFeatureWriter;
+import com.epam.catgenome.util.feature.pipeline.TabixIndexConsumer;
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.SAMSequenceRecord;
 import org.apache.commons.io.IOUtils;
@@ -63,19 +68,12 @@ import com.epam.catgenome.entity.gene.GeneFile;
 import com.epam.catgenome.entity.gene.GeneFileType;
 import com.epam.catgenome.entity.index.FeatureIndexEntry;
 import com.epam.catgenome.entity.reference.Chromosome;
-import com.epam.catgenome.entity.wig.Wig;
 import com.epam.catgenome.manager.FeatureIndexManager;
 import com.epam.catgenome.manager.FileManager;
 import com.epam.catgenome.manager.gene.parser.GeneFeature;
 import com.epam.catgenome.manager.gene.parser.GffCodec;
 import com.epam.catgenome.manager.reference.ReferenceGenomeManager;
-import htsjdk.samtools.util.BlockCompressedOutputStream;
-import htsjdk.tribble.AsciiFeatureCodec;
 import htsjdk.tribble.index.tabix.TabixFormat;
-import htsjdk.tribble.index.tabix.TabixIndex;
-import htsjdk.tribble.index.tabix.TabixIndexCreator;
-import htsjdk.tribble.readers.LineIterator;
-import htsjdk.tribble.util.LittleEndianOutputStream;
 
 
 /**
@@ -85,60 +83,22 @@ import htsjdk.tribble.util.LittleEndianOutputStream;
  * Make:        IntelliJ IDEA 14.1.4, JDK 1.8
  *
  * A class that registers GeneFile's in the system: creates index if required and all the helper files: large scale
- * file, transcript file and histogram
+ * file, transcript file and histogram.
  *
+ * A gene file is read once by a {@link FeaturePipeline}, that feeds its features concurrently to a tabix index
+ * creator, helper files writers, a feature index writer and histogram and metadata builders.
  *
  */
 public class GeneRegisterer {
     private static final Logger LOGGER = LoggerFactory.getLogger(GeneRegisterer.class);
     private static final String CHARSET_NAME = "UTF-8";
 
-
     private FileManager fileManager;
     private FeatureIndexManager featureIndexManager;
     private GeneFile geneFile;
-
-    private PositionalOutputStream largeScaleOS = null;
-    private BlockCompressedOutputStream largeScaleBCOS = null;
-    private PositionalOutputStream transcriptOS = null;
-    private BlockCompressedOutputStream transcriptBCOS = null;
-    private BufferedWriter writerTranscript = null;
-    private BufferedWriter writerLargeScale = null;
-    private IndexUtils.FeatureIterator<GeneFeature, LineIterator> iterator = null;
-    private LittleEndianOutputStream indexOutputStream = null;
-    private LittleEndianOutputStream largeScaleIndexOutputStream = null;
-    private LittleEndianOutputStream transcriptIndexOutputStream = null;
-    private long largeScalePosition = 0;
-    private long transcriptPosition = 0;
-    private boolean largeScaleWritten = false;
-    private boolean transcriptWritten = false;
-    private Map<String, GeneFeature> geneMap = new HashMap<>();
-    private Map<String, GeneFeature> transcriptMap = new HashMap<>();
-    private SAMSequenceDictionary dictionary = new SAMSequenceDictionary();
-    private TabixIndexCreator indexCreator = new TabixIndexCreator(dictionary, TabixFormat.GFF);
-    private TabixIndexCreator largeScaleIndexCreator = new TabixIndexCreator(dictionary, TabixFormat.GFF);
-    private TabixIndexCreator transcriptIndexCreator = new TabixIndexCreator(dictionary, TabixFormat.GFF);
     private Map<String, Chromosome> chromosomeMap;
-
-    // stuff for IndexMetadata
-    private int startPosition;
-    private int endPosition;
-    private String currentKey;
-    private Map<String, Pair<Integer, Integer>> metaMap = new HashMap<>();  // to fix bugs with compressed files
-    private GeneFeature lastFeature;
-
-    // histogram stuff
-    private int histogramSize;
-    private int intervalLength;
-    private int intervalEnd;
-    private Wig currentWig;
-    private List<Wig> histogram = new ArrayList<>();
-    private Chromosome currentChromosome;
     private boolean createHelperFiles;
 
-    private static final double HISTOGAM_BLOCK_SIZE_PART = 0.000025F;
-    private static final int HISTOGAM_SIZE_LIMIT = 1000;
-
     public GeneRegisterer(ReferenceGenomeManager referenceGenomeManager, FileManager fileManager,
                           FeatureIndexManager featureIndexManager, GeneFile geneFile, boolean createHelperFiles) {
         this.fileManager = fileManager;
@@ -172,266 +132,84 @@ public class GeneRegisterer {
             boolean createTabixIndex, boolean createFeatureIndex)
             throws IOException {
         File indexFile = fileManager.makeFileForGeneIndex(geneFile, GeneFileType.ORIGINAL);
-        File largeScaleIndexFile = null;
-        File transcriptIndexFile = null;
-        if (createHelperFiles) {
-            largeScaleIndexFile = fileManager.makeFileForGeneIndex(geneFile, GeneFileType.LARGE_SCALE);
-            if (largeScaleIndexFile.exists()) {
-                largeScaleIndexFile.delete();
-            }
-            transcriptIndexFile = fileManager.makeFileForGeneIndex(geneFile, GeneFileType.TRANSCRIPT);
-            if (transcriptIndexFile.exists()) {
-                transcriptIndexFile.delete();
-            }
-        }
-        GeneFeature firstFeature;
-        try {
-            openStreams(geneFile, filePath);
-
-            firstFeature = processFileContents(geneFile, indexFile, indexPath,
-                    largeScaleIndexFile, transcriptIndexFile, createTabixIndex, createFeatureIndex);
-        } finally {
-            closeStreams(geneFile);
-        }
-
-        if (createHelperFiles) {
-            if (!largeScaleWritten) {
-                fileManager.deleteGeneHelperFile(geneFile, firstFeature.getClass(), GeneFileType.LARGE_SCALE);
-            }
-            if (!transcriptWritten) {
-                fileManager.deleteGeneHelperFile(geneFile, firstFeature.getClass(), GeneFileType.TRANSCRIPT);
-            }
+        final GffCodec.GffType gffType = GffCodec.GffType.forExt(Utils.getFileExtension(filePath));
+
+        final IndexMetadataConsumer metadata = new IndexMetadataConsumer();
+        final FeaturePipeline<GeneFeature> pipeline = new FeaturePipeline<GeneFeature>(filePath)
+                .addConsumer(metadata)
+                .addConsumer(new HistogramConsumer<>(chromosomeMap, (chromosomeName, histogram) ->
+                        fileManager.writeHistogram(geneFile, chromosomeName, histogram)));
+        if (createTabixIndex) {
+            pipeline.addConsumer(new TabixIndexConsumer<>(createDictionary(), TabixFormat.GFF, indexFile));
         }
-    }
-
-    private GeneFeature processFileContents(GeneFile geneFile, File indexFile, String indexPath,
-                                     File largeScaleIndexFile, File transcriptIndexFile,
-                                     boolean createTabixIndex, boolean createFeatureIndex)
-            throws IOException {
-
-        GeneFeature feature = null;
-        GeneFeature firstFeature = null;
-        lastFeature = null;
-
-        // histogram stuff
-        int featuresCount = 0;
 
-        List<FeatureIndexEntry> allEntries = new ArrayList<>();
-        setDictionarySequences();
-        // main loop - here we process gene file, add it's features to an index and create helper files: large scale
-        // and transcript
+        HelperFilesConsumer helperFiles = null;
+        final List<FeatureIndexEntry> remainingEntries;
         try (StandardAnalyzer analyzer = new StandardAnalyzer();
              Directory index = fileManager.createIndexForFile(geneFile);
              IndexWriter writer = new IndexWriter(index, new IndexWriterConfig(analyzer).setOpenMode(
                         IndexWriterConfig.OpenMode.CREATE_OR_APPEND))) {
-
-            while (iterator.hasNext()) {
-                // read the next line if available
-                final long filePointer = iterator.getPosition();
-                //add the feature to the index
-                feature = (GeneFeature) iterator.next();
-                adjustSequenceDictionary(feature);
-
-                if (firstFeature == null) {
-                    firstFeature = feature;
-                    lastFeature = feature;
-                    initializeHistogram(firstFeature);
-                }
-
-                featuresCount = processFeature(feature, featuresCount, createTabixIndex, allEntries, createFeatureIndex,
-                        filePointer, writer);
+            if (createHelperFiles) {
+                helperFiles = new HelperFilesConsumer(gffType);
+                pipeline.addConsumer(helperFiles);
             }
-        }
-
-        processLastFeature(feature, featuresCount, geneFile, allEntries, createFeatureIndex);
-
-        makeIndexes(geneFile, metaMap, indexFile, largeScaleIndexFile,
-                transcriptIndexFile, createTabixIndex, indexPath);
-
-        if (createHelperFiles) {
-            writerLargeScale.flush();
-            writerTranscript.flush();
-        }
-
-        return firstFeature;
-    }
-
-    // Allows to handle cases when gene files doesn't match reference contigs,
-    // e.g. contains some additional sequences or features out of reference
-    // coordinates
-    private void adjustSequenceDictionary(final GeneFeature feature) {
-        final String contig = feature.getContig();
-        final SAMSequenceRecord sequence = dictionary.getSequence(contig);
-        if (sequence == null) {
-            dictionary.addSequence(new SAMSequenceRecord(contig));
-        } else {
-            // if feature is out of reference range
-            // set reference length to 0 (unknown size)
-            if (sequence.getSequenceLength() != 0 &&
-                    sequence.getSequenceLength() < feature.getEnd()) {
-                sequence.setSequenceLength(0);
+            final FeatureIndexConsumer featureIndex = new FeatureIndexConsumer(writer);
+            if (createFeatureIndex) {
+                pipeline.addConsumer(featureIndex);
             }
-        }
-    }
-
-    private void setDictionarySequences() {
-        final List<SAMSequenceRecord> samSequenceRecords = chromosomeMap.entrySet().stream()
-                .map(chr -> new SAMSequenceRecord(chr.getKey(), chr.getValue().getSize()))
-                .collect(Collectors.toList());
-        dictionary.setSequences(samSequenceRecords);
-    }
 
-    private void processLastFeature(GeneFeature feature, int featuresCount, GeneFile geneFile,
-                                    List<FeatureIndexEntry> allEntries, boolean doFeatureIndex) throws IOException {
-        // Put the last one in metaMap
-        if (feature != null) {
-            endPosition = feature.getStart();
-            if (currentKey != null) {
-                metaMap.put(currentKey, new ImmutablePair<>(startPosition, endPosition));
-                // Put the last one
-                if (Utils.chromosomeMapContains(chromosomeMap, currentKey) && doFeatureIndex) {
-                    featureIndexManager.writeLuceneIndexForFile(geneFile, allEntries, null);
-                    allEntries.clear();
-                }
-            }
+            pipeline.run(new GffCodec(gffType));
+            remainingEntries = featureIndex.entries;
+        } finally {
+            IOUtils.closeQuietly(helperFiles);
         }
 
-        if (featuresCount > 0 && currentWig != null && currentChromosome != null) {
-            currentWig.setValue((float) featuresCount);
-            histogram.add(currentWig);
-            fileManager.writeHistogram(geneFile, currentChromosome.getName(), histogram);
+        // entries of the last chromosome are written and committed by the shared index writer
+        if (createFeatureIndex) {
+            featureIndexManager.writeLuceneIndexForFile(geneFile, remainingEntries, null);
         }
-    }
-
-    private int processFeature(GeneFeature feature, int featuresCount, boolean doIndex,
-                               final List<FeatureIndexEntry> allEntries, boolean doFeatureIndex,
-                               final long filePointer,
-                               final IndexWriter writer)
-        throws IOException {
-        int currFeatureCount = featuresCount;
-        if (feature != null) {
-            Utils.checkSorted(feature, lastFeature, this.geneFile);
-            if (doIndex) {
-                indexCreator.addFeature(feature, filePointer);
-            }
 
-            addToHelperFiles(feature, this.geneFile);
-
-            // populate meta-map and write histogram for current chromosome
-            if (!feature.getContig().equals(currentKey)) {
-                addToMetamapAndHistogram(metaMap, chromosomeMap, feature, featuresCount, this.geneFile);
-                currFeatureCount = 0;
+        fileManager.makeIndexMetadata(geneFile, metadata.metaMap);
+        geneFile.setIndex(createTabixIndex ? createIndexItem(indexFile.getAbsolutePath()) :
+                createIndexItem(indexPath));
 
-                writeEntriesForChromosome(allEntries, doFeatureIndex, writer);
+        if (createHelperFiles) {
+            final Class<? extends GeneFeature> featureClass = metadata.firstFeature.getClass();
+            if (helperFiles.largeScaleWriter.isEmpty()) {
+                fileManager.deleteGeneHelperFile(geneFile, featureClass, GeneFileType.LARGE_SCALE);
             }
-
-            if (currentChromosome != null && feature.getEnd() > intervalEnd) {
-                currentWig.setValue((float) featuresCount);
-                histogram.add(currentWig);
-
-                currentWig = new Wig(intervalEnd + 1, intervalEnd + 1 + intervalLength);
-                intervalEnd = intervalEnd + 1 + intervalLength;
-                currFeatureCount = 0;
+            if (helperFiles.transcriptWriter.isEmpty()) {
+                fileManager.deleteGeneHelperFile(geneFile, featureClass, GeneFileType.TRANSCRIPT);
             }
-
-            indexFeature(feature, allEntries, doFeatureIndex);
-
-            currFeatureCount++;
-            endPosition = feature.getStart();
-            lastFeature = feature;
-        }
-
-        return currFeatureCount;
-    }
-
-    private void writeEntriesForChromosome(List<FeatureIndexEntry> allEntries,
-                                           boolean doFeatureIndex,
-                                           final IndexWriter writer)
-        throws IOException {
-        if (currentKey != null && Utils.chromosomeMapContains(chromosomeMap, currentKey) && doFeatureIndex) {
-
-            featureIndexManager.writeLuceneIndexForFile(geneFile, allEntries, null, writer);
-            LOGGER.info(MessageHelper.getMessage(
-                MessagesConstants.INFO_FEATURE_INDEX_CHROMOSOME_WROTE, currentKey));
-            allEntries.clear();
-        }
-    }
-
-    private void indexFeature(GeneFeature feature, List<FeatureIndexEntry> allEntries, boolean doFeatureIndex) {
-        if (doFeatureIndex) {
-            featureIndexManager.addGeneFeatureToIndex(allEntries, feature, chromosomeMap);
         }
     }
 
-    private void initializeHistogram(GeneFeature firstFeature) {
-        currentKey = firstFeature.getContig();
-        currentChromosome = chromosomeMap.containsKey(currentKey) ? chromosomeMap.get(currentKey) : chromosomeMap
-                .get(Utils.changeChromosomeName(currentKey));
-        startPosition = firstFeature.getStart();
-        endPosition = firstFeature.getStart();
-        histogramSize = currentChromosome != null ? Math.min(
-            (int) Math.ceil(currentChromosome.getSize() * HISTOGAM_BLOCK_SIZE_PART), HISTOGAM_SIZE_LIMIT) : 0;
-
-        intervalLength =
-                (currentChromosome != null) ? (currentChromosome.getSize() / histogramSize) : 0;
-        currentWig = new Wig(1, intervalLength, 0);
-        intervalEnd = intervalLength;
+    // Each tabix index creator adjusts its own copy of the dictionary to features, that don't match the reference
+    private SAMSequenceDictionary createDictionary() {
+        return new SAMSequenceDictionary(chromosomeMap.entrySet().stream()
+                .map(chr -> new SAMSequenceRecord(chr.getKey(), chr.getValue().getSize()))
+                .collect(Collectors.toList()));
     }
 
-    private void addToMetamapAndHistogram(Map<String, Pair<Integer, Integer>> metaMap,
-                                          Map<String, Chromosome> chromosomeMap, GeneFeature feature,
-                                          int featuresCount, GeneFile geneFile) throws IOException {
-        if (currentChromosome != null) {
-            metaMap.put(currentChromosome.getName(), new ImmutablePair<>(startPosition, endPosition));
-            currentWig.setValue((float) featuresCount);
-            histogram.add(currentWig);
-            fileManager.writeHistogram(geneFile, currentChromosome.getName(), histogram);
-            histogram.clear();
-        }
-
-        startPosition = feature.getStart();
-        currentKey = feature.getContig();
-
-        currentChromosome = chromosomeMap.containsKey(currentKey) ? chromosomeMap.get(currentKey) :
-                chromosomeMap.get(Utils.changeChromosomeName(currentKey));
-        // calculate histogram blocks size for next chromosome
-        if (currentChromosome != null) {
-            histogramSize = Math.min(
-                (int) Math.ceil(currentChromosome.getSize() * HISTOGAM_BLOCK_SIZE_PART), HISTOGAM_SIZE_LIMIT);
-            intervalLength = currentChromosome.getSize() / histogramSize;
-            intervalEnd = intervalLength;
-            currentWig = new Wig(1, intervalEnd);
-        } else {
-            currentWig = null;
+    private File makeHelperIndexFile(final GeneFileType type) {
+        final File indexFile = fileManager.makeFileForGeneIndex(geneFile, type);
+        if (indexFile.exists()) {
+            indexFile.delete();
         }
+        return indexFile;
     }
 
-    private void makeIndexes(GeneFile geneFile, Map<String, Pair<Integer, Integer>> metaMap, File indexFile,
-                             File largeScaleIndexFile, File transcriptIndexFile, boolean doIndex,
-                             String indexPath)
-            throws IOException {
-        fileManager.makeIndexMetadata(geneFile, metaMap);
-
-        // write the index to a file
-        TabixIndex index;
-        if (doIndex) {
-            iterator.close();
-            index = (TabixIndex) indexCreator.finalizeIndex(iterator.getPosition());
-            // VERY important! either use write based on input file or pass the little endian a BGZF stream
-            index.write(indexFile);
-        }
-
-        if (createHelperFiles) {
-            writerLargeScale.flush();
-            index = (TabixIndex) largeScaleIndexCreator.finalizeIndex(largeScalePosition);
-            index.write(largeScaleIndexFile);
-            writerTranscript.flush();
-            index = (TabixIndex) transcriptIndexCreator.finalizeIndex(transcriptPosition);
-            index.write(transcriptIndexFile);
+    private IndexingFeatureWriter<GeneFeature> makeHelperFileWriter(final GffCodec.GffType gffType,
+                                                                    final GeneFileType type) throws IOException {
+        final TabixIndexConsumer<GeneFeature> index = new TabixIndexConsumer<>(createDictionary(), TabixFormat.GFF,
+                makeHelperIndexFile(type));
+        final Charset charset = Charset.forName(CHARSET_NAME);
+        if (geneFile.getCompressed()) {
+            return new IndexingFeatureWriter<>(fileManager.makeGeneBlockCompressedOutputStream(gffType, geneFile,
+                    type), index, charset);
         }
-
-        geneFile.setIndex(doIndex ? createIndexItem(indexFile.getAbsolutePath()) :
-                createIndexItem(indexPath));
+        return new IndexingFeatureWriter<>(fileManager.makePositionalOutputStream(gffType, geneFile, type), index,
+                charset);
     }
 
     private BiologicalDataItem createIndexItem(String indexPath) {
@@ -446,115 +224,116 @@ public class GeneRegisterer {
         return indexItem;
     }
 
-    private void addToHelperFiles(GeneFeature feature, GeneFile geneFile) throws IOException {
-        if (!createHelperFiles) {
-            return;
-        }
-
-        if (GeneUtils.isGene(feature) || GeneUtils.isTranscript(feature)) {
-            boolean written = addFeatureToLargeScaleFile(feature);
-            if (written) {
-                writerLargeScale.flush();
-                largeScaleIndexCreator.addFeature(feature, largeScalePosition);
-                largeScalePosition = getFilePosition(geneFile, largeScaleBCOS, largeScaleOS);
+    /**
+     * Collects bounds of features on each chromosome: a start of the first and the last feature
+     */
+    private final class IndexMetadataConsumer implements FeatureConsumer<GeneFeature> {
+        private final Map<String, Pair<Integer, Integer>> metaMap = new HashMap<>();
+        private GeneFeature firstFeature;
+        private String currentKey;
+        private int startPosition;
+        private int endPosition;
+
+        @Override
+        public void accept(final GeneFeature feature, final long position) {
+            if (firstFeature == null) {
+                firstFeature = feature;
             }
-            largeScaleWritten = largeScaleWritten || written;
-
-            written = addFeatureToTranscriptFile(feature);
-            if (written) {
-                writerTranscript.flush();
-                transcriptIndexCreator.addFeature(feature, transcriptPosition);
-                transcriptPosition = getFilePosition(geneFile, transcriptBCOS, transcriptOS);
+            if (!feature.getContig().equals(currentKey)) {
+                putBounds();
+                currentKey = feature.getContig();
+                startPosition = feature.getStart();
             }
-            transcriptWritten = transcriptWritten || written;
+            endPosition = feature.getStart();
         }
-    }
 
-    private long getFilePosition(GeneFile geneFile, BlockCompressedOutputStream bcos, PositionalOutputStream os) {
-        return geneFile.getCompressed() ? bcos.getFilePointer() : os.getPosition();
-    }
+        @Override
+        public void finish(final long endPosition) {
+            putBounds();
+        }
 
-    private boolean addFeatureToLargeScaleFile(final GeneFeature feature) throws IOException {
-        if (!createHelperFiles) {
-            return false;
+        private void putBounds() {
+            if (currentKey == null) {
+                return;
+            }
+            final Chromosome chromosome = Utils.getFromChromosomeMap(chromosomeMap, currentKey);
+            metaMap.put(chromosome != null ? chromosome.getName() : currentKey,
+                    new ImmutablePair<>(startPosition, endPosition));
         }
+    }
 
-        if (GeneUtils.isGene(feature)) {
-            geneMap.put(feature.getGroupId(), feature);
-            writerLargeScale.write(feature.toString());
-            writerLargeScale.write('\n');
-            return true;
+    /**
+     * Writes large scale file with genes and transcript file with unique transcripts and their indexes
+     */
+    private final class HelperFilesConsumer implements FeatureConsumer<GeneFeature>, Closeable {
+        private final IndexingFeatureWriter<GeneFeature> largeScaleWriter;
+        private final IndexingFeatureWriter<GeneFeature> transcriptWriter;
+        private final Set<String> transcriptIds = new HashSet<>();
+
+        private HelperFilesConsumer(final GffCodec.GffType gffType) throws IOException {
+            largeScaleWriter = makeHelperFileWriter(gffType, GeneFileType.LARGE_SCALE);
+            try {
+                transcriptWriter = makeHelperFileWriter(gffType, GeneFileType.TRANSCRIPT);
+            } catch (IOException e) {
+                IOUtils.closeQuietly(largeScaleWriter);
+                throw e;
+            }
         }
 
-        return false;
-    }
+        @Override
+        public void accept(final GeneFeature feature, final long position) throws IOException {
+            if (GeneUtils.isGene(feature)) {
+                largeScaleWriter.write(feature, feature.toString());
+            }
 
-    private boolean addFeatureToTranscriptFile(GeneFeature feature) throws IOException {
-        if (!createHelperFiles) {
-            return false;
+            final String transcriptId = GeneUtils.getTranscriptId(feature);
+            if (GeneUtils.isTranscript(feature) && transcriptId != null && transcriptIds.add(transcriptId)) {
+                transcriptWriter.write(feature, feature.toString());
+            }
         }
 
-        String transcriptId = GeneUtils.getTranscriptId(feature);
-        if (GeneUtils.isTranscript(feature) && transcriptId != null
-                && !transcriptMap.containsKey(transcriptId)) {
-            transcriptMap.put(transcriptId, feature);
-            writerTranscript.write(feature.toString());
-            writerTranscript.write('\n');
-            return true;
+        @Override
+        public void finish(final long endPosition) throws IOException {
+            largeScaleWriter.finish();
+            transcriptWriter.finish();
         }
 
-        return false;
+        @Override
+        public void close() {
+            IOUtils.closeQuietly(largeScaleWriter);
+            IOUtils.closeQuietly(transcriptWriter);
+        }
     }
 
-    private void openStreams(GeneFile geneFile, String filePath)
-        throws
-        IOException {
+    /**
+     * Writes feature index entries of a file chromosome by chromosome. Entries of the last chromosome are left
+     * to be written after the pipeline is finished.
+     */
+    private final class FeatureIndexConsumer implements FeatureConsumer<GeneFeature> {
+        private final IndexWriter writer;
+        private final List<FeatureIndexEntry> entries = new ArrayList<>();
+        private String currentKey;
 
-        final String extension = Utils.getFileExtension(filePath);
-        GffCodec.GffType gffType = GffCodec.GffType.forExt(extension);
-        AsciiFeatureCodec<GeneFeature> codec = new GffCodec(gffType);
+        private FeatureIndexConsumer(final IndexWriter writer) {
+            this.writer = writer;
+        }
 
-        if (createHelperFiles) {
-            if (geneFile.getCompressed()) {
-                largeScaleOS = null;
-                largeScaleBCOS = fileManager.makeGeneBlockCompressedOutputStream(gffType, geneFile,
-                        GeneFileType.LARGE_SCALE);
-                transcriptOS = null;
-                transcriptBCOS = fileManager.makeGeneBlockCompressedOutputStream(gffType, geneFile,
-                        GeneFileType.TRANSCRIPT);
-                writerTranscript = new BufferedWriter(new OutputStreamWriter(transcriptBCOS,
-                        Charset.forName(CHARSET_NAME)));
-                writerLargeScale = new BufferedWriter(new OutputStreamWriter(largeScaleBCOS,
-                        Charset.forName(CHARSET_NAME)));
-            } else {
-                largeScaleOS = fileManager.makePositionalOutputStream(gffType, geneFile, GeneFileType.LARGE_SCALE);
-                largeScaleBCOS = null;
-                transcriptOS = fileManager.makePositionalOutputStream(gffType, geneFile, GeneFileType.TRANSCRIPT);
-                transcriptBCOS = null;
-                writerTranscript = new BufferedWriter(new OutputStreamWriter(transcriptOS,
-                        Charset.forName(CHARSET_NAME)));
-                writerLargeScale = new BufferedWriter(new OutputStreamWriter(largeScaleOS,
-                        Charset.forName(CHARSET_NAME)));
+        @Override
+        public void accept(final GeneFeature feature, final long position) throws IOException {
+            if (!feature.getContig().equals(currentKey)) {
+                writeEntriesForChromosome();
+                currentKey = feature.getContig();
             }
+            featureIndexManager.addGeneFeatureToIndex(entries, feature, chromosomeMap);
         }
 
-        iterator = new IndexUtils.FeatureIterator<>(filePath, codec);
-    }
-
-    private void closeStreams(GeneFile geneFile) {
-        IOUtils.closeQuietly(indexOutputStream);
-        IOUtils.closeQuietly(largeScaleIndexOutputStream);
-        IOUtils.closeQuietly(transcriptIndexOutputStream);
-        IOUtils.closeQuietly(iterator);
-        IOUtils.closeQuietly(writerLargeScale);
-        IOUtils.closeQuietly(writerTranscript);
-        if (!geneFile.getCompressed()) { // is already closed
-            IOUtils.closeQuietly(transcriptBCOS);
-        }
-        IOUtils.closeQuietly(transcriptOS);
-        if (!geneFile.getCompressed()) { // is already closed
-            IOUtils.closeQuietly(largeScaleBCOS);
+        private void writeEntriesForChromosome() throws IOException {
+            if (currentKey != null && Utils.chromosomeMapContains(chromosomeMap, currentKey)) {
+                featureIndexManager.writeLuceneIndexForFile(geneFile, entries, null, writer);
+                LOGGER.info(MessageHelper.getMessage(
+                    MessagesConstants.INFO_FEATURE_INDEX_CHROMOSOME_WROTE, currentKey));
+                entries.clear();
+            }
         }
-        IOUtils.closeQuietly(largeScaleOS);
     }
 }
@@ -167,6 +167,9 @@ public class GffManager {
     @Autowired
     private ActivityService activityService;
 
+    @Autowired
+    private GeneIntervalIndexStore geneIntervalIndexStore;
+
     @Value("#{'${feature.counts.extensions}'.split(',')}")
     private List<String> featureCountsExtensions;
 
@@ -232,15 +235,20 @@ public class GffManager {
     public GeneFile reindexGeneFile(long geneFileId, boolean full, boolean createTabixIndex) throws IOException {
         GeneFile geneFile = geneFileManager.load(geneFileId);
         fileManager.deleteFileFeatureIndex(geneFile);
-        if (createTabixIndex) {
-            File index = new File(geneFile.getIndex().getPath());
-            if (index.exists()) {
-                index.delete();
+        try {
+            if (createTabixIndex) {
+                File index = new File(geneFile.getIndex().getPath());
+                if (index.exists()) {
+                    index.delete();
+                }
             }
+            GeneRegisterer geneRegisterer = new GeneRegisterer(referenceGenomeManager, fileManager,
+                    featureIndexManager, geneFile, createHelperFiles);
+            geneRegisterer.reIndexFile(createTabixIndex);
+        } finally {
+            // intervals, cached while the file was being reindexed, may be built from incomplete files
+            geneIntervalIndexStore.evict(geneFileId);
         }
-        GeneRegisterer geneRegisterer = new GeneRegisterer(referenceGenomeManager, fileManager, featureIndexManager,
-                geneFile, createHelperFiles);
-        geneRegisterer.reIndexFile(createTabixIndex);
         return geneFile;
     }
 
@@ -427,6 +435,7 @@ public class GffManager {
         activityService.deleteByFileId(geneFileId);
         geneFileManager.delete(fileToDelete);
         fileManager.deleteFeatureFileDirectory(fileToDelete);
+        geneIntervalIndexStore.evict(geneFileId);
 
         return fileToDelete;
     }
@@ -613,7 +622,7 @@ public class GffManager {
 
         if (fileManager.checkHistogramExists(geneFile, chromosome.getName())) {
             try {
-                track.setBlocks(fileManager.loadHistogram(geneFile, chromosome.getName()));
+                track.setBlocks(trackHelper.loadHistogram(track, geneFile, chromosome));
                 return track;
             } catch (IOException e) {
                 throw new HistogramReadingException(track, e);
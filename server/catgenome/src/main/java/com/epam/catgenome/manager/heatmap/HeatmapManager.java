@@ -30,10 +30,12 @@ import com.epam.catgenome.entity.BiologicalDataItemFormat;
 import com.epam.catgenome.entity.BiologicalDataItemResourceType;
 import com.epam.catgenome.entity.heatmap.Heatmap;
 import com.epam.catgenome.entity.heatmap.HeatmapAnnotationType;
+import com.epam.catgenome.entity.heatmap.HeatmapContentWindow;
 import com.epam.catgenome.entity.heatmap.HeatmapDataType;
 import com.epam.catgenome.entity.heatmap.HeatmapTree;
 import com.epam.catgenome.entity.heatmap.HeatmapTreeNode;
 import com.epam.catgenome.manager.BiologicalDataItemManager;
+import com.epam.catgenome.manager.FileManager;
 import com.epam.catgenome.util.FileFormat;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
@@ -51,6 +53,8 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
 
 import java.io.BufferedReader;
@@ -63,6 +67,9 @@ import java.io.ObjectInput;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -91,10 +98,14 @@ public class HeatmapManager {
     @Value("${heatmap.values.max.size:100}")
     private int valuesMaxSize;
 
+    @Value("${heatmap.tile.size:256}")
+    private int tileSize;
+
     private final HeatmapDao heatmapDao;
     private final BiologicalDataItemManager biologicalDataItemManager;
+    private final FileManager fileManager;
 
-    @Transactional(propagation = Propagation.REQUIRED)
+    @Transactional(propagation = Propagation.REQUIRED, rollbackFor = IOException.class)
     public Heatmap createHeatmap(final HeatmapRegistrationRequest request) throws IOException {
         final String path = request.getPath();
         getFile(path);
@@ -112,11 +123,13 @@ public class HeatmapManager {
             h -> checkTree(getLabelSet(h.getColumnLabels()), h.getColumnTreePath()));
         biologicalDataItemManager.createBiologicalDataItem(heatmap);
         heatmap.setBioDataItemId(heatmap.getId());
-        return heatmapDao.saveHeatmap(heatmap,
+        final Heatmap savedHeatmap = heatmapDao.saveHeatmap(heatmap,
                 listToData(contentAsList),
                 cellAnnotation,
                 rowTree,
                 columnTree);
+        writeTiles(savedHeatmap, contentAsList);
+        return savedHeatmap;
     }
 
     @Transactional(propagation = Propagation.REQUIRED)
@@ -180,6 +193,17 @@ public class HeatmapManager {
         final Heatmap heatmap = getHeatmap(heatmapId);
         heatmapDao.deleteHeatmap(heatmapId);
         biologicalDataItemManager.deleteBiologicalDataItem(heatmap.getBioDataItemId());
+        // tiled content is kept until the deletion is committed, so that a rolled back heatmap stays readable
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    deleteHeatmapDir(heatmapId);
+                }
+            });
+        } else {
+            deleteHeatmapDir(heatmapId);
+        }
     }
 
     public Heatmap loadHeatmap(final long heatmapId) {
@@ -198,6 +222,52 @@ public class HeatmapManager {
         }
     }
 
+    /**
+     * Returns a window of a heatmap content. If a window is larger than {@code maxRows} x {@code maxColumns},
+     * cells are aggregated at the finest zoom level, at which a window fits into these bounds.
+     * Tiled content for heatmaps, registered before it was introduced, should be built with
+     * {@link #buildTiles(long)} first.
+     * @param heatmapId ID of a heatmap
+     * @param startRow the first row of a window, 0-based, the first heatmap row if null
+     * @param endRow the last row of a window, inclusive, the last heatmap row if null
+     * @param startColumn the first column of a window, 0-based, the first heatmap column if null
+     * @param endColumn the last column of a window, inclusive, the last heatmap column if null
+     * @param maxRows maximum number of rows to return, unlimited if null
+     * @param maxColumns maximum number of columns to return, unlimited if null
+     * @return a window of a heatmap content
+     * @throws IOException if tiled content can't be read
+     */
+    public HeatmapContentWindow getContentWindow(final long heatmapId,
+                                                 final Integer startRow, final Integer endRow,
+                                                 final Integer startColumn, final Integer endColumn,
+                                                 final Integer maxRows, final Integer maxColumns)
+            throws IOException {
+        getHeatmap(heatmapId);
+        Assert.isTrue((maxRows == null || maxRows > 0) && (maxColumns == null || maxColumns > 0),
+                "Window size should be positive");
+        final File tilesFile = fileManager.getHeatmapTilesFile(heatmapId);
+        Assert.notNull(tilesFile, getMessage(MessagesConstants.ERROR_HEATMAP_TILES_NOT_FOUND, heatmapId));
+        return HeatmapTileFile.read(tilesFile,
+                Optional.ofNullable(startRow).orElse(0),
+                Optional.ofNullable(endRow).orElse(Integer.MAX_VALUE),
+                Optional.ofNullable(startColumn).orElse(0),
+                Optional.ofNullable(endColumn).orElse(Integer.MAX_VALUE),
+                maxRows, maxColumns);
+    }
+
+    /**
+     * Builds tiled content of a heatmap from its stored content. Heatmaps, registered before tiled content
+     * was introduced, should be migrated with this method before their content windows are requested.
+     * @param heatmapId ID of a heatmap
+     * @throws IOException if tiled content can't be written
+     */
+    public void buildTiles(final long heatmapId) throws IOException {
+        final Heatmap heatmap = getHeatmap(heatmapId);
+        try (InputStream heatmapIS = heatmapDao.loadHeatmapContent(heatmapId)) {
+            writeTiles(heatmap, dataToList(heatmapIS));
+        }
+    }
+
     public HeatmapTree getTree(final long heatmapId) throws IOException {
         final Heatmap heatmap = heatmapDao.loadHeatmap(heatmapId);
         final HeatmapTree heatmapTree = new HeatmapTree();
@@ -230,6 +300,28 @@ public class HeatmapManager {
         return (List<List<String>>) in.readObject();
     }
 
+    private void writeTiles(final Heatmap heatmap, final List<List<String>> content) throws IOException {
+        final File tilesFile = fileManager.makeHeatmapTilesFile(heatmap.getHeatmapId());
+        // content is written aside and moved, so that concurrent readers never see a partial file
+        final Path tempFile = Files.createTempFile(tilesFile.getParentFile().toPath(), tilesFile.getName(), null);
+        try {
+            HeatmapTileFile.write(tempFile.toFile(), new ArrayList<>(content), heatmap.getColumnLabels().size(),
+                    heatmap.getCellValueType(), tileSize);
+            Files.move(tempFile, tilesFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private void deleteHeatmapDir(final long heatmapId) {
+        try {
+            fileManager.deleteHeatmapDir(heatmapId);
+        } catch (IOException e) {
+            log.error("Failed to delete tiled content of heatmap " + heatmapId, e);
+        }
+    }
+
     private HeatmapTreeNode convertTree(final TreeNode node) {
         final HeatmapTreeNode heatmapTreeNode = HeatmapTreeNode.builder()
                 .name(node.getName())
@@ -26,6 +26,7 @@ package com.epam.catgenome.manager.heatmap;
 import com.epam.catgenome.controller.vo.registration.HeatmapRegistrationRequest;
 import com.epam.catgenome.entity.heatmap.Heatmap;
 import com.epam.catgenome.entity.heatmap.HeatmapAnnotationType;
+import com.epam.catgenome.entity.heatmap.HeatmapContentWindow;
 import com.epam.catgenome.entity.heatmap.HeatmapTree;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -62,15 +63,30 @@ public class HeatmapSecurityService {
     }
 
     @PreAuthorize(ROLE_ADMIN + OR + ROLE_HEATMAP_MANAGER)
-    public void deleteHeatmap(final long heatmapId) throws IOException {
+    public void deleteHeatmap(final long heatmapId) {
         heatmapManager.deleteHeatmap(heatmapId);
     }
 
+    @PreAuthorize(ROLE_ADMIN + OR + ROLE_HEATMAP_MANAGER)
+    public void buildTiles(final long heatmapId) throws IOException {
+        heatmapManager.buildTiles(heatmapId);
+    }
+
     @PreAuthorize(ROLE_ADMIN + OR + READ_HEATMAP_BY_PROJECT_ID)
     public List<List<List<String>>> getContent(final long heatmapId, final Long projectId) throws IOException {
         return heatmapManager.getContent(heatmapId);
     }
 
+    @PreAuthorize(ROLE_ADMIN + OR + READ_HEATMAP_BY_PROJECT_ID)
+    public HeatmapContentWindow getContentWindow(final long heatmapId, final Long projectId,
+                                                 final Integer startRow, final Integer endRow,
+                                                 final Integer startColumn, final Integer endColumn,
+                                                 final Integer maxRows, final Integer maxColumns)
+            throws IOException {
+        return heatmapManager.getContentWindow(heatmapId, startRow, endRow, startColumn, endColumn,
+                maxRows, maxColumns);
+    }
+
     @PreAuthorize(ROLE_ADMIN + OR + ROLE_HEATMAP_MANAGER)
     public void updateLabelAnnotation(final long heatmapId,
                                       final String path,
@@ -0,0 +1,450 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.manager.heatmap;
+
+import com.epam.catgenome.entity.heatmap.HeatmapContentWindow;
+import com.epam.catgenome.entity.heatmap.HeatmapDataType;
+import org.springframework.util.Assert;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.epam.catgenome.util.NgbFileUtils.getCellValue;
+
+/**
+ * A file with a heatmap content, split into square tiles of typed cells, at several resolutions.
+ * <p>
+ * Level 0 keeps original cells: integers, floats or indexes in a dictionary of string values. Each next level
+ * merges {@link #ZOOM_FACTOR} x {@link #ZOOM_FACTOR} cells of the previous one into a mean value for numeric
+ * heatmaps and into the most frequent value for string ones, until the whole heatmap is merged into a single cell.
+ * Tiles of a level are stored row by row and have a fixed size, which is reduced to level size for small levels,
+ * so any window of a level is loaded by a single positional read per intersected tile.
+ * </p>
+ */
+public final class HeatmapTileFile {
+
+    public static final int ZOOM_FACTOR = 2;
+
+    private static final int MAGIC = 0x4E47484D;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 7 * Integer.BYTES + Long.BYTES;
+    private static final int MISSING_INTEGER = Integer.MIN_VALUE;
+    private static final int MISSING_INDEX = -1;
+    private static final int MISSING_FLOAT = Float.floatToIntBits(Float.NaN);
+
+    private HeatmapTileFile() {
+        // no operations by default
+    }
+
+    /**
+     * Writes a heatmap content into a tiled file
+     * @param file to write
+     * @param content rows of cell values, missing trailing cells are treated as empty
+     * @param columnsCount number of heatmap columns
+     * @param cellValueType type of heatmap cells
+     * @param tileSize a side of a square tile in cells
+     * @throws IOException if writing fails
+     */
+    public static void write(final File file, final List<List<String>> content, final int columnsCount,
+                             final HeatmapDataType cellValueType, final int tileSize) throws IOException {
+        Assert.isTrue(tileSize > 0, "Tile size should be positive");
+        final int rowsCount = content.size();
+        Assert.isTrue(rowsCount > 0 && columnsCount > 0, "Heatmap content should not be empty");
+        final List<String> dictionary = new ArrayList<>();
+        int[] cells = encode(content, columnsCount, cellValueType, dictionary);
+        int[] counts = null;
+        final int levelsCount = getLevelsCount(rowsCount, columnsCount);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = HEADER_SIZE;
+            int levelRows = rowsCount;
+            int levelColumns = columnsCount;
+            for (int level = 0; level < levelsCount; level++) {
+                if (level > 0) {
+                    final int nextRows = divideCeil(levelRows, ZOOM_FACTOR);
+                    final int nextColumns = divideCeil(levelColumns, ZOOM_FACTOR);
+                    if (cellValueType == HeatmapDataType.STRING) {
+                        cells = mergeModes(cells, levelRows, levelColumns, nextRows, nextColumns);
+                    } else {
+                        if (counts == null) {
+                            counts = initCounts(cells, cellValueType);
+                            cells = toFloats(cells, cellValueType);
+                        }
+                        final int[] nextCounts = new int[nextRows * nextColumns];
+                        cells = mergeMeans(cells, counts, levelRows, levelColumns, nextCounts, nextColumns);
+                        counts = nextCounts;
+                    }
+                    levelRows = nextRows;
+                    levelColumns = nextColumns;
+                }
+                position = writeLevel(channel, position, cells, levelRows, levelColumns, tileSize,
+                        getMissingValue(cellValueType, level));
+            }
+
+            final int dictionarySize = dictionary.stream().mapToInt(v -> v.length() * 3 + Integer.BYTES).sum();
+            final ByteBuffer dictionaryBuffer = ByteBuffer.allocate(Integer.BYTES + dictionarySize);
+            dictionaryBuffer.putInt(dictionary.size());
+            for (String value : dictionary) {
+                final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                dictionaryBuffer.putInt(bytes.length).put(bytes);
+            }
+            dictionaryBuffer.flip();
+            write(channel, dictionaryBuffer, position);
+
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(rowsCount).putInt(columnsCount).putInt(tileSize)
+                    .putInt(levelsCount).putInt(cellValueType.getId()).putLong(position);
+            header.flip();
+            write(channel, header, 0);
+        }
+    }
+
+    /**
+     * Loads a window of a heatmap content. A level with the finest resolution, at which a window fits into
+     * {@code maxRows} x {@code maxColumns} cells, is used.
+     * @param file a tiled heatmap file
+     * @param startRow the first row of a window, 0-based
+     * @param endRow the last row of a window, inclusive, is truncated to heatmap size
+     * @param startColumn the first column of a window, 0-based
+     * @param endColumn the last column of a window, inclusive, is truncated to heatmap size
+     * @param maxRows maximum number of rows to return, all rows are returned if null
+     * @param maxColumns maximum number of columns to return, all columns are returned if null
+     * @return a window of a heatmap content
+     * @throws IOException if a file can't be read
+     */
+    public static HeatmapContentWindow read(final File file, final int startRow, final int endRow,
+                                            final int startColumn, final int endColumn,
+                                            final Integer maxRows, final Integer maxColumns) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+            Assert.isTrue(header.getInt() == MAGIC && header.getInt() == VERSION,
+                    "Unsupported heatmap file " + file.getAbsolutePath());
+            final int rowsCount = header.getInt();
+            final int columnsCount = header.getInt();
+            final int tileSize = header.getInt();
+            final int levelsCount = header.getInt();
+            final HeatmapDataType cellValueType = HeatmapDataType.getById(header.getInt());
+            final long dictionaryOffset = header.getLong();
+
+            final int lastRow = Math.min(endRow, rowsCount - 1);
+            final int lastColumn = Math.min(endColumn, columnsCount - 1);
+            Assert.isTrue(startRow >= 0 && startRow <= lastRow && startColumn >= 0 && startColumn <= lastColumn,
+                    "Invalid heatmap window");
+
+            int level = 0;
+            long offset = HEADER_SIZE;
+            int levelRows = rowsCount;
+            int levelColumns = columnsCount;
+            while (level < levelsCount - 1
+                    && (exceeds(startRow, lastRow, level, maxRows)
+                        || exceeds(startColumn, lastColumn, level, maxColumns))) {
+                offset += getLevelSize(levelRows, levelColumns, tileSize);
+                levelRows = divideCeil(levelRows, ZOOM_FACTOR);
+                levelColumns = divideCeil(levelColumns, ZOOM_FACTOR);
+                level++;
+            }
+
+            final int firstRow = startRow >> level;
+            final int windowRows = (lastRow >> level) - firstRow + 1;
+            final int firstColumn = startColumn >> level;
+            final int windowColumns = (lastColumn >> level) - firstColumn + 1;
+            final int[] cells = new int[windowRows * windowColumns];
+            final int tileHeight = Math.min(tileSize, levelRows);
+            final int tileWidth = Math.min(tileSize, levelColumns);
+            final int tileColumns = divideCeil(levelColumns, tileWidth);
+            final long tileBytes = (long) tileHeight * tileWidth * Integer.BYTES;
+            for (int tileRow = firstRow / tileHeight; tileRow <= (firstRow + windowRows - 1) / tileHeight;
+                 tileRow++) {
+                final int rowFrom = Math.max(firstRow, tileRow * tileHeight);
+                final int rowTo = Math.min(firstRow + windowRows - 1, (tileRow + 1) * tileHeight - 1);
+                for (int tileColumn = firstColumn / tileWidth;
+                     tileColumn <= (firstColumn + windowColumns - 1) / tileWidth; tileColumn++) {
+                    final long tileOffset = offset + ((long) tileRow * tileColumns + tileColumn) * tileBytes;
+                    final ByteBuffer tile = readFully(channel,
+                            tileOffset + (long) (rowFrom - tileRow * tileHeight) * tileWidth * Integer.BYTES,
+                            (rowTo - rowFrom + 1) * tileWidth * Integer.BYTES);
+                    final int columnFrom = Math.max(firstColumn, tileColumn * tileWidth);
+                    final int columnTo = Math.min(firstColumn + windowColumns - 1, (tileColumn + 1) * tileWidth - 1);
+                    for (int row = rowFrom; row <= rowTo; row++) {
+                        final int tileRowStart = (row - rowFrom) * tileWidth - tileColumn * tileWidth;
+                        for (int column = columnFrom; column <= columnTo; column++) {
+                            cells[(row - firstRow) * windowColumns + column - firstColumn] =
+                                    tile.getInt((tileRowStart + column) * Integer.BYTES);
+                        }
+                    }
+                }
+            }
+
+            final String[] dictionary = cellValueType == HeatmapDataType.STRING
+                    ? readDictionary(channel, dictionaryOffset)
+                    : null;
+            final List<List<Object>> values = new ArrayList<>(windowRows);
+            for (int row = 0; row < windowRows; row++) {
+                final List<Object> rowValues = new ArrayList<>(windowColumns);
+                for (int column = 0; column < windowColumns; column++) {
+                    rowValues.add(decode(cells[row * windowColumns + column], cellValueType, level, dictionary));
+                }
+                values.add(rowValues);
+            }
+            return HeatmapContentWindow.builder()
+                    .startRow(startRow)
+                    .endRow(lastRow)
+                    .startColumn(startColumn)
+                    .endColumn(lastColumn)
+                    .step(1 << level)
+                    .cellValueType(cellValueType)
+                    .values(values)
+                    .build();
+        }
+    }
+
+    private static int[] encode(final List<List<String>> content, final int columnsCount,
+                                final HeatmapDataType cellValueType, final List<String> dictionary) {
+        final Map<String, Integer> indexes = new HashMap<>();
+        final int[] cells = new int[content.size() * columnsCount];
+        int row = 0;
+        for (List<String> rowValues : content) {
+            int column = 0;
+            for (String rawValue : rowValues) {
+                if (column == columnsCount) {
+                    break;
+                }
+                final String value = getCellValue(rawValue);
+                final int cell;
+                if (value == null) {
+                    cell = getMissingValue(cellValueType, 0);
+                } else if (cellValueType == HeatmapDataType.INTEGER) {
+                    cell = Integer.parseInt(value);
+                } else if (cellValueType == HeatmapDataType.DOUBLE) {
+                    cell = Float.floatToIntBits((float) Double.parseDouble(value));
+                } else {
+                    cell = indexes.computeIfAbsent(value, v -> {
+                        dictionary.add(v);
+                        return dictionary.size() - 1;
+                    });
+                }
+                cells[row * columnsCount + column++] = cell;
+            }
+            while (column < columnsCount) {
+                cells[row * columnsCount + column++] = getMissingValue(cellValueType, 0);
+            }
+            row++;
+        }
+        return cells;
+    }
+
+    private static Object decode(final int cell, final HeatmapDataType cellValueType, final int level,
+                                 final String[] dictionary) {
+        if (cellValueType == HeatmapDataType.STRING) {
+            return cell == MISSING_INDEX ? null : dictionary[cell];
+        }
+        if (cellValueType == HeatmapDataType.INTEGER && level == 0) {
+            return cell == MISSING_INTEGER ? null : cell;
+        }
+        final float value = Float.intBitsToFloat(cell);
+        return Float.isNaN(value) ? null : value;
+    }
+
+    private static int getMissingValue(final HeatmapDataType cellValueType, final int level) {
+        if (cellValueType == HeatmapDataType.STRING) {
+            return MISSING_INDEX;
+        }
+        return cellValueType == HeatmapDataType.INTEGER && level == 0 ? MISSING_INTEGER : MISSING_FLOAT;
+    }
+
+    private static int[] initCounts(final int[] cells, final HeatmapDataType cellValueType) {
+        final int missing = getMissingValue(cellValueType, 0);
+        final int[] counts = new int[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            counts[i] = cells[i] == missing ? 0 : 1;
+        }
+        return counts;
+    }
+
+    private static int[] toFloats(final int[] cells, final HeatmapDataType cellValueType) {
+        if (cellValueType != HeatmapDataType.INTEGER) {
+            return cells;
+        }
+        final int[] floats = new int[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            floats[i] = cells[i] == MISSING_INTEGER ? MISSING_FLOAT : Float.floatToIntBits(cells[i]);
+        }
+        return floats;
+    }
+
+    private static int[] mergeMeans(final int[] cells, final int[] counts, final int rows, final int columns,
+                                    final int[] nextCounts, final int nextColumns) {
+        final double[] sums = new double[nextCounts.length];
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                final int cell = row * columns + column;
+                if (counts[cell] > 0) {
+                    final int next = (row / ZOOM_FACTOR) * nextColumns + column / ZOOM_FACTOR;
+                    sums[next] += (double) Float.intBitsToFloat(cells[cell]) * counts[cell];
+                    nextCounts[next] += counts[cell];
+                }
+            }
+        }
+        final int[] means = new int[nextCounts.length];
+        for (int i = 0; i < means.length; i++) {
+            means[i] = nextCounts[i] == 0 ? MISSING_FLOAT : Float.floatToIntBits((float) (sums[i] / nextCounts[i]));
+        }
+        return means;
+    }
+
+    private static int[] mergeModes(final int[] cells, final int rows, final int columns,
+                                    final int nextRows, final int nextColumns) {
+        final int[] modes = new int[nextRows * nextColumns];
+        final int[] candidates = new int[ZOOM_FACTOR * ZOOM_FACTOR];
+        for (int nextRow = 0; nextRow < nextRows; nextRow++) {
+            for (int nextColumn = 0; nextColumn < nextColumns; nextColumn++) {
+                int candidatesCount = 0;
+                for (int row = nextRow * ZOOM_FACTOR; row < Math.min(rows, (nextRow + 1) * ZOOM_FACTOR); row++) {
+                    for (int column = nextColumn * ZOOM_FACTOR;
+                         column < Math.min(columns, (nextColumn + 1) * ZOOM_FACTOR); column++) {
+                        if (cells[row * columns + column] != MISSING_INDEX) {
+                            candidates[candidatesCount++] = cells[row * columns + column];
+                        }
+                    }
+                }
+                modes[nextRow * nextColumns + nextColumn] = getMode(candidates, candidatesCount);
+            }
+        }
+        return modes;
+    }
+
+    private static int getMode(final int[] values, final int count) {
+        int mode = MISSING_INDEX;
+        int modeCount = 0;
+        for (int i = 0; i < count; i++) {
+            int valueCount = 0;
+            for (int j = 0; j < count; j++) {
+                if (values[j] == values[i]) {
+                    valueCount++;
+                }
+            }
+            if (valueCount > modeCount) {
+                mode = values[i];
+                modeCount = valueCount;
+            }
+        }
+        return mode;
+    }
+
+    private static long writeLevel(final FileChannel channel, final long position, final int[] cells,
+                                   final int rows, final int columns, final int tileSize, final int missing)
+            throws IOException {
+        final int tileHeight = Math.min(tileSize, rows);
+        final int tileWidth = Math.min(tileSize, columns);
+        final ByteBuffer tile = ByteBuffer.allocate(tileHeight * tileWidth * Integer.BYTES);
+        final int[] tileCells = new int[tileHeight * tileWidth];
+        long current = position;
+        for (int tileRow = 0; tileRow < divideCeil(rows, tileHeight); tileRow++) {
+            for (int tileColumn = 0; tileColumn < divideCeil(columns, tileWidth); tileColumn++) {
+                Arrays.fill(tileCells, missing);
+                for (int row = tileRow * tileHeight; row < Math.min(rows, (tileRow + 1) * tileHeight); row++) {
+                    final int columnFrom = tileColumn * tileWidth;
+                    final int columnTo = Math.min(columns, columnFrom + tileWidth);
+                    System.arraycopy(cells, row * columns + columnFrom, tileCells,
+                            (row - tileRow * tileHeight) * tileWidth, columnTo - columnFrom);
+                }
+                tile.clear();
+                tile.asIntBuffer().put(tileCells);
+                write(channel, tile, current);
+                current += tile.capacity();
+            }
+        }
+        return current;
+    }
+
+    private static String[] readDictionary(final FileChannel channel, final long offset) throws IOException {
+        final ByteBuffer size = readFully(channel, offset, (int) Math.min(channel.size() - offset, Integer.MAX_VALUE));
+        final String[] dictionary = new String[size.getInt()];
+        for (int i = 0; i < dictionary.length; i++) {
+            final byte[] bytes = new byte[size.getInt()];
+            size.get(bytes);
+            dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return dictionary;
+    }
+
+    private static boolean exceeds(final int start, final int end, final int level, final Integer max) {
+        return max != null && (end >> level) - (start >> level) + 1 > max;
+    }
+
+    private static int getLevelsCount(final int rows, final int columns) {
+        int levels = 1;
+        int levelRows = rows;
+        int levelColumns = columns;
+        while (levelRows > 1 || levelColumns > 1) {
+            levelRows = divideCeil(levelRows, ZOOM_FACTOR);
+            levelColumns = divideCeil(levelColumns, ZOOM_FACTOR);
+            levels++;
+        }
+        return levels;
+    }
+
+    private static long getLevelSize(final int rows, final int columns, final int tileSize) {
+        final int tileHeight = Math.min(tileSize, rows);
+        final int tileWidth = Math.min(tileSize, columns);
+        return (long) divideCeil(rows, tileHeight) * divideCeil(columns, tileWidth) * tileHeight * tileWidth
+                * Integer.BYTES;
+    }
+
+    private static int divideCeil(final int value, final int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    private static void write(final FileChannel channel, final ByteBuffer buffer, final long position)
+            throws IOException {
+        long current = position;
+        while (buffer.hasRemaining()) {
+            current += channel.write(buffer, current);
+        }
+    }
+
+    private static ByteBuffer readFully(final FileChannel channel, final long position, final int size)
+            throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of heatmap file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
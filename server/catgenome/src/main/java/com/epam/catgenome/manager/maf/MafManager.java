@@ -27,7 +27,6 @@ package com.epam.catgenome.manager.maf;
 import static com.epam.catgenome.component.MessageHelper.getMessage;
 import static com.epam.catgenome.constant.MessagesConstants.ERROR_EMPTY_FOLDER;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
@@ -65,6 +64,7 @@ import com.epam.catgenome.manager.reference.ReferenceGenomeManager;
 import com.epam.catgenome.util.IOHelper;
 import com.epam.catgenome.util.Utils;
 import com.epam.catgenome.util.comparator.FeatureComparator;
+import com.epam.catgenome.util.feature.pipeline.IndexingFeatureWriter;
 import htsjdk.samtools.util.CloseableIterator;
 import com.epam.catgenome.util.feature.reader.AbstractFeatureReader;
 import htsjdk.tribble.readers.LineIterator;
@@ -247,7 +247,8 @@ public class MafManager {
         Assert.notNull(directory.listFiles(), getMessage(ERROR_EMPTY_FOLDER));
         Assert.isTrue(directory.listFiles().length > 0, getMessage(ERROR_EMPTY_FOLDER));
         Reference reference = referenceGenomeManager.load(mafFile.getReferenceId());
-        try (BufferedWriter writer = fileManager.makeMafFileWriter(mafFile)) {
+        // the merged file is indexed while it is written, instead of reading it once again
+        try (IndexingFeatureWriter<MafFeature> writer = fileManager.makeMafFileWriter(mafFile)) {
             createMafBioItem(mafFile);
             for (File f : directory.listFiles()) {
                 if (f.getAbsolutePath().endsWith(MafCodec.MAF_EXTENSION) ||
@@ -265,16 +266,13 @@ public class MafManager {
                 Collections.sort(currChrFeatures, new FeatureComparator());
                 LOGGER.debug("Writing MAF records for chromosome {}", chromosome.getName());
                 for (MafFeature feature : currChrFeatures) {
-                    writer.write(feature.toBigMafString());
-                    writer.newLine();
+                    writer.write(feature, feature.toBigMafString());
                 }
-                writer.flush();
             }
-            writer.flush();
+            writer.finish();
         } finally {
             fileManager.deleteMafTempDir(mafFile.getId());
         }
-        fileManager.makeBigMafIndex(mafFile);
     }
 
     private void addFeaturesFromFile(MafFile mafFile, Chromosome chromosome,
@@ -29,11 +29,13 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import com.epam.catgenome.manager.bam.BamTrackEmitter;
 import htsjdk.samtools.util.RuntimeIOException;
@@ -64,6 +66,9 @@ public final class TaskExecutorService {
     @Value("#{catgenome['server.tomcat.max-connections'] ?: " + DEFAULT_MAX_THREADS + "}")
     private int maxThreadCount;
 
+    @Value("#{catgenome['motif.search.parallelism'] ?: 0}")
+    private int motifSearchParallelism;
+
     public enum ExecutionMode {
         SEQUENTIAL, ASYNC
     }
@@ -73,11 +78,22 @@ public final class TaskExecutorService {
 
     private volatile ExecutorService executorService;
     private volatile ExecutorService searchExecutor;
+    private volatile ForkJoinPool motifSearchExecutor;
 
     @PostConstruct
     public void init() {
         searchExecutor = Executors
                 .newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        motifSearchExecutor = new ForkJoinPool(motifSearchParallelism > 0
+                ? motifSearchParallelism
+                : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (motifSearchExecutor != null) {
+            motifSearchExecutor.shutdownNow();
+        }
     }
 
     /**
@@ -108,6 +124,15 @@ public final class TaskExecutorService {
         return searchExecutor;
     }
 
+    /**
+     * Separate pool for scanning windows of a reference sequence in motif search, its parallelism also
+     * limits the number of windows scanned ahead of a consumer
+     * @return ForkJoinPool
+     */
+    public ForkJoinPool getMotifSearchExecutor() {
+        return motifSearchExecutor;
+    }
+
     public synchronized void executeTrackTask(BamTrackEmitter bamTrackEmitter, ExecutionMode mode, BamTrackTask task)
             throws IOException {
 
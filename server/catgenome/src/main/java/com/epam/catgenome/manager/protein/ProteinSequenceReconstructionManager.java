@@ -54,6 +54,7 @@ import com.epam.catgenome.entity.gene.Gene;
 import com.epam.catgenome.entity.gene.GeneFile;
 import com.epam.catgenome.entity.protein.ProteinSequenceEntry;
 import com.epam.catgenome.entity.reference.Chromosome;
+import com.epam.catgenome.entity.reference.PackedSequence;
 import com.epam.catgenome.entity.reference.Sequence;
 import com.epam.catgenome.entity.track.Track;
 import com.epam.catgenome.entity.vcf.Variation;
@@ -271,7 +272,7 @@ public class ProteinSequenceReconstructionManager {
                 nucleotides = ProteinSequenceUtils.reverseComplement(nucleotides);
             }
 
-            cdsNucleotides.add(ProteinSequenceUtils.breakSequenceString(nucleotides, cds.getStartIndex(), isNegative));
+            cdsNucleotides.add(new PackedSequence(cds.getStartIndex(), nucleotides, isNegative));
         }
 
         double time2 = Utils.getSystemTimeMilliseconds();
@@ -305,10 +306,11 @@ public class ProteinSequenceReconstructionManager {
                     // work with changed nucleotide sequence.
                     nucleotideSequences = cdsToAlternativeNucleotidesMap.get(cds);
                 } else {
-                    // Load nucleotideSequences for CDS.
+                    // Load nucleotideSequences for CDS, variations are applied in place, so a mutable copy is taken.
                     LOGGER.debug("Try read reference. Start:" + cds.getStartIndex() + ", end: " + cds.getEndIndex());
-                    nucleotideSequences = Collections.singletonList(referenceManager.getNucleotidesFromNibFile(
-                                cds.getStartIndex(), cds.getEndIndex(), referenceId, chromosome.getName()));
+                    nucleotideSequences = Collections.singletonList(new ArrayList<>(
+                            referenceManager.getNucleotidesFromNibFile(cds.getStartIndex(), cds.getEndIndex(),
+                                    referenceId, chromosome.getName())));
                 }
 
                 List<List<Sequence>> cdsNucleotides = new ArrayList<>(cdsList.size());
@@ -415,8 +417,8 @@ public class ProteinSequenceReconstructionManager {
                                         final List<List<Sequence>> cdsNucleotides,
                                         final List<Sequence> nucleotideSequence) {
         // Find source nucleotide sequence in mRNA.
-        Integer startIndex = -1;
-        Integer endIndex = -1;
+        int startIndex = -1;
+        int endIndex = -1;
         for (int j = 0; j < nucleotideSequence.size(); j++) {
             Sequence sequence = nucleotideSequence.get(j);
             if (sequence.getStartIndex().equals(variation.getStartIndex())) {
@@ -0,0 +1,99 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.manager.reference;
+
+import com.epam.catgenome.manager.FileManager;
+import com.epam.catgenome.util.motif.MotifIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Manages k-mer indexes of reference chromosomes, used by {@link MotifSearchManager} to find motifs
+ * without scanning a whole chromosome sequence
+ */
+@Service
+@Slf4j
+public class MotifIndexManager {
+
+    @Value("${motif.index.enabled:false}")
+    private boolean indexEnabled;
+
+    @Value("${motif.index.kmer.size:8}")
+    private int kmerSize;
+
+    @Autowired
+    private FileManager fileManager;
+
+    @PostConstruct
+    public void init() {
+        Assert.isTrue(kmerSize > 0 && kmerSize <= MotifIndex.MAX_KMER_SIZE,
+                "motif.index.kmer.size should be in 1.." + MotifIndex.MAX_KMER_SIZE + ", but is " + kmerSize);
+    }
+
+    /**
+     * Writes a motif index for a chromosome, if indexing is enabled. Chromosomes, shorter than the number of
+     * distinct k-mers, are not indexed, as scanning them is cheap.
+     * @param referenceId ID of a reference genome
+     * @param chromosomeName name of a chromosome
+     * @param sequence of a chromosome
+     * @throws IOException if writing fails
+     */
+    public void createIndex(final Long referenceId, final String chromosomeName, final byte[] sequence)
+            throws IOException {
+        if (!indexEnabled || sequence.length < 1L << (2 * kmerSize)) {
+            return;
+        }
+        final File indexFile = fileManager.makeMotifIndexFile(referenceId, chromosomeName);
+        log.debug("Writing motif index for chromosome {} to {}", chromosomeName, indexFile);
+        MotifIndex.write(indexFile, sequence, kmerSize);
+    }
+
+    /**
+     * Opens a motif index of a chromosome
+     * @param referenceId ID of a reference genome
+     * @param chromosomeName name of a chromosome
+     * @return a reader of an index or null, if a chromosome isn't indexed or its index has an outdated format
+     * @throws IOException if an index can't be opened
+     */
+    public MotifIndex.Reader openIndex(final Long referenceId, final String chromosomeName) throws IOException {
+        final File indexFile = fileManager.getMotifIndexFile(referenceId, chromosomeName);
+        if (indexFile == null) {
+            return null;
+        }
+        if (!MotifIndex.isSupported(indexFile)) {
+            log.debug("Motif index {} has an outdated format and is ignored", indexFile);
+            return null;
+        }
+        return new MotifIndex.Reader(indexFile);
+    }
+}
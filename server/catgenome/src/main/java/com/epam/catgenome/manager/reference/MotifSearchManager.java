@@ -26,8 +26,6 @@ package com.epam.catgenome.manager.reference;
 
 import com.epam.catgenome.constant.MessagesConstants;
 import com.epam.catgenome.entity.BaseEntity;
-import com.epam.catgenome.entity.gene.Gene;
-import com.epam.catgenome.entity.gene.GeneFile;
 import com.epam.catgenome.entity.gene.GeneFilterForm;
 import com.epam.catgenome.entity.index.FeatureIndexEntry;
 import com.epam.catgenome.entity.index.FeatureType;
@@ -45,7 +43,10 @@ import com.epam.catgenome.entity.track.Track;
 import com.epam.catgenome.manager.FeatureIndexManager;
 import com.epam.catgenome.manager.GeneInfo;
 import com.epam.catgenome.manager.gene.parser.StrandSerializable;
-import com.epam.catgenome.util.NggbIntervalTreeMap;
+import com.epam.catgenome.manager.parallel.TaskExecutorService;
+import com.epam.catgenome.util.GeneIntervalIndex;
+import com.epam.catgenome.util.motif.IndexedMotifSearcher;
+import com.epam.catgenome.util.motif.MotifIndex;
 import com.epam.catgenome.util.motif.MotifSearcher;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
@@ -55,10 +56,12 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -66,10 +69,12 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import static com.epam.catgenome.component.MessageHelper.getMessage;
-import static com.epam.catgenome.util.IndexUtils.fetchGeneIdsFromBatch;
 
 @Service
 @Slf4j
@@ -99,6 +104,12 @@ public class MotifSearchManager {
     @Autowired
     private FeatureIndexManager featureIndexManager;
 
+    @Autowired
+    private MotifIndexManager motifIndexManager;
+
+    @Autowired
+    private TaskExecutorService taskExecutorService;
+
     public Track<StrandedSequence> fillTrackWithMotifSearch(final Track<StrandedSequence> track,
                                                             final String motif,
                                                             final StrandSerializable strand) {
@@ -144,9 +155,18 @@ public class MotifSearchManager {
 
     public StrandedSequence getNextMotif(final MotifSearchRequest motifSearchRequest) {
         verifyNextOrPrevSearchRequest(motifSearchRequest);
-        final Chromosome chromosome = fetchChromosomeById(
-                loadReferenceWithChromosomes(motifSearchRequest),
-                motifSearchRequest.getChromosomeId());
+        final Reference reference = loadReferenceWithChromosomes(motifSearchRequest);
+        final Chromosome chromosome = fetchChromosomeById(reference, motifSearchRequest.getChromosomeId());
+        final List<Motif> indexed = searchIndexedMotifs(motifSearchRequest, reference, chromosome,
+            (searcher, index, source) -> toList(searcher.findNext(index, source, chromosome.getName(),
+                    motifSearchRequest.getStartPosition(), motifSearchRequest.getStrandFilter(),
+                    isIncludeSequence(motifSearchRequest))));
+        if (indexed != null) {
+            return indexed.stream()
+                    .map(m -> new StrandedSequence(m.getStart(), m.getEnd(), m.getSequence(), m.getStrand()))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("No next motif can be found!"));
+        }
         // please see explanation for this calculation in getPreviousMotif() method
         final int shift = Math.max(1, searchResultSizeLimit - 2 * validateAndAdjustOverlap(motifSearchRequest) - 1);
         int from = motifSearchRequest.getStartPosition();
@@ -177,6 +197,18 @@ public class MotifSearchManager {
 
     public StrandedSequence getPreviousMotif(final MotifSearchRequest motifSearchRequest) {
         verifyNextOrPrevSearchRequest(motifSearchRequest);
+        final Reference reference = loadReferenceWithChromosomes(motifSearchRequest);
+        final Chromosome chromosome = fetchChromosomeById(reference, motifSearchRequest.getChromosomeId());
+        final List<Motif> indexed = searchIndexedMotifs(motifSearchRequest, reference, chromosome,
+            (searcher, index, source) -> toList(searcher.findPrevious(index, source, chromosome.getName(),
+                    motifSearchRequest.getStartPosition(), motifSearchRequest.getStrandFilter(),
+                    isIncludeSequence(motifSearchRequest))));
+        if (indexed != null) {
+            return indexed.stream()
+                    .map(m -> new StrandedSequence(m.getStart(), m.getEnd(), m.getSequence(), m.getStrand()))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("No previous motif can be found!"));
+        }
         // we calculate shift window in this way, because in the worst case
         // we can have searchResultSizeLimit number of result
         // (for example when each nucleotide is matched: pattern [ACGT])
@@ -299,9 +331,7 @@ public class MotifSearchManager {
         final Chromosome chromosome = fetchChromosomeById(reference, request.getChromosomeId());
         Assert.isTrue(request.getEndPosition() <= chromosome.getSize(),
                 getMessage(MessagesConstants.ERROR_POSITION_OUT_OF_RANGE, request.getEndPosition()));
-        final boolean includeSequence = request.getIncludeSequence() == null
-                        ? defaultIncludeSequence
-                        : request.getIncludeSequence();
+        final boolean includeSequence = isIncludeSequence(request);
         final int pageSize = request.getPageSize() == null
                 ? Integer.MAX_VALUE
                 : request.getPageSize();
@@ -327,19 +357,8 @@ public class MotifSearchManager {
             checkSizeOfMotifSearchResult(searchResult);
         }
 
-        if (loadGenes && CollectionUtils.isNotEmpty(searchResult) && reference.getGeneFile() != null) {
-            final List<GeneFile> geneFiles = Collections.singletonList(reference.getGeneFile());
-            final int start = searchResult.get(0).getStart();
-            final int end = searchResult.get(searchResult.size() - 1).getEnd();
-
-            final NggbIntervalTreeMap<List<Gene>> intervalMap = featureIndexManager.loadGenesIntervalMap(geneFiles,
-                    start, end, chromosome);
-            for (Motif motif : searchResult) {
-                final Set<GeneInfo> geneInfos = fetchGeneIdsFromBatch(intervalMap,
-                        motif.getStart(), motif.getEnd(), chromosome);
-                motif.setGeneIds(geneInfos.stream().map(GeneInfo::getGeneId).collect(Collectors.toList()));
-                motif.setGeneNames(geneInfos.stream().map(GeneInfo::getGeneName).collect(Collectors.toList()));
-            }
+        if (loadGenes) {
+            fillGenes(searchResult, reference, chromosome);
         }
 
         final int lastStart = searchResult.isEmpty()
@@ -388,31 +407,58 @@ public class MotifSearchManager {
         final int start = request.getStartPosition() == null ? 0 : request.getStartPosition();
         final int end = request.getEndPosition() == null ? chromosome.getSize() : request.getEndPosition();
 
-        final Set<Motif> result = new LinkedHashSet<>();
-        int currentStart = start;
-        int currentEnd = Math.min(this.bufferSize, end - start) + start;
+        final List<Motif> indexed = searchIndexedMotifs(request, reference, chromosome,
+            (searcher, index, source) -> searcher.search(index, source, chromosome.getName(), start, end,
+                    request.getStrandFilter(), pageSize, isIncludeSequence(request)));
+        if (indexed != null) {
+            if (loadGenes) {
+                fillGenes(indexed, reference, chromosome);
+            }
+            return buildChromosomeResult(request, chromosome, indexed, pageSize, end);
+        }
 
-        while (result.size() < pageSize && currentStart < end) {
-            result.addAll(searchRegionMotifs(MotifSearchRequest.builder()
+        // windows are scanned in parallel, but consumed in order, and only a limited number of them
+        // is scanned ahead, so that a filled page stops the scan
+        final ForkJoinPool executor = taskExecutorService.getMotifSearchExecutor();
+        final Deque<Future<List<Motif>>> windows = new ArrayDeque<>();
+        final Set<Motif> result = new LinkedHashSet<>();
+        int nextStart = start;
+        try {
+            while (result.size() < pageSize && (nextStart < end || !windows.isEmpty())) {
+                while (nextStart < end && windows.size() < executor.getParallelism()) {
+                    final MotifSearchRequest windowRequest = MotifSearchRequest.builder()
                             .motif(request.getMotif())
                             .referenceId(request.getReferenceId())
                             .chromosomeId(request.getChromosomeId())
-                            .startPosition(currentStart)
-                            .endPosition(currentEnd)
+                            .startPosition(nextStart)
+                            .endPosition((int) Math.min((long) nextStart + bufferSize, end))
                             .pageSize(pageSize)
                             .includeSequence(request.getIncludeSequence())
                             .strand(request.getStrandFilter())
                             .slidingWindow(request.getSlidingWindow())
-                            .build(),
-                    reference,
-                    loadGenes).getResult());
-            checkSizeOfMotifSearchResult(result);
-            currentStart = currentStart + bufferSize;
-            currentEnd = Math.min(currentEnd + bufferSize, end);
+                            .build();
+                    windows.add(executor.submit(() ->
+                            searchRegionMotifs(windowRequest, reference, false).getResult()));
+                    nextStart = (int) Math.min((long) nextStart + bufferSize, end);
+                }
+                result.addAll(getWindowMotifs(windows.poll()));
+                checkSizeOfMotifSearchResult(result);
+            }
+        } finally {
+            windows.forEach(window -> window.cancel(true));
         }
         final List<Motif> pageSizedResult = result.stream()
                 .limit(Math.min(result.size(), pageSize))
                 .collect(Collectors.toList());
+        if (loadGenes) {
+            fillGenes(pageSizedResult, reference, chromosome);
+        }
+        return buildChromosomeResult(request, chromosome, pageSizedResult, pageSize, end);
+    }
+
+    private MotifSearchResult buildChromosomeResult(final MotifSearchRequest request, final Chromosome chromosome,
+                                                    final List<Motif> pageSizedResult, final int pageSize,
+                                                    final int end) {
         final Integer lastStartMotifPosition = pageSizedResult.isEmpty() ||
                 (end == chromosome.getSize() && pageSizedResult.size() < pageSize)
                 ? null
@@ -427,6 +473,69 @@ public class MotifSearchManager {
                 .build();
     }
 
+    /**
+     * Runs a search, using a motif index of a chromosome. Only plain IUPAC motifs are looked up in an index,
+     * for the others a sequence is scanned as usual.
+     *
+     * @return found motifs or null, if a chromosome isn't indexed or a motif can't be looked up in an index
+     */
+    private List<Motif> searchIndexedMotifs(final MotifSearchRequest request, final Reference reference,
+                                            final Chromosome chromosome, final IndexedSearch search) {
+        try (MotifIndex.Reader index = motifIndexManager.openIndex(reference.getId(), chromosome.getName())) {
+            if (index == null) {
+                return null;
+            }
+            final IndexedMotifSearcher searcher = IndexedMotifSearcher.compile(request.getMotif(),
+                    index.getKmerSize());
+            if (searcher == null) {
+                return null;
+            }
+            final List<Motif> motifs = search.apply(searcher, index, (start, end) ->
+                    referenceManager.getSequenceByteArray(start, end, reference, chromosome.getName()));
+            checkSizeOfMotifSearchResult(motifs);
+            return motifs;
+        } catch (IOException e) {
+            throw new IllegalStateException(getMessage(MessagesConstants.ERROR_REFERENCE_SEQUENCE_READING), e);
+        }
+    }
+
+    private List<Motif> getWindowMotifs(final Future<List<Motif>> window) {
+        try {
+            return window.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void fillGenes(final List<Motif> motifs, final Reference reference, final Chromosome chromosome) {
+        if (CollectionUtils.isEmpty(motifs) || reference.getGeneFile() == null) {
+            return;
+        }
+        final GeneIntervalIndex geneIndex = featureIndexManager.loadGeneIntervalIndex(reference.getGeneFile(),
+                chromosome);
+        for (Motif motif : motifs) {
+            final Set<GeneInfo> geneInfos = geneIndex.fetchGeneInfos(motif.getStart(), motif.getEnd());
+            motif.setGeneIds(geneInfos.stream().map(GeneInfo::getGeneId).collect(Collectors.toList()));
+            motif.setGeneNames(geneInfos.stream().map(GeneInfo::getGeneName).collect(Collectors.toList()));
+        }
+    }
+
+    private boolean isIncludeSequence(final MotifSearchRequest request) {
+        return request.getIncludeSequence() == null
+                ? defaultIncludeSequence
+                : request.getIncludeSequence();
+    }
+
+    private static List<Motif> toList(final Motif motif) {
+        return motif == null ? Collections.emptyList() : Collections.singletonList(motif);
+    }
+
     private int validateAndAdjustOverlap(final MotifSearchRequest request) {
         return request.getSlidingWindow() == null
                 || request.getSlidingWindow() <= 0
@@ -631,4 +740,10 @@ public class MotifSearchManager {
         }
         return Collections.emptyList();
     }
+
+    @FunctionalInterface
+    private interface IndexedSearch {
+        List<Motif> apply(IndexedMotifSearcher searcher, MotifIndex.Reader index,
+                          IndexedMotifSearcher.SequenceSource source) throws IOException;
+    }
 }
@@ -31,7 +31,6 @@ import com.epam.catgenome.controller.vo.registration.FeatureIndexedFileRegistrat
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -41,6 +40,7 @@ import java.util.Map;
 import com.epam.catgenome.entity.BiologicalDataItem;
 import com.epam.catgenome.entity.BiologicalDataItemFormat;
 import com.epam.catgenome.entity.reference.Chromosome;
+import com.epam.catgenome.entity.reference.PackedSequence;
 import com.epam.catgenome.entity.reference.Reference;
 import com.epam.catgenome.entity.reference.Sequence;
 import com.epam.catgenome.entity.reference.Species;
@@ -56,6 +56,7 @@ import com.epam.catgenome.manager.reference.io.FastaSequenceFile;
 import com.epam.catgenome.manager.reference.io.FastaUtils;
 import com.epam.catgenome.manager.genbank.GenbankUtils;
 import com.epam.catgenome.manager.reference.io.NibDataReader;
+import com.epam.catgenome.manager.reference.io.NibSequenceStore;
 import com.epam.catgenome.manager.reference.io.NibDataWriter;
 import com.epam.catgenome.util.BlockCompressedDataInputStream;
 import com.epam.catgenome.util.BlockCompressedDataOutputStream;
@@ -117,6 +118,8 @@ public class ReferenceManager {
 
     @Autowired private NibDataReader nibDataReader;
 
+    @Autowired private NibSequenceStore nibSequenceStore;
+
     @Autowired private NibDataWriter nibDataWriter;
 
     @Autowired private GffManager gffManager;
@@ -127,6 +130,8 @@ public class ReferenceManager {
 
     @Autowired private GenbankManager genbankManager;
 
+    @Autowired private MotifIndexManager motifIndexManager;
+
     @Autowired
     private AuthManager authManager;
 
@@ -281,31 +286,19 @@ public class ReferenceManager {
      * @param endPosition    {@code int} end position at chromosome
      * @param referenceId    {@code long} need for open the file
      * @param chromosomeName {@code String} need for open the file
-     * @return {@code char[]} return char array of nucleotides, at file(relating to referenceId and chromosomeName)
+     * @return a {@link PackedSequence} of nucleotides, at file(relating to referenceId and chromosomeName)
      * started at startPosition and length sequenceLength
      */
     public List<Sequence> getNucleotidesFromNibFile(int startPosition, final int endPosition,
             final long referenceId, final String chromosomeName) throws IOException {
         final Reference reference = referenceGenomeManager.getOnlyReference(referenceId);
         if (isNibReference(reference.getPath())) {
-            try (BlockCompressedDataInputStream strm = fileManager
-                    .makeRefInputStream(referenceId, chromosomeName);
-                    DataInputStream indexStrm = fileManager
-                            .makeRefIndexInputStream(referenceId, chromosomeName)) {
-                return nibDataReader
-                        .getNucleotidesFromNibFile(startPosition, endPosition, strm, indexStrm);
-            }
+            return nibDataReader.getNucleotidesFromNibFile(startPosition, endPosition,
+                    nibSequenceStore.getSequence(referenceId, chromosomeName));
         } else {
-            List<Sequence> sequencesList = new ArrayList<>();
-
             FastaSequenceFile ref = new FastaSequenceFile(reference.getPath(),
                     getIndexPath(reference));
-            String bases = new String(ref.getSequence(chromosomeName, startPosition, endPosition),
-                    Charset.defaultCharset());
-            for (int i = 0; i < bases.length(); i++) {
-                sequencesList.add(new Sequence(startPosition + i, String.valueOf(bases.charAt(i))));
-            }
-            return sequencesList;
+            return new PackedSequence(startPosition, ref.getSequence(chromosomeName, startPosition, endPosition));
         }
     }
 
@@ -365,6 +358,7 @@ public class ReferenceManager {
         Assert.notNull(reference, MessagesConstants.ERROR_NO_SUCH_FILE);
 
         referenceGenomeManager.delete(reference);
+        nibSequenceStore.evict(referenceId);
         fileManager.deleteReferenceDir(reference);
         return reference;
     }
@@ -382,13 +376,14 @@ public class ReferenceManager {
     public String getSequenceString(final int startIndex, final int endIndex,
             final Long referenceId, final String chromosomeName) throws IOException {
         final Reference reference = referenceGenomeManager.getOnlyReference(referenceId);
+        return getSequenceString(startIndex, endIndex, reference, chromosomeName);
+    }
+
+    public String getSequenceString(final int startIndex, final int endIndex,
+                                    final Reference reference, final String chromosomeName) throws IOException {
         if (isNibReference(reference.getPath())) {
-            try (BlockCompressedDataInputStream strm = fileManager
-                    .makeRefInputStream(reference.getId(), chromosomeName);
-                    DataInputStream indexStrm = fileManager
-                            .makeRefIndexInputStream(reference.getId(), chromosomeName)) {
-                return nibDataReader.getStringFromNibFile(startIndex, endIndex, strm, indexStrm);
-            }
+            return nibDataReader.getStringFromNibFile(startIndex, endIndex,
+                    nibSequenceStore.getSequence(reference.getId(), chromosomeName));
         } else {
             FastaSequenceFile ref = new FastaSequenceFile(reference.getPath(), getIndexPath(reference));
             return new String(ref.getSequence(chromosomeName, startIndex, endIndex),
@@ -415,13 +410,8 @@ public class ReferenceManager {
     public byte[] getSequenceByteArray(final int startIndex, final int endIndex,
                                        final Reference reference, final String chromosomeName) throws IOException {
         if (isNibReference(reference.getPath())) {
-            try (BlockCompressedDataInputStream strm = fileManager
-                    .makeRefInputStream(reference.getId(), chromosomeName);
-                 DataInputStream indexStrm = fileManager
-                         .makeRefIndexInputStream(reference.getId(), chromosomeName)) {
-                return nibDataReader
-                        .getByteNucleotidesFromNibFile(startIndex, endIndex, strm, indexStrm);
-            }
+            return nibDataReader.getByteNucleotidesFromNibFile(startIndex, endIndex,
+                    nibSequenceStore.getSequence(reference.getId(), chromosomeName));
 
         } else {
             FastaSequenceFile ref = new FastaSequenceFile(reference.getPath(), getIndexPath(reference));
@@ -494,12 +484,8 @@ public class ReferenceManager {
         } else {
             if (isNibReference(reference.getPath())) {
                 log.debug(getMessage(MessagesConstants.DEBUG_FILE_READING));
-                try (BlockCompressedDataInputStream strm = fileManager
-                        .makeRefInputStream(trackID, chromosomeName);
-                        DataInputStream indexStrm = fileManager
-                                .makeRefIndexInputStream(trackID, chromosomeName)) {
-                    return getGCFromNibFile(startIndex, endIndex, scaleFactor, strm, indexStrm);
-                }
+                return nibDataReader.fillSequenceOfGCFromNibFile(startIndex, endIndex, scaleFactor,
+                        nibSequenceStore.getSequence(trackID, chromosomeName));
             } else {
                 log.debug(getMessage(MessagesConstants.DEBUG_FILE_READING));
                 String sequence =
@@ -575,14 +561,6 @@ public class ReferenceManager {
                 .fillSequenceOfGCForGA4GH(startPosition, endPosition, scaleFactor, referenceId);
     }
 
-    private List<Sequence> getGCFromNibFile(int startPosition, final int endPosition,
-            final double scaleFactor, final BlockCompressedDataInputStream gcContentStream,
-            final DataInputStream indexStream) throws IOException {
-        //arrays started at zero position, but chromosome started ad first position
-        return nibDataReader.fillSequenceOfGCFromNibFile(startPosition, endPosition, scaleFactor,
-                gcContentStream, indexStream);
-    }
-
     private long registerReference(Long referenceId, Reference reference, boolean createGC)
             throws IOException {
         final String path = reference.getPath();
@@ -607,6 +585,7 @@ public class ReferenceManager {
                     nibDataWriter.byteArrayToGCFile(sequence, gcStream);
                 }
                 fileManager.makeGcIndex(referenceId, chromosome.getName());
+                motifIndexManager.createIndex(referenceId, chromosome.getName(), sequence);
             }
         }
         return lengthOfGenome;
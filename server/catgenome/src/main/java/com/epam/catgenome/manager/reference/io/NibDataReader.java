@@ -48,6 +48,7 @@ import com.epam.catgenome.controller.vo.ga4gh.ReferenceBasesGA4GH;
 import com.epam.catgenome.entity.nucleotid.FormatCoder;
 import com.epam.catgenome.entity.nucleotid.NibByteFormat;
 import com.epam.catgenome.entity.nucleotid.Signature;
+import com.epam.catgenome.entity.reference.PackedSequence;
 import com.epam.catgenome.entity.reference.Sequence;
 import com.epam.catgenome.exception.ExternalDbUnavailableException;
 import com.epam.catgenome.exception.Ga4ghResourceUnavailableException;
@@ -78,17 +79,16 @@ public class NibDataReader {
      * Loads sequence string from the input stream in the Nib format
      * @param startPosition {@code int} start position at chromosome
      * @param endPosition   {@code int} end position at chromosome
-     * @param nibStream     {@code InputStream} InputStream from nib-format file
-     * @return {@code String} return String of nucleotides, at nibStream started at startPosition
+     * @param sequence      {@code NibSequence} chromosome sequence in the Nib format
+     * @return {@code String} return String of nucleotides, at sequence started at startPosition
      * and length sequenceLength
      */
     public String getStringFromNibFile(final int startPosition, final int endPosition,
-            BlockCompressedDataInputStream nibStream,
-            DataInputStream indexStream)
+            final NibSequenceStore.NibSequence sequence)
             throws IOException {
         final int newStartPosition = startPosition - 1;
         final int sequenceLength = endPosition - newStartPosition;
-        Assert.notNull(nibStream, getMessage(MessagesConstants.ERROR_NO_SUCH_FILE));
+        Assert.notNull(sequence, getMessage(MessagesConstants.ERROR_NO_SUCH_FILE));
         Assert.isTrue(sequenceLength >= 0, getMessage(MessagesConstants.ERROR_LENGTH_ABOVE_ZERO));
         Assert.isTrue(newStartPosition >= 0, getMessage(MessagesConstants.ERROR_START_POSITION_ABOVE_ZERO));
 
@@ -98,8 +98,7 @@ public class NibDataReader {
 
         // 2 nib-format at byte
         final int realLength = sequenceLength / 2 + Math.max(positionFactor, realLengthFactor);
-        byte[] buffer = new byte[realLength];
-        buffer = readFromNib(nibStream, indexStream, newStartPosition, sequenceLength, seekPosition, buffer);
+        final byte[] buffer = readFromNib(sequence, newStartPosition, sequenceLength, seekPosition, realLength);
         return nibByteArrayToString(positionFactor, sequenceLength, buffer);
     }
 
@@ -107,17 +106,16 @@ public class NibDataReader {
      * Loads a byte array with nucleotides byte values from the input stream in the Nib format
      * @param startPosition {@code int} start position at chromosome
      * @param endPosition   {@code int} end position at chromosome
-     * @param nibStream     {@code InputStream} InputStream from nib-format file
-     * @return {@code String} byte array with of nucleotides, at nibStream started at startPosition
+     * @param sequence      {@code NibSequence} chromosome sequence in the Nib format
+     * @return {@code String} byte array with of nucleotides, at sequence started at startPosition
      * and length sequenceLength
      */
     public byte[] getByteNucleotidesFromNibFile(final int startPosition, final int endPosition,
-            BlockCompressedDataInputStream nibStream,
-            DataInputStream indexStream)
+            final NibSequenceStore.NibSequence sequence)
             throws IOException {
         final int newStartPosition = startPosition - 1;
         final int sequenceLength = endPosition - newStartPosition;
-        Assert.notNull(nibStream, getMessage(MessagesConstants.ERROR_NO_SUCH_FILE));
+        Assert.notNull(sequence, getMessage(MessagesConstants.ERROR_NO_SUCH_FILE));
         Assert.isTrue(sequenceLength >= 0, getMessage(MessagesConstants.ERROR_LENGTH_ABOVE_ZERO));
         Assert.isTrue(newStartPosition >= 0, getMessage(MessagesConstants.ERROR_START_POSITION_ABOVE_ZERO));
 
@@ -127,8 +125,7 @@ public class NibDataReader {
 
         // 2 nib-format at byte
         final int realLength = sequenceLength / 2 + Math.max(positionFactor, realLengthFactor);
-        byte[] buffer = new byte[realLength];
-        buffer = readFromNib(nibStream, indexStream, newStartPosition, sequenceLength, seekPosition, buffer);
+        final byte[] buffer = readFromNib(sequence, newStartPosition, sequenceLength, seekPosition, realLength);
         return nibByteArrayToNucleotideBytes(positionFactor, sequenceLength, buffer);
     }
 
@@ -136,19 +133,18 @@ public class NibDataReader {
      * Loads a {@code List} of reference sequences from the stream (file) in a Nib format
      * @param startPosition {@code int} start position at chromosome
      * @param endPosition   {@code int} end position at chromosome
-     * @param nibStream     {@code InputStream} InputStream from nib-format file
-     * @return {@code List} return List of nucleotides sequences, at nibStream started at startPosition
+     * @param sequence      {@code NibSequence} chromosome sequence in the Nib format
+     * @return {@code PackedSequence} of nucleotides, at sequence started at startPosition
      * and length sequenceLength
      */
-    public List<Sequence> getNucleotidesFromNibFile(final int startPosition, final int endPosition,
-            final BlockCompressedDataInputStream nibStream,
-            final DataInputStream indexStream)
+    public PackedSequence getNucleotidesFromNibFile(final int startPosition, final int endPosition,
+            final NibSequenceStore.NibSequence sequence)
             throws IOException {
         //arrays started at zero position, but chromosome started ad first position
         final int newStartPosition = startPosition - 1;
         //sequenceLength it (endPosition) - (old startPosition) + 1 or (endPosition) - (new startPosition)
         final int sequenceLength = endPosition - newStartPosition;
-        Assert.notNull(nibStream, getMessage(MessagesConstants.ERROR_NO_SUCH_FILE));
+        Assert.notNull(sequence, getMessage(MessagesConstants.ERROR_NO_SUCH_FILE));
         Assert.isTrue(sequenceLength >= 0, getMessage(MessagesConstants.ERROR_LENGTH_ABOVE_ZERO));
         Assert.isTrue(newStartPosition >= 0, getMessage(MessagesConstants.ERROR_START_POSITION_ABOVE_ZERO));
 
@@ -158,10 +154,9 @@ public class NibDataReader {
 
         // 2 nib-format at byte
         final int realLength = sequenceLength / 2 + Math.max(positionFactor, realLengthFactor);
-        byte[] buffer = new byte[realLength];
-        buffer = readFromNib(nibStream, indexStream, newStartPosition, sequenceLength, seekPosition, buffer);
-        return NibByteFormat
-                .nibByteArrayToNucleotidesList(newStartPosition, positionFactor, sequenceLength, buffer);
+        final byte[] buffer = readFromNib(sequence, newStartPosition, sequenceLength, seekPosition, realLength);
+        return new PackedSequence(startPosition,
+                nibByteArrayToNucleotideBytes(positionFactor, sequenceLength, buffer));
     }
 
     /**
@@ -169,11 +164,11 @@ public class NibDataReader {
      * @param startPosition {@code int} start position at chromosome
      * @param endPosition   {@code int} end position at chromosome
      * @param referenceId   to load
-     * @return {@code List} return List of nucleotides sequences, started at startPosition
+     * @return {@code PackedSequence} of nucleotides, started at startPosition
      * and length sequenceLength
      * @throws Ga4ghResourceUnavailableException
      */
-    public List<Sequence> getNucleotidesFromNibGA4GH(int startPosition, final int endPosition,
+    public PackedSequence getNucleotidesFromNibGA4GH(int startPosition, final int endPosition,
             final String referenceId) throws Ga4ghResourceUnavailableException {
         ReferenceBasesGA4GH referenceGA4GH;
 
@@ -182,16 +177,12 @@ public class NibDataReader {
         } catch (ReferenceReadingException e) {
             throw new Ga4ghResourceUnavailableException(referenceId, e);
         }
-        List<Sequence> result = new ArrayList<>();
         final int sequenceLength = endPosition - startPosition;
-        for (int i = 0; i < sequenceLength; i++) {
-            // i + absolutePosition + 1 - because at chromosome started at first index but ib array started from zero
-            String sequenceText = String.valueOf(referenceGA4GH.getSequence().charAt(i));
-            result.add(new Sequence(i + startPosition + 1, sequenceText));
-        }
         Assert.isTrue(sequenceLength >= 0, getMessage(MessagesConstants.ERROR_LENGTH_ABOVE_ZERO));
         Assert.isTrue(startPosition >= 0, getMessage(MessagesConstants.ERROR_START_POSITION_ABOVE_ZERO));
-        return result;
+        // startPosition + 1 - because at chromosome started at first index but ib array started from zero
+        return new PackedSequence(startPosition + 1,
+                referenceGA4GH.getSequence().substring(0, sequenceLength), false);
     }
 
     /**
@@ -199,16 +190,14 @@ public class NibDataReader {
      * @param startPosition {@code int} start position at chromosome
      * @param endPosition   {@code int} end position at chromosome
      * @param scaleFactor   track scale in the client
-     * @param nibStream     {@code InputStream} InputStream from nib-format file
-     * @param indexStream   {@code DataInputStream} InputStream from the reference index file
+     * @param nibSequence   {@code NibSequence} chromosome sequence in the Nib format
      * @return {@code List} of sequences filled with GC-content data
      */
     public List<Sequence> fillSequenceOfGCFromNibFile(final int startPosition, final int endPosition,
             final double scaleFactor,
-            final BlockCompressedDataInputStream nibStream,
-            final DataInputStream indexStream)
+            final NibSequenceStore.NibSequence nibSequence)
             throws IOException {
-        Assert.notNull(nibStream, getMessage(MessagesConstants.ERROR_NO_SUCH_FILE));
+        Assert.notNull(nibSequence, getMessage(MessagesConstants.ERROR_NO_SUCH_FILE));
 
         List<Sequence> template = createGCList(startPosition, endPosition, scaleFactor);
         //because index in array started at 0
@@ -224,9 +213,8 @@ public class NibDataReader {
 
         // 2 nib-format at byte
         final int realLength = sequenceLength / 2 + Math.max(positionFactor, reallengthFactor);
-        byte[] buffer = new byte[realLength];
         int nibCode;
-        buffer = readFromNib(nibStream, indexStream, newStartPosition, sequenceLength, seekPosition, buffer);
+        final byte[] buffer = readFromNib(nibSequence, newStartPosition, sequenceLength, seekPosition, realLength);
 
         //index for gcContentArray
         for (Sequence sequence : template) {
@@ -389,23 +377,11 @@ public class NibDataReader {
     }
 
 
-    private byte[] readFromNib(final BlockCompressedDataInputStream nibStream, final DataInputStream indexStream,
-            final int startPosition, final int sequenceLength, long seekPosition,
-            byte[] buffer) throws IOException {
-
-        int signature = nibStream.readInt();
-        int lengthNibSequence = nibStream.readInt();
-        Assert.isTrue(signature == Signature.NIB_SIGNATURE.getSignature(),
-                getMessage(MessagesConstants.ERROR_WRONG_SIGNATURE));
-        Assert.isTrue(lengthNibSequence >= startPosition + sequenceLength,
+    private byte[] readFromNib(final NibSequenceStore.NibSequence sequence, final int startPosition,
+            final int sequenceLength, final long seekPosition, final int realLength) throws IOException {
+        Assert.isTrue(sequence.getLength() >= startPosition + sequenceLength,
                 getMessage(MessagesConstants.ERROR_LOGIC_LENGTH));
-        seekBCDISWithIndexFile(nibStream, indexStream, seekPosition);
-
-        readInBuff(buffer, nibStream);
-
-        IOUtils.closeQuietly(nibStream);
-        IOUtils.closeQuietly(indexStream);
-        return buffer;
+        return sequence.read(seekPosition, realLength);
     }
 
     private void seekBCDISWithIndexFile(final BlockCompressedDataInputStream stream, final DataInputStream index,
@@ -472,7 +448,6 @@ public class NibDataReader {
             } else {
                 nibCode = nibArray[(startPosition + i) >>> 1] & Constants.MASK_LOW_BYTE;
             }
-            // i + absolutePosition + 1 - because at chromosome started at first index but ib array started from zero
             nucleotides[i] = NibByteFormat.nibCodeToByteNucleotide(nibCode);
         }
         return nucleotides;
@@ -0,0 +1,312 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.manager.reference.io;
+
+import static com.epam.catgenome.component.MessageHelper.getMessage;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+
+import com.epam.catgenome.constant.MessagesConstants;
+import com.epam.catgenome.entity.nucleotid.Signature;
+import com.epam.catgenome.manager.FileManager;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TLongArrayList;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+
+/**
+ * {@code NibSequenceStore} provides cached random access to chromosome sequences of registered references,
+ * stored in the block-compressed Nib format.
+ * <p>
+ * For each chromosome the block index (.nib.ind) is loaded once. Inflated blocks are shared by all chromosomes in
+ * a single LRU cache, limited by size in bytes, so that repeated requests to the same region of a reference don't
+ * open, decompress and seek the sequence file again. A sequence file is opened only to read a missing block and
+ * is closed right after it, so that cached sequences never keep files of a reference open or mapped.
+ * </p>
+ */
+@Service
+public class NibSequenceStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NibSequenceStore.class);
+
+    private static final int NIB_HEADER_LENGTH = 2 * Integer.BYTES;
+    private static final int BLOCK_ADDRESS_SHIFT = 16;
+    private static final int UNSIGNED_BYTE_MASK = 0xFF;
+    private static final int UNSIGNED_SHORT_MASK = 0xFFFF;
+    private static final int BYTES_IN_MB = 1024 * 1024;
+
+    @Autowired
+    private FileManager fileManager;
+
+    @Value("#{catgenome['reference.cache.max.chromosomes'] ?: 64}")
+    private int maxOpenChromosomes;
+
+    @Value("#{catgenome['reference.cache.block.cache.size'] ?: 256}")
+    private int blockCacheSize;
+
+    private LoadingCache<ChromosomeKey, NibSequence> sequences;
+    private Cache<BlockKey, byte[]> blocks;
+
+    @PostConstruct
+    public void init() {
+        sequences = CacheBuilder.newBuilder()
+                .maximumSize(maxOpenChromosomes)
+                .build(new CacheLoader<ChromosomeKey, NibSequence>() {
+                    @Override
+                    public NibSequence load(final ChromosomeKey key) throws IOException {
+                        return open(key);
+                    }
+                });
+        blocks = CacheBuilder.newBuilder()
+                .maximumWeight((long) blockCacheSize * BYTES_IN_MB)
+                .weigher((BlockKey key, byte[] block) -> block.length)
+                .build();
+    }
+
+    /**
+     * Returns a cached sequence of a chromosome, opening it on the first request
+     *
+     * @param referenceId    ID of a reference in the system
+     * @param chromosomeName name of a chromosome
+     * @return {@link NibSequence} for random access to the chromosome sequence
+     * @throws IOException if the sequence or its index can't be read
+     */
+    public NibSequence getSequence(final long referenceId, final String chromosomeName) throws IOException {
+        try {
+            return sequences.get(new ChromosomeKey(referenceId, chromosomeName));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * Drops all cached sequences and blocks of a reference. Should be called when a reference is deleted.
+     *
+     * @param referenceId ID of a reference in the system
+     */
+    public void evict(final long referenceId) {
+        sequences.asMap().keySet().removeIf(key -> key.referenceId == referenceId);
+        blocks.asMap().keySet().removeIf(key -> key.chromosome.referenceId == referenceId);
+    }
+
+    private NibSequence open(final ChromosomeKey key) throws IOException {
+        final long[] blockAddresses;
+        final long[] blockStarts;
+        try (DataInputStream indexStream = fileManager.makeRefIndexInputStream(key.referenceId, key.name)) {
+            final TLongList addresses = new TLongArrayList();
+            final TLongList starts = new TLongArrayList();
+            long start = 0;
+            while (true) {
+                final long filePosition;
+                try {
+                    filePosition = indexStream.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                addresses.add(filePosition >>> BLOCK_ADDRESS_SHIFT);
+                starts.add(start);
+                start += indexStream.readLong();
+            }
+            blockAddresses = addresses.toArray();
+            blockStarts = starts.toArray();
+        }
+
+        final File file = fileManager.getRefSequenceFile(key.referenceId, key.name);
+        LOGGER.debug("Opened sequence of chromosome {} of reference {}: {} blocks", key.name, key.referenceId,
+                blockAddresses.length);
+        return new NibSequence(key, file, blockAddresses, blockStarts);
+    }
+
+    private static ByteBuffer readFully(final FileChannel channel, final long position, final int size)
+            throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException(getMessage(MessagesConstants.ERROR_READ_FILE));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static IOException unwrap(final Exception e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        return new IOException(cause);
+    }
+
+    /**
+     * Represents an opened chromosome sequence in the Nib format, i.e. two nucleotides packed in a byte
+     */
+    public final class NibSequence {
+
+        private final ChromosomeKey key;
+        private final File file;
+        private final long[] blockAddresses;
+        private final long[] blockStarts;
+        private final int length;
+
+        private NibSequence(final ChromosomeKey key, final File file, final long[] blockAddresses,
+                            final long[] blockStarts) throws IOException {
+            this.key = key;
+            this.file = file;
+            this.blockAddresses = blockAddresses;
+            this.blockStarts = blockStarts;
+            final ByteBuffer header = ByteBuffer.wrap(readRaw(0, NIB_HEADER_LENGTH));
+            Assert.isTrue(header.getInt() == Signature.NIB_SIGNATURE.getSignature(),
+                    getMessage(MessagesConstants.ERROR_WRONG_SIGNATURE));
+            this.length = header.getInt();
+        }
+
+        /**
+         * @return number of nucleotides in the sequence
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * Reads packed nucleotides
+         *
+         * @param offset byte offset in the packed sequence, i.e. a half of nucleotide position
+         * @param count  number of bytes to read
+         * @return an array of packed nucleotides
+         * @throws IOException if the sequence file can't be read
+         */
+        public byte[] read(final long offset, final int count) throws IOException {
+            return readRaw(NIB_HEADER_LENGTH + offset, count);
+        }
+
+        private byte[] readRaw(final long offset, final int count) throws IOException {
+            final byte[] result = new byte[count];
+            int block = findBlock(offset);
+            int read = 0;
+            while (read < count) {
+                Assert.isTrue(block < blockStarts.length, getMessage(MessagesConstants.ERROR_READ_FILE));
+                final byte[] content = getBlock(block);
+                final int blockOffset = (int) (offset + read - blockStarts[block]);
+                final int chunk = Math.min(count - read, content.length - blockOffset);
+                System.arraycopy(content, blockOffset, result, read, chunk);
+                read += chunk;
+                block++;
+            }
+            return result;
+        }
+
+        private int findBlock(final long offset) {
+            final int index = Arrays.binarySearch(blockStarts, offset);
+            return index >= 0 ? index : -index - 2;
+        }
+
+        private byte[] getBlock(final int block) throws IOException {
+            try {
+                return blocks.get(new BlockKey(key, block), () -> inflate(block));
+            } catch (ExecutionException | UncheckedExecutionException e) {
+                throw unwrap(e);
+            }
+        }
+
+        private byte[] inflate(final int block) throws IOException {
+            final long address = blockAddresses[block];
+            final byte[] compressed;
+            final byte[] content;
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                final ByteBuffer header = readFully(channel, address,
+                        BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH);
+                if (header.get(0) != BlockCompressedStreamConstants.GZIP_ID1
+                        || (header.get(1) & UNSIGNED_BYTE_MASK) != BlockCompressedStreamConstants.GZIP_ID2) {
+                    throw new IOException(getMessage(MessagesConstants.ERROR_READ_FILE));
+                }
+                final int blockSize = (header.getShort(BlockCompressedStreamConstants.BLOCK_LENGTH_OFFSET)
+                        & UNSIGNED_SHORT_MASK) + 1;
+                final ByteBuffer buffer = readFully(channel,
+                        address + BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH,
+                        blockSize - BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH);
+                compressed = new byte[buffer.limit() - BlockCompressedStreamConstants.BLOCK_FOOTER_LENGTH];
+                buffer.get(compressed);
+                content = new byte[buffer.getInt(buffer.limit() - Integer.BYTES)];
+            }
+
+            final Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(compressed);
+                if (inflater.inflate(content) != content.length) {
+                    throw new IOException(getMessage(MessagesConstants.ERROR_READ_FILE));
+                }
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            } finally {
+                inflater.end();
+            }
+            return content;
+        }
+    }
+
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    private static final class ChromosomeKey {
+        private final long referenceId;
+        private final String name;
+    }
+
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    private static final class BlockKey {
+        private final ChromosomeKey chromosome;
+        private final int block;
+    }
+}
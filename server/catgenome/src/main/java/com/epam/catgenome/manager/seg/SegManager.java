@@ -27,7 +27,6 @@ package com.epam.catgenome.manager.seg;
 import static com.epam.catgenome.component.MessageHelper.getMessage;
 import static com.epam.catgenome.constant.MessagesConstants.ERROR_REGISTER_FILE;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -64,6 +63,7 @@ import com.epam.catgenome.manager.seg.parser.SegFeature;
 import com.epam.catgenome.util.IOHelper;
 import com.epam.catgenome.util.Utils;
 import com.epam.catgenome.util.comparator.FeatureComparator;
+import com.epam.catgenome.util.feature.pipeline.IndexingFeatureWriter;
 import htsjdk.samtools.util.CloseableIterator;
 import com.epam.catgenome.util.feature.reader.AbstractFeatureReader;
 import htsjdk.tribble.readers.LineIterator;
@@ -233,7 +233,6 @@ public class SegManager {
             LOGGER.debug("Sorting SEG file {}", segFile.getPath());
             Collections.sort(allFeatures, new FeatureComparator());
             writeSegFeatures(segFile, allFeatures);
-            fileManager.makeSegIndex(segFile);
             segFile.setSamples(samples);
             biologicalDataItemManager.createBiologicalDataItem(segFile.getIndex());
             segFileManager.create(segFile);
@@ -270,13 +269,13 @@ public class SegManager {
 
     private void writeSegFeatures(SegFile segFile, List<SegFeature> allFeatures)
             throws IOException {
-        try (BufferedWriter writer = fileManager.makeSegFileWriter(segFile)) {
+        // the file is indexed while it is written, instead of reading it once again
+        try (IndexingFeatureWriter<SegFeature> writer = fileManager.makeSegFileWriter(segFile)) {
             for (SegFeature f : allFeatures) {
-                writer.write(f.toString());
-                writer.newLine();
+                writer.write(f, f.toString());
             }
 
-            writer.flush();
+            writer.finish();
         }
     }
 
@@ -76,7 +76,8 @@ public class ToolsManager {
                     request.getMaxMemory());
 
             double time1 = Utils.getSystemTimeMilliseconds();
-            sorter.run(request.getMaxMemory() > 0 ? request.getMaxMemory() : DEFAULT_MAX_MEMORY);
+            sorter.run(request.getMaxMemory() > 0 ? request.getMaxMemory() : DEFAULT_MAX_MEMORY,
+                    request.isCreateIndex());
             double time2 = Utils.getSystemTimeMilliseconds();
 
             LOG.debug("Sorting feature file took {} ms", time2 - time1);
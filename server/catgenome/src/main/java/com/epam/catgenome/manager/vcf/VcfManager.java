@@ -173,6 +173,9 @@ public class VcfManager {
     @Value("#{catgenome['search.indexer.buffer.size'] ?: 256}")
     private int indexBufferSize;
 
+    @Value("#{catgenome['search.indexer.threads'] ?: 4}")
+    private int indexThreads;
+
     /**
      * Registers a VCF file in the system to make it available to browse. Creates Tribble/Tabix index if absent
      * and a feature index to allow fast search for variations
@@ -632,42 +635,39 @@ public class VcfManager {
         final List<GeneFile> geneFiles  = reference.getGeneFile() != null ?
                                     Collections.singletonList(reference.getGeneFile()) : Collections.emptyList();
 
-        BigVcfFeatureIndexBuilder indexer = null;
-        if (doIndex) {
-            indexer = new BigVcfFeatureIndexBuilder(info, vcfHeader, featureIndexManager, file,
-                            fileManager, geneFiles, indexBufferSize);
-        }
-
-        while (iterator.hasNext()) {
-            variantContext = iterator.next();
-            if (!variantContext.getContig().equals(currentKey)) {
+        // a builder is closed even if a file is unsorted or can't be parsed, to release its threads and index lock
+        try (BigVcfFeatureIndexBuilder indexer = doIndex
+                ? new BigVcfFeatureIndexBuilder(info, vcfHeader, featureIndexManager, file,
+                        fileManager, geneFiles, indexBufferSize, indexThreads)
+                : null) {
+            while (iterator.hasNext()) {
+                variantContext = iterator.next();
+                if (!variantContext.getContig().equals(currentKey)) {
+                    if (checkMetaMapKey(chromosomeMap, currentKey)) {
+                        metaMap.put(currentKey, new ImmutablePair<>(startPosition, endPosition));
+                        if (doIndex) {
+                            indexer.clear();
+                            log.info(getMessage(MessagesConstants.INFO_FEATURE_INDEX_CHROMOSOME_WROTE, currentKey));
+                        }
+                    }
+                    startPosition = variantContext.getStart();
+                    currentKey = variantContext.getContig();
+                }
+                checkSorted(file, variantContext, lastFeature);
+                indexVariation(variantContext, chromosomeMap, indexer, doIndex);
+                lastFeature = variantContext;
+                // Put the last one in metaMap
+                endPosition = variantContext.getStart();
                 if (checkMetaMapKey(chromosomeMap, currentKey)) {
                     metaMap.put(currentKey, new ImmutablePair<>(startPosition, endPosition));
-                    if (doIndex) {
-                        indexer.clear();
-                        log.info(getMessage(MessagesConstants.INFO_FEATURE_INDEX_CHROMOSOME_WROTE, currentKey));
-                    }
                 }
-                startPosition = variantContext.getStart();
-                currentKey = variantContext.getContig();
             }
-            checkSorted(file, variantContext, lastFeature);
-            indexVariation(variantContext, chromosomeMap, indexer, doIndex);
-            lastFeature = variantContext;
-            // Put the last one in metaMap
-            endPosition = variantContext.getStart();
-            if (checkMetaMapKey(chromosomeMap, currentKey)) {
-                metaMap.put(currentKey, new ImmutablePair<>(startPosition, endPosition));
+            // Put the last one
+            if (variantContext != null && checkMetaMapKey(chromosomeMap, currentKey) && doIndex) {
+                indexer.clear();
+                log.info(getMessage(MessagesConstants.INFO_FEATURE_INDEX_CHROMOSOME_WROTE, currentKey));
             }
         }
-        // Put the last one
-        if (variantContext != null && checkMetaMapKey(chromosomeMap, currentKey) && doIndex) {
-            indexer.clear();
-            log.info(getMessage(MessagesConstants.INFO_FEATURE_INDEX_CHROMOSOME_WROTE, currentKey));
-        }
-        if (doIndex) {
-            indexer.close();
-        }
         return metaMap;
     }
 
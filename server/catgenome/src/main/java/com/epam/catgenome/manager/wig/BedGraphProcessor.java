@@ -32,7 +32,6 @@ import com.epam.catgenome.entity.wig.WigFile;
 import com.epam.catgenome.manager.BiologicalDataItemManager;
 import com.epam.catgenome.manager.FileManager;
 import com.epam.catgenome.manager.TrackHelper;
-import com.epam.catgenome.manager.wig.reader.BedGraphCodec;
 import com.epam.catgenome.manager.wig.reader.BedGraphFeature;
 import com.epam.catgenome.manager.wig.reader.BedGraphReader;
 import com.epam.catgenome.util.IOHelper;
@@ -42,13 +41,10 @@ import com.epam.catgenome.util.Utils;
 import com.epam.catgenome.util.feature.reader.EhCacheBasedIndexCache;
 import htsjdk.samtools.util.PeekableIterator;
 import htsjdk.tribble.index.Index;
-import htsjdk.tribble.index.IndexFactory;
-import htsjdk.tribble.index.interval.IntervalTreeIndex;
 import org.springframework.util.Assert;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -61,8 +57,12 @@ public class BedGraphProcessor extends AbstractWigProcessor {
 
     private static final String IDX_EXTENSION = ".idx";
 
-    public BedGraphProcessor(BiologicalDataItemManager biologicalDataItemManager, FileManager fileManager) {
+    private final int pyramidBinSize;
+
+    public BedGraphProcessor(BiologicalDataItemManager biologicalDataItemManager, FileManager fileManager,
+                             int pyramidBinSize) {
         super(biologicalDataItemManager, fileManager);
+        this.pyramidBinSize = pyramidBinSize;
     }
 
     @Override
@@ -71,6 +71,16 @@ public class BedGraphProcessor extends AbstractWigProcessor {
             throws IOException {
         Assert.notNull(wigFile, getMessage(MessagesConstants.ERROR_FILE_NOT_FOUND));
         TrackHelper.fillBlocks(track, indexes -> new Wig(indexes.getLeft(), indexes.getRight()));
+        if (track.getBlocks().isEmpty()) {
+            return track;
+        }
+        final Wig firstBlock = track.getBlocks().get(0);
+        final int step = firstBlock.getEndIndex() - firstBlock.getStartIndex() + 1;
+        final File pyramid = fileManager.getBedGraphPyramidFile(wigFile, chromosome.getName());
+        if (pyramid != null && step >= pyramidBinSize && fillBlocksFromPyramid(pyramid, track, step)) {
+            return track;
+        }
+        // files, registered before pyramids were introduced, may have a single downsampled file
         String downsamplePath = fileManager.getDownsampledBedGraphFilePath(wigFile);
         if (dontNeedToUseDownsampling(track, chromosome)) {
             fillBlocksFromFile(wigFile.getPath(), wigFile.getIndex().getPath(),
@@ -100,32 +110,43 @@ public class BedGraphProcessor extends AbstractWigProcessor {
         biologicalDataItemManager.createBiologicalDataItem(wigFile.getIndex());
     }
 
+    /**
+     * Writes a multi-resolution pyramid of values for each chromosome, having BedGraph intervals. Intervals are
+     * streamed from an indexed file chromosome by chromosome, so memory usage doesn't depend on a file size.
+     */
     @Override
     protected void splitByChromosome(WigFile wigFile, Map<String, Chromosome> chromosomeMap,
                                      EhCacheBasedIndexCache indexCache) throws IOException {
-        List<BedGraphFeature> sectionList = new ArrayList<>();
-        for (Chromosome chromosome : chromosomeMap.values()) {
-            String realChrName = fetchRealChrName(wigFile.getIndex().getPath(), chromosome.getName());
-            try (PeekableIterator<BedGraphFeature> query = new PeekableIterator<>(
-                    new BedGraphReader(wigFile.getPath(), wigFile.getIndex().getPath(), indexCache).query(
-                            realChrName, 1, chromosome.getSize() - 1))) {
-                int start = 0;
-                int stop = chromosome.getSize();
-                int bp = start;
-                while (bp < stop) {
-                    int chunkStart = bp;
-                    int chunkStop = Math.min(bp + WIG_DOWNSAMPLING_WINDOW - 1, stop);
-                    float chunkScore = getScoreForBounds(query, chunkStart, chunkStop);
-                    bp = chunkStop + 1;
-                    sectionList.add(new BedGraphFeature(chromosome.getName(), chunkStart, chunkStop, chunkScore));
+        final List<String> sequenceNames = IndexUtils.loadIndex(wigFile.getIndex().getPath()).getSequenceNames();
+        try (BedGraphReader reader = new BedGraphReader(wigFile.getPath(), wigFile.getIndex().getPath(),
+                indexCache)) {
+            for (Chromosome chromosome : chromosomeMap.values()) {
+                String realChrName = fetchRealChrName(sequenceNames, chromosome.getName());
+                if (!sequenceNames.contains(realChrName)) {
+                    continue;
+                }
+                try (PeekableIterator<BedGraphFeature> query = new PeekableIterator<>(
+                        reader.query(realChrName, 1, chromosome.getSize()))) {
+                    writePyramid(wigFile, chromosome, query);
                 }
             }
         }
-        File downsampled = fileManager.writeToBedGraphFile(wigFile, sectionList);
-        File indexFile = new File(getDownsampledBedGraphIndex(downsampled.getPath()));
-        LOGGER.debug("Writing BED_GRAPH index at {}", indexFile.getAbsolutePath());
-        IntervalTreeIndex intervalTreeIndex = IndexFactory.createIntervalIndex(downsampled, new BedGraphCodec());
-        IndexFactory.writeIndex(intervalTreeIndex, indexFile); // Write it to a file
+    }
+
+    private void writePyramid(WigFile wigFile, Chromosome chromosome, PeekableIterator<BedGraphFeature> query)
+            throws IOException {
+        if (!query.hasNext()) {
+            return;
+        }
+        File pyramid = fileManager.makeBedGraphPyramidFile(wigFile, chromosome.getName());
+        LOGGER.debug("Writing BED_GRAPH pyramid at {}", pyramid.getAbsolutePath());
+        try (BedGraphPyramid.Writer writer = new BedGraphPyramid.Writer(pyramid, chromosome.getSize(),
+                pyramidBinSize)) {
+            while (query.hasNext()) {
+                BedGraphFeature feature = query.next();
+                writer.add(feature.getStart(), feature.getEnd(), feature.getValue());
+            }
+        }
     }
 
     @Override
@@ -151,10 +172,29 @@ public class BedGraphProcessor extends AbstractWigProcessor {
         }
     }
 
+    private boolean fillBlocksFromPyramid(File pyramid, Track<Wig> track, int step) throws IOException {
+        List<Wig> blocks = track.getBlocks();
+        float[] scores = BedGraphPyramid.read(pyramid, blocks.get(0).getStartIndex(),
+                blocks.get(blocks.size() - 1).getEndIndex(), step, BedGraphPyramid.Statistic.EXTREMUM);
+        if (scores == null) {
+            LOGGER.debug("Pyramid bins {} are not aligned with blocks of {} bases, using original file",
+                    pyramid.getAbsolutePath(), step);
+            return false;
+        }
+        for (int i = 0; i < blocks.size(); i++) {
+            blocks.get(i).setValue(scores[i]);
+        }
+        return true;
+    }
+
     private String fetchRealChrName(String bedGraphIndexPath, String chromosomeName) {
         Index index = IndexUtils.loadIndex(bedGraphIndexPath);
+        return fetchRealChrName(index.getSequenceNames(), chromosomeName);
+    }
+
+    private String fetchRealChrName(List<String> sequenceNames, String chromosomeName) {
         String realName = chromosomeName;
-        for (String chr : index.getSequenceNames()) {
+        for (String chr : sequenceNames) {
             if (chromosomeName.equals(chr)) {
                 realName = chr;
                 break;
@@ -0,0 +1,425 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.manager.wig;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.springframework.util.Assert;
+
+/**
+ * A file with a multi-resolution pyramid of BedGraph values for a single chromosome.
+ * <p>
+ * Level 0 keeps statistics for bins of {@code binSize} bases, each next level merges {@link #ZOOM_FACTOR} bins of
+ * the previous one, until a single bin covers the whole chromosome. For each bin a number of bases covered by
+ * BedGraph intervals, minimum and maximum values and a sum of values over covered bases are stored, so that any of
+ * {@link Statistic} values may be calculated for a bin. Bins have a fixed size, so any interval of any level is
+ * loaded by a single positional read.
+ * </p>
+ */
+public final class BedGraphPyramid {
+
+    public static final int ZOOM_FACTOR = 4;
+    /**
+     * A minimum number of bins in a block, if bins are not aligned with blocks
+     */
+    public static final int MIN_BINS_PER_BLOCK = 4;
+
+    private static final int MAGIC = 0x4E474247;
+    private static final int VERSION = 1;
+    private static final int HEADER_FIELDS = 6;
+    private static final int HEADER_SIZE = HEADER_FIELDS * Integer.BYTES;
+    private static final int BIN_SIZE_BYTES = Integer.BYTES + 2 * Float.BYTES + Double.BYTES;
+    private static final int WRITE_BUFFER_BINS = 4096;
+
+    /**
+     * A value, calculated for a block from statistics of bins
+     */
+    public enum Statistic {
+        MIN,
+        MAX,
+        MEAN,
+        /**
+         * A value with the largest absolute value, it matches a block score, calculated from original intervals
+         */
+        EXTREMUM
+    }
+
+    private BedGraphPyramid() {
+        // no operations by default
+    }
+
+    /**
+     * Loads values for consecutive blocks of {@code step} bases, starting from {@code start}. The last block ends at
+     * {@code end} and may be shorter. Blocks, not covered by any BedGraph interval, get zero value.
+     * <p>
+     * A level with the widest bins, that are aligned with blocks and are not wider than {@code step}, is used, so
+     * each bin belongs to a single block. If there is no such level, a level with the widest bins, that are at least
+     * {@link #MIN_BINS_PER_BLOCK} times narrower than a block, is used: a bin, intersecting two blocks, adds its
+     * minimum and maximum to both of them and splits its covered bases and sum between them proportionally. If
+     * blocks are too narrow even for level 0 bins, values can't be calculated from the pyramid.
+     * </p>
+     * @param file a pyramid file
+     * @param start of the first block, 1-based
+     * @param end of the last block, inclusive
+     * @param step a width of a block in bases
+     * @param statistic a value to calculate for a block
+     * @return values of blocks or null, if original intervals should be used for this resolution
+     * @throws IOException if a file can't be read
+     */
+    public static float[] read(final File file, final int start, final int end, final int step,
+                               final Statistic statistic) throws IOException {
+        Assert.isTrue(start > 0 && end >= start && step > 0, "Invalid interval");
+        final int blocksCount = (int) (((long) end - start) / step + 1);
+        final BinStatistics blocks = new BinStatistics(blocksCount);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+            Assert.isTrue(header.getInt() == MAGIC && header.getInt() == VERSION,
+                    "Unsupported BedGraph pyramid file " + file.getAbsolutePath());
+            final int length = header.getInt();
+            final int binSize = header.getInt();
+            final int zoomFactor = header.getInt();
+            final int levelsCount = header.getInt();
+
+            long levelBinSize = 0;
+            long offset = 0;
+            int binsCount = 0;
+            boolean aligned = false;
+            long currentBinSize = binSize;
+            long currentOffset = HEADER_SIZE;
+            int currentBinsCount = getBinsCount(length, binSize);
+            for (int level = 0; level < levelsCount && currentBinSize <= step; level++) {
+                final boolean currentAligned = step % currentBinSize == 0 && (start - 1) % currentBinSize == 0;
+                if (currentAligned || !aligned && currentBinSize * MIN_BINS_PER_BLOCK <= step) {
+                    levelBinSize = currentBinSize;
+                    offset = currentOffset;
+                    binsCount = currentBinsCount;
+                    aligned = currentAligned;
+                }
+                currentOffset += (long) currentBinsCount * BIN_SIZE_BYTES;
+                currentBinsCount = (currentBinsCount + zoomFactor - 1) / zoomFactor;
+                currentBinSize *= zoomFactor;
+            }
+            if (levelBinSize == 0) {
+                return null;
+            }
+
+            final int firstBin = (int) ((start - 1) / levelBinSize);
+            final int lastBin = (int) Math.min(binsCount - 1, (Math.min(end, length) - 1) / levelBinSize);
+            if (firstBin <= lastBin) {
+                final ByteBuffer bins = readFully(channel, offset + (long) firstBin * BIN_SIZE_BYTES,
+                        (lastBin - firstBin + 1) * BIN_SIZE_BYTES);
+                for (int bin = firstBin; bin <= lastBin; bin++) {
+                    final int count = bins.getInt();
+                    final float min = bins.getFloat();
+                    final float max = bins.getFloat();
+                    final double sum = bins.getDouble();
+                    if (count == 0) {
+                        continue;
+                    }
+                    // a bin is not wider than a block, so it intersects at most two blocks
+                    final long binStart = Math.max(bin * levelBinSize + 1, start);
+                    final long binEnd = Math.min((bin + 1) * levelBinSize, end);
+                    final int firstBlock = (int) ((binStart - start) / step);
+                    final int lastBlock = (int) ((binEnd - start) / step);
+                    if (firstBlock == lastBlock) {
+                        blocks.add(firstBlock, count, min, max, sum);
+                        continue;
+                    }
+                    final long border = start + (long) lastBlock * step;
+                    final int firstCount = (int) Math.max(1, Math.min(count - 1,
+                            Math.round((double) count * (border - binStart) / (binEnd - binStart + 1))));
+                    blocks.add(firstBlock, firstCount, min, max, sum * firstCount / count);
+                    if (firstCount < count) {
+                        blocks.add(lastBlock, count - firstCount, min, max, sum * (count - firstCount) / count);
+                    }
+                }
+            }
+        }
+
+        final float[] values = new float[blocksCount];
+        for (int i = 0; i < blocksCount; i++) {
+            values[i] = blocks.get(i, statistic);
+        }
+        return values;
+    }
+
+    private static ByteBuffer readFully(final FileChannel channel, final long position, final int size)
+            throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of BedGraph pyramid file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int getBinsCount(final int length, final int binSize) {
+        return (int) (((long) length + binSize - 1) / binSize);
+    }
+
+    /**
+     * Statistics of a number of bins, merged from finer bins or intervals
+     */
+    private static final class BinStatistics {
+        private final int[] counts;
+        private final float[] mins;
+        private final float[] maxs;
+        private final double[] sums;
+
+        private BinStatistics(final int size) {
+            this.counts = new int[size];
+            this.mins = new float[size];
+            this.maxs = new float[size];
+            this.sums = new double[size];
+        }
+
+        private void add(final int bin, final int count, final float min, final float max, final double sum) {
+            if (counts[bin] == 0) {
+                mins[bin] = min;
+                maxs[bin] = max;
+            } else {
+                mins[bin] = Math.min(mins[bin], min);
+                maxs[bin] = Math.max(maxs[bin], max);
+            }
+            counts[bin] = saturatedAdd(counts[bin], count);
+            sums[bin] += sum;
+        }
+
+        private void clear(final int bin) {
+            counts[bin] = 0;
+            mins[bin] = 0;
+            maxs[bin] = 0;
+            sums[bin] = 0;
+        }
+
+        private float get(final int bin, final Statistic statistic) {
+            if (counts[bin] == 0) {
+                return 0;
+            }
+            switch (statistic) {
+                case MIN:
+                    return mins[bin];
+                case MAX:
+                    return maxs[bin];
+                case MEAN:
+                    return (float) (sums[bin] / counts[bin]);
+                case EXTREMUM:
+                    return Math.abs(maxs[bin]) > Math.abs(mins[bin]) ? maxs[bin] : mins[bin];
+                default:
+                    throw new IllegalArgumentException("Unsupported statistic " + statistic);
+            }
+        }
+
+        private void write(final int bin, final ByteBuffer buffer) {
+            buffer.putInt(counts[bin]).putFloat(mins[bin]).putFloat(maxs[bin]).putDouble(sums[bin]);
+        }
+
+        private static int saturatedAdd(final int first, final int second) {
+            final long sum = (long) first + second;
+            return sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum;
+        }
+    }
+
+    /**
+     * Writes a pyramid file from BedGraph intervals of a chromosome. Intervals must be added sorted by start, level 0
+     * bins are written as soon as no more added intervals may intersect them, all coarser levels are calculated on
+     * the fly. So only intervals, intersecting the current level 0 bin, are kept in memory.
+     */
+    public static final class Writer implements Closeable {
+
+        private final FileChannel channel;
+        private final int length;
+        private final int binSize;
+        private final int expectedBins;
+        private final long[] levelPositions;
+        private final ByteBuffer[] levelBuffers;
+        private final BinStatistics accumulators;
+        private final int[] accumulated;
+        private final List<Interval> activeIntervals = new ArrayList<>();
+        private int lastStart;
+        private int writtenBins;
+
+        /**
+         * @param file to write
+         * @param length of a chromosome
+         * @param binSize size of a level 0 bin in bases
+         * @throws IOException if a file can't be created
+         */
+        public Writer(final File file, final int length, final int binSize) throws IOException {
+            Assert.isTrue(length > 0 && binSize > 0, "Chromosome length and bin size should be positive");
+            this.length = length;
+            this.binSize = binSize;
+            this.expectedBins = getBinsCount(length, binSize);
+
+            final List<Integer> levelBins = new ArrayList<>();
+            int binsCount = expectedBins;
+            levelBins.add(binsCount);
+            while (binsCount > 1) {
+                binsCount = (binsCount + ZOOM_FACTOR - 1) / ZOOM_FACTOR;
+                levelBins.add(binsCount);
+            }
+
+            final int levelsCount = levelBins.size();
+            this.levelPositions = new long[levelsCount];
+            this.levelBuffers = new ByteBuffer[levelsCount];
+            this.accumulators = new BinStatistics(levelsCount);
+            this.accumulated = new int[levelsCount];
+            long position = HEADER_SIZE;
+            for (int level = 0; level < levelsCount; level++) {
+                levelPositions[level] = position;
+                levelBuffers[level] = ByteBuffer.allocate(
+                        Math.min(levelBins.get(level), WRITE_BUFFER_BINS) * BIN_SIZE_BYTES);
+                position += (long) levelBins.get(level) * BIN_SIZE_BYTES;
+            }
+
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(length).putInt(binSize).putInt(ZOOM_FACTOR)
+                    .putInt(levelsCount);
+            header.flip();
+            write(header, 0);
+        }
+
+        /**
+         * Adds the next BedGraph interval
+         * @param start of the interval, 0-based
+         * @param end of the interval, exclusive
+         * @param value of the interval
+         * @throws IOException if writing fails
+         */
+        public void add(final int start, final int end, final float value) throws IOException {
+            Assert.isTrue(start >= lastStart, "BedGraph intervals should be sorted by start");
+            lastStart = start;
+            writeBins(Math.min(start, length) / binSize);
+            if (end > start && start < length && !Float.isNaN(value) && !Float.isInfinite(value)) {
+                activeIntervals.add(new Interval(start, Math.min(end, length), value));
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                writeBins(expectedBins);
+                for (int level = 1; level < levelBuffers.length; level++) {
+                    if (accumulated[level] > 0) {
+                        flushAccumulator(level);
+                    }
+                }
+                for (int level = 0; level < levelBuffers.length; level++) {
+                    flushBuffer(level);
+                }
+            } finally {
+                channel.close();
+            }
+        }
+
+        private void writeBins(final int toBin) throws IOException {
+            while (writtenBins < toBin) {
+                final long binStart = (long) writtenBins * binSize;
+                final long binEnd = Math.min(binStart + binSize, length);
+                final Iterator<Interval> iterator = activeIntervals.iterator();
+                while (iterator.hasNext()) {
+                    final Interval interval = iterator.next();
+                    final long covered = Math.min(interval.end, binEnd) - Math.max(interval.start, binStart);
+                    if (covered > 0) {
+                        accumulators.add(0, (int) covered, interval.value, interval.value,
+                                covered * (double) interval.value);
+                    }
+                    if (interval.end <= binEnd) {
+                        iterator.remove();
+                    }
+                }
+                addBin(0);
+                writtenBins++;
+            }
+        }
+
+        private void addBin(final int level) throws IOException {
+            final ByteBuffer buffer = levelBuffers[level];
+            if (!buffer.hasRemaining()) {
+                flushBuffer(level);
+            }
+            accumulators.write(level, buffer);
+
+            final int parent = level + 1;
+            if (parent < levelBuffers.length) {
+                if (accumulators.counts[level] > 0) {
+                    accumulators.add(parent, accumulators.counts[level], accumulators.mins[level],
+                            accumulators.maxs[level], accumulators.sums[level]);
+                }
+                accumulated[parent]++;
+            }
+            accumulators.clear(level);
+            if (parent < levelBuffers.length && accumulated[parent] == ZOOM_FACTOR) {
+                flushAccumulator(parent);
+            }
+        }
+
+        private void flushAccumulator(final int level) throws IOException {
+            accumulated[level] = 0;
+            addBin(level);
+        }
+
+        private void flushBuffer(final int level) throws IOException {
+            final ByteBuffer buffer = levelBuffers[level];
+            buffer.flip();
+            final int size = buffer.remaining();
+            write(buffer, levelPositions[level]);
+            levelPositions[level] += size;
+            buffer.clear();
+        }
+
+        private void write(final ByteBuffer buffer, final long position) throws IOException {
+            long current = position;
+            while (buffer.hasRemaining()) {
+                current += channel.write(buffer, current);
+            }
+        }
+    }
+
+    private static final class Interval {
+        private final int start;
+        private final int end;
+        private final float value;
+
+        private Interval(final int start, final int end, final float value) {
+            this.start = start;
+            this.end = end;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.manager.wig;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import htsjdk.samtools.util.CloserUtil;
+import org.jetbrains.bio.BetterSeekableBufferedStream;
+import org.jetbrains.bio.EndianSynchronizedBufferFactory;
+import org.jetbrains.bio.big.BigFile;
+import org.jetbrains.bio.big.BigWigFile;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * {@code BigWigFileCache} keeps opened BigWig files between requests, so that a file header, chromosome tree and
+ * zoom level indexes are read and prefetched once per file instead of once per track request.
+ * <p>
+ * Unlike BAM readers, an opened {@link BigWigFile} is read through a synchronized buffer and may be shared by
+ * concurrent requests. A request acquires a {@link Handle}, that must be closed when the request is done. Evicted
+ * files are closed when the last handle, acquired before eviction, is closed. Files are keyed by path and
+ * modification time, so a replaced file is never read with stale headers. The number of opened files is bounded,
+ * least recently used ones are evicted first.
+ * </p>
+ */
+@Service
+public class BigWigFileCache {
+
+    @Value("#{catgenome['wig.file.cache.size'] ?: 32}")
+    private int maxOpenFiles;
+
+    private final LinkedHashMap<String, CachedFile> openFiles = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Opens a BigWig file, prefetching its header and zoom level indexes
+     * @param path a path to a file
+     * @return an opened file
+     * @throws IOException if a file can't be read
+     */
+    public static BigWigFile open(final String path) throws IOException {
+        return BigWigFile.read(path, BigFile.PREFETCH_LEVEL_DETAILED, null, (filePath, byteOrder) ->
+                EndianSynchronizedBufferFactory.Companion.create(filePath, byteOrder,
+                        BetterSeekableBufferedStream.DEFAULT_BUFFER_SIZE));
+    }
+
+    /**
+     * Returns a handle of an opened BigWig file: a cached one, if it exists, or a newly opened one
+     * @param path a path to a file
+     * @return a handle of the file, should be closed by a caller
+     * @throws IOException if a file can't be opened
+     */
+    public Handle acquire(final String path) throws IOException {
+        if (maxOpenFiles <= 0) {
+            return new Handle(new CachedFile(open(path), 0L));
+        }
+        final long modified = new File(path).lastModified();
+        final CachedFile cached = retain(path, modified);
+        if (cached != null) {
+            return new Handle(cached);
+        }
+        // a file is opened outside of the lock, as prefetching reads the whole index
+        final CachedFile opened = new CachedFile(open(path), modified);
+        final List<CachedFile> toRelease = new ArrayList<>();
+        CachedFile result = opened;
+        synchronized (this) {
+            final CachedFile concurrent = openFiles.get(path);
+            if (concurrent != null && concurrent.modified == modified && concurrent.retain()) {
+                // the same file was opened by a concurrent request
+                toRelease.add(opened);
+                result = concurrent;
+            } else {
+                opened.retain();
+                if (concurrent != null) {
+                    toRelease.add(concurrent);
+                }
+                openFiles.put(path, opened);
+                final Iterator<CachedFile> iterator = openFiles.values().iterator();
+                while (openFiles.size() > maxOpenFiles && iterator.hasNext()) {
+                    toRelease.add(iterator.next());
+                    iterator.remove();
+                }
+            }
+        }
+        release(toRelease);
+        return new Handle(result);
+    }
+
+    /**
+     * Closes cached files, should be called when files are unregistered. Files, that are still in use, are closed
+     * when the last request using them is done.
+     * @param paths paths to files
+     */
+    public void evict(final Collection<String> paths) {
+        final List<CachedFile> toRelease = new ArrayList<>();
+        synchronized (this) {
+            for (String path : paths) {
+                final CachedFile cached = openFiles.remove(path);
+                if (cached != null) {
+                    toRelease.add(cached);
+                }
+            }
+        }
+        release(toRelease);
+    }
+
+    @PreDestroy
+    public void clear() {
+        final List<CachedFile> toRelease;
+        synchronized (this) {
+            toRelease = new ArrayList<>(openFiles.values());
+            openFiles.clear();
+        }
+        release(toRelease);
+    }
+
+    private synchronized CachedFile retain(final String path, final long modified) {
+        final CachedFile cached = openFiles.get(path);
+        return cached != null && cached.modified == modified && cached.retain() ? cached : null;
+    }
+
+    private static void release(final List<CachedFile> files) {
+        files.forEach(CachedFile::release);
+    }
+
+    /**
+     * An opened file with a count of references to it: one is held by the cache and one by each open handle
+     */
+    private static final class CachedFile {
+        private final BigWigFile file;
+        private final long modified;
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private CachedFile(final BigWigFile file, final long modified) {
+            this.file = file;
+            this.modified = modified;
+        }
+
+        private boolean retain() {
+            int current = references.get();
+            while (current > 0) {
+                if (references.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+                current = references.get();
+            }
+            return false;
+        }
+
+        private void release() {
+            if (references.decrementAndGet() == 0) {
+                CloserUtil.close(file);
+            }
+        }
+    }
+
+    /**
+     * A reference to an opened BigWig file, acquired for a single request
+     */
+    public static final class Handle implements Closeable {
+        private final CachedFile cached;
+        private boolean closed;
+
+        private Handle(final CachedFile cached) {
+            this.cached = cached;
+        }
+
+        public BigWigFile getFile() {
+            return cached.file;
+        }
+
+        /**
+         * @return true, if the file isn't closed yet: it is cached or some handles of it aren't closed
+         */
+        boolean isFileOpen() {
+            return cached.references.get() > 0;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                cached.release();
+            }
+        }
+    }
+}
@@ -51,6 +51,7 @@ import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
@@ -63,6 +64,7 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -101,6 +103,12 @@ public class FacadeWigManager {
     @Autowired(required = false)
     protected EhCacheBasedIndexCache indexCache;
 
+    @Autowired
+    protected BigWigFileCache bigWigFileCache;
+
+    @Value("#{catgenome['wig.bedgraph.pyramid.bin.size'] ?: 1000}")
+    protected int bedGraphPyramidBinSize;
+
     protected static final Logger LOGGER = LoggerFactory.getLogger(FacadeWigManager.class);
 
     static final Set<String> WIG_EXTENSIONS = new HashSet<>();
@@ -192,6 +200,7 @@ public class FacadeWigManager {
         WigFile fileToDelete = wigFileManager.load(wigFileId);
         Assert.notNull(fileToDelete, getMessage(MessagesConstants.ERROR_FILE_NOT_FOUND));
         wigFileManager.delete(fileToDelete);
+        bigWigFileCache.evict(getWigFilePaths(fileToDelete));
         return fileToDelete;
     }
 
@@ -217,6 +226,17 @@ public class FacadeWigManager {
         wigProcessor.splitByChromosome(wigFile, chromosomeMap, indexCache);
     }
 
+    private List<String> getWigFilePaths(final WigFile wigFile) {
+        final List<String> paths = new ArrayList<>();
+        paths.add(wigFile.getPath());
+        final Reference reference = referenceGenomeManager.load(wigFile.getReferenceId());
+        reference.getChromosomes().stream()
+                .map(chromosome -> fileManager.getWigFilePath(wigFile, chromosome))
+                .filter(Objects::nonNull)
+                .forEach(paths::add);
+        return paths;
+    }
+
     private WigFile fillWigFile(IndexedFileRegistrationRequest request) {
         final WigFile wigFile = new WigFile();
 
@@ -272,9 +292,9 @@ public class FacadeWigManager {
                 .stream()
                 .anyMatch(fileExtension::endsWith);
         if (isBedGraph) {
-            return new BedGraphProcessor(biologicalDataItemManager, fileManager);
+            return new BedGraphProcessor(biologicalDataItemManager, fileManager, bedGraphPyramidBinSize);
         } else {
-            return new WigProcessor(biologicalDataItemManager, fileManager);
+            return new WigProcessor(biologicalDataItemManager, fileManager, bigWigFileCache);
         }
     }
 
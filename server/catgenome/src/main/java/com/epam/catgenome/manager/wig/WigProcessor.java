@@ -13,9 +13,6 @@ import com.epam.catgenome.util.feature.reader.EhCacheBasedIndexCache;
 import gnu.trove.list.TFloatList;
 import gnu.trove.list.array.TFloatArrayList;
 import kotlin.Pair;
-import org.jetbrains.bio.BetterSeekableBufferedStream;
-import org.jetbrains.bio.EndianSynchronizedBufferFactory;
-import org.jetbrains.bio.big.BigFile;
 import org.jetbrains.bio.big.BigSummary;
 import org.jetbrains.bio.big.BigWigFile;
 import org.jetbrains.bio.big.FixedStepSection;
@@ -36,8 +33,12 @@ import static com.epam.catgenome.component.MessageHelper.getMessage;
  * */
 public class WigProcessor extends AbstractWigProcessor {
 
-    public WigProcessor(BiologicalDataItemManager biologicalDataItemManager, FileManager fileManager) {
+    private final BigWigFileCache fileCache;
+
+    public WigProcessor(BiologicalDataItemManager biologicalDataItemManager, FileManager fileManager,
+                        BigWigFileCache fileCache) {
         super(biologicalDataItemManager, fileManager);
+        this.fileCache = fileCache;
     }
 
     @Override
@@ -121,17 +122,15 @@ public class WigProcessor extends AbstractWigProcessor {
             throws IOException {
         LOGGER.debug(getMessage(MessagesConstants.DEBUG_FILE_READING, filePath));
         double time1 = Utils.getSystemTimeMilliseconds();
-        try (BigWigFile bigWigFile = readWig(filePath)) {
-            fillBlocksNew(track, chromosomeName, bigWigFile);
+        try (BigWigFileCache.Handle handle = fileCache.acquire(filePath)) {
+            fillBlocksNew(track, chromosomeName, handle.getFile());
         }
         double time2 = Utils.getSystemTimeMilliseconds();
         LOGGER.debug("Reading from WIG file {}, took {} ms", filePath, time2 - time1);
     }
 
     private BigWigFile readWig(final String wigFilePath) throws IOException {
-        return BigWigFile.read(wigFilePath, BigFile.PREFETCH_LEVEL_DETAILED, null, (path, byteOrder) ->
-                EndianSynchronizedBufferFactory.Companion.create(path, byteOrder,
-                        BetterSeekableBufferedStream.DEFAULT_BUFFER_SIZE));
+        return BigWigFileCache.open(wigFilePath);
     }
 
     private void fillBlocksNew(final Track<Wig> track, final String chromosomeName, final BigWigFile bigWigFile) {
@@ -149,42 +148,61 @@ public class WigProcessor extends AbstractWigProcessor {
         if (realName == null) {
             LOGGER.info("Chromosome not found in big wig file");
         }
-        for (Wig wigElement : track.getBlocks()) {
-            double score = getNewArrays(bigWigFile, realName, wigElement.getStartIndex() - 1,
-                    wigElement.getEndIndex());
-            wigElement.setValue((float) score);
+        final List<Wig> blocks = track.getBlocks();
+        final float[] scores = summarizeBlocks(bigWigFile, realName, blocks);
+        for (int i = 0; i < scores.length; i++) {
+            blocks.get(i).setValue(scores[i]);
         }
     }
 
-    private double getNewArrays(final BigWigFile bigWigFile, final String chrName, final int start, final int end) {
+    /**
+     * Calculates scores of track blocks. All blocks but the last one have the same width, so they are summarized
+     * with a single query, that picks a zoom level matching the block width, instead of a query per block.
+     */
+    static float[] summarizeBlocks(final BigWigFile bigWigFile, final String chrName, final List<Wig> blocks) {
+        final float[] scores = new float[blocks.size()];
+        if (chrName == null || blocks.isEmpty()) {
+            return scores;
+        }
+        final Wig first = blocks.get(0);
+        final Wig last = blocks.get(blocks.size() - 1);
+        final int width = getWidth(first);
+        final int uniformCount = getWidth(last) == width ? blocks.size() : blocks.size() - 1;
         try {
-            double res = 0.0;
-            res +=  queryWig(bigWigFile, chrName, start, end);
-            return res;
+            if (uniformCount > 0) {
+                queryWig(bigWigFile, chrName, first.getStartIndex() - 1, width, uniformCount, scores, 0);
+            }
+            if (uniformCount < blocks.size()) {
+                queryWig(bigWigFile, chrName, last.getStartIndex() - 1, getWidth(last), 1, scores, uniformCount);
+            }
         } catch (IOException e) {
             LOGGER.debug(e.getMessage(), e);
-            return 0;
         }
+        return scores;
     }
 
-    private double queryWig(BigWigFile bigWigFile, String chrName, int start, int end)
-            throws IOException {
+    private static void queryWig(final BigWigFile bigWigFile, final String chrName, final int start, final int binWidth,
+                          final int numBins, final float[] scores, final int offset) throws IOException {
         List<BigSummary> summarize;
         try {
-            summarize = bigWigFile.summarize(chrName, start, end, 1, true, null);
+            summarize = bigWigFile.summarize(chrName, start, start + binWidth * numBins, numBins, true, null);
         } catch (NoSuchElementException e) {
             LOGGER.info(e.getMessage(), e);
-            return 0;
+            return;
         }
-        double res = 0.0;
-        for (BigSummary summary : summarize) {
+        final int count = Math.min(numBins, summarize.size());
+        for (int i = 0; i < count; i++) {
+            final BigSummary summary = summarize.get(i);
             double value = Math.abs(summary.getMaxValue()) > Math.abs(summary.getMinValue())
                     ? summary.getMaxValue()
                     : summary.getMinValue();
             if (!Double.isNaN(value) && !Double.isInfinite(value)) {
-                res += value;
+                scores[offset + i] = (float) value;
             }
         }
-        return res;
+    }
+
+    private static int getWidth(final Wig block) {
+        return block.getEndIndex() - block.getStartIndex() + 1;
     }
 }
@@ -25,6 +25,7 @@
 package com.epam.catgenome.util;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import com.epam.catgenome.manager.bam.BamHelper;
@@ -41,7 +42,9 @@ import com.epam.catgenome.entity.bam.NgbSamTagAndValue;
 import com.epam.catgenome.entity.bam.Read;
 import com.epam.catgenome.entity.bam.TrackDirectionType;
 import com.epam.catgenome.entity.reference.Chromosome;
+import com.epam.catgenome.entity.reference.Reference;
 import com.epam.catgenome.entity.track.Track;
+import com.epam.catgenome.manager.bam.filters.Filter;
 import com.epam.catgenome.manager.bam.filters.LeftSAMRecordFilter;
 import com.epam.catgenome.manager.bam.filters.MiddleSAMRecordFilter;
 import com.epam.catgenome.manager.bam.filters.RightSAMRecordFilter;
@@ -53,6 +56,14 @@ import com.epam.catgenome.manager.reference.ReferenceManager;
 import htsjdk.samtools.CigarElement;
 import htsjdk.samtools.SAMFlag;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.filter.AggregateFilter;
+import htsjdk.samtools.filter.DuplicateReadFilter;
+import htsjdk.samtools.filter.FailsVendorReadQualityFilter;
+import htsjdk.samtools.filter.FilteringSamIterator;
+import htsjdk.samtools.filter.NotPrimaryAlignmentFilter;
+import htsjdk.samtools.filter.SamRecordFilter;
+import htsjdk.samtools.filter.SecondaryOrSupplementaryFilter;
+import htsjdk.samtools.util.CloseableIterator;
 
 /**
  * Source:
@@ -135,29 +146,51 @@ public final class BamUtil {
                                                                     coverageOnly, BamTrackEmitter trackEmitter)
     // TODO: int maxReadCount - decide reads or coverage by by read count
             throws IOException {
-        Handler<SAMRecord> filter;
+        return createSAMRecordHandler(track, options, referenceManager, coverageOnly, trackEmitter,
+                null, track.getStartIndex(), track.getEndIndex(), null);
+    }
+
+    /**
+     * Creates a handler for reads, starting in a shard of the track
+     * @param track track to load
+     * @param options track options
+     * @param referenceManager for loading reference sequence
+     * @param coverageOnly if true, no reads will be send to emitter
+     * @param trackEmitter where to write reads
+     * @param reference already loaded reference, if null it is loaded by ID from the options
+     * @param shardStart left border of the shard
+     * @param shardEnd right border of the shard
+     * @param frameOrigin start of the first downsampling frame, if null frames start from the first read
+     * @return handler for the shard
+     * @throws IOException
+     */
+    public static SAMRecordHandler createSAMRecordHandler(final Track<Read> track, final BamQueryOption options,
+                                                          final ReferenceManager referenceManager,
+                                                          final boolean coverageOnly,
+                                                          final BamTrackEmitter trackEmitter,
+                                                          final Reference reference, final int shardStart,
+                                                          final int shardEnd, final Integer frameOrigin)
+            throws IOException {
         final int startTrack = track.getStartIndex();
         final int endTrack = track.getEndIndex();
+        final DownsamplingSifter<SAMRecord> sifter = createSifter(endTrack, options, coverageOnly, trackEmitter,
+                frameOrigin);
+        final Filter<SAMRecord> filter;
         switch (options.getTrackDirection()) {
             case LEFT:
-                filter = new SAMRecordHandler(startTrack, endTrack, referenceManager, new LeftSAMRecordFilter(endTrack,
-                        BamUtil.createSifter(endTrack, options, coverageOnly, trackEmitter)), options); //maxReadCount
+                filter = new LeftSAMRecordFilter(endTrack, sifter);
                 break;
             case MIDDLE:
-                filter = new SAMRecordHandler(startTrack, endTrack, referenceManager, new MiddleSAMRecordFilter(
-                        BamUtil.createSifter(endTrack, options, coverageOnly, trackEmitter)), options); //maxReadCount
+                filter = new MiddleSAMRecordFilter(sifter);
                 break;
             case RIGHT:
-                filter = new SAMRecordHandler(startTrack, endTrack, referenceManager,
-                        new RightSAMRecordFilter(
-                                startTrack,
-                                BamUtil.createSifter(endTrack, options, coverageOnly, trackEmitter)),
-                        options); //maxReadCount
+                filter = new RightSAMRecordFilter(startTrack, sifter);
                 break;
             default:
                 throw new IllegalArgumentException("Unexpected track direction: " + options.getTrackDirection());
         }
-        return filter;
+        return new SAMRecordHandler(startTrack, endTrack, shardStart, shardEnd, referenceManager, reference, filter,
+                options);
     }
 
     /**
@@ -212,6 +245,46 @@ public final class BamUtil {
                 end, coverageOnly, trackEmitter) : new FullResultSifter(coverageOnly, trackEmitter);
     }
 
+    private static DownsamplingSifter<SAMRecord> createSifter(final int end, final BamQueryOption options,
+                                                              final boolean coverageOnly,
+                                                              final BamTrackEmitter trackEmitter,
+                                                              final Integer frameOrigin) {
+        if (frameOrigin == null || !options.isDownSampling()) {
+            return createSifter(end, options, coverageOnly, trackEmitter);
+        }
+        return new ConstantMemorySAMRecordSampler(options.getFrame(), options.getCount(), end, frameOrigin,
+                coverageOnly, trackEmitter);
+    }
+
+    /**
+     * Wraps an iterator over reads with filters, requested in the track options
+     * @param iterator over reads
+     * @param options track options
+     * @return filtering iterator or the same iterator, if no filters are requested
+     */
+    public static CloseableIterator<SAMRecord> setIteratorFiltering(final CloseableIterator<SAMRecord> iterator,
+                                                                    final BamQueryOption options) {
+        List<SamRecordFilter> filters = new ArrayList<>();
+        if (options.isFilterDuplicate()) {
+            filters.add(new DuplicateReadFilter());
+        }
+        if (options.isFilterNotPrimary()) {
+            filters.add(new NotPrimaryAlignmentFilter());
+        }
+        if (options.isFilterVendorQualityFail()) {
+            filters.add(new FailsVendorReadQualityFilter());
+        }
+        if (options.isFilterSupplementaryAlignment()) {
+            filters.add(new SecondaryOrSupplementaryFilter());
+        }
+
+        if (!filters.isEmpty()) {
+            return new FilteringSamIterator(iterator, new AggregateFilter(filters));
+        }
+
+        return iterator;
+    }
+
     public static boolean checkFlag(final int flagMasc, final int flag) {
         return ((flagMasc & flag) ^ flag) == 0;
     }
@@ -0,0 +1,259 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.epam.catgenome.manager.GeneInfo;
+
+/**
+ * An immutable in-memory index of gene and exon features of a single chromosome, that allows to find genes,
+ * affected by a variation or a motif, without creating an object per feature.
+ * <p>
+ * Features are kept in parallel arrays, sorted by start index, which form an implicit augmented interval tree:
+ * a feature at position {@code i} is a node of the level, equal to a number of trailing ones in {@code i}, and
+ * {@code maxEnds[i]} holds the maximum end index in its subtree. Both start and end indexes are inclusive.
+ * </p>
+ */
+public final class GeneIntervalIndex {
+
+    // subtrees of this level and lower are scanned linearly
+    private static final int SCAN_LEVEL = 3;
+
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] maxEnds;
+    private final boolean[] exons;
+    private final String[] geneIds;
+    private final String[] geneNames;
+    private final int maxLevel;
+
+    private GeneIntervalIndex(final int[] starts, final int[] ends, final boolean[] exons,
+                              final String[] geneIds, final String[] geneNames) {
+        this.starts = starts;
+        this.ends = ends;
+        this.exons = exons;
+        this.geneIds = geneIds;
+        this.geneNames = geneNames;
+        this.maxEnds = new int[starts.length];
+        this.maxLevel = indexMaxEnds();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return a number of indexed features
+     */
+    public int size() {
+        return starts.length;
+    }
+
+    /**
+     * Fetches genes, affected by a variation, i.e. overlapping start or end position of the variation
+     *
+     * @param start a start index of the variation
+     * @param end   an end index of the variation
+     * @return a {@code Set} of genes, affected by the variation
+     */
+    public Set<GeneInfo> fetchGeneInfos(final int start, final int end) {
+        final Set<GeneInfo> geneInfos = getGeneInfos(start, start);
+        if (end > start) {
+            geneInfos.addAll(getGeneInfos(end, end));
+        }
+        return geneInfos;
+    }
+
+    /**
+     * Finds genes, overlapping an interval. Each gene is marked as exon, if any exon overlaps the interval.
+     *
+     * @param start a start index of the interval, inclusive
+     * @param end   an end index of the interval, inclusive
+     * @return a {@code Set} of overlapping genes
+     */
+    public Set<GeneInfo> getGeneInfos(final int start, final int end) {
+        final List<Integer> overlapping = new ArrayList<>();
+        findOverlapping(start, end, overlapping);
+        boolean isExon = false;
+        for (int i : overlapping) {
+            isExon |= exons[i];
+        }
+        final Set<GeneInfo> geneInfos = new HashSet<>();
+        for (int i : overlapping) {
+            if (!exons[i]) {
+                geneInfos.add(new GeneInfo(geneIds[i], geneNames[i], isExon));
+            }
+        }
+        return geneInfos;
+    }
+
+    private void findOverlapping(final int start, final int end, final List<Integer> result) {
+        final int n = starts.length;
+        if (n == 0) {
+            return;
+        }
+        // each frame is a level, a node and a flag whether its left subtree is already visited
+        final int[] levels = new int[(maxLevel + 1) * 2];
+        final int[] nodes = new int[levels.length];
+        final boolean[] visited = new boolean[levels.length];
+        int top = 0;
+        levels[top] = maxLevel;
+        nodes[top] = (1 << maxLevel) - 1;
+        visited[top++] = false;
+        while (top > 0) {
+            top--;
+            final int level = levels[top];
+            final int node = nodes[top];
+            if (level <= SCAN_LEVEL) {
+                final int first = node >> level << level;
+                final int last = Math.min(first + (1 << (level + 1)) - 1, n);
+                for (int i = first; i < last && starts[i] <= end; i++) {
+                    if (ends[i] >= start) {
+                        result.add(i);
+                    }
+                }
+            } else if (!visited[top]) {
+                final int left = node - (1 << (level - 1));
+                visited[top++] = true;
+                if (left >= n || maxEnds[left] >= start) {
+                    levels[top] = level - 1;
+                    nodes[top] = left;
+                    visited[top++] = false;
+                }
+            } else if (node < n && starts[node] <= end) {
+                if (ends[node] >= start) {
+                    result.add(node);
+                }
+                levels[top] = level - 1;
+                nodes[top] = node + (1 << (level - 1));
+                visited[top++] = false;
+            }
+        }
+    }
+
+    private int indexMaxEnds() {
+        final int n = starts.length;
+        if (n == 0) {
+            return 0;
+        }
+        int lastNode = 0;
+        int lastMax = 0;
+        for (int i = 0; i < n; i += 2) {
+            lastNode = i;
+            lastMax = ends[i];
+            maxEnds[i] = ends[i];
+        }
+        int level = 1;
+        for (; 1 << level <= n; level++) {
+            final int half = 1 << (level - 1);
+            for (int i = (half << 1) - 1; i < n; i += half << 2) {
+                final int leftMax = maxEnds[i - half];
+                final int rightMax = i + half < n ? maxEnds[i + half] : lastMax;
+                maxEnds[i] = Math.max(ends[i], Math.max(leftMax, rightMax));
+            }
+            // the last node of the level may cover nodes beyond the array, which aren't computed
+            lastNode = (lastNode >> level & 1) != 0 ? lastNode - half : lastNode + half;
+            if (lastNode < n && maxEnds[lastNode] > lastMax) {
+                lastMax = maxEnds[lastNode];
+            }
+        }
+        return level - 1;
+    }
+
+    /**
+     * Collects features for a {@link GeneIntervalIndex}
+     */
+    public static final class Builder {
+
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private int size;
+        private int[] starts = new int[INITIAL_CAPACITY];
+        private int[] ends = new int[INITIAL_CAPACITY];
+        private boolean[] exons = new boolean[INITIAL_CAPACITY];
+        private String[] geneIds = new String[INITIAL_CAPACITY];
+        private String[] geneNames = new String[INITIAL_CAPACITY];
+
+        private Builder() {
+            // use GeneIntervalIndex.builder()
+        }
+
+        public Builder addGene(final int start, final int end, final String geneId, final String geneName) {
+            return add(start, end, false, geneId, geneName);
+        }
+
+        public Builder addExon(final int start, final int end) {
+            return add(start, end, true, null, null);
+        }
+
+        public GeneIntervalIndex build() {
+            // sort features by start, packing a start and a position into a single primitive key
+            final long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = (long) starts[i] << Integer.SIZE | i;
+            }
+            Arrays.sort(order);
+            final int[] sortedStarts = new int[size];
+            final int[] sortedEnds = new int[size];
+            final boolean[] sortedExons = new boolean[size];
+            final String[] sortedGeneIds = new String[size];
+            final String[] sortedGeneNames = new String[size];
+            for (int i = 0; i < size; i++) {
+                final int j = (int) order[i];
+                sortedStarts[i] = starts[j];
+                sortedEnds[i] = ends[j];
+                sortedExons[i] = exons[j];
+                sortedGeneIds[i] = geneIds[j];
+                sortedGeneNames[i] = geneNames[j];
+            }
+            return new GeneIntervalIndex(sortedStarts, sortedEnds, sortedExons, sortedGeneIds, sortedGeneNames);
+        }
+
+        private Builder add(final int start, final int end, final boolean exon, final String geneId,
+                            final String geneName) {
+            if (size == starts.length) {
+                final int capacity = size * 2;
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                exons = Arrays.copyOf(exons, capacity);
+                geneIds = Arrays.copyOf(geneIds, capacity);
+                geneNames = Arrays.copyOf(geneNames, capacity);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            exons[size] = exon;
+            geneIds[size] = geneId;
+            geneNames[size] = geneName;
+            size++;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.util.Assert;
+
+import com.epam.catgenome.entity.wig.Wig;
+
+/**
+ * A file with a multi-resolution histogram of a feature file for a single chromosome.
+ * <p>
+ * Level 0 keeps a histogram as it was built, each next level merges blocks of the previous one, falling into
+ * {@link #ZOOM_FACTOR} times wider genomic windows, until a single block is left. A header keeps a number of
+ * blocks and an offset of each level, blocks of a level are stored as columns of start and end indexes and
+ * values, so a requested window of any level is sliced by a binary search over a single positional read.
+ * </p>
+ * <p>
+ * Histogram files, written before the format was introduced, are plain sequences of start, end and value
+ * triples. They are still readable and are treated as a single level histogram.
+ * </p>
+ */
+public final class HistogramPyramid {
+
+    public static final int ZOOM_FACTOR = 4;
+
+    private static final int MAGIC = 0x4E474248;
+    private static final int VERSION = 1;
+    private static final int MAX_LEVELS = 16;
+    private static final int HEADER_SIZE = 3 * Integer.BYTES;
+    private static final int LEVEL_ENTRY_SIZE = Integer.BYTES + Long.BYTES;
+    private static final int BLOCK_SIZE = 2 * Integer.BYTES + Float.BYTES;
+    private static final String TMP_EXTENSION = ".tmp";
+
+    private HistogramPyramid() {
+        // no operations by default
+    }
+
+    /**
+     * Writes a histogram and all its coarser levels to a file. A file is replaced atomically, so that concurrent
+     * readers never see a partially written histogram.
+     * @param file to write
+     * @param histogram level 0 blocks, sorted by start index
+     * @throws IOException if a file can't be written
+     */
+    public static void write(final File file, final List<Wig> histogram) throws IOException {
+        final List<List<Wig>> levels = buildLevels(histogram);
+
+        long size = HEADER_SIZE + (long) levels.size() * LEVEL_ENTRY_SIZE;
+        for (List<Wig> level : levels) {
+            size += (long) level.size() * BLOCK_SIZE;
+        }
+        Assert.isTrue(size <= Integer.MAX_VALUE, "Histogram is too large: " + file.getAbsolutePath());
+
+        final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(levels.size());
+        long offset = HEADER_SIZE + (long) levels.size() * LEVEL_ENTRY_SIZE;
+        for (List<Wig> level : levels) {
+            buffer.putInt(level.size()).putLong(offset);
+            offset += (long) level.size() * BLOCK_SIZE;
+        }
+        for (List<Wig> level : levels) {
+            level.forEach(wig -> buffer.putInt(wig.getStartIndex()));
+            level.forEach(wig -> buffer.putInt(wig.getEndIndex()));
+            level.forEach(wig -> buffer.putFloat(valueOf(wig)));
+        }
+        buffer.flip();
+
+        // a unique temporary file allows a histogram to be rebuilt concurrently with a background build
+        final Path tmpFile = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(),
+                TMP_EXTENSION);
+        try {
+            try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(tmpFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    /**
+     * Loads level 0 of a histogram
+     * @param file a histogram file
+     * @return all level 0 blocks
+     * @throws IOException if a file can't be read
+     */
+    public static List<Wig> read(final File file) throws IOException {
+        return read(file, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Loads blocks of a histogram, intersecting a window. The most detailed level, that has no more than
+     * {@code maxBlocks} blocks in the window, is used. If even the coarsest level has more blocks, it is used.
+     * @param file a histogram file
+     * @param start of the window
+     * @param end of the window, inclusive
+     * @param maxBlocks desired maximum number of blocks
+     * @return blocks of a selected level, intersecting the window
+     * @throws IOException if a file can't be read
+     */
+    public static List<Wig> read(final File file, final int start, final int end, final int maxBlocks)
+            throws IOException {
+        if (file.length() < HEADER_SIZE) {
+            return readLegacy(file, start, end);
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                return readLegacy(file, start, end);
+            }
+            Assert.isTrue(header.getInt() == VERSION, "Unsupported histogram file " + file.getAbsolutePath());
+
+            final int levelsCount = header.getInt();
+            final ByteBuffer levelsTable = readFully(channel, HEADER_SIZE, levelsCount * LEVEL_ENTRY_SIZE);
+            ByteBuffer blocks = null;
+            int count = 0;
+            int from = 0;
+            int to = 0;
+            for (int level = 0; level < levelsCount; level++) {
+                count = levelsTable.getInt();
+                blocks = readFully(channel, levelsTable.getLong(), count * BLOCK_SIZE);
+                from = findFirst(blocks, count * Integer.BYTES, count, start);
+                to = findFirst(blocks, 0, count, (long) end + 1);
+                if (to - from <= maxBlocks) {
+                    break;
+                }
+            }
+
+            final List<Wig> histogram = new ArrayList<>(Math.max(to - from, 0));
+            for (int i = from; i < to; i++) {
+                histogram.add(new Wig(blocks.getInt(i * Integer.BYTES),
+                        blocks.getInt((count + i) * Integer.BYTES),
+                        blocks.getFloat((2 * count + i) * Integer.BYTES)));
+            }
+            return histogram;
+        }
+    }
+
+    static List<List<Wig>> buildLevels(final List<Wig> histogram) {
+        final List<List<Wig>> levels = new ArrayList<>();
+        levels.add(histogram);
+        if (histogram.isEmpty()) {
+            return levels;
+        }
+
+        final Wig first = histogram.get(0);
+        long width = Math.max(1, first.getEndIndex() - first.getStartIndex() + 1);
+        List<Wig> previous = histogram;
+        while (previous.size() > 1 && levels.size() < MAX_LEVELS) {
+            width *= ZOOM_FACTOR;
+            final List<Wig> level = new ArrayList<>();
+            Wig current = null;
+            long currentWindow = -1;
+            for (Wig wig : previous) {
+                final long window = wig.getStartIndex() / width;
+                if (current != null && window == currentWindow) {
+                    current.setEndIndex(Math.max(current.getEndIndex(), wig.getEndIndex()));
+                    current.setValue(current.getValue() + valueOf(wig));
+                } else {
+                    current = new Wig(wig.getStartIndex(), wig.getEndIndex(), valueOf(wig));
+                    currentWindow = window;
+                    level.add(current);
+                }
+            }
+            levels.add(level);
+            previous = level;
+        }
+        return levels;
+    }
+
+    private static float valueOf(final Wig wig) {
+        return wig.getValue() != null ? wig.getValue() : 0F;
+    }
+
+    /**
+     * Returns an index of the first value, that is not less than a key, in a sorted column of integers
+     */
+    private static int findFirst(final ByteBuffer buffer, final int offset, final int count, final long key) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (buffer.getInt(offset + middle * Integer.BYTES) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static List<Wig> readLegacy(final File file, final int start, final int end) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        final List<Wig> histogram = new ArrayList<>(buffer.remaining() / BLOCK_SIZE);
+        while (buffer.remaining() >= BLOCK_SIZE) {
+            final Wig wig = new Wig(buffer.getInt(), buffer.getInt(), buffer.getFloat());
+            if (wig.getEndIndex() >= start && wig.getStartIndex() <= end) {
+                histogram.add(wig);
+            }
+        }
+        return histogram;
+    }
+
+    private static ByteBuffer readFully(final FileChannel channel, final long position, final int size)
+            throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of histogram file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
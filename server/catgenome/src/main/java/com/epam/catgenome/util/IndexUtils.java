@@ -32,31 +32,23 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
 
 import com.epam.catgenome.entity.FeatureFile;
-import com.epam.catgenome.entity.gene.Gene;
-import com.epam.catgenome.entity.reference.Chromosome;
 import com.epam.catgenome.entity.vcf.VcfFile;
-import com.epam.catgenome.manager.GeneInfo;
 import com.epam.catgenome.manager.bam.BamHelper;
-import com.epam.catgenome.manager.gene.GeneUtils;
 import htsjdk.samtools.Defaults;
 import htsjdk.samtools.util.AbstractIterator;
 import htsjdk.samtools.util.BlockCompressedInputStream;
 import htsjdk.samtools.util.BlockCompressedStreamConstants;
 import htsjdk.samtools.util.CloserUtil;
-import htsjdk.samtools.util.Interval;
 import htsjdk.samtools.util.LocationAware;
 import htsjdk.samtools.util.RuntimeIOException;
 import htsjdk.samtools.util.Tuple;
@@ -510,41 +502,6 @@ public final class IndexUtils {
         }
     }
 
-    /**
-     * Fetch gene IDs of genes, affected by variation. The variation is specified by it's start and end indexes
-     *
-     * @param intervalMap represents a batch loaded genes form gene file
-     * @param start       a start index of the variation
-     * @param end         an end index of the variation
-     * @param chromosome  a {@code Chromosome}
-     * @return a {@code Set} of IDs of genes, affected by the variation
-     */
-    public static Set<GeneInfo> fetchGeneIdsFromBatch(final NggbIntervalTreeMap<List<Gene>> intervalMap,
-                                                      final int start,
-                                                      final int end,
-                                                      final Chromosome chromosome) {
-        final Set<GeneInfo> geneIds = getGeneIds(intervalMap, chromosome, start, start);
-        if (end > start) {
-            geneIds.addAll(getGeneIds(intervalMap, chromosome, end, end));
-        }
-        return geneIds;
-    }
-
-    public static Set<GeneInfo> getGeneIds(final NggbIntervalTreeMap<List<Gene>> intervalMap,
-                                           final Chromosome chromosome,
-                                           final int start,
-                                           final int end) {
-        final Collection<Gene> genes = intervalMap.getOverlapping(new Interval(chromosome.getName(), start, end))
-                .stream()
-                .flatMap(Collection::stream)
-                .collect(Collectors.toList());
-        final boolean isExon = genes.stream().anyMatch(GeneUtils::isExon);
-        return genes.stream()
-                .filter(GeneUtils::isGene)
-                .map(g -> new GeneInfo(g.getGroupId(), g.getFeatureName(), isExon))
-                .collect(Collectors.toSet());
-    }
-
     private static InputStream indexFileInputStream(final InputStream indexStream, String extension)
             throws IOException {
         if (extension.equals("gz")) {
@@ -0,0 +1,59 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.util.feature.pipeline;
+
+import java.io.IOException;
+
+import htsjdk.tribble.Feature;
+
+/**
+ * A consumer of features, read by a {@link FeaturePipeline}. Each consumer of a pipeline receives all features of
+ * a file in the file order on its own thread, so implementations don't need to be thread-safe.
+ *
+ * @param <F> type of consumed features
+ */
+public interface FeatureConsumer<F extends Feature> {
+
+    /**
+     * Consumes the next feature of a file
+     *
+     * @param feature a feature
+     * @param position a position of the feature in a file: an offset for plain files or a virtual file pointer
+     *                 for block compressed ones
+     * @throws IOException if consuming fails
+     */
+    void accept(F feature, long position) throws IOException;
+
+    /**
+     * Is called once after all features of a file are consumed
+     *
+     * @param endPosition a position of the end of a file
+     * @throws IOException if finishing fails
+     */
+    default void finish(long endPosition) throws IOException {
+        // nothing to do by default
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.util.feature.pipeline;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.epam.catgenome.util.IndexUtils;
+import htsjdk.tribble.Feature;
+import htsjdk.tribble.FeatureCodec;
+import org.springframework.util.Assert;
+
+/**
+ * A streaming pipeline, that reads and parses a feature file once and feeds the parsed features to several
+ * {@link FeatureConsumer}s, e.g. index creators, helper file writers, feature index and histogram builders.
+ * <p>
+ * Features are read and checked to be sorted on the calling thread and are handed over in batches to consumers,
+ * each running on its own thread. Batches are passed through bounded queues, so that a slow consumer holds the
+ * reader back instead of piling up parsed features in memory, and a whole registration takes roughly the time of
+ * a single read of a file.
+ * </p>
+ *
+ * @param <F> type of features in a file
+ */
+public class FeaturePipeline<F extends Feature> {
+
+    private static final int DEFAULT_BATCH_SIZE = 1024;
+    private static final int DEFAULT_QUEUE_CAPACITY = 16;
+    private static final long WAIT_TIMEOUT_MS = 100;
+
+    private final String filePath;
+    private final List<FeatureConsumer<? super F>> consumers = new ArrayList<>();
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    /**
+     * @param filePath a path to a sorted feature file to read
+     */
+    public FeaturePipeline(final String filePath) {
+        this.filePath = filePath;
+    }
+
+    /**
+     * Adds a consumer to the pipeline
+     *
+     * @param consumer to receive features of a file
+     * @return this pipeline
+     */
+    public FeaturePipeline<F> addConsumer(final FeatureConsumer<? super F> consumer) {
+        consumers.add(consumer);
+        return this;
+    }
+
+    /**
+     * @param batchSize a number of features, handed over to consumers at once
+     * @return this pipeline
+     */
+    public FeaturePipeline<F> setBatchSize(final int batchSize) {
+        Assert.isTrue(batchSize > 0, "Batch size must be positive");
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * @param queueCapacity a number of batches, that may be queued for a single consumer
+     * @return this pipeline
+     */
+    public FeaturePipeline<F> setQueueCapacity(final int queueCapacity) {
+        Assert.isTrue(queueCapacity > 0, "Queue capacity must be positive");
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * Reads a file with a specified codec and feeds its features to all consumers. Returns when all consumers
+     * are finished. If reading or any of consumers fails, the other consumers are stopped and the failure is
+     * rethrown; {@link FeatureConsumer#finish(long)} isn't called in this case.
+     *
+     * @param codec to decode features of a file
+     * @param <S> type of codec's source
+     * @return a position of the end of a file
+     * @throws IOException if reading or consuming fails
+     */
+    public <S> long run(final FeatureCodec<F, S> codec) throws IOException {
+        return run(new IndexUtils.FeatureIterator<>(filePath, codec));
+    }
+
+    /**
+     * Feeds features of an opened file iterator to all consumers, see {@link #run(FeatureCodec)}. The iterator
+     * is closed by this method.
+     *
+     * @param iterator of a file, specified by the path of this pipeline
+     * @return a position of the end of a file
+     * @throws IOException if reading or consuming fails
+     */
+    public long run(final IndexUtils.FeatureIterator<F, ?> iterator) throws IOException {
+        Assert.notEmpty(consumers, "No consumers are added to a pipeline");
+        try {
+            return consumers.size() == 1 ? runSequentially(iterator) : runConcurrently(iterator);
+        } finally {
+            iterator.close();
+        }
+    }
+
+    private long runSequentially(final IndexUtils.FeatureIterator<F, ?> iterator) throws IOException {
+        final FeatureConsumer<? super F> consumer = consumers.get(0);
+        final Map<String, Feature> visitedChromosomes = new HashMap<>();
+        F lastFeature = null;
+        while (iterator.hasNext()) {
+            final long position = iterator.getPosition();
+            final F feature = next(iterator, lastFeature, visitedChromosomes);
+            consumer.accept(feature, position);
+            lastFeature = feature;
+        }
+        iterator.close();
+        final long endPosition = iterator.getPosition();
+        consumer.finish(endPosition);
+        return endPosition;
+    }
+
+    private long runConcurrently(final IndexUtils.FeatureIterator<F, ?> iterator) throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(consumers.size());
+        final List<Stage<F>> stages = new ArrayList<>(consumers.size());
+        boolean succeeded = false;
+        try {
+            for (FeatureConsumer<? super F> consumer : consumers) {
+                final Stage<F> stage = new Stage<>(consumer, queueCapacity);
+                stage.future = executor.submit(stage);
+                stages.add(stage);
+            }
+
+            final Map<String, Feature> visitedChromosomes = new HashMap<>();
+            F lastFeature = null;
+            Batch<F> batch = new Batch<>(batchSize);
+            while (iterator.hasNext()) {
+                final long position = iterator.getPosition();
+                final F feature = next(iterator, lastFeature, visitedChromosomes);
+                batch.add(feature, position);
+                if (batch.isFull()) {
+                    publish(stages, batch);
+                    batch = new Batch<>(batchSize);
+                }
+                lastFeature = feature;
+            }
+            if (!batch.isEmpty()) {
+                publish(stages, batch);
+            }
+
+            iterator.close();
+            final long endPosition = iterator.getPosition();
+            publish(stages, Batch.endOf(endPosition));
+            for (Stage<F> stage : stages) {
+                await(stage.future);
+            }
+            succeeded = true;
+            return endPosition;
+        } finally {
+            if (!succeeded) {
+                // let consumers drop the rest of their queues, interrupting them could break their outputs
+                stages.forEach(s -> s.aborted = true);
+            }
+            executor.shutdown();
+            awaitTermination(executor);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private F next(final IndexUtils.FeatureIterator<F, ?> iterator, final F lastFeature,
+                   final Map<String, Feature> visitedChromosomes) {
+        final F feature = (F) iterator.next();
+        IndexUtils.checkSorted(filePath, lastFeature, feature, visitedChromosomes);
+        return feature;
+    }
+
+    private void publish(final List<Stage<F>> stages, final Batch<F> batch) throws IOException {
+        try {
+            for (Stage<F> stage : stages) {
+                while (!stage.queue.offer(batch, WAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    ensureRunning(stage);
+                }
+                // a consumer may complete only after the end of a file is published
+                if (!batch.end) {
+                    ensureRunning(stage);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Feature pipeline was interrupted");
+        }
+    }
+
+    private static void ensureRunning(final Stage<?> stage) throws IOException {
+        if (stage.future.isDone()) {
+            await(stage.future);
+            throw new IllegalStateException("Feature consumer stopped before the end of a file");
+        }
+    }
+
+    private static void await(final Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Feature pipeline was interrupted");
+        } catch (ExecutionException e) {
+            rethrow(e.getCause());
+        }
+    }
+
+    private static void awaitTermination(final ExecutorService executor) {
+        try {
+            // consumers check the abort flag after each batch
+            boolean terminated = false;
+            while (!terminated) {
+                terminated = executor.awaitTermination(WAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void rethrow(final Throwable cause) throws IOException {
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new IOException(cause);
+    }
+
+    private static final class Batch<F extends Feature> {
+        private final List<F> features;
+        private final long[] positions;
+        private final boolean end;
+
+        private Batch(final int size) {
+            this.features = new ArrayList<>(size);
+            this.positions = new long[size];
+            this.end = false;
+        }
+
+        private Batch(final long endPosition) {
+            this.features = new ArrayList<>(0);
+            this.positions = new long[] {endPosition};
+            this.end = true;
+        }
+
+        private static <F extends Feature> Batch<F> endOf(final long endPosition) {
+            return new Batch<>(endPosition);
+        }
+
+        private void add(final F feature, final long position) {
+            positions[features.size()] = position;
+            features.add(feature);
+        }
+
+        private boolean isFull() {
+            return features.size() == positions.length;
+        }
+
+        private boolean isEmpty() {
+            return features.isEmpty();
+        }
+    }
+
+    private static final class Stage<F extends Feature> implements Callable<Void> {
+        private final FeatureConsumer<? super F> consumer;
+        private final BlockingQueue<Batch<F>> queue;
+        private volatile boolean aborted;
+        private Future<?> future;
+
+        private Stage(final FeatureConsumer<? super F> consumer, final int queueCapacity) {
+            this.consumer = consumer;
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        }
+
+        @Override
+        public Void call() throws IOException, InterruptedException {
+            while (!aborted) {
+                final Batch<F> batch = queue.poll(WAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (batch == null || aborted) {
+                    continue;
+                }
+                if (batch.end) {
+                    consumer.finish(batch.positions[0]);
+                    return null;
+                }
+                for (int i = 0; i < batch.features.size(); i++) {
+                    consumer.accept(batch.features.get(i), batch.positions[i]);
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.util.feature.pipeline;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.epam.catgenome.entity.reference.Chromosome;
+import com.epam.catgenome.entity.wig.Wig;
+import com.epam.catgenome.util.HistogramUtils;
+import com.epam.catgenome.util.Utils;
+import htsjdk.tribble.Feature;
+
+/**
+ * A {@link FeatureConsumer}, that counts features of a file in histogram blocks of each reference chromosome.
+ * A histogram of a chromosome is handed to a {@link HistogramWriter}, when all its features are consumed.
+ * Features of sequences, missing in the reference, are skipped.
+ *
+ * @param <F> type of counted features
+ */
+public class HistogramConsumer<F extends Feature> implements FeatureConsumer<F> {
+
+    private final Map<String, Chromosome> chromosomeMap;
+    private final HistogramWriter writer;
+
+    private String currentContig;
+    private Chromosome currentChromosome;
+    private List<Wig> histogram = new ArrayList<>();
+    private Wig currentWig;
+    private int intervalLength;
+    private int intervalEnd;
+    private int featureCount;
+
+    /**
+     * @param chromosomeMap reference chromosomes by their names
+     * @param writer to write histograms of chromosomes
+     */
+    public HistogramConsumer(final Map<String, Chromosome> chromosomeMap, final HistogramWriter writer) {
+        this.chromosomeMap = chromosomeMap;
+        this.writer = writer;
+    }
+
+    @Override
+    public void accept(final F feature, final long position) throws IOException {
+        if (!feature.getContig().equals(currentContig)) {
+            writeHistogram();
+            startChromosome(feature.getContig());
+        }
+        if (currentChromosome == null) {
+            return;
+        }
+
+        if (feature.getEnd() > intervalEnd) {
+            currentWig.setValue((float) featureCount);
+            histogram.add(currentWig);
+
+            currentWig = new Wig(intervalEnd + 1, intervalEnd + 1 + intervalLength);
+            intervalEnd = intervalEnd + 1 + intervalLength;
+            featureCount = 0;
+        }
+        featureCount++;
+    }
+
+    @Override
+    public void finish(final long endPosition) throws IOException {
+        writeHistogram();
+    }
+
+    private void startChromosome(final String contig) {
+        currentContig = contig;
+        currentChromosome = Utils.getFromChromosomeMap(chromosomeMap, contig);
+        if (currentChromosome == null) {
+            return;
+        }
+        final int histogramSize = Math.min(
+                (int) Math.ceil(currentChromosome.getSize() * HistogramUtils.HISTOGAM_BLOCK_SIZE_PART),
+                HistogramUtils.HISTOGRAM_SIZE_LIMIT);
+        intervalLength = currentChromosome.getSize() / histogramSize;
+        intervalEnd = intervalLength;
+        currentWig = new Wig(1, intervalLength);
+        featureCount = 0;
+    }
+
+    private void writeHistogram() throws IOException {
+        if (currentChromosome == null || featureCount == 0) {
+            return;
+        }
+        currentWig.setValue((float) featureCount);
+        histogram.add(currentWig);
+        writer.write(currentChromosome.getName(), histogram);
+        histogram = new ArrayList<>();
+    }
+
+    /**
+     * Writes a histogram of a chromosome
+     */
+    @FunctionalInterface
+    public interface HistogramWriter {
+        /**
+         * @param chromosomeName a name of a reference chromosome
+         * @param histogram blocks of the histogram
+         * @throws IOException if writing fails
+         */
+        void write(String chromosomeName, List<Wig> histogram) throws IOException;
+    }
+}
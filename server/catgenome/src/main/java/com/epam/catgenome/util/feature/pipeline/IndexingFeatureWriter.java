@@ -0,0 +1,132 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.util.feature.pipeline;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import com.epam.catgenome.util.PositionalOutputStream;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.LocationAware;
+import htsjdk.tribble.Feature;
+
+/**
+ * Writes features to a file and feeds each written feature with its position to a {@link FeatureConsumer},
+ * e.g. a {@link TabixIndexConsumer}, so that a file, written during registration, is indexed without reading it
+ * once again.
+ *
+ * @param <F> type of written features
+ */
+public class IndexingFeatureWriter<F extends Feature> implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int LINE_SEPARATOR = '\n';
+
+    private final OutputStream stream;
+    private final LocationAware location;
+    private final FeatureConsumer<? super F> consumer;
+    private final Charset charset;
+    private boolean empty = true;
+
+    /**
+     * @param stream to write features to
+     * @param consumer to receive written features
+     * @param charset of written lines
+     * @param <S> a stream type, that is aware of the position of written data
+     */
+    public <S extends OutputStream & LocationAware> IndexingFeatureWriter(final S stream,
+                                                                          final FeatureConsumer<? super F> consumer,
+                                                                          final Charset charset) {
+        this.stream = stream;
+        this.location = stream;
+        this.consumer = consumer;
+        this.charset = charset;
+    }
+
+    /**
+     * Creates a writer of a plain or a block compressed file
+     *
+     * @param file to write
+     * @param compressed if file should be block compressed
+     * @param consumer to receive written features
+     * @param charset of written lines
+     * @param <F> type of written features
+     * @return a writer
+     * @throws IOException if file can't be opened
+     */
+    public static <F extends Feature> IndexingFeatureWriter<F> forFile(final File file, final boolean compressed,
+                                                                      final FeatureConsumer<? super F> consumer,
+                                                                      final Charset charset)
+            throws IOException {
+        if (compressed) {
+            return new IndexingFeatureWriter<>(new BlockCompressedOutputStream(file), consumer, charset);
+        }
+        return new IndexingFeatureWriter<>(
+                new PositionalOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE)),
+                consumer, charset);
+    }
+
+    /**
+     * Writes a line of a feature
+     *
+     * @param feature a feature, represented by the line
+     * @param line a text line without a line separator
+     * @throws IOException if writing fails
+     */
+    public void write(final F feature, final String line) throws IOException {
+        final long position = location.getPosition();
+        stream.write(line.getBytes(charset));
+        stream.write(LINE_SEPARATOR);
+        consumer.accept(feature, position);
+        empty = false;
+    }
+
+    /**
+     * Finishes the consumer. Should be called once after all features are written.
+     *
+     * @throws IOException if finishing fails
+     */
+    public void finish() throws IOException {
+        consumer.finish(location.getPosition());
+    }
+
+    /**
+     * @return true if no features were written
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+}
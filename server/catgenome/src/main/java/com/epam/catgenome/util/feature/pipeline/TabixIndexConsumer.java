@@ -0,0 +1,109 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.util.feature.pipeline;
+
+import java.io.File;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.tribble.Feature;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.index.tabix.TabixIndex;
+import htsjdk.tribble.index.tabix.TabixIndexCreator;
+
+/**
+ * A {@link FeatureConsumer}, that builds a tabix index of a file and writes it, when all features are consumed
+ *
+ * @param <F> type of indexed features
+ */
+public class TabixIndexConsumer<F extends Feature> implements FeatureConsumer<F> {
+
+    private final SAMSequenceDictionary dictionary;
+    private final TabixIndexCreator indexCreator;
+    private final File indexFile;
+    private TabixIndex index;
+
+    /**
+     * @param tabixFormat a format of an indexed file
+     * @param indexFile a file to write the index to
+     */
+    public TabixIndexConsumer(final TabixFormat tabixFormat, final File indexFile) {
+        this(null, tabixFormat, indexFile);
+    }
+
+    /**
+     * @param dictionary a dictionary of reference sequences, it is adjusted to sequences and coordinates of
+     *                   indexed features, that don't match the reference. Should not be shared between consumers.
+     * @param tabixFormat a format of an indexed file
+     * @param indexFile a file to write the index to
+     */
+    public TabixIndexConsumer(final SAMSequenceDictionary dictionary, final TabixFormat tabixFormat,
+                              final File indexFile) {
+        this.dictionary = dictionary;
+        this.indexCreator = new TabixIndexCreator(dictionary, tabixFormat);
+        this.indexFile = indexFile;
+    }
+
+    @Override
+    public void accept(final F feature, final long position) {
+        if (dictionary != null) {
+            adjustSequenceDictionary(feature);
+        }
+        indexCreator.addFeature(feature, position);
+    }
+
+    @Override
+    public void finish(final long endPosition) {
+        index = (TabixIndex) indexCreator.finalizeIndex(endPosition);
+        // VERY important! either use write based on input file or pass the little endian a BGZF stream
+        index.write(indexFile);
+    }
+
+    /**
+     * @return the index, written by this consumer, or null if it isn't finished yet
+     */
+    public TabixIndex getIndex() {
+        return index;
+    }
+
+    public File getIndexFile() {
+        return indexFile;
+    }
+
+    // Allows to handle cases when files don't match reference contigs,
+    // e.g. contain some additional sequences or features out of reference
+    // coordinates
+    private void adjustSequenceDictionary(final F feature) {
+        final String contig = feature.getContig();
+        final SAMSequenceRecord sequence = dictionary.getSequence(contig);
+        if (sequence == null) {
+            dictionary.addSequence(new SAMSequenceRecord(contig));
+        } else if (sequence.getSequenceLength() != 0 && sequence.getSequenceLength() < feature.getEnd()) {
+            // if feature is out of reference range set reference length to 0 (unknown size)
+            sequence.setSequenceLength(0);
+        }
+    }
+}
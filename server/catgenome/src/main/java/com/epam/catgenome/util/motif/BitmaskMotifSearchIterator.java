@@ -0,0 +1,103 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.util.motif;
+
+import com.epam.catgenome.entity.reference.motif.Motif;
+import com.epam.catgenome.manager.gene.parser.StrandSerializable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Finds all occurrences of a {@link MotifBitmask} on both strands of a sequence in a single pass.
+ * Matches are reported by start position, a positive strand match goes before a negative one.
+ */
+public class BitmaskMotifSearchIterator implements Iterator<Motif> {
+
+    private final MotifBitmask bitmask;
+    private final byte[] sequence;
+    private final String contig;
+    private final int offset;
+    private final boolean includeSequence;
+    private final boolean requiresPositive;
+    private final boolean requiresNegative;
+    private final long matchBit;
+
+    private int position;
+    private long positiveState;
+    private long negativeState;
+    private boolean positiveMatch;
+    private boolean negativeMatch;
+
+    public BitmaskMotifSearchIterator(final byte[] seq, final MotifBitmask bitmask, final StrandSerializable strand,
+                                      final String contig, final int start, final boolean includeSequence) {
+        this.bitmask = bitmask;
+        this.sequence = seq;
+        this.contig = contig;
+        this.offset = start;
+        this.includeSequence = includeSequence;
+        this.requiresPositive = strand != StrandSerializable.NEGATIVE;
+        this.requiresNegative = strand != StrandSerializable.POSITIVE;
+        this.matchBit = 1L << (bitmask.getLength() - 1);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!positiveMatch && !negativeMatch && position < sequence.length) {
+            final byte base = sequence[position++];
+            if (requiresPositive) {
+                positiveState = ((positiveState << 1) | 1L) & bitmask.getPositiveMask(base);
+                positiveMatch = (positiveState & matchBit) != 0;
+            }
+            if (requiresNegative) {
+                negativeState = ((negativeState << 1) | 1L) & bitmask.getNegativeMask(base);
+                negativeMatch = (negativeState & matchBit) != 0;
+            }
+        }
+        return positiveMatch || negativeMatch;
+    }
+
+    @Override
+    public Motif next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("There is not next element!");
+        }
+        final StrandSerializable strand;
+        if (positiveMatch) {
+            strand = StrandSerializable.POSITIVE;
+            positiveMatch = false;
+        } else {
+            strand = StrandSerializable.NEGATIVE;
+            negativeMatch = false;
+        }
+        final int matchStart = position - bitmask.getLength();
+        return new Motif(contig, matchStart + offset, position - 1 + offset, strand,
+                includeSequence
+                        ? new String(sequence, matchStart, bitmask.getLength(), StandardCharsets.UTF_8)
+                        : null);
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.util.motif;
+
+import com.epam.catgenome.entity.reference.motif.Motif;
+import com.epam.catgenome.manager.gene.parser.StrandSerializable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds occurrences of a nucleotide motif, written with IUPAC letters, using a {@link MotifIndex} of a chromosome.
+ * <p>
+ * Positions of the first k bases of a motif (or of the whole motif, if it is shorter) are taken from an index,
+ * the rest of a motif is verified against a reference sequence. A motif, shorter than k, is also verified at
+ * positions within k - 1 bases before a gap, as k-mers there aren't indexed. A sequence is processed in windows,
+ * so a search for a next or a previous motif stops at the nearest window with a match. Reference bases other than
+ * A, C, G, T never match a motif.
+ * </p>
+ */
+public final class IndexedMotifSearcher {
+
+    private static final String IUPAC_MOTIF = "^[acgtrymkswhbvdnACGTRYMKSWHBVDN]+$";
+    private static final int MAX_LOOKUP_BUCKETS = 1024;
+    private static final int WINDOW_SIZE = 1024 * 1024;
+    private static final int SEQUENCE_BUFFER_SIZE = 64 * 1024;
+    private static final byte A = 1;
+    private static final byte C = 2;
+    private static final byte G = 4;
+    private static final byte T = 8;
+
+    private final int motifLength;
+    private final StrandPattern positive;
+    private final StrandPattern negative;
+
+    private IndexedMotifSearcher(final byte[] masks, final int kmerSize) {
+        this.motifLength = masks.length;
+        this.positive = new StrandPattern(masks, kmerSize, StrandSerializable.POSITIVE);
+        this.negative = new StrandPattern(reverseComplement(masks), kmerSize, StrandSerializable.NEGATIVE);
+    }
+
+    /**
+     * Prepares a search of a motif with an index of specified k-mer size
+     * @param motif to search, may contain IUPAC letters
+     * @param kmerSize of an index
+     * @return a searcher or null, if a motif is not a plain IUPAC sequence or is too degenerate to be
+     * looked up in an index efficiently
+     */
+    public static IndexedMotifSearcher compile(final String motif, final int kmerSize) {
+        if (motif == null || !motif.matches(IUPAC_MOTIF)) {
+            return null;
+        }
+        final byte[] masks = new byte[motif.length()];
+        for (int i = 0; i < masks.length; i++) {
+            masks[i] = toMask(motif.charAt(i));
+        }
+        final int prefixLength = Math.min(masks.length, kmerSize);
+        long positiveBuckets = 1L << (2 * (kmerSize - prefixLength));
+        long negativeBuckets = positiveBuckets;
+        for (int i = 0; i < prefixLength; i++) {
+            positiveBuckets *= Integer.bitCount(masks[i]);
+            negativeBuckets *= Integer.bitCount(masks[masks.length - 1 - i]);
+        }
+        return positiveBuckets + negativeBuckets > MAX_LOOKUP_BUCKETS
+                ? null
+                : new IndexedMotifSearcher(masks, kmerSize);
+    }
+
+    /**
+     * Finds motifs, starting within a specified interval
+     * @param index of a chromosome
+     * @param source of a chromosome sequence
+     * @param contig name of a chromosome
+     * @param from start of the interval, 1-based
+     * @param to end of the interval, inclusive
+     * @param strand to search on, both strands are searched if null
+     * @param limit maximum number of motifs to find
+     * @param includeSequence whether to fill matched sequence of motifs
+     * @return motifs, ordered by start, a positive strand match goes first
+     * @throws IOException if reading fails
+     */
+    public List<Motif> search(final MotifIndex.Reader index, final SequenceSource source, final String contig,
+                              final int from, final int to, final StrandSerializable strand, final int limit,
+                              final boolean includeSequence) throws IOException {
+        final List<Motif> motifs = new ArrayList<>();
+        final SequenceBuffer sequence = new SequenceBuffer(source, index.getLength(), false);
+        final int last = Math.min(to, index.getLength() - motifLength + 1);
+        for (int windowStart = Math.max(1, from); windowStart <= last && motifs.size() < limit;
+             windowStart += WINDOW_SIZE) {
+            final int windowEnd = (int) Math.min(last, (long) windowStart + WINDOW_SIZE - 1);
+            final int[] positiveStarts = findStarts(index, sequence, positive, strand, windowStart, windowEnd);
+            final int[] negativeStarts = findStarts(index, sequence, negative, strand, windowStart, windowEnd);
+            int i = 0;
+            int j = 0;
+            while ((i < positiveStarts.length || j < negativeStarts.length) && motifs.size() < limit) {
+                if (j == negativeStarts.length
+                        || i < positiveStarts.length && positiveStarts[i] <= negativeStarts[j]) {
+                    motifs.add(toMotif(contig, positiveStarts[i++], StrandSerializable.POSITIVE,
+                            sequence, includeSequence));
+                } else {
+                    motifs.add(toMotif(contig, negativeStarts[j++], StrandSerializable.NEGATIVE,
+                            sequence, includeSequence));
+                }
+            }
+        }
+        return motifs;
+    }
+
+    /**
+     * Finds the first motif, starting after a specified position
+     * @return a motif or null, if there is no such motif
+     */
+    public Motif findNext(final MotifIndex.Reader index, final SequenceSource source, final String contig,
+                          final int position, final StrandSerializable strand, final boolean includeSequence)
+            throws IOException {
+        final List<Motif> motifs = search(index, source, contig, position + 1, index.getLength(), strand, 1,
+                includeSequence);
+        return motifs.isEmpty() ? null : motifs.get(0);
+    }
+
+    /**
+     * Finds the last motif, starting before a specified position
+     * @return a motif or null, if there is no such motif
+     */
+    public Motif findPrevious(final MotifIndex.Reader index, final SequenceSource source, final String contig,
+                              final int position, final StrandSerializable strand, final boolean includeSequence)
+            throws IOException {
+        final SequenceBuffer sequence = new SequenceBuffer(source, index.getLength(), true);
+        int windowEnd = Math.min(position - 1, index.getLength() - motifLength + 1);
+        while (windowEnd >= 1) {
+            final int windowStart = Math.max(1, windowEnd - WINDOW_SIZE + 1);
+            final int[] positiveStarts = findStarts(index, sequence, positive, strand, windowStart, windowEnd);
+            final int[] negativeStarts = findStarts(index, sequence, negative, strand, windowStart, windowEnd);
+            final int lastPositive = positiveStarts.length == 0 ? 0 : positiveStarts[positiveStarts.length - 1];
+            final int lastNegative = negativeStarts.length == 0 ? 0 : negativeStarts[negativeStarts.length - 1];
+            if (lastNegative > lastPositive) {
+                return toMotif(contig, lastNegative, StrandSerializable.NEGATIVE, sequence, includeSequence);
+            }
+            if (lastPositive > 0) {
+                return toMotif(contig, lastPositive, StrandSerializable.POSITIVE, sequence, includeSequence);
+            }
+            windowEnd = windowStart - 1;
+        }
+        return null;
+    }
+
+    private int[] findStarts(final MotifIndex.Reader index, final SequenceBuffer sequence, final StrandPattern target,
+                             final StrandSerializable strand, final int from, final int to) throws IOException {
+        if (strand != null && strand != target.strand) {
+            return new int[0];
+        }
+        final int kmerSize = index.getKmerSize();
+        int[] candidates = new int[0];
+        for (int i = 0; i < target.bucketRanges.length; i += 2) {
+            candidates = concat(candidates, index.find(target.bucketRanges[i], target.bucketRanges[i + 1],
+                    from - 1, to));
+        }
+        for (int i = 0; i < candidates.length; i++) {
+            // index keeps 0-based positions
+            candidates[i]++;
+        }
+        boolean verify = motifLength > kmerSize;
+        if (motifLength < kmerSize) {
+            // motifs in the last k - 1 bases before a gap or the end of a sequence are not covered by k-mers
+            int[] gapStarts = index.findGapStarts(from - 1 + motifLength, to + kmerSize - 1);
+            if (to + kmerSize - 2 >= index.getLength()) {
+                gapStarts = concat(gapStarts, new int[] {index.getLength()});
+            }
+            final int[] uncovered = new int[gapStarts.length * (kmerSize - motifLength)];
+            int filled = 0;
+            for (int gapStart : gapStarts) {
+                final int last = Math.min(to, gapStart - motifLength + 1);
+                for (int start = Math.max(from, gapStart - kmerSize + 2); start <= last; start++) {
+                    uncovered[filled++] = start;
+                }
+            }
+            candidates = concat(candidates, Arrays.copyOf(uncovered, filled));
+            verify = filled > 0;
+        }
+        if (target.bucketRanges.length > 2 || motifLength < kmerSize && verify) {
+            Arrays.sort(candidates);
+        }
+        if (!verify) {
+            return candidates;
+        }
+        int matched = 0;
+        for (int i = 0; i < candidates.length; i++) {
+            final int start = candidates[i];
+            // positions before close gaps may repeat
+            if ((i == 0 || start != candidates[i - 1]) && matches(sequence, start, target.masks)) {
+                candidates[matched++] = start;
+            }
+        }
+        return Arrays.copyOf(candidates, matched);
+    }
+
+    private boolean matches(final SequenceBuffer sequence, final int start, final byte[] masks)
+            throws IOException {
+        sequence.load(start, start + masks.length - 1);
+        for (int i = 0; i < masks.length; i++) {
+            final int base = MotifIndex.encode(sequence.get(start + i));
+            if (base < 0 || (masks[i] & (1 << base)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Motif toMotif(final String contig, final int start, final StrandSerializable strand,
+                          final SequenceBuffer sequence, final boolean includeSequence) throws IOException {
+        final int end = start + motifLength - 1;
+        String matched = null;
+        if (includeSequence) {
+            sequence.load(start, end);
+            final byte[] bases = new byte[motifLength];
+            for (int i = 0; i < motifLength; i++) {
+                bases[i] = sequence.get(start + i);
+            }
+            matched = new String(bases, StandardCharsets.UTF_8);
+        }
+        return new Motif(contig, start, end, strand, matched);
+    }
+
+    private static int[] concat(final int[] first, final int[] second) {
+        if (first.length == 0) {
+            return second;
+        }
+        final int[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static byte toMask(final char letter) {
+        switch (Character.toUpperCase(letter)) {
+            case 'A': return A;
+            case 'C': return C;
+            case 'G': return G;
+            case 'T': return T;
+            case 'R': return A | G;
+            case 'Y': return C | T;
+            case 'M': return A | C;
+            case 'K': return G | T;
+            case 'S': return C | G;
+            case 'W': return A | T;
+            case 'H': return A | C | T;
+            case 'B': return C | G | T;
+            case 'V': return A | C | G;
+            case 'D': return A | G | T;
+            case 'N': return A | C | G | T;
+            default: return 0;
+        }
+    }
+
+    private static byte[] reverseComplement(final byte[] masks) {
+        final byte[] result = new byte[masks.length];
+        for (int i = 0; i < masks.length; i++) {
+            final byte mask = masks[masks.length - 1 - i];
+            result[i] = (byte) (((mask & A) << 3) | ((mask & C) << 1) | ((mask & G) >> 1) | ((mask & T) >> 3));
+        }
+        return result;
+    }
+
+    /**
+     * Provides bases of a chromosome sequence
+     */
+    @FunctionalInterface
+    public interface SequenceSource {
+        /**
+         * @param start 1-based position
+         * @param end inclusive position
+         * @return bases of the interval
+         */
+        byte[] read(int start, int end) throws IOException;
+    }
+
+    private static final class StrandPattern {
+        private final StrandSerializable strand;
+        private final byte[] masks;
+        private final int[] bucketRanges;
+
+        private StrandPattern(final byte[] masks, final int kmerSize, final StrandSerializable strand) {
+            this.strand = strand;
+            this.masks = masks;
+            final int prefixLength = Math.min(masks.length, kmerSize);
+            final int suffixBits = 2 * (kmerSize - prefixLength);
+            int[] prefixes = {0};
+            for (int i = 0; i < prefixLength; i++) {
+                final int[] expanded = new int[prefixes.length * Integer.bitCount(masks[i])];
+                int filled = 0;
+                for (int prefix : prefixes) {
+                    for (int base = 0; base < 4; base++) {
+                        if ((masks[i] & (1 << base)) != 0) {
+                            expanded[filled++] = (prefix << 2) | base;
+                        }
+                    }
+                }
+                prefixes = expanded;
+            }
+            this.bucketRanges = new int[prefixes.length * 2];
+            for (int i = 0; i < prefixes.length; i++) {
+                bucketRanges[2 * i] = prefixes[i] << suffixBits;
+                bucketRanges[2 * i + 1] = (prefixes[i] + 1) << suffixBits;
+            }
+        }
+    }
+
+    private static final class SequenceBuffer {
+        private final SequenceSource source;
+        private final int length;
+        private final boolean backward;
+        private byte[] bases = new byte[0];
+        private int start = 1;
+
+        private SequenceBuffer(final SequenceSource source, final int length, final boolean backward) {
+            this.source = source;
+            this.length = length;
+            this.backward = backward;
+        }
+
+        private void load(final int from, final int to) throws IOException {
+            if (from >= start && to < start + bases.length) {
+                return;
+            }
+            final int size = Math.max(SEQUENCE_BUFFER_SIZE, to - from + 1);
+            start = backward ? Math.max(1, to - size + 1) : from;
+            final int end = backward ? to : Math.min(length, from + size - 1);
+            bases = source.read(start, end);
+        }
+
+        private byte get(final int position) {
+            return bases[position - start];
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.util.motif;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A fixed length motif, compiled into bitmask tables for a bit-parallel (shift-and) scan of a sequence.
+ * <p>
+ * For each byte value a table keeps a mask of motif positions, matching this byte, so a scan of a sequence
+ * updates the state of all motif prefixes with a single shift and a single lookup per base. Tables are kept for
+ * both the motif and its reverse complement, so both strands are scanned in one pass.
+ * </p>
+ * <p>
+ * Motifs of IUPAC letters, character classes of IUPAC letters, the '.' wildcard and fixed repeat counts, e.g.
+ * {@code ACNGT} or {@code [ACGT]{6}}, are supported. Letters are matched in the same way as
+ * {@link IupacRegexConverter} translates them into a regex.
+ * </p>
+ */
+public final class MotifBitmask {
+
+    public static final int MAX_LENGTH = Long.SIZE;
+
+    private static final int BYTE_VALUES = 256;
+    private static final int BYTE_MASK = 0xFF;
+    private static final String IUPAC_LETTERS = "ACGTRYMKSWHBVDN";
+    private static final String WILDCARD = ".";
+    private static final Pattern TOKEN = Pattern.compile("(\\[[a-zA-Z]+]|[a-zA-Z.])(\\{(\\d{1,2})})?");
+
+    private final int length;
+    private final long[] positive;
+    private final long[] negative;
+
+    private MotifBitmask(final List<boolean[]> positiveSets, final List<boolean[]> negativeSets) {
+        this.length = positiveSets.size();
+        this.positive = toTable(positiveSets);
+        this.negative = toTable(negativeSets);
+    }
+
+    /**
+     * Compiles a motif into bitmask tables
+     * @param motif a motif or a regex
+     * @return compiled tables or null, if a motif isn't a supported fixed length pattern
+     */
+    public static MotifBitmask compile(final String motif) {
+        if (motif == null || motif.isEmpty()) {
+            return null;
+        }
+        final List<boolean[]> positiveSets = new ArrayList<>();
+        final List<boolean[]> negativeSets = new ArrayList<>();
+        final Matcher matcher = TOKEN.matcher(motif);
+        int position = 0;
+        while (position < motif.length()) {
+            matcher.region(position, motif.length());
+            if (!matcher.lookingAt()) {
+                return null;
+            }
+            final String atom = matcher.group(1);
+            final int count = matcher.group(3) == null ? 1 : Integer.parseInt(matcher.group(3));
+            if (count == 0 || positiveSets.size() + count > MAX_LENGTH) {
+                return null;
+            }
+            final boolean[] positiveSet = new boolean[BYTE_VALUES];
+            final boolean[] negativeSet = new boolean[BYTE_VALUES];
+            for (String letter : atom.replaceAll("[\\[\\]]", "").split("")) {
+                if (!WILDCARD.equals(letter) && IUPAC_LETTERS.indexOf(letter.toUpperCase(Locale.US)) < 0) {
+                    return null;
+                }
+                addAll(positiveSet, IupacRegex.getRegexByIupacLetter(letter));
+                addAll(negativeSet, IupacRegex.getComplementRegexByIupacLetter(letter));
+            }
+            for (int i = 0; i < count; i++) {
+                positiveSets.add(positiveSet);
+                negativeSets.add(0, negativeSet);
+            }
+            position = matcher.end();
+        }
+        return new MotifBitmask(positiveSets, negativeSets);
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @param base a sequence byte
+     * @return a mask of motif positions, matching a byte
+     */
+    public long getPositiveMask(final byte base) {
+        return positive[base & BYTE_MASK];
+    }
+
+    /**
+     * @param base a sequence byte
+     * @return a mask of reverse complement motif positions, matching a byte
+     */
+    public long getNegativeMask(final byte base) {
+        return negative[base & BYTE_MASK];
+    }
+
+    private static void addAll(final boolean[] set, final String regex) {
+        if (WILDCARD.equals(regex)) {
+            for (int i = 0; i < set.length; i++) {
+                set[i] = i != '\n';
+            }
+            return;
+        }
+        for (char letter : regex.replaceAll("[\\[\\]]", "").toCharArray()) {
+            set[Character.toLowerCase(letter)] = true;
+            set[Character.toUpperCase(letter)] = true;
+        }
+    }
+
+    private static long[] toTable(final List<boolean[]> sets) {
+        final long[] table = new long[BYTE_VALUES];
+        for (int position = 0; position < sets.size(); position++) {
+            final boolean[] set = sets.get(position);
+            for (int value = 0; value < BYTE_VALUES; value++) {
+                if (set[value]) {
+                    table[value] |= 1L << position;
+                }
+            }
+        }
+        return table;
+    }
+}
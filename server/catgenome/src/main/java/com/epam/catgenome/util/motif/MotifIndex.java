@@ -0,0 +1,364 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.util.motif;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.springframework.util.Assert;
+
+/**
+ * A file with positions of all k-mers of a chromosome sequence, used to find motifs without scanning a sequence.
+ * <p>
+ * A k-mer is encoded as a number with two bits per base (A, C, G, T), the first base being the most significant,
+ * so all k-mers, starting with the same prefix, have consecutive codes. The file keeps a table of offsets of
+ * each k-mer code and positions of k-mers, grouped by code and sorted within a group. K-mers containing bases
+ * other than A, C, G, T are not indexed, so runs of such bases (gaps) are kept after positions to find motifs,
+ * shorter than k, before them.
+ * </p>
+ */
+public final class MotifIndex {
+
+    public static final int MAX_KMER_SIZE = 12;
+
+    private static final int MAGIC = 0x4E474B4D;
+    private static final int VERSION = 2;
+    private static final int HEADER_FIELDS = 5;
+    private static final int HEADER_SIZE = HEADER_FIELDS * Integer.BYTES;
+    private static final int BATCH_POSITIONS = 4 * 1024 * 1024;
+    private static final int NO_BASE = -1;
+
+    private MotifIndex() {
+        // no operations by default
+    }
+
+    /**
+     * Returns a 2-bit code of a base
+     * @param base a nucleotide in any case
+     * @return a code of A, C, G, T or -1 for any other letter
+     */
+    public static int encode(final byte base) {
+        switch (base) {
+            case 'A':
+            case 'a':
+                return 0;
+            case 'C':
+            case 'c':
+                return 1;
+            case 'G':
+            case 'g':
+                return 2;
+            case 'T':
+            case 't':
+                return 3;
+            default:
+                return NO_BASE;
+        }
+    }
+
+    /**
+     * Checks whether an index file has a format, supported by {@link Reader}
+     * @param file an index file
+     * @return false, if a file was written by a previous version
+     * @throws IOException if reading fails
+     */
+    public static boolean isSupported(final File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    return false;
+                }
+            }
+            header.flip();
+            return header.getInt() == MAGIC && header.getInt() == VERSION;
+        }
+    }
+
+    /**
+     * Writes an index for a chromosome sequence. The sequence is scanned several times, so that positions of only
+     * a limited number of k-mers are kept in memory at once.
+     * @param file to write
+     * @param sequence of a chromosome
+     * @param kmerSize length of indexed k-mers
+     * @throws IOException if writing fails
+     */
+    public static void write(final File file, final byte[] sequence, final int kmerSize) throws IOException {
+        Assert.isTrue(kmerSize > 0 && kmerSize <= MAX_KMER_SIZE, "K-mer size should be in 1.." + MAX_KMER_SIZE);
+        final int bucketsCount = 1 << (2 * kmerSize);
+        final int[] offsets = new int[bucketsCount + 1];
+        forEachKmer(sequence, kmerSize, (position, code) -> offsets[code + 1]++);
+        for (int i = 0; i < bucketsCount; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + offsets.length * Integer.BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putInt(kmerSize).putInt(sequence.length)
+                    .putInt(offsets[bucketsCount]);
+            header.asIntBuffer().put(offsets);
+            write(channel, header, 0);
+
+            final long positionsStart = header.capacity();
+            int from = 0;
+            while (from < bucketsCount) {
+                int to = from + 1;
+                while (to < bucketsCount && offsets[to + 1] - offsets[from] <= BATCH_POSITIONS) {
+                    to++;
+                }
+                final int firstCode = from;
+                final int lastCode = to;
+                final int[] cursors = new int[to - from];
+                for (int i = 0; i < cursors.length; i++) {
+                    cursors[i] = offsets[from + i] - offsets[from];
+                }
+                final int[] batch = new int[offsets[to] - offsets[from]];
+                forEachKmer(sequence, kmerSize, (position, code) -> {
+                    if (code >= firstCode && code < lastCode) {
+                        batch[cursors[code - firstCode]++] = position;
+                    }
+                });
+                final ByteBuffer buffer = ByteBuffer.allocate(batch.length * Integer.BYTES);
+                buffer.asIntBuffer().put(batch);
+                write(channel, buffer, positionsStart + (long) offsets[from] * Integer.BYTES);
+                from = to;
+            }
+
+            final int[] gaps = findGaps(sequence);
+            final ByteBuffer buffer = ByteBuffer.allocate((gaps.length + 1) * Integer.BYTES);
+            buffer.putInt(gaps.length / 2);
+            buffer.asIntBuffer().put(gaps);
+            write(channel, buffer, positionsStart + (long) offsets[bucketsCount] * Integer.BYTES);
+        }
+    }
+
+    /**
+     * @return 0-based starts and exclusive ends of runs of bases other than A, C, G, T, one after another
+     */
+    private static int[] findGaps(final byte[] sequence) {
+        int[] gaps = new int[0];
+        int count = 0;
+        int i = 0;
+        while (i < sequence.length) {
+            if (encode(sequence[i]) != NO_BASE) {
+                i++;
+                continue;
+            }
+            final int start = i;
+            while (i < sequence.length && encode(sequence[i]) == NO_BASE) {
+                i++;
+            }
+            if (count == gaps.length) {
+                gaps = Arrays.copyOf(gaps, Math.max(2, gaps.length * 2));
+            }
+            gaps[count++] = start;
+            gaps[count++] = i;
+        }
+        return Arrays.copyOf(gaps, count);
+    }
+
+    private static void forEachKmer(final byte[] sequence, final int kmerSize, final KmerConsumer consumer) {
+        final int mask = (1 << (2 * kmerSize)) - 1;
+        int code = 0;
+        int validBases = 0;
+        for (int i = 0; i < sequence.length; i++) {
+            final int base = encode(sequence[i]);
+            if (base == NO_BASE) {
+                validBases = 0;
+                continue;
+            }
+            code = ((code << 2) | base) & mask;
+            if (++validBases >= kmerSize) {
+                consumer.accept(i - kmerSize + 1, code);
+            }
+        }
+    }
+
+    private static void write(final FileChannel channel, final ByteBuffer buffer, final long position)
+            throws IOException {
+        buffer.rewind();
+        long current = position;
+        while (buffer.hasRemaining()) {
+            current += channel.write(buffer, current);
+        }
+    }
+
+    @FunctionalInterface
+    private interface KmerConsumer {
+        void accept(int position, int code);
+    }
+
+    /**
+     * Reads positions of k-mers from an index file
+     */
+    public static final class Reader implements Closeable {
+
+        private final FileChannel channel;
+        private final int kmerSize;
+        private final int length;
+        private final int[] offsets;
+        private final long positionsStart;
+        private final int[] gapStarts;
+        private final ByteBuffer intBuffer = ByteBuffer.allocate(Integer.BYTES);
+
+        public Reader(final File file) throws IOException {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                final ByteBuffer header = readFully(0, HEADER_SIZE);
+                Assert.isTrue(header.getInt() == MAGIC && header.getInt() == VERSION,
+                        "Unsupported motif index file " + file.getAbsolutePath());
+                this.kmerSize = header.getInt();
+                this.length = header.getInt();
+                final int positionsCount = header.getInt();
+                this.offsets = new int[(1 << (2 * kmerSize)) + 1];
+                readFully(HEADER_SIZE, offsets.length * Integer.BYTES).asIntBuffer().get(offsets);
+                this.positionsStart = HEADER_SIZE + (long) offsets.length * Integer.BYTES;
+                final long gapsStart = positionsStart + (long) positionsCount * Integer.BYTES;
+                final int gapsCount = readFully(gapsStart, Integer.BYTES).getInt();
+                final int[] gaps = new int[gapsCount * 2];
+                readFully(gapsStart + Integer.BYTES, gaps.length * Integer.BYTES).asIntBuffer().get(gaps);
+                this.gapStarts = new int[gapsCount];
+                for (int i = 0; i < gapsCount; i++) {
+                    gapStarts[i] = gaps[2 * i];
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        public int getKmerSize() {
+            return kmerSize;
+        }
+
+        /**
+         * @return length of an indexed sequence
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * Finds positions of k-mers with codes in a specified range, starting within a specified interval
+         * @param fromCode the first k-mer code, inclusive
+         * @param toCode the last k-mer code, exclusive
+         * @param fromPosition start of the interval, 0-based
+         * @param toPosition end of the interval, exclusive
+         * @return ascending 0-based positions of k-mers
+         * @throws IOException if reading fails
+         */
+        public int[] find(final int fromCode, final int toCode, final int fromPosition, final int toPosition)
+                throws IOException {
+            final int[][] slices = new int[toCode - fromCode][];
+            int total = 0;
+            for (int code = fromCode; code < toCode; code++) {
+                final int first = lowerBound(offsets[code], offsets[code + 1], fromPosition);
+                final int last = lowerBound(first, offsets[code + 1], toPosition);
+                final int[] slice = new int[last - first];
+                if (slice.length > 0) {
+                    readFully(positionsStart + (long) first * Integer.BYTES, slice.length * Integer.BYTES)
+                            .asIntBuffer().get(slice);
+                }
+                slices[code - fromCode] = slice;
+                total += slice.length;
+            }
+            if (slices.length == 1) {
+                return slices[0];
+            }
+            final int[] positions = new int[total];
+            int filled = 0;
+            for (int[] slice : slices) {
+                System.arraycopy(slice, 0, positions, filled, slice.length);
+                filled += slice.length;
+            }
+            Arrays.sort(positions);
+            return positions;
+        }
+
+        /**
+         * Finds starts of runs of bases other than A, C, G, T within a specified interval
+         * @param fromPosition start of the interval, 0-based
+         * @param toPosition end of the interval, exclusive
+         * @return ascending 0-based positions of the first bases of runs
+         */
+        public int[] findGapStarts(final int fromPosition, final int toPosition) {
+            final int first = lowerBound(gapStarts, fromPosition);
+            final int last = Math.max(first, lowerBound(gapStarts, toPosition));
+            return Arrays.copyOfRange(gapStarts, first, last);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private int lowerBound(final int from, final int to, final int position) throws IOException {
+            int low = from;
+            int high = to;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (readPosition(middle) < position) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private static int lowerBound(final int[] positions, final int position) {
+            final int index = Arrays.binarySearch(positions, position);
+            return index < 0 ? -index - 1 : index;
+        }
+
+        private int readPosition(final int index) throws IOException {
+            intBuffer.clear();
+            readFully(intBuffer, positionsStart + (long) index * Integer.BYTES);
+            return intBuffer.getInt(0);
+        }
+
+        private ByteBuffer readFully(final long position, final int size) throws IOException {
+            final ByteBuffer buffer = ByteBuffer.allocate(size);
+            readFully(buffer, position);
+            buffer.flip();
+            return buffer;
+        }
+
+        private void readFully(final ByteBuffer buffer, final long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of motif index file");
+                }
+            }
+        }
+    }
+}
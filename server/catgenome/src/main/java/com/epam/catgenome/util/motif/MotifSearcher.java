@@ -56,8 +56,9 @@ public final class MotifSearcher {
     public static Iterator<Motif> getIterator(final byte[] seq, final String regex, final StrandSerializable strand,
                                               final String contig, final int start,
                                               final boolean includeSequence, final int searchResultSizeLimit) {
-        if (IupacRegexConverter.validatePlainMotif(regex)) {
-            return new SimpleMotifSearchIterator(seq, regex, strand, contig, start, includeSequence);
+        final MotifBitmask bitmask = MotifBitmask.compile(regex);
+        if (bitmask != null) {
+            return new BitmaskMotifSearchIterator(seq, bitmask, strand, contig, start, includeSequence);
         } else if (strand == null && IupacRegexConverter.validateReversibleRegex(regex)) {
             return new ReversingRegexMotifSearchIterator(seq, regex, contig, start, includeSequence);
         } else {
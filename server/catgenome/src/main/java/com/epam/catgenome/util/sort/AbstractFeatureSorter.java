@@ -27,20 +27,26 @@ package com.epam.catgenome.util.sort;
 import com.epam.catgenome.util.NgbFileUtils;
 import htsjdk.samtools.util.BlockCompressedInputStream;
 import htsjdk.samtools.util.BlockCompressedOutputStream;
-import htsjdk.samtools.util.CloseableIterator;
-import htsjdk.samtools.util.SortingCollection;
+import htsjdk.tribble.index.Index;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.index.tabix.TabixIndexCreator;
 import htsjdk.tribble.readers.AsciiLineReader;
-
-import java.io.*;
+import htsjdk.tribble.readers.PositionalBufferedStream;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.Comparator;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public abstract class AbstractFeatureSorter {
 
-    private static final int ESTIMATED_RECORD_SIZE = 150;
-    private static final String UTF_8 = "UTF-8";
-
     private File inputFile;
     private File outputFile;
 
@@ -54,8 +60,6 @@ public abstract class AbstractFeatureSorter {
      */
     private File tmpDir;
 
-    protected Comparator<SortableRecord> comparator = getDefaultComparator();
-
     public AbstractFeatureSorter(File inputFile, File outputFile, File tmpDir) {
         this.inputFile = inputFile;
         this.outputFile = outputFile;
@@ -68,39 +72,42 @@ public abstract class AbstractFeatureSorter {
      *
      */
     public void run(int maxMemory) throws IOException {
+        run(maxMemory, false);
+    }
+
+    /**
+     * Sorts the input file with {@link ParallelExternalSorter}: chunks of the file are parsed and sorted in
+     * parallel, spilled to the temporary directory and merged into the output file.
+     *
+     * @param maxMemory - in megabytes
+     * @param createIndex - if true and the output file is block compressed, a tabix index is created next to it
+     *                    while the sorted features are written
+     * @throws IOException
+     */
+    public void run(int maxMemory, boolean createIndex) throws IOException {
+        final boolean compressed = NgbFileUtils.isGzCompressed(outputFile.getName());
         try (
-                PrintWriter writer = NgbFileUtils.isGzCompressed(outputFile.getName()) ?
-                        new PrintWriter(new OutputStreamWriter(new BlockCompressedOutputStream(outputFile), UTF_8)) :
-                        new PrintWriter(outputFile, UTF_8);
-                AsciiLineReader reader = NgbFileUtils.isGzCompressed(inputFile.getName()) ?
-                        new AsciiLineReader(new BlockCompressedInputStream(inputFile)) :
-                        new AsciiLineReader(new FileInputStream(inputFile))
+                OutputStream output = compressed ?
+                        new BlockCompressedOutputStream(outputFile) :
+                        new FileOutputStream(outputFile);
+                PositionalBufferedStream input = new PositionalBufferedStream(
+                        NgbFileUtils.isGzCompressed(inputFile.getName()) ?
+                                new BlockCompressedInputStream(inputFile) :
+                                new FileInputStream(inputFile))
         ) {
-
-            SortableRecordCodec codec = new SortableRecordCodec();
-
-            SortingCollection cltn = SortingCollection.newInstance(
-                    SortableRecord.class, codec, comparator, maxMemory * 1024 * 1024 / ESTIMATED_RECORD_SIZE, tmpDir);
-
-            Parser parser = getParser();
-
-            String firstDataRow = writeHeader(reader, writer);
-            if (firstDataRow != null && !firstDataRow.isEmpty()) {
-                cltn.add(parser.createRecord(firstDataRow));
-            }
-
-            SortableRecord next;
-            while ((next = parser.readNextRecord(reader)) != null) {
-                cltn.add(next);
+            // the line reader doesn't buffer itself, so the rest of the input is read from the same stream
+            PrintWriter writer = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            String firstDataRow = writeHeader(new AsciiLineReader(input), writer);
+            writer.flush();
+
+            ParallelExternalSorter sorter = new ParallelExternalSorter(getParser(), tmpDir, maxMemory,
+                    Runtime.getRuntime().availableProcessors());
+            TabixIndexCreator indexCreator = sorter.sort(firstDataRow, input, output,
+                    createIndex ? getTabixFormat() : null);
+            if (indexCreator != null) {
+                Index index = indexCreator.finalizeIndex(((BlockCompressedOutputStream) output).getFilePointer());
+                index.writeBasedOnFeatureFile(outputFile);
             }
-
-            CloseableIterator<SortableRecord> iter = cltn.iterator();
-            while (iter.hasNext()) {
-                SortableRecord al = iter.next();
-                writer.println(al.getText());
-
-            }
-            iter.close();
         }
     }
 
@@ -117,6 +124,8 @@ public abstract class AbstractFeatureSorter {
 
     abstract Parser getParser() throws IOException;
 
+    abstract TabixFormat getTabixFormat();
+
     /**
      * Write the header to the output file. Since many readers can't help but read
      * one feature line, that line should be returned and will then be treated as a record
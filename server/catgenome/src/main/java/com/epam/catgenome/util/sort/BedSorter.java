@@ -24,6 +24,7 @@
 
 package com.epam.catgenome.util.sort;
 
+import htsjdk.tribble.index.tabix.TabixFormat;
 import htsjdk.tribble.readers.AsciiLineReader;
 
 import java.io.File;
@@ -45,6 +46,11 @@ public class BedSorter extends AbstractFeatureSorter {
         return new Parser(CHR_COL, START_COL);
     }
 
+    @Override
+    TabixFormat getTabixFormat() {
+        return TabixFormat.BED;
+    }
+
     @Override
     String writeHeader(AsciiLineReader reader, PrintWriter writer) throws IOException {
 
@@ -25,6 +25,7 @@
 package com.epam.catgenome.util.sort;
 
 import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.tribble.index.tabix.TabixFormat;
 import htsjdk.tribble.readers.AsciiLineReader;
 
 import java.io.File;
@@ -45,6 +46,11 @@ public class GFFSorter extends AbstractFeatureSorter {
         return new Parser(CHR_COL, START_COL);
     }
 
+    @Override
+    TabixFormat getTabixFormat() {
+        return TabixFormat.GFF;
+    }
+
     @Override
     String writeHeader(AsciiLineReader reader, PrintWriter writer) {
         String nextLine;
@@ -0,0 +1,580 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.util.sort;
+
+import com.epam.catgenome.exception.SortingException;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.tribble.SimpleFeature;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.index.tabix.TabixIndexCreator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An external sort engine for tab-delimited feature files. Input is read in large chunks, which are split into
+ * lines, parsed and sorted in parallel. Lines are never decoded into strings: a chunk is sorted by a primitive key,
+ * packing a chromosome ordinal and a start position, and is spilled to a temporary file in a compact binary form,
+ * keeping the key next to the line bytes. Spilled chunks are then merged in a single k-way pass, which also feeds
+ * a tabix index, if it is requested for a block compressed output.
+ * <p>
+ * Chromosomes are ordered by name and features by start, as {@link AbstractFeatureSorter#getDefaultComparator()}
+ * does. Features with equal keys keep their order of the input file.
+ * </p>
+ */
+final class ParallelExternalSorter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelExternalSorter.class);
+
+    private static final int BYTES_IN_MB = 1024 * 1024;
+    // line offsets, keys and sort order take about as much memory as lines themselves
+    private static final int CHUNK_MEMORY_FACTOR = 2;
+    private static final int MIN_CHUNK_SIZE = 64 * 1024;
+    private static final int MIN_LINE_ESTIMATE = 64;
+    private static final int MIN_MERGE_BUFFER_SIZE = 4 * 1024;
+    private static final int MAX_MERGE_BUFFER_SIZE = 64 * 1024;
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    private static final int KEY_SHIFT = 32;
+    private static final long START_MASK = 0xFFFFFFFFL;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 60;
+    private static final byte LINE_FEED = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+    private static final byte COMMENT = '#';
+    private static final int VCF_REF_COLUMN = 3;
+
+    private final Parser parser;
+    private final File tmpDir;
+    private final int chunkSize;
+    private final int parallelism;
+    private final long maxMemory;
+
+    ParallelExternalSorter(final Parser parser, final File tmpDir, final int maxMemoryMb, final int parallelism) {
+        this.parser = parser;
+        this.tmpDir = tmpDir;
+        this.parallelism = parallelism;
+        this.maxMemory = (long) maxMemoryMb * BYTES_IN_MB;
+        // one chunk is being read, while others are being sorted
+        this.chunkSize = (int) Math.max(MIN_CHUNK_SIZE,
+                Math.min(Integer.MAX_VALUE / CHUNK_MEMORY_FACTOR,
+                        maxMemory / (parallelism + 1) / CHUNK_MEMORY_FACTOR));
+    }
+
+    /**
+     * Sorts lines of an input stream and writes them to an output stream
+     *
+     * @param firstLine   a first data line, already consumed from the input, or null
+     * @param input       a stream to read the rest of data lines from
+     * @param output      a stream to write sorted lines to
+     * @param tabixFormat a format of a tabix index to build, or null if an index isn't required. An index is only
+     *                    built for a {@link BlockCompressedOutputStream} output
+     * @return a tabix index creator, filled with sorted features, or null
+     * @throws IOException if reading, writing or spilling fails
+     */
+    TabixIndexCreator sort(final String firstLine, final InputStream input, final OutputStream output,
+                           final TabixFormat tabixFormat) throws IOException {
+        final RecordWriter writer = new RecordWriter(output, tabixFormat);
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        final List<Future<SpillFile>> spills = new ArrayList<>();
+        final Queue<File> spillFiles = new ConcurrentLinkedQueue<>();
+        final Semaphore permits = new Semaphore(parallelism);
+        try {
+            byte[] carry = firstLine == null ? new byte[0] : (firstLine + "\n").getBytes(StandardCharsets.UTF_8);
+            int carryLength = carry.length;
+            while (true) {
+                final byte[] buffer = new byte[Math.max(chunkSize, carryLength * 2)];
+                System.arraycopy(carry, 0, buffer, 0, carryLength);
+                final int length = fill(input, buffer, carryLength);
+                final boolean last = length < buffer.length;
+                final int end = last ? length : lastLineEnd(buffer, length);
+                if (end < 0) {
+                    // a single line exceeds the chunk, read it further
+                    carry = buffer;
+                    carryLength = length;
+                    continue;
+                }
+                if (last && spills.isEmpty()) {
+                    // everything fits in memory, no spilling is required
+                    writeChunk(sortChunk(buffer, end), writer);
+                    writer.flush();
+                    return writer.indexCreator;
+                }
+                acquire(permits);
+                spills.add(executor.submit(() -> {
+                    try {
+                        return spill(sortChunk(buffer, end), spillFiles);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+                if (last) {
+                    break;
+                }
+                carry = Arrays.copyOfRange(buffer, end, length);
+                carryLength = carry.length;
+            }
+            merge(await(spills), writer);
+            writer.flush();
+            return writer.indexCreator;
+        } finally {
+            shutdown(executor, spills);
+            deleteSpills(spillFiles);
+        }
+    }
+
+    private SortedChunk sortChunk(final byte[] data, final int length) {
+        final LineFields fields = new LineFields();
+        int[] offsets = new int[Math.max(1, length / MIN_LINE_ESTIMATE)];
+        int[] lengths = new int[offsets.length];
+        int[] starts = new int[offsets.length];
+        int[] chromosomes = new int[offsets.length];
+        final Map<String, Integer> chromosomeIds = new HashMap<>();
+        final List<String> names = new ArrayList<>();
+        int count = 0;
+        int previousId = -1;
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = indexOf(data, LINE_FEED, lineStart, length);
+            final int next = lineEnd < 0 ? length : lineEnd + 1;
+            lineEnd = lineEnd < 0 ? length : lineEnd;
+            if (lineEnd > lineStart && data[lineEnd - 1] == CARRIAGE_RETURN) {
+                lineEnd--;
+            }
+            if (!isSkipped(data, lineStart, lineEnd)) {
+                parser.parse(data, lineStart, lineEnd, fields);
+                if (count == offsets.length) {
+                    final int capacity = count * 2;
+                    offsets = Arrays.copyOf(offsets, capacity);
+                    lengths = Arrays.copyOf(lengths, capacity);
+                    starts = Arrays.copyOf(starts, capacity);
+                    chromosomes = Arrays.copyOf(chromosomes, capacity);
+                }
+                // features of a chromosome usually follow each other, avoid decoding the same name again
+                if (previousId < 0 || !sameName(names.get(previousId), data, fields)) {
+                    final String name = new String(data, fields.chromosomeOffset, fields.chromosomeLength,
+                            StandardCharsets.UTF_8);
+                    previousId = chromosomeIds.computeIfAbsent(name, n -> {
+                        names.add(n);
+                        return names.size() - 1;
+                    });
+                }
+                offsets[count] = lineStart;
+                lengths[count] = lineEnd - lineStart;
+                starts[count] = fields.start;
+                chromosomes[count] = previousId;
+                count++;
+            }
+            lineStart = next;
+        }
+
+        final String[] sortedNames = names.toArray(new String[0]);
+        Arrays.sort(sortedNames);
+        final int[] ranks = new int[sortedNames.length];
+        for (int i = 0; i < sortedNames.length; i++) {
+            ranks[chromosomeIds.get(sortedNames[i])] = i;
+        }
+        final long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = key(ranks[chromosomes[i]], starts[i]);
+        }
+        return new SortedChunk(data, offsets, lengths, keys, sortOrder(keys), sortedNames);
+    }
+
+    private SpillFile spill(final SortedChunk chunk, final Queue<File> spillFiles) throws IOException {
+        final File file = File.createTempFile("sort", ".tmp", tmpDir);
+        spillFiles.add(file);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),
+                OUTPUT_BUFFER_SIZE))) {
+            for (int i : chunk.order) {
+                out.writeLong(chunk.keys[i]);
+                out.writeInt(chunk.lengths[i]);
+                out.write(chunk.data, chunk.offsets[i], chunk.lengths[i]);
+            }
+        }
+        return new SpillFile(file, chunk.names);
+    }
+
+    private void writeChunk(final SortedChunk chunk, final RecordWriter writer) throws IOException {
+        for (int i : chunk.order) {
+            final long key = chunk.keys[i];
+            writer.write(chunk.names[chromosome(key)], start(key),
+                    chunk.data, chunk.offsets[i], chunk.lengths[i]);
+        }
+    }
+
+    private void merge(final List<SpillFile> spills, final RecordWriter writer) throws IOException {
+        // map chromosome ranks of each chunk to ordinals of all chromosomes, both are ordered by name
+        final TreeSet<String> allNames = new TreeSet<>();
+        spills.forEach(spill -> allNames.addAll(Arrays.asList(spill.names)));
+        final String[] names = allNames.toArray(new String[0]);
+        final int bufferSize = (int) Math.max(MIN_MERGE_BUFFER_SIZE,
+                Math.min(MAX_MERGE_BUFFER_SIZE, maxMemory / Math.max(1, spills.size())));
+        LOGGER.debug("Merging {} sorted chunks", spills.size());
+
+        final PriorityQueue<SpillReader> queue = new PriorityQueue<>(Math.max(1, spills.size()));
+        final List<SpillReader> readers = new ArrayList<>(spills.size());
+        try {
+            for (int i = 0; i < spills.size(); i++) {
+                final SpillFile spill = spills.get(i);
+                final int[] ordinals = new int[spill.names.length];
+                for (int j = 0; j < ordinals.length; j++) {
+                    ordinals[j] = Arrays.binarySearch(names, spill.names[j]);
+                }
+                final SpillReader reader = new SpillReader(spill.file, ordinals, i, bufferSize);
+                readers.add(reader);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            while (!queue.isEmpty()) {
+                final SpillReader reader = queue.poll();
+                writer.write(names[chromosome(reader.key)], start(reader.key),
+                        reader.line, 0, reader.length);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+        } finally {
+            for (SpillReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private static List<SpillFile> await(final List<Future<SpillFile>> spills) throws IOException {
+        final List<SpillFile> files = new ArrayList<>(spills.size());
+        for (Future<SpillFile> spill : spills) {
+            try {
+                files.add(spill.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Sorting was interrupted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new SortingException(e.getCause());
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Cancels chunks, that are still being sorted or spilled, and waits for them to stop, so that no spill file
+     * is created after the spill files are deleted
+     */
+    private static void shutdown(final ExecutorService executor, final List<Future<SpillFile>> spills) {
+        for (Future<SpillFile> spill : spills) {
+            if (!spill.isDone()) {
+                spill.cancel(true);
+            }
+        }
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warn("Chunk sorting didn't stop in {} seconds, some temporary files may be left",
+                        SHUTDOWN_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void deleteSpills(final Queue<File> spillFiles) {
+        for (File file : spillFiles) {
+            if (file.exists() && !file.delete()) {
+                LOGGER.debug("Failed to delete temporary file {}", file);
+            }
+        }
+    }
+
+    private static void acquire(final Semaphore permits) throws IOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Sorting was interrupted", e);
+        }
+    }
+
+    private static int fill(final InputStream input, final byte[] buffer, final int offset) throws IOException {
+        int length = offset;
+        while (length < buffer.length) {
+            final int read = input.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+    private static int lastLineEnd(final byte[] buffer, final int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer[i] == LINE_FEED) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(final byte[] data, final byte value, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isSkipped(final byte[] data, final int from, final int to) {
+        if (from < to && data[from] == COMMENT) {
+            return true;
+        }
+        for (int i = from; i < to; i++) {
+            if (!Character.isWhitespace(data[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameName(final String name, final byte[] data, final LineFields fields) {
+        if (name.length() != fields.chromosomeLength) {
+            return false;
+        }
+        for (int i = 0; i < fields.chromosomeLength; i++) {
+            if (name.charAt(i) != data[fields.chromosomeOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Packs a chromosome ordinal and a start position into a sort key. A sign bit of a start is flipped, so that
+     * negative starts, stored as unsigned, still go before positive ones.
+     */
+    private static long key(final int chromosome, final int start) {
+        return (long) chromosome << KEY_SHIFT | (start ^ Integer.MIN_VALUE) & START_MASK;
+    }
+
+    private static int chromosome(final long key) {
+        return (int) (key >>> KEY_SHIFT);
+    }
+
+    private static int start(final long key) {
+        return (int) (key & START_MASK) ^ Integer.MIN_VALUE;
+    }
+
+    /**
+     * Sorts positions of keys with a stable merge sort, so that lines with equal keys keep their input order
+     */
+    private static int[] sortOrder(final long[] keys) {
+        int[] order = new int[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        int[] buffer = new int[keys.length];
+        for (int width = 1; width < order.length; width *= 2) {
+            for (int from = 0; from < order.length; from += width * 2) {
+                final int middle = Math.min(from + width, order.length);
+                final int to = Math.min(from + width * 2, order.length);
+                int left = from;
+                int right = middle;
+                for (int i = from; i < to; i++) {
+                    if (left < middle && (right >= to || keys[order[left]] <= keys[order[right]])) {
+                        buffer[i] = order[left++];
+                    } else {
+                        buffer[i] = order[right++];
+                    }
+                }
+            }
+            final int[] swap = order;
+            order = buffer;
+            buffer = swap;
+        }
+        return order;
+    }
+
+    /**
+     * Positions of sort key columns in a line
+     */
+    static final class LineFields {
+        int chromosomeOffset;
+        int chromosomeLength;
+        int start;
+    }
+
+    private static final class SortedChunk {
+        private final byte[] data;
+        private final int[] offsets;
+        private final int[] lengths;
+        private final long[] keys;
+        private final int[] order;
+        private final String[] names;
+
+        private SortedChunk(final byte[] data, final int[] offsets, final int[] lengths, final long[] keys,
+                            final int[] order, final String[] names) {
+            this.data = data;
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.keys = keys;
+            this.order = order;
+            this.names = names;
+        }
+    }
+
+    private static final class SpillFile {
+        private final File file;
+        private final String[] names;
+
+        private SpillFile(final File file, final String[] names) {
+            this.file = file;
+            this.names = names;
+        }
+    }
+
+    private static final class SpillReader implements Comparable<SpillReader>, Closeable {
+        private final DataInputStream input;
+        private final int[] ordinals;
+        private final int index;
+        private long key;
+        private byte[] line = new byte[MIN_MERGE_BUFFER_SIZE];
+        private int length;
+
+        private SpillReader(final File file, final int[] ordinals, final int index, final int bufferSize)
+                throws IOException {
+            this.input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), bufferSize));
+            this.ordinals = ordinals;
+            this.index = index;
+        }
+
+        private boolean next() throws IOException {
+            final long chunkKey;
+            try {
+                chunkKey = input.readLong();
+            } catch (EOFException e) {
+                return false;
+            }
+            key = key(ordinals[chromosome(chunkKey)], start(chunkKey));
+            length = input.readInt();
+            if (line.length < length) {
+                line = new byte[Math.max(length, line.length * 2)];
+            }
+            input.readFully(line, 0, length);
+            return true;
+        }
+
+        @Override
+        public int compareTo(final SpillReader other) {
+            final int result = Long.compare(key, other.key);
+            return result != 0 ? result : Integer.compare(index, other.index);
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    /**
+     * Writes sorted lines and, optionally, registers them in a tabix index
+     */
+    private final class RecordWriter {
+        private final OutputStream output;
+        private final BlockCompressedOutputStream compressedOutput;
+        private final TabixFormat tabixFormat;
+        private final TabixIndexCreator indexCreator;
+
+        private RecordWriter(final OutputStream output, final TabixFormat tabixFormat) {
+            this.compressedOutput = output instanceof BlockCompressedOutputStream
+                    ? (BlockCompressedOutputStream) output : null;
+            // block compressed stream is buffered itself
+            this.output = compressedOutput != null ? output : new BufferedOutputStream(output, OUTPUT_BUFFER_SIZE);
+            this.tabixFormat = tabixFormat;
+            this.indexCreator = tabixFormat != null && compressedOutput != null
+                    ? new TabixIndexCreator(tabixFormat) : null;
+        }
+
+        private void write(final String chromosome, final int start, final byte[] data, final int offset,
+                           final int length) throws IOException {
+            final long position = indexCreator != null ? compressedOutput.getFilePointer() : 0;
+            output.write(data, offset, length);
+            output.write(LINE_FEED);
+            if (indexCreator != null && start != Integer.MAX_VALUE) {
+                indexCreator.addFeature(toFeature(chromosome, start, data, offset, length), position);
+            }
+        }
+
+        private SimpleFeature toFeature(final String chromosome, final int start, final byte[] data,
+                                        final int offset, final int length) {
+            final boolean zeroBased = (tabixFormat.flags & TabixFormat.ZERO_BASED) != 0;
+            final int featureStart = zeroBased ? start + 1 : start;
+            final int end;
+            if (tabixFormat.endPositionColumn > 0) {
+                end = Parser.parseInt(data, offset, offset + length, tabixFormat.endPositionColumn - 1, start);
+            } else if (tabixFormat.flags == TabixFormat.VCF_FLAGS) {
+                end = featureStart + Math.max(0,
+                        Parser.columnLength(data, offset, offset + length, VCF_REF_COLUMN) - 1);
+            } else {
+                end = featureStart;
+            }
+            return new SimpleFeature(chromosome, featureStart, Math.max(end, featureStart));
+        }
+
+        private void flush() throws IOException {
+            output.flush();
+        }
+    }
+}
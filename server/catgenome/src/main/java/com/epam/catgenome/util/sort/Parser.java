@@ -24,66 +24,111 @@
 
 package com.epam.catgenome.util.sort;
 
-import htsjdk.tribble.readers.AsciiLineReader;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.io.IOException;
-import java.util.regex.Pattern;
-
-import static com.epam.catgenome.util.sort.AbstractFeatureSorter.isEmptyLine;
+import com.epam.catgenome.exception.SortingException;
 
+import java.nio.charset.StandardCharsets;
 
+/**
+ * Locates sort key columns: a chromosome and a start position, in raw bytes of a tab-delimited feature line
+ */
 public class Parser {
 
-    private static final Pattern TAB_PATTERN = Pattern.compile("\t");
+    private static final byte TAB = '\t';
+    private static final int RADIX = 10;
 
     private int chrCol;
     private int startCol;
-    private String commentPrefix;
-
-    private static final Logger LOG = LoggerFactory.getLogger(SortableRecordCodec.class);
 
     public Parser(int chrCol, int startCol) {
         this.chrCol = chrCol;
         this.startCol = startCol;
-        this.commentPrefix = "#";
     }
 
-    public SortableRecord readNextRecord(AsciiLineReader reader) {
-        String nextLine;
-        try {
-            nextLine = reader.readLine();
-        } catch (IOException e) {
-            LOG.error("Error reading line: {}", e);
-            return null;
-        }
-        if (nextLine == null) {
-            return null;
-        } else if (isEmptyLine(nextLine) || nextLine.startsWith(commentPrefix)) {
-            return readNextRecord(reader);
+    /**
+     * Parses a line, filling positions of its chromosome column and a start position. A start, that isn't
+     * a number, is treated as {@code Integer.MAX_VALUE}, so that such lines go last.
+     *
+     * @param data   a buffer, containing the line
+     * @param from   an offset of the line in the buffer
+     * @param to     an end offset of the line, excluding a line break
+     * @param fields to fill
+     */
+    void parse(final byte[] data, final int from, final int to, final ParallelExternalSorter.LineFields fields) {
+        final int chrStart = columnStart(data, from, to, chrCol);
+        if (chrStart < 0 || columnStart(data, from, to, startCol) < 0) {
+            throw new SortingException("Not enough columns in line: "
+                    + new String(data, from, to - from, StandardCharsets.UTF_8));
         }
+        fields.chromosomeOffset = chrStart;
+        fields.chromosomeLength = columnEnd(data, chrStart, to) - chrStart;
+        fields.start = parseInt(data, from, to, startCol, Integer.MAX_VALUE);
+    }
 
-        try {
-            return createRecord(nextLine);
-        } catch (ArrayIndexOutOfBoundsException e) {
-            LOG.error("Error creating record: {}", e);
-            throw e;
+    /**
+     * Parses an integer column of a line
+     *
+     * @return a column value or a default value, if the column is absent or isn't a number
+     */
+    static int parseInt(final byte[] data, final int from, final int to, final int column, final int defaultValue) {
+        final int start = columnStart(data, from, to, column);
+        if (start < 0) {
+            return defaultValue;
+        }
+        int i = start;
+        int end = columnEnd(data, start, to);
+        while (i < end && Character.isWhitespace(data[i])) {
+            i++;
+        }
+        while (end > i && Character.isWhitespace(data[end - 1])) {
+            end--;
         }
+        final boolean negative = i < end && data[i] == '-';
+        if (negative || i < end && data[i] == '+') {
+            i++;
+        }
+        if (i == end) {
+            return defaultValue;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            final int digit = Character.digit(data[i], RADIX);
+            if (digit < 0) {
+                return defaultValue;
+            }
+            value = value * RADIX + digit;
+            if (value > Integer.MAX_VALUE) {
+                return defaultValue;
+            }
+        }
+        return (int) (negative ? -value : value);
     }
 
-    public SortableRecord createRecord(String nextLine) {
-        String[] fields = TAB_PATTERN.split(nextLine, -1);
-
-        String chr = fields[chrCol];
+    /**
+     * @return a length of a column of a line in bytes or -1 if the column is absent
+     */
+    static int columnLength(final byte[] data, final int from, final int to, final int column) {
+        final int start = columnStart(data, from, to, column);
+        return start < 0 ? -1 : columnEnd(data, start, to) - start;
+    }
 
-        int start;
-        try {
-            start = Integer.parseInt(fields[startCol].trim());
-        } catch (NumberFormatException e) {
-            start = Integer.MAX_VALUE;
+    private static int columnStart(final byte[] data, final int from, final int to, final int column) {
+        int start = from;
+        for (int i = 0; i < column; i++) {
+            final int end = columnEnd(data, start, to);
+            if (end == to) {
+                return -1;
+            }
+            start = end + 1;
         }
+        return start;
+    }
 
-        return new SortableRecord(chr, start, nextLine);
+    private static int columnEnd(final byte[] data, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == TAB) {
+                return i;
+            }
+        }
+        return to;
     }
 }
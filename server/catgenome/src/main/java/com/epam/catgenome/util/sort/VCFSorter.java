@@ -24,6 +24,7 @@
 
 package com.epam.catgenome.util.sort;
 
+import htsjdk.tribble.index.tabix.TabixFormat;
 import htsjdk.tribble.readers.AsciiLineReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,6 +47,11 @@ public class VCFSorter extends AbstractFeatureSorter {
         return new Parser(0, 1);
     }
 
+    @Override
+    TabixFormat getTabixFormat() {
+        return TabixFormat.VCF;
+    }
+
     @Override
     String writeHeader(AsciiLineReader reader, PrintWriter writer) {
         try {
@@ -25,6 +25,7 @@
 package com.epam.catgenome.manager;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -49,6 +50,21 @@ import com.epam.catgenome.manager.export.VcfExportFilterForm;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.facet.FacetResult;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.SimpleFSDirectory;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -60,12 +76,16 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.core.io.Resource;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.epam.catgenome.common.AbstractManagerTest;
 import com.epam.catgenome.controller.vo.registration.FeatureIndexedFileRegistrationRequest;
 import com.epam.catgenome.dao.index.FeatureIndexDao;
+import com.epam.catgenome.dao.index.FeatureIndexQueryCache;
+import com.epam.catgenome.dao.index.FeatureIndexReaderRegistry;
+import com.epam.catgenome.dao.index.FeatureIndexWriterRegistry;
 import com.epam.catgenome.dao.index.field.VcfIndexSortField;
 import com.epam.catgenome.entity.AbstractFilterForm.OrderBy;
 import com.epam.catgenome.entity.BiologicalDataItem;
@@ -197,6 +217,15 @@ public class FeatureIndexManagerTest extends AbstractManagerTest {
     @Autowired
     private ExportManager exportManager;
 
+    @Autowired
+    private FeatureIndexQueryCache featureIndexQueryCache;
+
+    @Autowired
+    private FeatureIndexWriterRegistry featureIndexWriterRegistry;
+
+    @Autowired
+    private FeatureIndexReaderRegistry featureIndexReaderRegistry;
+
     private long referenceId;
     private Reference testReference;
     private Chromosome testChromosome;
@@ -936,6 +965,71 @@ public class FeatureIndexManagerTest extends AbstractManagerTest {
         assertEquals(BED_FEATURE_END, (int) entries.get(ZERO).getEndIndex());
     }
 
+    @Test
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void testIndexUpdatesVisibleBeforeCommit() throws IOException {
+        final Path indexPath = fileManager.getIndexPathForFile(testBedFile);
+        final String featureName = "Pos1";
+        assertEquals(ONE, featureIndexDao.searchFeatures(featureName, testBedFile, null).getEntries().size());
+
+        featureIndexWriterRegistry.write(indexPath, writer -> {
+            writer.deleteDocuments(new TermQuery(new Term(
+                    FeatureIndexDao.FeatureIndexFields.FEATURE_NAME.getFieldName(), featureName.toLowerCase())));
+            return 1;
+        });
+        featureIndexReaderRegistry.refresh(indexPath);
+
+        assertTrue(featureIndexWriterRegistry.getPendingOperations() > 0);
+        assertTrue(featureIndexDao.searchFeatures(featureName, testBedFile, null).getEntries().isEmpty());
+
+        featureIndexWriterRegistry.commit(indexPath);
+        assertEquals(0, featureIndexWriterRegistry.getPendingOperations());
+        assertTrue(featureIndexDao.searchFeatures(featureName, testBedFile, null).getEntries().isEmpty());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void testConcurrentFacetCountsMatchSequential() throws Exception {
+        final Resource resource = context.getResource(CLASSPATH_TEMPLATES_FELIS_CATUS_VCF);
+        final FeatureIndexedFileRegistrationRequest request = new FeatureIndexedFileRegistrationRequest();
+        request.setReferenceId(referenceId);
+        request.setPath(resource.getFile().getAbsolutePath());
+        request.setName("second.vcf");
+        final VcfFile secondVcf = vcfManager.registerVcfFile(request);
+        final List<VcfFile> files = Arrays.asList(testVcf, secondVcf);
+
+        final Query query;
+        try (Analyzer analyzer = new StandardAnalyzer()) {
+            query = new QueryParser(FeatureIndexDao.FeatureIndexFields.FEATURE_ID.getFieldName(), analyzer)
+                    .parse("variationType:snv");
+        }
+
+        final FacetResult uids;
+        final FacetResult chromosomes;
+        try (Directory first = new SimpleFSDirectory(fileManager.getIndexPathForFile(testVcf));
+             Directory second = new SimpleFSDirectory(fileManager.getIndexPathForFile(secondVcf));
+             MultiReader reader = new MultiReader(DirectoryReader.open(first), DirectoryReader.open(second))) {
+            assertTrue(reader.leaves().size() > 1);
+            final FacetsCollector collector = new FacetsCollector();
+            new IndexSearcher(reader).search(query, collector);
+            uids = new SortedSetDocValuesFacetCounts(new DefaultSortedSetDocValuesReaderState(reader,
+                    FeatureIndexDao.FeatureIndexFields.FACET_UID.getFieldName()), collector)
+                    .getTopChildren(reader.numDocs(), FeatureIndexDao.FeatureIndexFields.F_UID.getFieldName());
+            chromosomes = new SortedSetDocValuesFacetCounts(new DefaultSortedSetDocValuesReaderState(reader,
+                    FeatureIndexDao.FeatureIndexFields.FACET_CHR_ID.getFieldName()), collector)
+                    .getTopChildren(DEFAULT_PAGE_SIZE, FeatureIndexDao.FeatureIndexFields.CHR_ID.getFieldName());
+        }
+
+        assertNotNull(uids);
+        assertTrue(uids.childCount > 0);
+        assertEquals(uids.childCount, featureIndexDao.getTotalVariationsCountFacet(files, query));
+
+        assertNotNull(chromosomes);
+        assertFalse(chromosomes.labelValues.length == 0);
+        assertEquals(Arrays.stream(chromosomes.labelValues).map(lv -> Long.parseLong(lv.label)).collect(toList()),
+                featureIndexDao.getChromosomeIdsWhereVariationsPresentFacet(files, query));
+    }
+
     @Test
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void testReindexVcf() throws FeatureIndexException, IOException {
@@ -1394,6 +1488,31 @@ public class FeatureIndexManagerTest extends AbstractManagerTest {
 
     }
 
+    @Test
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void searchGenesByFilterWithCursor() throws IOException {
+        final GeneFilterForm geneFilterForm = getSmallGeneFilter();
+        geneFilterForm.setFeatureTypes(Collections.singletonList(FeatureType.GENE.getFileValue()));
+        geneFilterForm.setOrderBy(Collections.singletonList(new OrderBy("START_INDEX", true)));
+
+        final IndexSearchResult<GeneIndexEntry> firstPage = featureIndexManager.searchGenesByReference(
+                geneFilterForm, referenceId);
+        assertNotNull(firstPage.getCursor());
+
+        geneFilterForm.setPointer(firstPage.getPointer());
+        final IndexSearchResult<GeneIndexEntry> byPointer = featureIndexManager.searchGenesByReference(
+                geneFilterForm, referenceId);
+
+        geneFilterForm.setPointer(null);
+        geneFilterForm.setCursor(firstPage.getCursor());
+        final IndexSearchResult<GeneIndexEntry> byCursor = featureIndexManager.searchGenesByReference(
+                geneFilterForm, referenceId);
+
+        assertEquals(ONE, byCursor.getEntries().size());
+        assertEquals(byPointer.getEntries().get(ZERO).getFeatureId(), byCursor.getEntries().get(ZERO).getFeatureId());
+        assertEquals(byPointer.getTotalResultsCount(), byCursor.getTotalResultsCount());
+    }
+
     @Test
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void searchCDS() throws IOException {
@@ -1589,6 +1708,34 @@ public class FeatureIndexManagerTest extends AbstractManagerTest {
         testGroupingBy(VcfIndexSortField.QUALITY);
     }
 
+    @Test
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void testGroupingByRanges() throws IOException {
+        final String quality = VcfIndexSortField.QUALITY.name();
+        final List<Group> values = featureIndexManager.groupVariations(new VcfFilterForm(), testProject.getId(),
+                quality);
+        final List<Group> ranges = featureIndexManager.groupVariations(new VcfFilterForm(), testProject.getId(),
+                quality, 10.0);
+
+        assertFalse(ranges.isEmpty());
+        assertTrue(ranges.size() <= values.size());
+        assertEquals(values.stream().mapToInt(Group::getEntriesCount).sum(),
+                ranges.stream().mapToInt(Group::getEntriesCount).sum());
+        for (Group range : ranges) {
+            assertTrue(range.getGroupName().startsWith("["));
+        }
+        for (int i = 1; i < values.size(); i++) {
+            assertTrue(values.get(i - 1).getEntriesCount() >= values.get(i).getEntriesCount());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void testGroupingByRangesOfNonNumericField() throws IOException {
+        featureIndexManager.groupVariations(new VcfFilterForm(), testProject.getId(),
+                VcfIndexSortField.VARIATION_TYPE.name(), 10.0);
+    }
+
     private void testGroupingBy(final VcfIndexSortField field) throws IOException {
         final List<Group> counts = featureIndexManager.groupVariations(new VcfFilterForm(), testProject.getId(),
                 field.name());
@@ -1672,6 +1819,79 @@ public class FeatureIndexManagerTest extends AbstractManagerTest {
         assertNotNull(exportResult);
     }
 
+    @Test
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void testExportSortedVariationsInBatches() throws IOException {
+        final FeatureIndexedFileRegistrationRequest request = new FeatureIndexedFileRegistrationRequest();
+        request.setReferenceId(referenceId);
+        final Resource resource = context.getResource("classpath:templates/samples.vcf");
+        request.setPath(resource.getFile().getAbsolutePath());
+
+        final VcfFile samplesVcf = vcfManager.registerVcfFile(request);
+
+        final VcfExportFilterForm form = new VcfExportFilterForm();
+        form.setVcfFileIdsByProject(Collections.singletonMap(testProject.getId(),
+                Collections.singletonList(samplesVcf.getId())));
+        form.setExportFields(Collections.singletonList("startIndex"));
+        form.setOrderBy(Collections.singletonList(
+                new OrderBy(FeatureIndexDao.FeatureIndexFields.START_INDEX.name(), false)));
+        final int total = featureIndexManager.filterVariations(form).getEntries().size();
+
+        final Object pageSize = ReflectionTestUtils.getField(exportManager, "exportPageSize");
+        ReflectionTestUtils.setField(exportManager, "exportPageSize", 2);
+        final String[] lines;
+        try {
+            lines = new String(exportManager.exportVariations(form, FileFormat.CSV, false)).split("\n");
+        } finally {
+            ReflectionTestUtils.setField(exportManager, "exportPageSize", pageSize);
+        }
+
+        assertTrue(total > 2);
+        assertEquals(total, lines.length);
+        for (int i = 1; i < lines.length; i++) {
+            assertTrue(Integer.parseInt(lines[i - 1]) <= Integer.parseInt(lines[i]));
+        }
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void testCachedFilterResults() throws IOException {
+        final FeatureIndexedFileRegistrationRequest request = new FeatureIndexedFileRegistrationRequest();
+        request.setReferenceId(referenceId);
+        final Resource resource = context.getResource("classpath:templates/samples.vcf");
+        request.setPath(resource.getFile().getAbsolutePath());
+
+        final VcfFile samplesVcf = vcfManager.registerVcfFile(request);
+
+        final VcfFilterForm form = new VcfFilterForm();
+        form.setVcfFileIdsByProject(Collections.singletonMap(testProject.getId(),
+                Collections.singletonList(samplesVcf.getId())));
+        form.setVariationTypes(new FilterSection<>(Arrays.asList(VariationType.INS, VariationType.MNP)));
+        form.setPage(ONE);
+        form.setPageSize(2);
+
+        featureIndexQueryCache.clear();
+        final IndexSearchResult<VcfIndexEntry> page1 = featureIndexManager.filterVariations(form);
+        assertTrue(featureIndexQueryCache.getCachedQueriesCount() > 0);
+        assertEquals(page1.getEntries().size(), featureIndexManager.filterVariations(form).getEntries().size());
+
+        final String groupBy = FeatureIndexDao.FeatureIndexFields.VARIATION_TYPE.name();
+        final List<Group> groups = featureIndexManager.groupVariations(form, groupBy);
+        final int cachedResults = featureIndexQueryCache.getCachedResultsCount();
+        assertTrue(cachedResults > 0);
+        final List<Group> cachedGroups = featureIndexManager.groupVariations(form, groupBy);
+        assertEquals(cachedResults, featureIndexQueryCache.getCachedResultsCount());
+        assertEquals(groups.size(), cachedGroups.size());
+        for (int i = 0; i < groups.size(); i++) {
+            assertEquals(groups.get(i).getGroupName(), cachedGroups.get(i).getGroupName());
+            assertEquals(groups.get(i).getEntriesCount(), cachedGroups.get(i).getEntriesCount());
+        }
+
+        final List<Chromosome> chromosomes = featureIndexManager.filterChromosomes(form);
+        assertFalse(chromosomes.isEmpty());
+        assertEquals(chromosomes.size(), featureIndexManager.filterChromosomes(form).size());
+    }
+
     @Test
     @Ignore // TODO: remove this test before merging to master
     @Transactional(propagation = Propagation.REQUIRES_NEW)
@@ -0,0 +1,155 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.manager.bam;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.epam.catgenome.entity.wig.Wig;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.ValidationStringency;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ClassPathResource;
+
+public class BamIndexRegionScannerTest {
+
+    private static final String TEST_BAM = "templates/agnX1.09-28.trim.dm606.realign.bam";
+    private static final String BAI_EXTENSION = ".bai";
+    private static final String CHROMOSOME_NAME = "X";
+    private static final int LEAF_BIN_SIZE = 16384;
+    private static final int BINS_PER_REGION = 8;
+    private static final String GENERATED_BAM = "generated.bam";
+    private static final String GENERATED_INDEX = "generated.bai";
+    private static final int GENERATED_LENGTH = LEAF_BIN_SIZE * 64;
+    private static final int READ_LENGTH = 100;
+    private static final int COARSE_BIN_WINDOWS = 8;
+    private static final int LAST_READ_START = LEAF_BIN_SIZE * 30 + 1;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final BamIndexRegionScanner scanner = new BamIndexRegionScanner();
+
+    @Test
+    public void shouldFindSameRegionsAsRecordQueries() throws IOException {
+        final File bam = new ClassPathResource(TEST_BAM).getFile();
+        try (SamReader reader = SamReaderFactory.makeDefault()
+                .validationStringency(ValidationStringency.SILENT)
+                .open(bam)) {
+            final SAMSequenceRecord sequence = reader.getFileHeader().getSequence(CHROMOSOME_NAME);
+            final int regionSize = LEAF_BIN_SIZE * BINS_PER_REGION;
+            final int regionsCount = sequence.getSequenceLength() / regionSize;
+            final int end = regionsCount * regionSize;
+
+            final List<Wig> regions = scanner.scan(bam, new File(bam.getAbsolutePath() + BAI_EXTENSION),
+                    sequence.getSequenceIndex(), 1, end, regionsCount, false);
+
+            final List<Integer> expected = new ArrayList<>();
+            for (int start = 1; start < end; start += regionSize) {
+                try (SAMRecordIterator iterator = reader.query(CHROMOSOME_NAME, start, start + regionSize - 1,
+                        false)) {
+                    if (iterator.hasNext()) {
+                        expected.add(start);
+                    }
+                }
+            }
+
+            Assert.assertFalse(regions.isEmpty());
+            Assert.assertEquals(expected.size(), regions.size());
+            for (int i = 0; i < regions.size(); i++) {
+                Assert.assertEquals(expected.get(i), regions.get(i).getStartIndex());
+                Assert.assertEquals(expected.get(i) + regionSize - 1, (int) regions.get(i).getEndIndex());
+                Assert.assertEquals(1, regions.get(i).getValue(), 0);
+            }
+        }
+    }
+
+    @Test
+    public void shouldFindReadsSpanningLeafBins() throws IOException {
+        final File bam = folder.newFile(GENERATED_BAM);
+        final SAMFileHeader header = new SAMFileHeader();
+        header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+        header.addSequence(new SAMSequenceRecord(CHROMOSOME_NAME, GENERATED_LENGTH));
+        try (SAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(true)
+                .makeBAMWriter(header, true, bam)) {
+            // the first read spans a border of leaf bins, so it is kept in a coarser bin
+            writer.addAlignment(makeRecord(header, LEAF_BIN_SIZE - READ_LENGTH / 2));
+            writer.addAlignment(makeRecord(header, LAST_READ_START));
+        }
+
+        final List<Wig> regions = scanner.scan(bam, new File(folder.getRoot(), GENERATED_INDEX), 0, 1,
+                GENERATED_LENGTH, GENERATED_LENGTH / LEAF_BIN_SIZE, false);
+
+        final List<Integer> starts = new ArrayList<>();
+        regions.forEach(region -> starts.add(region.getStartIndex()));
+        final int lastReadRegion = (LAST_READ_START - 1) / LEAF_BIN_SIZE * LEAF_BIN_SIZE + 1;
+        Assert.assertTrue(starts.containsAll(Arrays.asList(1, LEAF_BIN_SIZE + 1, lastReadRegion)));
+        // the first read may be attributed to any window of its bin, but not outside of it
+        Assert.assertTrue(starts.stream().allMatch(start -> start < LEAF_BIN_SIZE * COARSE_BIN_WINDOWS
+                || start == lastReadRegion));
+    }
+
+    @Test
+    public void shouldEstimateDensity() throws IOException {
+        final File bam = new ClassPathResource(TEST_BAM).getFile();
+        try (SamReader reader = SamReaderFactory.makeDefault()
+                .validationStringency(ValidationStringency.SILENT)
+                .open(bam)) {
+            final SAMSequenceRecord sequence = reader.getFileHeader().getSequence(CHROMOSOME_NAME);
+            final List<Wig> regions = scanner.scan(bam, new File(bam.getAbsolutePath() + BAI_EXTENSION),
+                    sequence.getSequenceIndex(), 1, sequence.getSequenceLength(), 1, true);
+
+            Assert.assertEquals(1, regions.size());
+            Assert.assertTrue(regions.get(0).getValue() > 1);
+            Assert.assertTrue(regions.get(0).getValue() <= bam.length());
+        }
+    }
+
+    private static SAMRecord makeRecord(final SAMFileHeader header, final int start) {
+        final SAMRecord record = new SAMRecord(header);
+        record.setReadName("read" + start);
+        record.setReferenceIndex(0);
+        record.setAlignmentStart(start);
+        record.setCigarString(READ_LENGTH + "M");
+        record.setReadString(StringUtils.repeat('A', READ_LENGTH));
+        record.setBaseQualities(SAMRecord.NULL_QUALS);
+        return record;
+    }
+}
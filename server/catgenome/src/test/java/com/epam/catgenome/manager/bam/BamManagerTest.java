@@ -28,8 +28,11 @@ package com.epam.catgenome.manager.bam;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -48,7 +51,9 @@ import com.epam.catgenome.entity.bam.BamFile;
 import com.epam.catgenome.entity.bam.BamQueryOption;
 import com.epam.catgenome.entity.bam.BamTrack;
 import com.epam.catgenome.entity.bam.BamTrackMode;
+import com.epam.catgenome.entity.bam.BaseCoverage;
 import com.epam.catgenome.entity.bam.Read;
+import com.epam.catgenome.entity.bam.SpliceJunctionsEntity;
 import com.epam.catgenome.entity.bam.TrackDirectionType;
 import com.epam.catgenome.entity.bucket.Bucket;
 import com.epam.catgenome.entity.reference.Chromosome;
@@ -57,7 +62,10 @@ import com.epam.catgenome.entity.reference.Sequence;
 import com.epam.catgenome.entity.track.Track;
 import com.epam.catgenome.manager.bucket.BucketManager;
 import com.epam.catgenome.manager.parallel.TaskExecutorService;
+import com.epam.catgenome.manager.reference.ReferenceGenomeManager;
 import com.epam.catgenome.manager.reference.ReferenceManager;
+import com.epam.catgenome.util.BamUtil;
+import htsjdk.samtools.SamReader;
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Server;
@@ -77,6 +85,7 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.core.io.Resource;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -117,6 +126,15 @@ public class BamManagerTest extends AbstractManagerTest {
     @Autowired
     private TaskExecutorService taskExecutorService;
 
+    @Autowired
+    private ReferenceGenomeManager referenceGenomeManager;
+
+    @Autowired
+    private BamCoveragePyramidManager coveragePyramidManager;
+
+    @Autowired
+    private BamHelper bamHelper;
+
     private static final String TEST_NSAME = "BIG " + BamManagerTest.class.getSimpleName();
     private static final String TEST_REF_NAME = "//dm606.X.fa";
     private static final String TEST_BAM_NAME = "//agnX1.09-28.trim.dm606.realign.bam";
@@ -134,6 +152,12 @@ public class BamManagerTest extends AbstractManagerTest {
     private static final int TEST_COUNT = 30;
     private static final int LARGE_TEST_COUNT = 10000000;
     private static final String BAI_EXTENSION = ".bai";
+    private static final int TEST_SHARD_SIZE = 1000;
+    private static final int TEST_LOADING_THREADS = 2;
+    private static final String PYRAMID_ENABLED_FIELD = "enabled";
+    private static final int PYRAMID_BIN_SIZE = 256;
+    private static final int PYRAMID_START_INDEX = 12582145;
+    private static final int PYRAMID_END_INDEX = 12589312;
 
     private static final String PRETTY_NAME = "pretty";
     private static final long WRONG_FILE_ID = 123L;
@@ -683,6 +707,181 @@ public class BamManagerTest extends AbstractManagerTest {
         Assert.assertTrue(fullTrack.getDownsampleCoverage() == null);
     }
 
+    @Test
+    @Transactional(propagation = Propagation.REQUIRES_NEW, rollbackFor = Exception.class)
+    public void testShardedLoadingMatchesSequential() throws IOException {
+        final BamFile bamFile = setUpTestFile();
+        final Consumer<BamQueryOption> optionsSetter = option -> {
+            option.setTrackDirection(TrackDirectionType.MIDDLE);
+            option.setMode(BamTrackMode.COVERAGE);
+        };
+
+        final BamTrack<Read> sequentialTrack = loadLargeRangeTrack(bamFile, optionsSetter);
+        final BamTrack<Read> shardedTrack = loadShardedLargeRangeTrack(bamFile, optionsSetter);
+
+        Assert.assertFalse(sequentialTrack.getBaseCoverage().isEmpty());
+        assertCoverageEquals(sequentialTrack, shardedTrack);
+        Assert.assertEquals(toJunctionKeys(sequentialTrack.getSpliceJunctions()),
+                toJunctionKeys(shardedTrack.getSpliceJunctions()));
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.REQUIRES_NEW, rollbackFor = Exception.class)
+    public void testShardedFullModeMatchesSequential() throws IOException {
+        final BamFile bamFile = setUpTestFile();
+        final Consumer<BamQueryOption> optionsSetter = option -> {
+            option.setTrackDirection(TrackDirectionType.MIDDLE);
+            option.setMode(BamTrackMode.FULL);
+            // reads are sampled randomly, so frames are never downsampled to compare reads
+            option.setCount(LARGE_TEST_COUNT);
+        };
+
+        final BamTrack<Read> sequentialTrack = loadLargeRangeTrack(bamFile, optionsSetter);
+        final BamTrack<Read> shardedTrack = loadShardedLargeRangeTrack(bamFile, optionsSetter);
+
+        Assert.assertFalse(sequentialTrack.getBlocks().isEmpty());
+        Assert.assertEquals(sequentialTrack.getBlocks().size(), shardedTrack.getBlocks().size());
+        for (int i = 0; i < sequentialTrack.getBlocks().size(); i++) {
+            final Read expected = sequentialTrack.getBlocks().get(i);
+            final Read actual = shardedTrack.getBlocks().get(i);
+            Assert.assertEquals(expected.getName(), actual.getName());
+            Assert.assertEquals(expected.getStartIndex(), actual.getStartIndex());
+            Assert.assertEquals(expected.getCigarString(), actual.getCigarString());
+        }
+        assertCoverageEquals(sequentialTrack, shardedTrack);
+        Assert.assertEquals(sequentialTrack.getMinPosition(), shardedTrack.getMinPosition());
+        Assert.assertEquals(sequentialTrack.getReferenceBuffer(), shardedTrack.getReferenceBuffer());
+        Assert.assertEquals(toJunctionKeys(sequentialTrack.getSpliceJunctions()),
+                toJunctionKeys(shardedTrack.getSpliceJunctions()));
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.REQUIRES_NEW, rollbackFor = Exception.class)
+    public void testCoveragePyramidMatchesReads() throws IOException {
+        final BamFile bamFile = setUpTestFile();
+        ReflectionTestUtils.setField(coveragePyramidManager, PYRAMID_ENABLED_FIELD, true);
+        try {
+            final BamTrack<Read> readsTrack = loadCoverageTrack(bamFile, SCALE_FACTOR_SMALL);
+
+            try (SamReader reader = bamHelper.makeSamReader(bamFile, testReference.getChromosomes(),
+                    testReference.getId())) {
+                coveragePyramidManager.build(bamFile, Collections.singletonList(testChromosome), reader);
+            }
+
+            final List<BaseCoverage> bins = coveragePyramidManager.loadCoverage(bamFile, chromosomeName,
+                    PYRAMID_START_INDEX, PYRAMID_END_INDEX, SCALE_FACTOR_SMALL / PYRAMID_BIN_SIZE);
+            Assert.assertFalse(bins.isEmpty());
+            for (BaseCoverage bin : bins) {
+                Assert.assertEquals(PYRAMID_BIN_SIZE, bin.getEndIndex() - bin.getStartIndex() + 1);
+                final double maxDepth = readsTrack.getBaseCoverage().stream()
+                        .filter(c -> c.getStartIndex() >= bin.getStartIndex()
+                                && c.getStartIndex() <= bin.getEndIndex())
+                        .mapToDouble(BaseCoverage::getValue)
+                        .max()
+                        .orElse(0);
+                Assert.assertEquals(maxDepth, bin.getValue(), 0);
+                Assert.assertNull(bin.getaCov());
+                Assert.assertNull(bin.getcCov());
+                Assert.assertNull(bin.getgCov());
+                Assert.assertNull(bin.gettCov());
+            }
+
+            final BamTrack<Read> pyramidTrack = loadCoverageTrack(bamFile,
+                    SCALE_FACTOR_SMALL / PYRAMID_BIN_SIZE);
+            Assert.assertEquals(bins.size(), pyramidTrack.getBaseCoverage().size());
+            for (int i = 0; i < bins.size(); i++) {
+                Assert.assertEquals(bins.get(i).getStartIndex(), pyramidTrack.getBaseCoverage().get(i)
+                        .getStartIndex());
+                Assert.assertEquals(bins.get(i).getValue(), pyramidTrack.getBaseCoverage().get(i).getValue());
+            }
+        } finally {
+            ReflectionTestUtils.setField(coveragePyramidManager, PYRAMID_ENABLED_FIELD, false);
+        }
+    }
+
+    private BamTrack<Read> loadCoverageTrack(BamFile bamFile, double scaleFactor) throws IOException {
+        Track<Read> track = getBaseReadTrack(bamFile);
+        track.setStartIndex(PYRAMID_START_INDEX);
+        track.setEndIndex(PYRAMID_END_INDEX);
+        track.setScaleFactor(scaleFactor);
+
+        BamQueryOption option = getBaseBamQueryOption();
+        option.setTrackDirection(TrackDirectionType.MIDDLE);
+        option.setMode(BamTrackMode.COVERAGE);
+
+        ResponseEmitterMock emitterMock = new ResponseEmitterMock();
+        bamManager.sendBamTrackToEmitter(track, option, emitterMock);
+        return emitterMock.getBamTrack();
+    }
+
+    private Set<String> toJunctionKeys(List<SpliceJunctionsEntity> junctions) {
+        if (junctions == null) {
+            return Collections.emptySet();
+        }
+        return junctions.stream()
+                .map(j -> j.getStart() + "-" + j.getEnd() + ":" + j.getCount())
+                .collect(Collectors.toSet());
+    }
+
+    private BamTrack<Read> loadLargeRangeTrack(BamFile bamFile, Consumer<BamQueryOption> optionsSetter)
+            throws IOException {
+        Track<Read> fullTrackQ = getBaseReadTrack(bamFile);
+        fullTrackQ.setStartIndex(TEST_START_INDEX_LARGE_RANGE);
+        fullTrackQ.setEndIndex(TEST_END_INDEX_LARGE_RANGE);
+
+        BamQueryOption option = getBaseBamQueryOption();
+        optionsSetter.accept(option);
+
+        ResponseEmitterMock emitterMock = new ResponseEmitterMock();
+        bamManager.sendBamTrackToEmitter(fullTrackQ, option, emitterMock);
+        return emitterMock.getBamTrack();
+    }
+
+    private BamTrack<Read> loadShardedLargeRangeTrack(BamFile bamFile, Consumer<BamQueryOption> optionsSetter)
+            throws IOException {
+        Track<Read> track = getBaseReadTrack(bamFile);
+        track.setStartIndex(TEST_START_INDEX_LARGE_RANGE);
+        track.setEndIndex(TEST_END_INDEX_LARGE_RANGE);
+        track.setChromosome(testChromosome);
+        BamTrack<Read> bamTrack = new BamTrack<>(track);
+
+        BamQueryOption option = getBaseBamQueryOption();
+        optionsSetter.accept(option);
+        BamUtil.validateOptions(option, testChromosome);
+
+        final BamShardedReadLoader loader = new BamShardedReadLoader(referenceManager, referenceGenomeManager,
+                TEST_LOADING_THREADS, TEST_SHARD_SIZE);
+        loader.init();
+        try {
+            Assert.assertTrue(loader.isApplicable(bamTrack));
+            ResponseEmitterMock emitterMock = new ResponseEmitterMock();
+            BamTrackEmitter trackEmitter = new BamTrackEmitter(emitterMock);
+            loader.loadReads(bamTrack, option, chromosomeName, option.getMode() == BamTrackMode.COVERAGE,
+                    trackEmitter, () -> bamHelper.makeSamReader(bamFile, Collections.singletonList(testChromosome),
+                            testReference.getId()));
+            trackEmitter.writeTrackAndFinish(bamTrack);
+            return emitterMock.getBamTrack();
+        } finally {
+            loader.shutdown();
+        }
+    }
+
+    private void assertCoverageEquals(BamTrack<Read> expectedTrack, BamTrack<Read> actualTrack) {
+        Assert.assertEquals(expectedTrack.getBaseCoverage().size(), actualTrack.getBaseCoverage().size());
+        for (int i = 0; i < expectedTrack.getBaseCoverage().size(); i++) {
+            final BaseCoverage expected = expectedTrack.getBaseCoverage().get(i);
+            final BaseCoverage actual = actualTrack.getBaseCoverage().get(i);
+            Assert.assertEquals(expected.getStartIndex(), actual.getStartIndex());
+            Assert.assertEquals(expected.getValue(), actual.getValue());
+            Assert.assertEquals(expected.getaCov(), actual.getaCov());
+            Assert.assertEquals(expected.getcCov(), actual.getcCov());
+            Assert.assertEquals(expected.getgCov(), actual.getgCov());
+            Assert.assertEquals(expected.gettCov(), actual.gettCov());
+            Assert.assertEquals(expected.getDelCov(), actual.getDelCov());
+            Assert.assertEquals(expected.getInsCov(), actual.getInsCov());
+        }
+    }
+
     private BamFile setUpTestFile() throws IOException {
         String path = resource.getFile().getAbsolutePath() + TEST_BAM_NAME;
         IndexedFileRegistrationRequest request = new IndexedFileRegistrationRequest();
@@ -0,0 +1,179 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.manager.bam;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.epam.catgenome.entity.BiologicalDataItem;
+import com.epam.catgenome.entity.BiologicalDataItemResourceType;
+import com.epam.catgenome.entity.bam.BamFile;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.ValidationStringency;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class BamReaderCacheTest {
+
+    private static final String TEST_BAM = "templates/agnX1.09-28.trim.dm606.realign.bam";
+    private static final String BAI_EXTENSION = ".bai";
+    private static final String CHROMOSOME_NAME = "X";
+    private static final int START = 12582200;
+    private static final int END = 12589228;
+    private static final int CACHE_SIZE = 2;
+    private static final long BAM_FILE_ID = 1L;
+
+    private final AtomicInteger opened = new AtomicInteger();
+    private BamReaderCache cache;
+    private BamFile bamFile;
+
+    @Before
+    public void setUp() throws IOException {
+        cache = new BamReaderCache();
+        ReflectionTestUtils.setField(cache, "maxIdleReaders", CACHE_SIZE);
+
+        final File file = new ClassPathResource(TEST_BAM).getFile();
+        final BiologicalDataItem index = new BiologicalDataItem();
+        index.setPath(file.getAbsolutePath() + BAI_EXTENSION);
+        index.setType(BiologicalDataItemResourceType.FILE);
+        bamFile = new BamFile();
+        bamFile.setId(BAM_FILE_ID);
+        bamFile.setPath(file.getAbsolutePath());
+        bamFile.setType(BiologicalDataItemResourceType.FILE);
+        bamFile.setIndex(index);
+    }
+
+    @After
+    public void tearDown() {
+        cache.clear();
+    }
+
+    @Test
+    public void shouldReuseClosedReader() throws IOException {
+        final int count = countReads();
+        Assert.assertTrue(count > 0);
+        Assert.assertEquals(count, countReads());
+        Assert.assertEquals(1, opened.get());
+    }
+
+    @Test
+    public void shouldReuseReaderWithIteratorLeftOpen() throws IOException {
+        try (SamReader reader = cache.getReader(bamFile, this::open)) {
+            final SAMRecordIterator iterator = reader.queryOverlapping(CHROMOSOME_NAME, START, END);
+            Assert.assertTrue(iterator.hasNext());
+        }
+        Assert.assertTrue(countReads() > 0);
+        Assert.assertEquals(1, opened.get());
+    }
+
+    @Test
+    public void shouldOpenNewReaderForConcurrentRequests() throws IOException {
+        try (SamReader first = cache.getReader(bamFile, this::open);
+             SamReader second = cache.getReader(bamFile, this::open)) {
+            Assert.assertNotNull(first.getFileHeader());
+            Assert.assertNotNull(second.getFileHeader());
+        }
+        Assert.assertEquals(2, opened.get());
+        countReads();
+        Assert.assertEquals(2, opened.get());
+    }
+
+    @Test
+    public void shouldOpenNewReaderAfterEviction() throws IOException {
+        countReads();
+        cache.evict(BAM_FILE_ID);
+        countReads();
+        Assert.assertEquals(2, opened.get());
+    }
+
+    @Test
+    public void shouldNotReuseReaderReturnedAfterEviction() throws IOException {
+        try (SamReader reader = cache.getReader(bamFile, this::open)) {
+            Assert.assertNotNull(reader.getFileHeader());
+            cache.evict(BAM_FILE_ID);
+        }
+        countReads();
+        Assert.assertEquals(2, opened.get());
+        countReads();
+        Assert.assertEquals(2, opened.get());
+    }
+
+    @Test
+    public void shouldForgetEvictionOnceReadersAreReturned() throws IOException {
+        cache.evict(BAM_FILE_ID);
+        Assert.assertTrue(getEvictedGenerations().isEmpty());
+        try (SamReader first = cache.getReader(bamFile, this::open);
+             SamReader second = cache.getReader(bamFile, this::open)) {
+            Assert.assertNotNull(first.getFileHeader());
+            cache.evict(BAM_FILE_ID);
+            second.close();
+            Assert.assertEquals(1, getEvictedGenerations().size());
+        }
+        Assert.assertTrue(getEvictedGenerations().isEmpty());
+        countReads();
+        Assert.assertEquals(3, opened.get());
+    }
+
+    @Test
+    public void shouldNotCacheNonRegisteredFile() throws IOException {
+        bamFile.setId(null);
+        countReads();
+        countReads();
+        Assert.assertEquals(2, opened.get());
+    }
+
+    private int countReads() throws IOException {
+        int count = 0;
+        try (SamReader reader = cache.getReader(bamFile, this::open);
+             SAMRecordIterator iterator = reader.queryOverlapping(CHROMOSOME_NAME, START, END)) {
+            while (iterator.hasNext()) {
+                iterator.next();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Long, Long> getEvictedGenerations() {
+        return (Map<Long, Long>) ReflectionTestUtils.getField(cache, "evictedGenerations");
+    }
+
+    private SamReader open() {
+        opened.incrementAndGet();
+        return SamReaderFactory.makeDefault()
+                .validationStringency(ValidationStringency.SILENT)
+                .open(new File(bamFile.getPath()));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.manager.bam;
+
+import java.util.List;
+
+import com.epam.catgenome.entity.bam.BamQueryOption;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BamShardedReadLoaderTest {
+
+    private static final int WINDOW = 16384;
+    private static final int SHARD_SIZE = 100000;
+    private static final int START = 1000;
+    private static final int END = 1000000;
+    private static final int FRAME = 1024;
+
+    private final BamShardedReadLoader loader = new BamShardedReadLoader(null, null, 1, SHARD_SIZE);
+
+    @Test
+    public void shardsShouldStartAtLinearIndexWindows() {
+        final List<int[]> shards = loader.splitIntoShards(START, END, new BamQueryOption());
+        assertCovers(shards, START, END);
+        Assert.assertEquals(WINDOW, shards.get(0)[1]);
+        for (int i = 1; i < shards.size(); i++) {
+            Assert.assertEquals(1, shards.get(i)[0] % WINDOW);
+        }
+    }
+
+    @Test
+    public void shardsShouldBeMultiplesOfFrame() {
+        final BamQueryOption options = new BamQueryOption();
+        options.setDownSampling(true);
+        options.setFrame(FRAME);
+        final List<int[]> shards = loader.splitIntoShards(START, END, options);
+        assertCovers(shards, START, END);
+        for (int i = 1; i < shards.size() - 1; i++) {
+            Assert.assertEquals(0, (shards.get(i)[1] - shards.get(i)[0] + 1) % FRAME);
+        }
+    }
+
+    @Test
+    public void alignedIntervalShouldNotHaveShortShard() {
+        final List<int[]> shards = loader.splitIntoShards(WINDOW + 1, END, new BamQueryOption());
+        assertCovers(shards, WINDOW + 1, END);
+        Assert.assertTrue(shards.get(0)[1] - shards.get(0)[0] + 1 >= WINDOW);
+    }
+
+    private static void assertCovers(final List<int[]> shards, final int start, final int end) {
+        Assert.assertEquals(start, shards.get(0)[0]);
+        for (int i = 1; i < shards.size(); i++) {
+            Assert.assertEquals(shards.get(i - 1)[1] + 1, shards.get(i)[0]);
+        }
+        Assert.assertEquals(end, shards.get(shards.size() - 1)[1]);
+    }
+}
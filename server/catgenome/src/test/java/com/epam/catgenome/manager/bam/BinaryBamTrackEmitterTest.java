@@ -0,0 +1,209 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.manager.bam;
+
+import com.epam.catgenome.controller.JsonMapper;
+import com.epam.catgenome.entity.bam.BamTrack;
+import com.epam.catgenome.entity.bam.BasePosition;
+import com.epam.catgenome.entity.bam.Read;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+public class BinaryBamTrackEmitterTest {
+
+    private static final int READS_COUNT = 5000;
+    private static final int READ_LENGTH = 100;
+    private static final int MIN_POSITION = 42;
+    private static final int DIFFERENT_BASE_POSITION = 7;
+    private static final int VARINT_SHIFT = 7;
+    private static final int VARINT_MASK = 0x7F;
+    private static final int VARINT_CONTINUATION = 0x80;
+
+    @Test
+    public void testReadsAreWrittenInBinaryFrames() throws IOException {
+        BinaryEmitterMock emitterMock = new BinaryEmitterMock();
+        BinaryBamTrackEmitter trackEmitter = new BinaryBamTrackEmitter(emitterMock);
+        for (int i = 0; i < READS_COUNT; i++) {
+            trackEmitter.writeRecord(createRead(i));
+        }
+        BamTrack<Read> track = new BamTrack<>();
+        track.setMinPosition(MIN_POSITION);
+        trackEmitter.writeTrackAndFinish(track);
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(emitterMock.getBytes()));
+        byte[] magic = new byte[BinaryBamTrackEmitter.MAGIC.length];
+        input.readFully(magic);
+        Assert.assertArrayEquals(BinaryBamTrackEmitter.MAGIC, magic);
+        Assert.assertEquals(BinaryBamTrackEmitter.VERSION, input.readByte());
+
+        int readsCount = 0;
+        byte frameType = input.readByte();
+        while (frameType == BinaryBamTrackEmitter.READS_FRAME) {
+            byte[] payload = new byte[input.readInt()];
+            input.readFully(payload);
+            readsCount += checkReadsFrame(payload, readsCount);
+            frameType = input.readByte();
+        }
+        Assert.assertEquals(READS_COUNT, readsCount);
+
+        Assert.assertEquals(BinaryBamTrackEmitter.TRACK_FRAME, frameType);
+        byte[] payload = new byte[input.readInt()];
+        input.readFully(payload);
+        JsonNode metadata = new JsonMapper().readTree(payload);
+        Assert.assertEquals(MIN_POSITION, metadata.get("minPosition").asInt());
+        Assert.assertFalse(metadata.has("blocks"));
+        Assert.assertEquals(0, input.available());
+    }
+
+    @Test
+    public void testErrorIsWrittenInBinaryFrame() throws IOException {
+        BinaryEmitterMock emitterMock = new BinaryEmitterMock();
+        BinaryBamTrackEmitter trackEmitter = new BinaryBamTrackEmitter(emitterMock);
+        trackEmitter.writeRecord(createRead(0));
+        trackEmitter.finishWithException(new IllegalStateException("failure"));
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(emitterMock.getBytes()));
+        Assert.assertEquals(BinaryBamTrackEmitter.MAGIC.length + 1,
+                input.skipBytes(BinaryBamTrackEmitter.MAGIC.length + 1));
+        Assert.assertEquals(BinaryBamTrackEmitter.ERROR_FRAME, input.readByte());
+        byte[] payload = new byte[input.readInt()];
+        input.readFully(payload);
+        Assert.assertEquals("failure", new String(payload, StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testEmitterIsFinishedAfterError() throws IOException {
+        BinaryBamTrackEmitter trackEmitter = new BinaryBamTrackEmitter(new BinaryEmitterMock());
+        trackEmitter.finishWithException(new IllegalStateException("failure"));
+        trackEmitter.writeRecord(createRead(0));
+    }
+
+    private int checkReadsFrame(byte[] payload, int offset) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+        int count = readVarInt(input);
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            start += unzigzag(readVarInt(input));
+            Assert.assertEquals(offset + i, start);
+        }
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals(READ_LENGTH, readVarInt(input));
+        }
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals(offset + i, unzigzag(readVarInt(input) - 1));
+        }
+        // skip mapping quality, tLen and pNext columns
+        for (int i = 0; i < count * 3; i++) {
+            readVarInt(input);
+        }
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals(2, input.readByte());
+        }
+        // names are unique
+        Assert.assertEquals(count, readVarInt(input));
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals("read" + (offset + i), readString(input));
+        }
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals(i + 1, readVarInt(input));
+        }
+        // paired read names are absent
+        Assert.assertEquals(0, readVarInt(input));
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals(0, readVarInt(input));
+        }
+        // CIGAR is the same for all reads
+        Assert.assertEquals(1, readVarInt(input));
+        Assert.assertEquals(READ_LENGTH + "M", readString(input));
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals(1, readVarInt(input));
+        }
+        return count;
+    }
+
+    private Read createRead(int index) {
+        Read read = new Read();
+        read.setName("read" + index);
+        read.setStartIndex(index);
+        read.setEndIndex(index + READ_LENGTH);
+        read.setFlagMask(index);
+        read.setMappingQuality(READ_LENGTH);
+        read.setStand(true);
+        read.setCigarString(READ_LENGTH + "M");
+        BasePosition basePosition = new BasePosition();
+        basePosition.setRelativePosition(DIFFERENT_BASE_POSITION);
+        basePosition.setBase("A");
+        read.setDifferentBase(Collections.singletonList(basePosition));
+        return read;
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[readVarInt(input) - 1];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readVarInt(DataInputStream input) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int current;
+        do {
+            current = input.readUnsignedByte();
+            value |= (current & VARINT_MASK) << shift;
+            shift += VARINT_SHIFT;
+        } while ((current & VARINT_CONTINUATION) != 0);
+        return value;
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static class BinaryEmitterMock extends ResponseBodyEmitter {
+
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        @Override
+        public synchronized void send(Object object, MediaType mediaType) throws IOException {
+            Assert.assertEquals(MediaType.APPLICATION_OCTET_STREAM, mediaType);
+            buffer.write((byte[]) object);
+        }
+
+        byte[] getBytes() {
+            return buffer.toByteArray();
+        }
+    }
+}
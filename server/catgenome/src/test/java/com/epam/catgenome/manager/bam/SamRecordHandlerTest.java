@@ -27,12 +27,15 @@ package com.epam.catgenome.manager.bam;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 
 import com.epam.catgenome.common.AbstractManagerTest;
 import com.epam.catgenome.controller.vo.registration.ReferenceRegistrationRequest;
 import com.epam.catgenome.dao.BiologicalDataItemDao;
 import com.epam.catgenome.entity.bam.BamQueryOption;
 import com.epam.catgenome.entity.bam.BamTrackMode;
+import com.epam.catgenome.entity.bam.BaseCoverage;
 import com.epam.catgenome.entity.bam.TrackDirectionType;
 import com.epam.catgenome.entity.reference.Reference;
 import com.epam.catgenome.manager.bam.filters.Filter;
@@ -129,4 +132,35 @@ public class SamRecordHandlerTest extends AbstractManagerTest {
         Assert.assertEquals(2, recordHandler.getSifter().getFilteredReadsCount());
     }
 
+    @Test
+    @Transactional(propagation = Propagation.REQUIRES_NEW, rollbackFor = Exception.class)
+    public void coverageModeMatchesFullModeDepthTest() throws IOException {
+        final BamQueryOption coverageOptions = new BamQueryOption();
+        coverageOptions.setTrackDirection(TrackDirectionType.MIDDLE);
+        coverageOptions.setMode(BamTrackMode.COVERAGE);
+        coverageOptions.setRefID(options.getRefID());
+        coverageOptions.setChromosomeName(chromosomeName);
+        final BamTrackEmitter trackEmitter = new BamTrackEmitter(new ResponseBodyEmitter(this.timeout));
+        final SAMRecordHandler coverageHandler = new SAMRecordHandler(1, endTrack, referenceManager,
+                new MiddleSAMRecordFilter(new FullResultSifter(true, trackEmitter)), coverageOptions);
+
+        final SAMRecord rec1 = set.addFrag("read1", 0, 2, false, false, "20M5D20M10N35M", "*", 151);
+        final SAMRecord rec2 = set.addFrag("read2", 0, 10, false, false, "5S30M2I38M", "*", 151);
+        final SAMRecord rec3 = set.addFrag("read3", 0, 30, false, false, "75M", "*", 151);
+        for (SAMRecord record : Arrays.asList(rec1, rec2, rec3)) {
+            recordHandler.add(record);
+            coverageHandler.add(record);
+        }
+
+        final List<BaseCoverage> full = recordHandler.getBaseCoverage(1.0);
+        final List<BaseCoverage> coverage = coverageHandler.getBaseCoverage(1.0);
+        Assert.assertFalse(full.isEmpty());
+        Assert.assertEquals(full.size(), coverage.size());
+        for (int i = 0; i < full.size(); i++) {
+            Assert.assertEquals(full.get(i).getStartIndex(), coverage.get(i).getStartIndex());
+            Assert.assertEquals(full.get(i).getValue(), coverage.get(i).getValue());
+            Assert.assertNull(coverage.get(i).getaCov());
+        }
+    }
+
 }
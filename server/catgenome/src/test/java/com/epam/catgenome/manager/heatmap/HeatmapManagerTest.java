@@ -27,8 +27,10 @@ import com.epam.catgenome.controller.vo.registration.HeatmapRegistrationRequest;
 import com.epam.catgenome.entity.BiologicalDataItemResourceType;
 import com.epam.catgenome.entity.heatmap.Heatmap;
 import com.epam.catgenome.entity.heatmap.HeatmapAnnotationType;
+import com.epam.catgenome.entity.heatmap.HeatmapContentWindow;
 import com.epam.catgenome.entity.heatmap.HeatmapDataType;
 import com.epam.catgenome.entity.heatmap.HeatmapTree;
+import com.epam.catgenome.manager.FileManager;
 import junit.framework.TestCase;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.jetbrains.annotations.NotNull;
@@ -51,12 +53,17 @@ public class HeatmapManagerTest extends TestCase {
     private static final int CONTENT_SIZE = 5;
     private static final double MAX_CELL_VALUE = 0.001273579;
     private static final double MIN_CELL_VALUE = 0.0;
+    private static final float MEAN_CELL_VALUE = 0.0006367895F;
+    private static final float DELTA = 0.0000001F;
     private static final String GENE_1_LABEL = "gene1";
     private static final String GENE_1_ANNOTATION = "test1";
 
     @Autowired
     private HeatmapManager heatmapManager;
 
+    @Autowired
+    private FileManager fileManager;
+
     @Autowired
     private ApplicationContext context;
 
@@ -150,9 +157,41 @@ public class HeatmapManagerTest extends TestCase {
     public void deleteHeatmapTest() throws IOException {
         Heatmap heatmap = registerHeatmap("deleteHeatmapTest");
         Heatmap createdHeatmap = heatmapManager.loadHeatmap(heatmap.getHeatmapId());
+        assertNotNull(fileManager.getHeatmapTilesFile(heatmap.getHeatmapId()));
         heatmapManager.deleteHeatmap(createdHeatmap.getHeatmapId());
         createdHeatmap = heatmapManager.loadHeatmap(heatmap.getHeatmapId());
         assertNull(createdHeatmap);
+        assertNull(fileManager.getHeatmapTilesFile(heatmap.getHeatmapId()));
+    }
+
+    @Test
+    public void getContentWindowTest() throws IOException {
+        Heatmap heatmap = registerHeatmap("getContentWindowTest");
+        HeatmapContentWindow window = heatmapManager.getContentWindow(heatmap.getHeatmapId(),
+                0, 1, 0, null, null, null);
+        assertEquals(1, window.getStep().intValue());
+        assertEquals(2, window.getValues().size());
+        assertEquals(CONTENT_SIZE, window.getValues().get(0).size());
+        assertEquals((float) MAX_CELL_VALUE, window.getValues().get(0).get(1));
+        window = heatmapManager.getContentWindow(heatmap.getHeatmapId(), 0, 1, 0, 1, 1, 1);
+        assertEquals(2, window.getStep().intValue());
+        assertEquals(MEAN_CELL_VALUE, (Float) window.getValues().get(0).get(0), DELTA);
+    }
+
+    @Test
+    public void buildTilesTest() throws IOException {
+        Heatmap heatmap = registerHeatmap("buildTilesTest");
+        fileManager.deleteHeatmapDir(heatmap.getHeatmapId());
+        try {
+            heatmapManager.getContentWindow(heatmap.getHeatmapId(), 0, 1, 0, 1, 1, 1);
+            fail("Tiled content should not be built on request");
+        } catch (IllegalArgumentException e) {
+            assertNull(fileManager.getHeatmapTilesFile(heatmap.getHeatmapId()));
+        }
+        heatmapManager.buildTiles(heatmap.getHeatmapId());
+        assertNotNull(fileManager.getHeatmapTilesFile(heatmap.getHeatmapId()));
+        HeatmapContentWindow window = heatmapManager.getContentWindow(heatmap.getHeatmapId(), 0, 1, 0, 1, 1, 1);
+        assertEquals(MEAN_CELL_VALUE, (Float) window.getValues().get(0).get(0), DELTA);
     }
 
     @Test
@@ -0,0 +1,148 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.manager.heatmap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.epam.catgenome.entity.heatmap.HeatmapContentWindow;
+import com.epam.catgenome.entity.heatmap.HeatmapDataType;
+
+public class HeatmapTileFileTest {
+
+    private static final int ROWS = 100;
+    private static final int COLUMNS = 70;
+    private static final int TILE_SIZE = 16;
+    private static final int START_ROW = 10;
+    private static final int END_ROW = 40;
+    private static final int START_COLUMN = 15;
+    private static final int MAX_VALUE = 1000;
+    private static final int COARSE_STEP = HeatmapTileFile.ZOOM_FACTOR * HeatmapTileFile.ZOOM_FACTOR;
+    private static final float DELTA = 0.001F;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWindowMatchesContent() throws IOException {
+        final List<List<String>> content = generateContent(new Random(1));
+        final File file = folder.newFile();
+        HeatmapTileFile.write(file, content, COLUMNS, HeatmapDataType.INTEGER, TILE_SIZE);
+
+        final HeatmapContentWindow window = HeatmapTileFile.read(file, START_ROW, END_ROW, START_COLUMN,
+                Integer.MAX_VALUE, null, null);
+        Assert.assertEquals(1, window.getStep().intValue());
+        Assert.assertEquals(COLUMNS - 1, window.getEndColumn().intValue());
+        Assert.assertEquals(END_ROW - START_ROW + 1, window.getValues().size());
+        for (int row = START_ROW; row <= END_ROW; row++) {
+            final List<Object> rowValues = window.getValues().get(row - START_ROW);
+            Assert.assertEquals(COLUMNS - START_COLUMN, rowValues.size());
+            for (int column = START_COLUMN; column < COLUMNS; column++) {
+                final String value = content.get(row).get(column);
+                Assert.assertEquals(value == null ? null : Integer.valueOf(value),
+                        rowValues.get(column - START_COLUMN));
+            }
+        }
+    }
+
+    @Test
+    public void testCoarseLevelKeepsMeans() throws IOException {
+        final List<List<String>> content = generateContent(new Random(2));
+        final File file = folder.newFile();
+        HeatmapTileFile.write(file, content, COLUMNS, HeatmapDataType.DOUBLE, TILE_SIZE);
+
+        final HeatmapContentWindow window = HeatmapTileFile.read(file, 0, ROWS - 1, 0, COLUMNS - 1,
+                ROWS / COARSE_STEP, COLUMNS / COARSE_STEP + 1);
+        Assert.assertEquals(COARSE_STEP, window.getStep().intValue());
+        Assert.assertEquals(ROWS / COARSE_STEP, window.getValues().size());
+        for (int block = 0; block < window.getValues().size(); block++) {
+            final List<Object> rowValues = window.getValues().get(block);
+            Assert.assertEquals((COLUMNS + COARSE_STEP - 1) / COARSE_STEP, rowValues.size());
+            for (int columnBlock = 0; columnBlock < rowValues.size(); columnBlock++) {
+                double sum = 0;
+                int count = 0;
+                for (int row = block * COARSE_STEP; row < (block + 1) * COARSE_STEP; row++) {
+                    for (int column = columnBlock * COARSE_STEP;
+                         column < Math.min(COLUMNS, (columnBlock + 1) * COARSE_STEP); column++) {
+                        final String value = content.get(row).get(column);
+                        if (value != null) {
+                            sum += Double.parseDouble(value);
+                            count++;
+                        }
+                    }
+                }
+                final Object value = rowValues.get(columnBlock);
+                if (count == 0) {
+                    Assert.assertNull(value);
+                } else {
+                    Assert.assertEquals(sum / count, (Float) value, DELTA);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testStringCellsAreMergedToMostFrequentValue() throws IOException {
+        final List<List<String>> content = Arrays.asList(
+                Arrays.asList("a", "b", "c", null),
+                Arrays.asList("b", "b", null, null),
+                Arrays.asList("c"));
+        final File file = folder.newFile();
+        HeatmapTileFile.write(file, content, 4, HeatmapDataType.STRING, 1);
+
+        final HeatmapContentWindow fine = HeatmapTileFile.read(file, 0, 2, 0, 3, null, null);
+        Assert.assertEquals(Arrays.asList("a", "b", "c", null), fine.getValues().get(0));
+        Assert.assertEquals(Arrays.asList("c", null, null, null), fine.getValues().get(2));
+
+        final HeatmapContentWindow coarse = HeatmapTileFile.read(file, 0, 2, 0, 3, 2, 2);
+        Assert.assertEquals(2, coarse.getStep().intValue());
+        Assert.assertEquals(Arrays.asList("b", "c"), coarse.getValues().get(0));
+        Assert.assertEquals(Arrays.asList("c", null), coarse.getValues().get(1));
+    }
+
+    private static List<List<String>> generateContent(final Random random) {
+        final List<List<String>> content = new ArrayList<>(ROWS);
+        for (int row = 0; row < ROWS; row++) {
+            final List<String> rowValues = new ArrayList<>(COLUMNS);
+            for (int column = 0; column < COLUMNS; column++) {
+                rowValues.add(random.nextInt(COARSE_STEP) == 0
+                        ? null
+                        : String.valueOf(random.nextInt(2 * MAX_VALUE) - MAX_VALUE));
+            }
+            content.add(rowValues);
+        }
+        return content;
+    }
+}
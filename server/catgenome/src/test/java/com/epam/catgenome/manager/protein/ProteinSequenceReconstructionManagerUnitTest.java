@@ -29,6 +29,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -47,6 +48,7 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import com.epam.catgenome.entity.gene.Gene;
 import com.epam.catgenome.entity.reference.Chromosome;
+import com.epam.catgenome.entity.reference.PackedSequence;
 import com.epam.catgenome.entity.reference.Sequence;
 import com.epam.catgenome.entity.vcf.Variation;
 import com.epam.catgenome.helper.EntityHelper;
@@ -170,6 +172,31 @@ public class ProteinSequenceReconstructionManagerUnitTest {
         Assert.assertEquals("GCTTATC", resultNucleotides32);
     }
 
+    @Test
+    public void testLoadNucleotidesForOverlappingVariations() throws IOException {
+        // the second variation is applied on top of the first one, both are reflected in the result
+        Map<Variation, List<Gene>> variationToCds = new LinkedHashMap<>();
+        variationToCds.put(new Variation(START_INDEX_1, END_INDEX_1, "GC", Collections.singletonList("AA")),
+                Collections.singletonList(CDS_1));
+        variationToCds.put(new Variation(END_INDEX_1, END_INDEX_1 + 1, "AT", Collections.singletonList("GG")),
+                Collections.singletonList(CDS_1));
+
+        Chromosome chromosome = new Chromosome();
+        chromosome.setName("Test chromosome");
+        Long referenceId = 1L;
+        Mockito.when(referenceManager
+                .getNucleotidesFromNibFile(CDS_1.getStartIndex(), CDS_1.getEndIndex(), referenceId,
+                        chromosome.getName()))
+                .thenReturn(new PackedSequence(CDS_1.getStartIndex(), "ATGCTGA", false));
+
+        Map<Gene, List<List<Sequence>>> nucleotides = psReconstructionManager
+                .loadNucleotidesForReferenceVariationCds(chromosome, referenceId, variationToCds);
+        List<List<Sequence>> result = nucleotides.get(CDS_1);
+        Assert.assertNotNull(result);
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals("ATAGGGA", result.get(0).stream().map(Sequence::getText).collect(Collectors.joining()));
+    }
+
     @Test
     public void testLoadNucleotidesForReferenceCds() throws IOException {
         Chromosome chromosome = EntityHelper.createNewChromosome();
@@ -0,0 +1,53 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.epam.catgenome.manager.reference;
+
+import com.epam.catgenome.util.motif.MotifIndex;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class MotifIndexManagerTest {
+
+    @Test
+    public void shouldAcceptKmerSizeWithinLimits() {
+        createManager(1).init();
+        createManager(MotifIndex.MAX_KMER_SIZE).init();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectKmerSizeAboveLimit() {
+        createManager(MotifIndex.MAX_KMER_SIZE + 1).init();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonPositiveKmerSize() {
+        createManager(0).init();
+    }
+
+    private MotifIndexManager createManager(final int kmerSize) {
+        final MotifIndexManager manager = new MotifIndexManager();
+        ReflectionTestUtils.setField(manager, "kmerSize", kmerSize);
+        return manager;
+    }
+}
@@ -31,12 +31,16 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
 
 
+import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import com.epam.catgenome.dao.BiologicalDataItemDao;
 import com.epam.catgenome.entity.reference.Species;
@@ -57,11 +61,13 @@ import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.epam.catgenome.common.AbstractManagerTest;
+import com.epam.catgenome.controller.JsonMapper;
 import com.epam.catgenome.controller.vo.registration.FeatureIndexedFileRegistrationRequest;
 import com.epam.catgenome.controller.vo.registration.ReferenceRegistrationRequest;
 import com.epam.catgenome.dao.reference.ReferenceGenomeDao;
 import com.epam.catgenome.entity.BiologicalDataItemResourceType;
 import com.epam.catgenome.entity.reference.Chromosome;
+import com.epam.catgenome.entity.reference.PackedSequence;
 import com.epam.catgenome.entity.reference.Reference;
 import com.epam.catgenome.entity.reference.Sequence;
 import com.epam.catgenome.entity.track.Track;
@@ -90,6 +96,10 @@ import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
     private static final int START_INDEX = 1;
     private static final int END_INDEX = 1000;
     private static final int LIST_INDEX = 4;
+    private static final int LARGE_CHROMOSOME_LENGTH = 400000;
+    private static final String LARGE_CHROMOSOME_NAME = "large";
+    private static final int FASTA_LINE_LENGTH = 60;
+    private static final int BLOCK_BOUNDARY = 131056;
     private static final String NEW_NAME = "hiMom";
     private static final String A3_FA_PATH = "classpath:templates/A3.fa";
     private static final String GENBANK_PATH = "classpath:templates/KU131557.gbk";
@@ -199,6 +209,66 @@ import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
         assertNotNull(track);
     }
 
+    @Test @Transactional(propagation = Propagation.REQUIRES_NEW, rollbackFor = Throwable.class)
+    public void packedNucleotidesSerializationTest() throws ReferenceReadingException, IOException {
+        Track<Sequence> track = new Track<>();
+        Chromosome chromosome = new Chromosome();
+        chromosome.setId(idChrom);
+        track.setId(idRef);
+        track.setChromosome(chromosome);
+        track.setScaleFactor(SCALE_FACTOR_4_BASE);
+        track.setStartIndex(START_INDEX);
+        track.setEndIndex(END_INDEX);
+        track = referenceManager.getNucleotidesResultFromNib(track);
+
+        assertTrue(track.getBlocks() instanceof PackedSequence);
+        assertEquals(END_INDEX - START_INDEX + 1, track.getBlocks().size());
+        Sequence sequence = track.getBlocks().get(LIST_INDEX);
+        assertEquals(START_INDEX + LIST_INDEX, sequence.getStartIndex().intValue());
+        assertEquals(START_INDEX + LIST_INDEX, sequence.getEndIndex().intValue());
+
+        JsonMapper mapper = new JsonMapper();
+        assertEquals(mapper.readTree(mapper.writeValueAsString(new ArrayList<>(track.getBlocks()))),
+                mapper.readTree(mapper.writeValueAsString(track.getBlocks())));
+    }
+
+    @Test @Transactional(propagation = Propagation.REQUIRES_NEW, rollbackFor = Throwable.class)
+    public void multiBlockSequenceTest() throws IOException {
+        final String bases = "ACGTNacgtn";
+        final Random random = new Random(LARGE_CHROMOSOME_LENGTH);
+        final StringBuilder expected = new StringBuilder(LARGE_CHROMOSOME_LENGTH);
+        for (int i = 0; i < LARGE_CHROMOSOME_LENGTH; i++) {
+            expected.append(bases.charAt(random.nextInt(bases.length())));
+        }
+        final File fasta = File.createTempFile("large", ".fa");
+        fasta.deleteOnExit();
+        try (Writer writer = Files.newBufferedWriter(fasta.toPath())) {
+            writer.write(">" + LARGE_CHROMOSOME_NAME + "\n");
+            for (int i = 0; i < expected.length(); i += FASTA_LINE_LENGTH) {
+                writer.write(expected.substring(i, Math.min(i + FASTA_LINE_LENGTH, expected.length())) + "\n");
+            }
+        }
+
+        final ReferenceRegistrationRequest request = new ReferenceRegistrationRequest();
+        request.setPath(fasta.getPath());
+        request.setType(BiologicalDataItemResourceType.FILE);
+        final Reference largeReference = referenceManager.registerGenome(request);
+
+        // sequence is stored in several compressed blocks, check ranges crossing their boundaries
+        final int[][] ranges = {{1, LARGE_CHROMOSOME_LENGTH}, {BLOCK_BOUNDARY - 10, BLOCK_BOUNDARY + 10},
+            {BLOCK_BOUNDARY + 1, BLOCK_BOUNDARY + 1}, {LARGE_CHROMOSOME_LENGTH - 5, LARGE_CHROMOSOME_LENGTH}};
+        for (int[] range : ranges) {
+            // read twice to check both inflated and cached blocks
+            for (int i = 0; i < 2; i++) {
+                assertEquals(expected.substring(range[0] - 1, range[1]), referenceManager.getSequenceString(
+                        range[0], range[1], largeReference.getId(), LARGE_CHROMOSOME_NAME));
+            }
+            assertEquals(expected.substring(range[0] - 1, range[1]), new String(referenceManager
+                    .getSequenceByteArray(range[0], range[1], largeReference.getId(), LARGE_CHROMOSOME_NAME)));
+        }
+        referenceManager.unregisterGenome(largeReference.getId());
+    }
+
     @Test @Transactional(propagation = Propagation.REQUIRES_NEW, rollbackFor = Throwable.class)
     public void getGCContentTest() throws ReferenceReadingException {
         Track<Sequence> track = new Track<>();
@@ -35,6 +35,8 @@ import htsjdk.tribble.CloseableTribbleIterator;
 import htsjdk.tribble.Feature;
 import htsjdk.tribble.FeatureCodec;
 import htsjdk.tribble.bed.BEDCodec;
+import htsjdk.tribble.bed.BEDFeature;
+import htsjdk.tribble.readers.LineIterator;
 import htsjdk.variant.vcf.VCFCodec;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -60,6 +62,7 @@ public class SortTest extends AbstractJUnitTest {
     private static final int UNSORTED_BED_EXPECTED_LINES = 9;
     private static final int GENE_SORTED_BED_EXPECTED_LINES = 141;
     private static final int BIG_BED_EXPECTED_LINES = 8178;
+    private static final String TABIX_EXTENSION = ".tbi";
 
     @Autowired
     private ToolsManager toolsManager;
@@ -82,6 +85,43 @@ public class SortTest extends AbstractJUnitTest {
         testSort(getTemplate("big.bed.gz"), new BEDCodec(), BIG_BED_EXPECTED_LINES, 1);
     }
 
+    @Test
+    public void testSortBedCompressedWithIndex() throws Exception {
+        final File infile = getTemplate("big.bed.gz");
+        final File ofile = new File(infile + ".indexed.sorted.gz");
+        final File indexFile = new File(ofile + TABIX_EXTENSION);
+        ofile.deleteOnExit();
+        indexFile.deleteOnExit();
+
+        FeatureFileSortRequest request = new FeatureFileSortRequest();
+        request.setOriginalFilePath(infile.getAbsolutePath());
+        request.setSortedFilePath(ofile.getAbsolutePath());
+        request.setMaxMemory(1);
+        request.setCreateIndex(true);
+
+        toolsManager.sortFeatureFile(request);
+
+        assertTrue(indexFile.exists());
+        assertEquals(BIG_BED_EXPECTED_LINES, checkFileSorted(ofile, new BEDCodec()));
+
+        final Map<String, Integer> chromosomeCounts = new HashMap<>();
+        try (AbstractFeatureReader<BEDFeature, LineIterator> reader = AbstractEnhancedFeatureReader
+                .getFeatureReader(ofile.getAbsolutePath(), new BEDCodec(), true, indexCache)) {
+            reader.iterator().forEachRemaining(f -> chromosomeCounts.merge(f.getContig(), 1, Integer::sum));
+            for (Map.Entry<String, Integer> entry : chromosomeCounts.entrySet()) {
+                int queried = 0;
+                try (CloseableTribbleIterator<BEDFeature> iterator =
+                             reader.query(entry.getKey(), 1, Integer.MAX_VALUE)) {
+                    while (iterator.hasNext()) {
+                        iterator.next();
+                        queried++;
+                    }
+                }
+                assertEquals(entry.getValue().intValue(), queried);
+            }
+        }
+    }
+
     @Test
     public void testSortVCF() throws Exception {
         testSort(getTemplate("invalid/unsorted.vcf"), new VCFCodec());
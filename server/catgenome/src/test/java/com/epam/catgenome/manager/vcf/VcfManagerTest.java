@@ -24,6 +24,7 @@
 
 package com.epam.catgenome.manager.vcf;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
@@ -31,23 +32,31 @@ import java.nio.file.Paths;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import com.epam.catgenome.component.MessageHelper;
 import com.epam.catgenome.constant.MessagesConstants;
 import com.epam.catgenome.controller.vo.ga4gh.VariantGA4GH;
+import com.epam.catgenome.dao.index.indexer.BigVcfFeatureIndexBuilder;
 import com.epam.catgenome.exception.Ga4ghResourceUnavailableException;
 import com.epam.catgenome.manager.gene.GeneTrackManager;
 import com.epam.catgenome.manager.vcf.reader.VcfGa4ghReader;
 import com.epam.catgenome.util.feature.reader.EhCacheBasedIndexCache;
 import htsjdk.tribble.TribbleException;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
 import org.codehaus.jettison.json.JSONObject;
 import org.eclipse.jetty.server.Server;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Ignore;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
@@ -59,6 +68,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.TestPropertySource;
@@ -87,6 +97,7 @@ import com.epam.catgenome.entity.vcf.VcfFile;
 import com.epam.catgenome.entity.vcf.VcfFilterInfo;
 import com.epam.catgenome.entity.vcf.VcfSample;
 import com.epam.catgenome.exception.ExternalDbUnavailableException;
+import com.epam.catgenome.exception.FeatureIndexException;
 import com.epam.catgenome.exception.VcfReadingException;
 import com.epam.catgenome.helper.EntityHelper;
 import com.epam.catgenome.manager.BiologicalDataItemManager;
@@ -212,6 +223,9 @@ public class VcfManagerTest extends AbstractManagerTest {
 
     private Logger logger = LoggerFactory.getLogger(VcfManagerTest.class);
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Before
     public void setup() throws Exception {
         MockitoAnnotations.initMocks(this);
@@ -882,6 +896,39 @@ public class VcfManagerTest extends AbstractManagerTest {
                 .loadFilesByNameStrict(invalidVcf).isEmpty());
     }
 
+    @Test
+    @Transactional(propagation = Propagation.REQUIRES_NEW, rollbackFor = Exception.class)
+    public void testReindexUnsortedReleasesIndexer() throws IOException, FeatureIndexException {
+        final List<String> unsorted = Files.readAllLines(context.getResource(
+                "classpath:templates/invalid/unsorted.vcf").getFile().toPath());
+        final List<String> sorted = unsorted.stream()
+                .filter(line -> line.startsWith("#"))
+                .collect(Collectors.toList());
+        sorted.addAll(unsorted.stream()
+                .filter(line -> !line.startsWith("#"))
+                .sorted(Comparator.comparingInt(line -> Integer.parseInt(line.split("\t")[1])))
+                .collect(Collectors.toList()));
+        final File file = folder.newFile("reindexed.vcf");
+        Files.write(file.toPath(), sorted);
+        final VcfFile vcfFile = registerVcf(new FileSystemResource(file), referenceId, vcfManager, PRETTY_NAME);
+
+        Files.write(file.toPath(), unsorted);
+        try {
+            vcfManager.reindexVcfFile(vcfFile.getId(), false);
+            Assert.fail("Unsorted file was indexed");
+        } catch (TribbleException.MalformedFeatureFile e) {
+            Assert.assertTrue(e.getMessage().contains("not sorted"));
+        }
+
+        Assert.assertTrue(Thread.getAllStackTraces().keySet().stream()
+                .noneMatch(thread -> thread.isAlive()
+                        && thread.getName().startsWith(BigVcfFeatureIndexBuilder.THREAD_NAME_PREFIX)));
+        try (Directory index = fileManager.createIndexForFile(vcfFile);
+             IndexWriter writer = new IndexWriter(index, new IndexWriterConfig(new StandardAnalyzer()))) {
+            Assert.assertTrue(writer.isOpen());
+        }
+    }
+
     @Test
     @Transactional(propagation = Propagation.REQUIRES_NEW, rollbackFor = Exception.class)
     public void testRegisterFileExtraChr() throws IOException, InterruptedException {
@@ -34,6 +34,7 @@ import com.epam.catgenome.entity.track.Track;
 import com.epam.catgenome.entity.wig.Wig;
 import com.epam.catgenome.entity.wig.WigFile;
 import com.epam.catgenome.exception.FeatureFileReadingException;
+import com.epam.catgenome.manager.FileManager;
 import com.epam.catgenome.manager.reference.ReferenceManager;
 import org.junit.Assert;
 import org.junit.Before;
@@ -79,6 +80,9 @@ public class BedGraphProcessorTest extends AbstractManagerTest {
     @Autowired
     private ReferenceManager referenceManager;
 
+    @Autowired
+    private FileManager fileManager;
+
     private static final String TEST_NSAME = "BIG " + BedGraphProcessorTest.class.getSimpleName();
     private static final String TEST_REF = "/dm606.X.fa";
     private static final String TEST_BDG = "/bedGraph.bdg";
@@ -90,6 +94,8 @@ public class BedGraphProcessorTest extends AbstractManagerTest {
     private static final int TEST_START_INDEX = 1;
     private static final int TEST_END_INDEX = 788486;
     private static final double TEST_SCALE_FACTOR = 0.01;
+    private static final double TEST_PYRAMID_SCALE_FACTOR = 0.0001;
+    private static final float TEST_MAX_VALUE = 2.0F;
 
     @Before
     public void setup() throws IOException {
@@ -141,6 +147,14 @@ public class BedGraphProcessorTest extends AbstractManagerTest {
         Assert.assertFalse(wigTrack.getBlocks().isEmpty());
         Assert.assertTrue(wigTrack.getBlocks().stream().allMatch(wig -> wig.getValue() != null));
 
+        Assert.assertNotNull(fileManager.getBedGraphPyramidFile(loadWigFile, chromosomeName));
+        wigTrack.setScaleFactor(TEST_PYRAMID_SCALE_FACTOR);
+        wigManager.getWigTrack(wigTrack);
+        Assert.assertFalse(wigTrack.getBlocks().isEmpty());
+        Assert.assertTrue(wigTrack.getBlocks().stream().allMatch(wig -> wig.getValue() != null));
+        Assert.assertEquals(TEST_MAX_VALUE, wigTrack.getBlocks().stream()
+                .map(Wig::getValue).max(Float::compare).get(), 0.0F);
+
         wigManager.unregisterWigFile(loadWigFile.getId());
         loadWigFile = wigFileManager.load(wigFile.getId());
         Assert.assertNull(loadWigFile);
@@ -0,0 +1,188 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.manager.wig;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.epam.catgenome.manager.wig.BedGraphPyramid.Statistic;
+
+public class BedGraphPyramidTest {
+
+    private static final int LENGTH = 100_000;
+    private static final int BIN_SIZE = 100;
+    private static final int COARSE_STEP = BIN_SIZE * BedGraphPyramid.ZOOM_FACTOR * BedGraphPyramid.ZOOM_FACTOR;
+    private static final int INTERVALS_COUNT = 500;
+    private static final int MAX_INTERVAL_LENGTH = 1000;
+    private static final int MAX_VALUE = 100;
+    private static final float DELTA = 0.001F;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testStatisticsAreCalculatedForBins() throws IOException {
+        final File file = folder.newFile();
+        try (BedGraphPyramid.Writer writer = new BedGraphPyramid.Writer(file, LENGTH, BIN_SIZE)) {
+            writer.add(0, 150, 2);
+            writer.add(150, 200, -5);
+            writer.add(1000, 1050, 4);
+        }
+
+        final float[] extremums = BedGraphPyramid.read(file, 1, 1200, BIN_SIZE, Statistic.EXTREMUM);
+        Assert.assertEquals(12, extremums.length);
+        Assert.assertEquals(2, extremums[0], DELTA);
+        Assert.assertEquals(-5, extremums[1], DELTA);
+        Assert.assertEquals(0, extremums[5], DELTA);
+        Assert.assertEquals(4, extremums[10], DELTA);
+
+        Assert.assertEquals(-5, BedGraphPyramid.read(file, 101, 200, BIN_SIZE, Statistic.MIN)[0], DELTA);
+        Assert.assertEquals(2, BedGraphPyramid.read(file, 101, 200, BIN_SIZE, Statistic.MAX)[0], DELTA);
+        Assert.assertEquals(-1.5, BedGraphPyramid.read(file, 101, 200, BIN_SIZE, Statistic.MEAN)[0], DELTA);
+        // a mean is calculated over covered bases only
+        Assert.assertEquals(4, BedGraphPyramid.read(file, 1001, 1100, BIN_SIZE, Statistic.MEAN)[0], DELTA);
+    }
+
+    @Test
+    public void testCoarseLevelMatchesIntervals() throws IOException {
+        final float[] values = new float[LENGTH];
+        final boolean[] covered = new boolean[LENGTH];
+        final File file = folder.newFile();
+        final Random random = new Random(1);
+        try (BedGraphPyramid.Writer writer = new BedGraphPyramid.Writer(file, LENGTH, BIN_SIZE)) {
+            int start = 0;
+            for (int i = 0; i < INTERVALS_COUNT && start < LENGTH; i++) {
+                start += random.nextInt(MAX_INTERVAL_LENGTH);
+                final int end = Math.min(LENGTH, start + 1 + random.nextInt(MAX_INTERVAL_LENGTH));
+                final float value = random.nextInt(2 * MAX_VALUE) - MAX_VALUE;
+                writer.add(start, end, value);
+                Arrays.fill(values, start, end, value);
+                Arrays.fill(covered, start, end, true);
+                start = end;
+            }
+        }
+
+        final float[] mins = BedGraphPyramid.read(file, 1, LENGTH, COARSE_STEP, Statistic.MIN);
+        final float[] maxs = BedGraphPyramid.read(file, 1, LENGTH, COARSE_STEP, Statistic.MAX);
+        final float[] means = BedGraphPyramid.read(file, 1, LENGTH, COARSE_STEP, Statistic.MEAN);
+        Assert.assertEquals((LENGTH + COARSE_STEP - 1) / COARSE_STEP, mins.length);
+        for (int block = 0; block < mins.length; block++) {
+            float min = Float.MAX_VALUE;
+            float max = -Float.MAX_VALUE;
+            double sum = 0;
+            int count = 0;
+            for (int i = block * COARSE_STEP; i < Math.min(LENGTH, (block + 1) * COARSE_STEP); i++) {
+                if (covered[i]) {
+                    min = Math.min(min, values[i]);
+                    max = Math.max(max, values[i]);
+                    sum += values[i];
+                    count++;
+                }
+            }
+            Assert.assertEquals(count == 0 ? 0 : min, mins[block], DELTA);
+            Assert.assertEquals(count == 0 ? 0 : max, maxs[block], DELTA);
+            Assert.assertEquals(count == 0 ? 0 : sum / count, means[block], DELTA);
+        }
+    }
+
+    @Test
+    public void testBinsAreSplitBetweenMisalignedBlocks() throws IOException {
+        final File file = folder.newFile();
+        try (BedGraphPyramid.Writer writer = new BedGraphPyramid.Writer(file, LENGTH, BIN_SIZE)) {
+            writer.add(0, 1000, 2);
+            writer.add(1000, 3000, 8);
+        }
+
+        // a bin 1001-1100 is split between the first and the second blocks
+        final float[] means = BedGraphPyramid.read(file, 1, 3000, 1050, Statistic.MEAN);
+        Assert.assertEquals(3, means.length);
+        Assert.assertEquals((1000 * 2 + 50 * 8) / 1050F, means[0], DELTA);
+        Assert.assertEquals(8, means[1], DELTA);
+        Assert.assertEquals(2, BedGraphPyramid.read(file, 1, 3000, 1050, Statistic.MIN)[0], DELTA);
+        Assert.assertEquals(8, BedGraphPyramid.read(file, 1, 3000, 1050, Statistic.MIN)[1], DELTA);
+
+        // bins are too wide for misaligned blocks
+        Assert.assertNull(BedGraphPyramid.read(file, BIN_SIZE / 2 + 1, 3000, BIN_SIZE * 2, Statistic.MAX));
+        Assert.assertNotNull(BedGraphPyramid.read(file, 1, 3000, BIN_SIZE * 2, Statistic.MAX));
+    }
+
+    @Test
+    public void testMisalignedBlocksMatchIntervalsWithinBin() throws IOException {
+        final float[] values = new float[LENGTH];
+        final boolean[] covered = new boolean[LENGTH];
+        final File file = folder.newFile();
+        final Random random = new Random(1);
+        try (BedGraphPyramid.Writer writer = new BedGraphPyramid.Writer(file, LENGTH, BIN_SIZE)) {
+            int start = 0;
+            for (int i = 0; i < INTERVALS_COUNT && start < LENGTH; i++) {
+                start += random.nextInt(MAX_INTERVAL_LENGTH);
+                final int end = Math.min(LENGTH, start + 1 + random.nextInt(MAX_INTERVAL_LENGTH));
+                final float value = random.nextInt(MAX_VALUE);
+                writer.add(start, end, value);
+                Arrays.fill(values, start, end, value);
+                Arrays.fill(covered, start, end, true);
+                start = end;
+            }
+        }
+
+        final int start = BIN_SIZE / 2 + 1;
+        final int step = COARSE_STEP + BIN_SIZE / 2;
+        final float[] maxs = BedGraphPyramid.read(file, start, LENGTH, step, Statistic.MAX);
+        for (int block = 0; block < maxs.length; block++) {
+            final int blockStart = start - 1 + block * step;
+            final int blockEnd = Math.min(LENGTH, blockStart + step);
+            // a block may only get values of bins, intersecting its borders
+            final int maxBinSize = step / BedGraphPyramid.MIN_BINS_PER_BLOCK;
+            float exact = 0;
+            float widened = 0;
+            for (int i = Math.max(0, blockStart - maxBinSize); i < Math.min(LENGTH, blockEnd + maxBinSize); i++) {
+                if (covered[i]) {
+                    widened = Math.max(widened, values[i]);
+                    if (i >= blockStart && i < blockEnd) {
+                        exact = Math.max(exact, values[i]);
+                    }
+                }
+            }
+            Assert.assertTrue(maxs[block] >= exact - DELTA);
+            Assert.assertTrue(maxs[block] <= widened + DELTA);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsortedIntervalsAreRejected() throws IOException {
+        try (BedGraphPyramid.Writer writer = new BedGraphPyramid.Writer(folder.newFile(), LENGTH, BIN_SIZE)) {
+            writer.add(BIN_SIZE, 2 * BIN_SIZE, 1);
+            writer.add(0, BIN_SIZE, 1);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.manager.wig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.epam.catgenome.entity.wig.Wig;
+import org.jetbrains.bio.big.BigSummary;
+import org.jetbrains.bio.big.BigWigFile;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class BigWigFileCacheTest {
+
+    private static final String TEST_WIG = "templates/agnX1.09-28.trim.dm606.realign.bw";
+    private static final String CHROMOSOME_NAME = "X";
+    private static final int START = 12582000;
+    private static final int END = 12590000;
+    private static final int CACHE_SIZE = 2;
+    private static final int THREADS = 8;
+    private static final long MODIFICATION_DELAY = 10000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private BigWigFileCache cache;
+    private String path;
+
+    @Before
+    public void setUp() throws IOException {
+        cache = new BigWigFileCache();
+        ReflectionTestUtils.setField(cache, "maxOpenFiles", CACHE_SIZE);
+        path = copy("first.bw");
+    }
+
+    @After
+    public void tearDown() {
+        cache.clear();
+    }
+
+    @Test
+    public void shouldReuseOpenedFile() throws IOException {
+        final BigWigFileCache.Handle first = cache.acquire(path);
+        first.close();
+        try (BigWigFileCache.Handle second = cache.acquire(path)) {
+            Assert.assertSame(first.getFile(), second.getFile());
+            Assert.assertTrue(second.isFileOpen());
+        }
+        Assert.assertTrue(first.isFileOpen());
+    }
+
+    @Test
+    public void shouldShareFileBetweenConcurrentAcquires() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<BigWigFileCache.Handle>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return cache.acquire(path);
+                }));
+            }
+            start.countDown();
+            final List<BigWigFileCache.Handle> handles = new ArrayList<>();
+            for (Future<BigWigFileCache.Handle> future : futures) {
+                handles.add(future.get());
+            }
+            // files, opened by concurrent requests, are kept open until their requests are done
+            handles.forEach(handle -> Assert.assertTrue(handle.isFileOpen()));
+            handles.forEach(BigWigFileCache.Handle::close);
+
+            try (BigWigFileCache.Handle cached = cache.acquire(path)) {
+                boolean found = false;
+                for (BigWigFileCache.Handle handle : handles) {
+                    final boolean same = handle.getFile() == cached.getFile();
+                    Assert.assertEquals(same, handle.isFileOpen());
+                    found |= same;
+                }
+                Assert.assertTrue(found);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldCloseEvictedFileAfterLastRelease() throws IOException {
+        final BigWigFileCache.Handle first = cache.acquire(path);
+        final BigWigFileCache.Handle second = cache.acquire(path);
+        cache.evict(Collections.singletonList(path));
+        Assert.assertTrue(first.isFileOpen());
+
+        first.close();
+        Assert.assertTrue(second.isFileOpen());
+        second.close();
+        Assert.assertFalse(second.isFileOpen());
+
+        try (BigWigFileCache.Handle reopened = cache.acquire(path)) {
+            Assert.assertNotSame(first.getFile(), reopened.getFile());
+        }
+    }
+
+    @Test
+    public void shouldReopenModifiedFile() throws IOException {
+        final BigWigFileCache.Handle first = cache.acquire(path);
+        first.close();
+        final File file = new File(path);
+        Assert.assertTrue(file.setLastModified(file.lastModified() + MODIFICATION_DELAY));
+
+        try (BigWigFileCache.Handle second = cache.acquire(path)) {
+            Assert.assertNotSame(first.getFile(), second.getFile());
+            Assert.assertFalse(first.isFileOpen());
+        }
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedFiles() throws IOException {
+        final List<BigWigFileCache.Handle> handles = new ArrayList<>();
+        for (int i = 0; i <= CACHE_SIZE; i++) {
+            final BigWigFileCache.Handle handle = cache.acquire(copy(i + ".bw"));
+            handle.close();
+            handles.add(handle);
+        }
+        Assert.assertFalse(handles.get(0).isFileOpen());
+        for (int i = 1; i <= CACHE_SIZE; i++) {
+            Assert.assertTrue(handles.get(i).isFileOpen());
+        }
+    }
+
+    @Test
+    public void shouldNotKeepFilesIfCacheIsDisabled() throws IOException {
+        ReflectionTestUtils.setField(cache, "maxOpenFiles", 0);
+        final BigWigFileCache.Handle handle = cache.acquire(path);
+        Assert.assertTrue(handle.isFileOpen());
+        handle.close();
+        Assert.assertFalse(handle.isFileOpen());
+    }
+
+    @Test
+    public void batchedSummaryShouldMatchSummariesOfBlocks() throws IOException {
+        final List<Wig> blocks = new ArrayList<>();
+        final int width = 97;
+        for (int blockStart = START; blockStart <= END; blockStart += width) {
+            blocks.add(new Wig(blockStart, Math.min(END, blockStart + width - 1)));
+        }
+        try (BigWigFileCache.Handle handle = cache.acquire(path)) {
+            final float[] scores = WigProcessor.summarizeBlocks(handle.getFile(), CHROMOSOME_NAME, blocks);
+            Assert.assertEquals(blocks.size(), scores.length);
+            boolean hasCoverage = false;
+            for (int i = 0; i < blocks.size(); i++) {
+                final Wig block = blocks.get(i);
+                final float expected = summarize(handle.getFile(), block.getStartIndex() - 1, block.getEndIndex());
+                Assert.assertEquals(expected, scores[i], 0.0F);
+                hasCoverage |= expected != 0;
+            }
+            Assert.assertTrue(hasCoverage);
+        }
+    }
+
+    private String copy(final String name) throws IOException {
+        final File file = folder.newFile(name);
+        Files.copy(new ClassPathResource(TEST_WIG).getFile().toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        return file.getAbsolutePath();
+    }
+
+    /**
+     * A block summary, calculated as before blocks were summarized with a single query
+     */
+    private static float summarize(final BigWigFile file, final int start, final int end) throws IOException {
+        double result = 0;
+        for (BigSummary summary : file.summarize(CHROMOSOME_NAME, start, end, 1, true, null)) {
+            final double value = Math.abs(summary.getMaxValue()) > Math.abs(summary.getMinValue())
+                    ? summary.getMaxValue()
+                    : summary.getMinValue();
+            if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+                result += value;
+            }
+        }
+        return (float) result;
+    }
+}
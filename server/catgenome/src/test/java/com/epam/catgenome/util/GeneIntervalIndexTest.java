@@ -0,0 +1,99 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.util;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.epam.catgenome.manager.GeneInfo;
+
+public class GeneIntervalIndexTest {
+
+    private static final int GENES_COUNT = 5000;
+    private static final int CHROMOSOME_LENGTH = 1000000;
+    private static final int MAX_GENE_LENGTH = 20000;
+    private static final int QUERIES_COUNT = 2000;
+    private static final int MAX_QUERY_LENGTH = 500;
+    private static final long SEED = 42L;
+
+    private static final int GENE_START = 100;
+    private static final int GENE_END = 200;
+    private static final int EXON_START = 120;
+    private static final int EXON_END = 140;
+
+    @Test
+    public void testOverlappingGenesMatchLinearScan() {
+        final Random random = new Random(SEED);
+        final int[] starts = new int[GENES_COUNT];
+        final int[] ends = new int[GENES_COUNT];
+        final GeneIntervalIndex.Builder builder = GeneIntervalIndex.builder();
+        for (int i = 0; i < GENES_COUNT; i++) {
+            starts[i] = random.nextInt(CHROMOSOME_LENGTH) + 1;
+            ends[i] = starts[i] + random.nextInt(MAX_GENE_LENGTH);
+            builder.addGene(starts[i], ends[i], "ID" + i, "NAME" + i);
+        }
+        final GeneIntervalIndex index = builder.build();
+        Assert.assertEquals(GENES_COUNT, index.size());
+
+        for (int q = 0; q < QUERIES_COUNT; q++) {
+            final int start = random.nextInt(CHROMOSOME_LENGTH) + 1;
+            final int end = start + random.nextInt(MAX_QUERY_LENGTH);
+            final Set<String> expected = new HashSet<>();
+            for (int i = 0; i < GENES_COUNT; i++) {
+                if (starts[i] <= end && ends[i] >= start) {
+                    expected.add("ID" + i);
+                }
+            }
+            Assert.assertEquals(expected, index.getGeneInfos(start, end).stream()
+                    .map(GeneInfo::getGeneId).collect(Collectors.toSet()));
+        }
+    }
+
+    @Test
+    public void testGenesAreMarkedByOverlappingExons() {
+        final GeneIntervalIndex index = GeneIntervalIndex.builder()
+                .addGene(GENE_START, GENE_END, "ID", "NAME")
+                .addExon(EXON_START, EXON_END)
+                .build();
+
+        final Set<GeneInfo> inExon = index.fetchGeneInfos(EXON_START, EXON_START);
+        Assert.assertEquals(1, inExon.size());
+        Assert.assertTrue(inExon.iterator().next().isExon());
+        Assert.assertEquals("NAME", inExon.iterator().next().getGeneName());
+
+        final Set<GeneInfo> inIntron = index.fetchGeneInfos(EXON_END + 1, GENE_END);
+        Assert.assertEquals(1, inIntron.size());
+        Assert.assertFalse(inIntron.iterator().next().isExon());
+
+        Assert.assertTrue(index.fetchGeneInfos(GENE_END + 1, GENE_END + 1).isEmpty());
+        Assert.assertTrue(GeneIntervalIndex.builder().build().getGeneInfos(GENE_START, GENE_END).isEmpty());
+    }
+}
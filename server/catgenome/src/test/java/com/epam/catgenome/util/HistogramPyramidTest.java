@@ -0,0 +1,127 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.util;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.epam.catgenome.entity.wig.Wig;
+
+public class HistogramPyramidTest {
+
+    private static final int BLOCKS_COUNT = 1000;
+    private static final int BLOCK_LENGTH = 100;
+    private static final int WINDOW_START = 25001;
+    private static final int WINDOW_END = 35000;
+    private static final int WINDOW_BLOCKS = 100;
+    private static final int MAX_BLOCKS = 30;
+    private static final float DELTA = 0.0001F;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWholeHistogramIsRestored() throws IOException {
+        final List<Wig> histogram = createHistogram();
+        final File file = folder.newFile();
+        HistogramPyramid.write(file, histogram);
+
+        final List<Wig> loaded = HistogramPyramid.read(file);
+        Assert.assertEquals(histogram.size(), loaded.size());
+        for (int i = 0; i < histogram.size(); i++) {
+            assertEquals(histogram.get(i), loaded.get(i));
+        }
+    }
+
+    @Test
+    public void testWindowIsSlicedFromMatchingLevel() throws IOException {
+        final List<Wig> histogram = createHistogram();
+        final File file = folder.newFile();
+        HistogramPyramid.write(file, histogram);
+
+        final List<Wig> detailed = HistogramPyramid.read(file, WINDOW_START, WINDOW_END, BLOCKS_COUNT);
+        Assert.assertEquals(WINDOW_BLOCKS, detailed.size());
+        Assert.assertEquals(WINDOW_START, detailed.get(0).getStartIndex().intValue());
+        Assert.assertEquals(WINDOW_END, detailed.get(detailed.size() - 1).getEndIndex().intValue());
+
+        final List<Wig> coarse = HistogramPyramid.read(file, WINDOW_START, WINDOW_END, MAX_BLOCKS);
+        Assert.assertTrue(coarse.size() <= MAX_BLOCKS);
+        Assert.assertTrue(coarse.get(0).getStartIndex() <= WINDOW_START);
+        Assert.assertTrue(coarse.get(coarse.size() - 1).getEndIndex() >= WINDOW_END);
+
+        final List<Wig> whole = HistogramPyramid.read(file, 1, BLOCKS_COUNT * BLOCK_LENGTH, 1);
+        Assert.assertEquals(1, whole.size());
+        Assert.assertEquals(sum(histogram), whole.get(0).getValue(), DELTA);
+    }
+
+    @Test
+    public void testLegacyHistogramIsRead() throws IOException {
+        final List<Wig> histogram = createHistogram();
+        final File file = folder.newFile();
+        try (DataOutputStream stream = new DataOutputStream(new FileOutputStream(file))) {
+            for (Wig wig : histogram) {
+                stream.writeInt(wig.getStartIndex());
+                stream.writeInt(wig.getEndIndex());
+                stream.writeFloat(wig.getValue());
+            }
+        }
+
+        Assert.assertEquals(histogram.size(), HistogramPyramid.read(file).size());
+        Assert.assertEquals(WINDOW_BLOCKS,
+                HistogramPyramid.read(file, WINDOW_START, WINDOW_END, MAX_BLOCKS).size());
+    }
+
+    private static List<Wig> createHistogram() {
+        final List<Wig> histogram = new ArrayList<>(BLOCKS_COUNT);
+        for (int i = 0; i < BLOCKS_COUNT; i++) {
+            histogram.add(new Wig(i * BLOCK_LENGTH + 1, (i + 1) * BLOCK_LENGTH, i % 7));
+        }
+        return histogram;
+    }
+
+    private static float sum(final List<Wig> histogram) {
+        float sum = 0;
+        for (Wig wig : histogram) {
+            sum += wig.getValue();
+        }
+        return sum;
+    }
+
+    private static void assertEquals(final Wig expected, final Wig actual) {
+        Assert.assertEquals(expected.getStartIndex(), actual.getStartIndex());
+        Assert.assertEquals(expected.getEndIndex(), actual.getEndIndex());
+        Assert.assertEquals(expected.getValue(), actual.getValue(), DELTA);
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.util;
+
+import com.epam.catgenome.entity.reference.motif.Motif;
+import com.epam.catgenome.manager.gene.parser.StrandSerializable;
+import com.epam.catgenome.util.motif.IndexedMotifSearcher;
+import com.epam.catgenome.util.motif.MotifIndex;
+import com.epam.catgenome.util.motif.SimpleMotifSearchIterator;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+public class IndexedMotifSearcherTest {
+
+    private static final int SEQUENCE_LENGTH = 200000;
+    private static final int KMER_SIZE = 6;
+    private static final String BASES = "acgtACGT";
+    private static final String CONTIG = "chr";
+    private static final int GAP_START = 1000;
+    private static final int GAP_END = 1100;
+    private static final int INTERVAL_START = 5000;
+    private static final int INTERVAL_END = 7000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private byte[] sequence;
+    private File indexFile;
+
+    @Before
+    public void setUp() throws IOException {
+        final Random random = new Random(42);
+        sequence = new byte[SEQUENCE_LENGTH];
+        for (int i = 0; i < sequence.length; i++) {
+            sequence[i] = (byte) BASES.charAt(random.nextInt(BASES.length()));
+        }
+        Arrays.fill(sequence, GAP_START, GAP_END, (byte) 'N');
+        Arrays.fill(sequence, SEQUENCE_LENGTH - 3, SEQUENCE_LENGTH - 2, (byte) 'n');
+        indexFile = folder.newFile("chr.kmi");
+        MotifIndex.write(indexFile, sequence, KMER_SIZE);
+    }
+
+    @Test
+    public void plainMotifsShouldMatchSequenceScanning() throws IOException {
+        for (String motif : Arrays.asList("acgtac", "gca", "ttagcatg", "cg")) {
+            for (StrandSerializable strand : Arrays.asList(null, StrandSerializable.POSITIVE,
+                    StrandSerializable.NEGATIVE)) {
+                final List<String> expected = toStrings(
+                        new SimpleMotifSearchIterator(sequence, motif, strand, CONTIG, 1, true));
+                Assert.assertEquals(motif, expected, toStrings(search(motif, 1, SEQUENCE_LENGTH, strand)));
+            }
+        }
+    }
+
+    @Test
+    public void iupacMotifsShouldMatchBruteForce() throws IOException {
+        for (String motif : Arrays.asList("acnngt", "rygc", "tatawaw", "GSSTAC")) {
+            Assert.assertEquals(motif, bruteForce(motif, 1, SEQUENCE_LENGTH),
+                    toStrings(search(motif, 1, SEQUENCE_LENGTH, null)));
+        }
+    }
+
+    @Test
+    public void shortMotifsShouldBeFoundBeforeGaps() throws IOException {
+        final byte[] bases = "tttggca".getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bases, 0, sequence, GAP_START - bases.length, bases.length);
+        // a single unknown base close to a gap
+        sequence[GAP_START - bases.length - 2] = 'n';
+        MotifIndex.write(indexFile, sequence, KMER_SIZE);
+
+        final String motif = "ggca";
+        final String beforeGap = CONTIG + ":" + (GAP_START - motif.length() + 1) + "-" + GAP_START + ":"
+                + StrandSerializable.POSITIVE;
+        final List<String> expected = toStrings(
+                new SimpleMotifSearchIterator(sequence, motif, null, CONTIG, 1, true));
+        Assert.assertTrue(expected.contains(beforeGap));
+        Assert.assertEquals(expected, toStrings(search(motif, 1, SEQUENCE_LENGTH, null)));
+        Assert.assertEquals(Collections.singletonList(beforeGap),
+                toStrings(search(motif, GAP_START - motif.length() + 1, GAP_START, null)));
+    }
+
+    @Test
+    public void searchShouldBeLimitedByInterval() throws IOException {
+        final List<String> expected = bruteForce("gattc", INTERVAL_START, INTERVAL_END);
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, toStrings(search("gattc", INTERVAL_START, INTERVAL_END, null)));
+    }
+
+    @Test
+    public void nextAndPreviousShouldSeekNearestMotif() throws IOException {
+        final String motif = "tgcatgc";
+        final List<String> all = bruteForce(motif, 1, SEQUENCE_LENGTH);
+        Assert.assertTrue(all.size() > 2);
+        final IndexedMotifSearcher searcher = IndexedMotifSearcher.compile(motif, KMER_SIZE);
+        try (MotifIndex.Reader index = new MotifIndex.Reader(indexFile)) {
+            final Motif first = searcher.findNext(index, this::read, CONTIG, 0, null, false);
+            Assert.assertEquals(all.get(0), toString(first));
+            final Motif second = searcher.findNext(index, this::read, CONTIG, first.getStart(), null, false);
+            Assert.assertEquals(all.get(1), toString(second));
+            final Motif previous = searcher.findPrevious(index, this::read, CONTIG, second.getStart(), null, false);
+            Assert.assertEquals(all.get(0), toString(previous));
+            Assert.assertNull(searcher.findPrevious(index, this::read, CONTIG, first.getStart(), null, false));
+            final Motif last = searcher.findPrevious(index, this::read, CONTIG, SEQUENCE_LENGTH + 1, null, false);
+            Assert.assertEquals(all.get(all.size() - 1), toString(last));
+            Assert.assertNull(searcher.findNext(index, this::read, CONTIG, last.getStart(), null, false));
+        }
+    }
+
+    @Test
+    public void degenerateMotifsAndRegexShouldNotBeIndexed() {
+        Assert.assertNull(IndexedMotifSearcher.compile("nnnnn", KMER_SIZE));
+        Assert.assertNull(IndexedMotifSearcher.compile("ca+?", KMER_SIZE));
+        Assert.assertNotNull(IndexedMotifSearcher.compile("acgnnt", KMER_SIZE));
+    }
+
+    private List<Motif> search(final String motif, final int from, final int to, final StrandSerializable strand)
+            throws IOException {
+        try (MotifIndex.Reader index = new MotifIndex.Reader(indexFile)) {
+            return IndexedMotifSearcher.compile(motif, KMER_SIZE)
+                    .search(index, this::read, CONTIG, from, to, strand, Integer.MAX_VALUE, true);
+        }
+    }
+
+    private byte[] read(final int start, final int end) {
+        return Arrays.copyOfRange(sequence, start - 1, end);
+    }
+
+    private List<String> bruteForce(final String motif, final int from, final int to) {
+        final String positive = toPattern(motif);
+        final String negative = toPattern(reverseComplement(motif));
+        final List<String> result = new ArrayList<>();
+        for (int start = from; start <= Math.min(to, SEQUENCE_LENGTH - motif.length() + 1); start++) {
+            final String window = new String(read(start, start + motif.length() - 1)).toUpperCase();
+            final String motifRange = CONTIG + ":" + start + "-" + (start + motif.length() - 1);
+            if (window.matches(positive)) {
+                result.add(motifRange + ":" + StrandSerializable.POSITIVE);
+            }
+            if (window.matches(negative)) {
+                result.add(motifRange + ":" + StrandSerializable.NEGATIVE);
+            }
+        }
+        return result;
+    }
+
+    private static String toPattern(final String motif) {
+        return motif.toUpperCase().chars()
+                .mapToObj(c -> {
+                    switch (c) {
+                        case 'R': return "[AG]";
+                        case 'Y': return "[CT]";
+                        case 'S': return "[CG]";
+                        case 'W': return "[AT]";
+                        case 'N': return "[ACGT]";
+                        default: return String.valueOf((char) c);
+                    }
+                })
+                .collect(Collectors.joining());
+    }
+
+    private static String reverseComplement(final String motif) {
+        final StringBuilder result = new StringBuilder();
+        for (char c : new StringBuilder(motif.toUpperCase()).reverse().toString().toCharArray()) {
+            result.append("ACGTRYSWN".charAt("TGCAYRSWN".indexOf(c)));
+        }
+        return result.toString();
+    }
+
+    private static List<String> toStrings(final Iterator<Motif> motifs) {
+        final List<String> result = new ArrayList<>();
+        motifs.forEachRemaining(m -> result.add(toString(m)));
+        return result;
+    }
+
+    private static List<String> toStrings(final List<Motif> motifs) {
+        return toStrings(motifs.iterator());
+    }
+
+    private static String toString(final Motif motif) {
+        return motif.getContig() + ":" + motif.getStart() + "-" + motif.getEnd() + ":" + motif.getStrand();
+    }
+}
@@ -27,6 +27,7 @@ package com.epam.catgenome.util;
 import com.epam.catgenome.entity.reference.motif.Motif;
 import com.epam.catgenome.manager.gene.parser.StrandSerializable;
 import com.epam.catgenome.util.motif.IupacRegexConverter;
+import com.epam.catgenome.util.motif.MotifBitmask;
 import com.epam.catgenome.util.motif.MotifSearchIterator;
 import com.epam.catgenome.util.motif.MotifSearcher;
 import org.junit.Assert;
@@ -35,8 +36,12 @@ import org.junit.Test;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 public class MotifSearcherTest {
@@ -49,6 +54,7 @@ public class MotifSearcherTest {
     public static final String TEST_REFERENCE_SOURCE = "/templates/dm606.X.fa";
     public static final int MAX_SIZE_SEARCH_RESULT_LIMIT = 2000000;
     public static final int SIZE_SEARCH_RESULT_LOW_LIMIT = 20000;
+    public static final int BITMASK_TEST_SEQUENCE_LENGTH = 20000;
 
     @Test
     public void searchTest() {
@@ -292,6 +298,47 @@ public class MotifSearcherTest {
                StrandSerializable.NEGATIVE, "", 0, true, SIZE_SEARCH_RESULT_LOW_LIMIT);
     }
 
+    @Test
+    public void bitmaskSearchShouldMatchRegexSearch() {
+        final Random random = new Random(7);
+        final byte[] sequence = new byte[BITMASK_TEST_SEQUENCE_LENGTH];
+        for (int i = 0; i < sequence.length; i++) {
+            sequence[i] = (byte) "acgtnACGTN".charAt(random.nextInt(10));
+        }
+        for (String motif : Arrays.asList("tacyrw", "acnngt", "[ag]c[ct]{2}", "g.c", "sswwN")) {
+            for (StrandSerializable strand : Arrays.asList(StrandSerializable.POSITIVE,
+                    StrandSerializable.NEGATIVE)) {
+                Assert.assertNotNull(MotifBitmask.compile(motif));
+                final List<Motif> expected = new ArrayList<>();
+                new MotifSearchIterator(sequence, motif, strand, "", 1, true, MAX_SIZE_SEARCH_RESULT_LIMIT)
+                        .forEachRemaining(expected::add);
+                final List<Motif> actual = MotifSearcher.search(sequence, motif, strand, "", 1, true,
+                        MAX_SIZE_SEARCH_RESULT_LIMIT).collect(Collectors.toList());
+                Assert.assertEquals(motif, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void bitmaskSearchShouldFindEveryWindowOfCharacterClass() {
+        final byte[] sequence = "acgtNacgtacg".getBytes(StandardCharsets.UTF_8);
+        final List<Integer> starts = MotifSearcher.search(sequence, "[ACGT]{4}", StrandSerializable.POSITIVE,
+                "", 1, false, MAX_SIZE_SEARCH_RESULT_LIMIT)
+                .map(Motif::getStart)
+                .collect(Collectors.toList());
+        Assert.assertEquals(Arrays.asList(1, 6, 7, 8, 9), starts);
+        Assert.assertEquals(10, MotifSearcher.search(sequence, "[ACGT]{4}", "", 1, false,
+                MAX_SIZE_SEARCH_RESULT_LIMIT).count());
+    }
+
+    @Test
+    public void variableLengthRegexShouldNotBeCompiledToBitmask() {
+        Assert.assertNull(MotifBitmask.compile(TEST_REGEX));
+        Assert.assertNull(MotifBitmask.compile(SIMPLE_REVERSIBLE_TEST_REGEX));
+        Assert.assertNull(MotifBitmask.compile("[^a]cg"));
+        Assert.assertNull(MotifBitmask.compile("a{65}"));
+    }
+
     private byte[] getTestSequenceFromResource(final String path) throws IOException {
         final InputStream resourceAsStream = getClass().getResourceAsStream(path);
         byte[] buf = new byte[resourceAsStream.available()];
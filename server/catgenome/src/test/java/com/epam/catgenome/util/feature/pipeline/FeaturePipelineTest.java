@@ -0,0 +1,137 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.epam.catgenome.util.feature.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.epam.catgenome.entity.bed.BedFile;
+import com.epam.catgenome.util.IndexUtils;
+import htsjdk.tribble.TribbleException;
+import htsjdk.tribble.bed.BEDCodec;
+import htsjdk.tribble.bed.BEDFeature;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ClassPathResource;
+
+public class FeaturePipelineTest {
+
+    private static final String SORTED_BED = "templates/genes_sorted.bed";
+    private static final String UNSORTED_BED = "templates/invalid/unsorted.bed";
+    private static final int BATCH_SIZE = 7;
+    private static final int QUEUE_CAPACITY = 2;
+    private static final int FAILING_FEATURE = 10;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String sortedBedPath;
+
+    @Before
+    public void setUp() throws IOException {
+        sortedBedPath = new ClassPathResource(SORTED_BED).getFile().getAbsolutePath();
+    }
+
+    @Test
+    public void testAllConsumersReceiveFeaturesInFileOrder() throws IOException {
+        final List<BEDFeature> first = new ArrayList<>();
+        final List<BEDFeature> second = new ArrayList<>();
+        final File indexFile = folder.newFile("pipeline.tbi");
+
+        final long endPosition = new FeaturePipeline<BEDFeature>(sortedBedPath)
+                .setBatchSize(BATCH_SIZE)
+                .setQueueCapacity(QUEUE_CAPACITY)
+                .addConsumer((feature, position) -> first.add(feature))
+                .addConsumer((feature, position) -> second.add(feature))
+                .addConsumer(new TabixIndexConsumer<>(TabixFormat.BED, indexFile))
+                .run(new BEDCodec());
+
+        Assert.assertEquals(new File(sortedBedPath).length(), endPosition);
+        Assert.assertFalse(first.isEmpty());
+        Assert.assertEquals(first, second);
+
+        // the index should be the same, as the one created by a separate pass over the file
+        final BedFile bedFile = new BedFile();
+        bedFile.setPath(sortedBedPath);
+        final File expectedIndexFile = folder.newFile("expected.tbi");
+        IndexUtils.createTabixIndex(bedFile, new BEDCodec(), TabixFormat.BED).write(expectedIndexFile);
+        Assert.assertArrayEquals(Files.readAllBytes(expectedIndexFile.toPath()),
+                Files.readAllBytes(indexFile.toPath()));
+    }
+
+    @Test
+    public void testConsumerFailureIsRethrown() throws IOException {
+        final AtomicBoolean finished = new AtomicBoolean();
+        final FeaturePipeline<BEDFeature> pipeline = new FeaturePipeline<BEDFeature>(sortedBedPath)
+                .setBatchSize(1)
+                .setQueueCapacity(1)
+                .addConsumer(new FeatureConsumer<BEDFeature>() {
+                    @Override
+                    public void accept(final BEDFeature feature, final long position) {
+                        // consumes everything
+                    }
+
+                    @Override
+                    public void finish(final long endPosition) {
+                        finished.set(true);
+                    }
+                })
+                .addConsumer(new FeatureConsumer<BEDFeature>() {
+                    private int count;
+
+                    @Override
+                    public void accept(final BEDFeature feature, final long position) throws IOException {
+                        if (++count == FAILING_FEATURE) {
+                            throw new IOException("Failed to consume");
+                        }
+                    }
+                });
+        try {
+            pipeline.run(new BEDCodec());
+            Assert.fail("Consumer failure is expected");
+        } catch (IOException e) {
+            Assert.assertEquals("Failed to consume", e.getMessage());
+        }
+        Assert.assertFalse(finished.get());
+    }
+
+    @Test(expected = TribbleException.MalformedFeatureFile.class)
+    public void testUnsortedFileIsRejected() throws IOException {
+        final String unsortedBedPath = new ClassPathResource(UNSORTED_BED).getFile().getAbsolutePath();
+        new FeaturePipeline<BEDFeature>(unsortedBedPath)
+                .addConsumer((feature, position) -> { })
+                .addConsumer((feature, position) -> { })
+                .run(new BEDCodec());
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 EPAM Systems
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.epam.catgenome.util.sort;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ParallelExternalSorterTest {
+
+    private static final int MAX_MEMORY_MB = 1;
+    private static final int PARALLELISM = 2;
+    private static final int SPILLED_LINES = 100_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldSortNegativeStartsFirst() throws IOException {
+        final String input = "chr1\t10\tc\nchr1\t-5\tb\nchr1\tx\td\nchr1\t-20\ta\n";
+        Assert.assertEquals(Arrays.asList("chr1\t-20\ta", "chr1\t-5\tb", "chr1\t10\tc", "chr1\tx\td"),
+                sort(input));
+    }
+
+    @Test
+    public void shouldMergeSpilledChunksAndDeleteThem() throws IOException {
+        final StringBuilder input = new StringBuilder();
+        for (int i = 0; i < SPILLED_LINES; i++) {
+            input.append(i % 2 == 0 ? "chr2" : "chr1").append('\t').append(SPILLED_LINES / 2 - i)
+                    .append("\tfeature\n");
+        }
+        final List<String> lines = sort(input.toString());
+        Assert.assertEquals(SPILLED_LINES, lines.size());
+        for (int i = 1; i < lines.size(); i++) {
+            final String[] previous = lines.get(i - 1).split("\t");
+            final String[] current = lines.get(i).split("\t");
+            final int comparison = previous[0].compareTo(current[0]);
+            Assert.assertTrue(comparison < 0
+                    || comparison == 0 && Integer.parseInt(previous[1]) <= Integer.parseInt(current[1]));
+        }
+        Assert.assertEquals(0, folder.getRoot().listFiles().length);
+    }
+
+    private List<String> sort(final String input) throws IOException {
+        final ParallelExternalSorter sorter = new ParallelExternalSorter(new Parser(0, 1), folder.getRoot(),
+                MAX_MEMORY_MB, PARALLELISM);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        sorter.sort(null, new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), output, null);
+        return new ArrayList<>(Arrays.asList(new String(output.toByteArray(), StandardCharsets.UTF_8)
+                .split("\n")));
+    }
+}